@@ -460,6 +460,42 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Whether the total number of hits should be accurate. Disabling it allows searches that sort by score to skip
+     * documents that cannot make it to the top hits. Defaults to <tt>true</tt>.
+     */
+    public SearchRequestBuilder setTrackTotalHits(boolean trackTotalHits) {
+        sourceBuilder().trackTotalHits(trackTotalHits);
+        return this;
+    }
+
+    /**
+     * Only return hits that sort after the hit with the given sort values, typically the sort values of the last hit
+     * of the previous page.
+     */
+    public SearchRequestBuilder setSearchAfter(Object... sortValues) {
+        sourceBuilder().searchAfter(sortValues);
+        return this;
+    }
+
+    /**
+     * Restrict a scroll to the slice with the given id out of <code>max</code> disjoint slices, so that
+     * <code>max</code> consumers can scroll the same request in parallel.
+     */
+    public SearchRequestBuilder setSlice(int id, int max) {
+        sourceBuilder().slice(id, max);
+        return this;
+    }
+
+    /**
+     * Whether shards should report how long the execution of the request took and how much memory it used.
+     * Defaults to <tt>false</tt>.
+     */
+    public SearchRequestBuilder setProfile(boolean profile) {
+        sourceBuilder().profile(profile);
+        return this;
+    }
+
     /**
      * Adds the fields to load and return as part of the search request. If none are specified,
      * the source of the document will be returned.
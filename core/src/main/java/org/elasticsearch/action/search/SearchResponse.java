@@ -32,9 +32,11 @@ import org.elasticsearch.rest.action.support.RestActions;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.suggest.Suggest;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static org.elasticsearch.action.search.ShardSearchFailure.readShardSearchFailure;
 import static org.elasticsearch.search.internal.InternalSearchResponse.readInternalSearchResponse;
@@ -89,6 +91,14 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         return internalResponse.suggest();
     }
 
+    /**
+     * The profiles of the shards that executed the request, keyed by shard, or <tt>null</tt> if profiling was
+     * not requested.
+     */
+    public Map<String, ProfileShardResult> getProfileResults() {
+        return internalResponse.profileResults();
+    }
+
     /**
      * Has the search operation timed out.
      */
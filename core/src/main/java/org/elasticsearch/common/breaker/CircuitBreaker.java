@@ -31,6 +31,8 @@ public interface CircuitBreaker {
     public static final String PARENT = "parent";
     public static final String FIELDDATA = "fielddata";
     public static final String REQUEST = "request";
+    public static final String SEARCH_CONTEXTS = "search_contexts";
+    public static final String TERMS_LOOKUP = "terms_lookup";
 
     public static enum Type {
         // A regular or child MemoryCircuitBreaker
@@ -36,6 +36,7 @@ import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.text.StringAndBytesText;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.util.ByteUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -219,6 +220,23 @@ public abstract class StreamInput extends InputStream {
         return i | ((b & 0x7FL) << 56);
     }
 
+    /**
+     * Reads a long that was written with {@link StreamOutput#writeZLong(long)}.
+     */
+    public long readZLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 56; shift += 7) {
+            final byte b = readByte();
+            value |= (b & 0x7FL) << shift;
+            if ((b & 0x80) == 0) {
+                return ByteUtils.zigZagDecode(value);
+            }
+        }
+        // the last byte uses all 8 bits
+        value |= (readByte() & 0xFFL) << 56;
+        return ByteUtils.zigZagDecode(value);
+    }
+
     @Nullable
     public Text readOptionalText() throws IOException {
         int length = readInt();
@@ -33,6 +33,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.util.ByteUtils;
 import org.joda.time.ReadableInstant;
 
 import java.io.EOFException;
@@ -186,6 +187,25 @@ public abstract class StreamOutput extends OutputStream {
         writeByte((byte) i);
     }
 
+    /**
+     * Writes a long in a variable-length format, using zig-zag encoding so that
+     * numbers with a small absolute value take few bytes, whether they are
+     * negative or not. Writes between one and nine bytes.
+     */
+    public void writeZLong(long i) throws IOException {
+        long value = ByteUtils.zigZagEncode(i);
+        for (int shift = 0; shift < 56; shift += 7) {
+            if ((value & ~0x7FL) == 0) {
+                writeByte((byte) value);
+                return;
+            }
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        // the last byte uses all 8 bits
+        writeByte((byte) value);
+    }
+
     public void writeOptionalString(@Nullable String str) throws IOException {
         if (str == null) {
             writeBoolean(false);
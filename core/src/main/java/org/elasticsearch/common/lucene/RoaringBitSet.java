@@ -0,0 +1,303 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * An immutable {@link BitSet} that splits documents into blocks of 2<sup>16</sup> doc ids, like roaring bitmaps:
+ * blocks that contain few documents store the sorted lower 16 bits of their doc ids in an array, while the others
+ * are stored as a bitmap. This takes much less memory than a {@link org.apache.lucene.util.FixedBitSet} for sets
+ * that are neither dense nor very sparse while still supporting random access and backward iteration, which is
+ * what block joins need.
+ */
+public final class RoaringBitSet extends BitSet {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RoaringBitSet.class);
+
+    static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+    private static final int BITMAP_WORDS = 1 << (BLOCK_SHIFT - 6);
+    // an array of more than 4096 shorts takes more memory than a bitmap
+    static final int MAX_ARRAY_LENGTH = 1 << 12;
+
+    private final int length;
+    private final int cardinality;
+    private final short[][] arrays; // the lower bits of the doc ids of sparse blocks, null for other blocks
+    private final long[][] bitmaps; // the bits of dense blocks, null for other blocks
+    private final long ramBytesUsed;
+
+    private RoaringBitSet(int length, int cardinality, short[][] arrays, long[][] bitmaps) {
+        this.length = length;
+        this.cardinality = cardinality;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        long ramBytesUsed = BASE_RAM_BYTES_USED + shallowSizeOf(arrays) + shallowSizeOf(bitmaps);
+        for (int block = 0; block < arrays.length; ++block) {
+            if (arrays[block] != null) {
+                ramBytesUsed += RamUsageEstimator.sizeOf(arrays[block]);
+            } else if (bitmaps[block] != null) {
+                ramBytesUsed += RamUsageEstimator.sizeOf(bitmaps[block]);
+            }
+        }
+        this.ramBytesUsed = ramBytesUsed;
+    }
+
+    private static long shallowSizeOf(Object[] array) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * array.length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public boolean get(int index) {
+        final int block = index >>> BLOCK_SHIFT;
+        final int low = index & BLOCK_MASK;
+        if (bitmaps[block] != null) {
+            return (bitmaps[block][low >>> 6] & (1L << low)) != 0;
+        } else if (arrays[block] != null) {
+            final short[] array = arrays[block];
+            final int i = lowerBound(array, low);
+            return i < array.length && (array[i] & 0xFFFF) == low;
+        }
+        return false;
+    }
+
+    @Override
+    public int nextSetBit(int index) {
+        int block = index >>> BLOCK_SHIFT;
+        final int next = nextInBlock(block, index & BLOCK_MASK);
+        if (next != -1) {
+            return (block << BLOCK_SHIFT) | next;
+        }
+        for (++block; block < arrays.length; ++block) {
+            final int first = nextInBlock(block, 0);
+            if (first != -1) {
+                return (block << BLOCK_SHIFT) | first;
+            }
+        }
+        return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    @Override
+    public int prevSetBit(int index) {
+        int block = index >>> BLOCK_SHIFT;
+        final int prev = prevInBlock(block, index & BLOCK_MASK);
+        if (prev != -1) {
+            return (block << BLOCK_SHIFT) | prev;
+        }
+        for (--block; block >= 0; --block) {
+            final int last = prevInBlock(block, BLOCK_MASK);
+            if (last != -1) {
+                return (block << BLOCK_SHIFT) | last;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the first lower bits in <code>block</code> that are greater than or equal to <code>low</code>, or -1. */
+    private int nextInBlock(int block, int low) {
+        if (bitmaps[block] != null) {
+            final long[] bitmap = bitmaps[block];
+            int word = low >>> 6;
+            long bits = bitmap[word] >>> low;
+            if (bits != 0) {
+                return low + Long.numberOfTrailingZeros(bits);
+            }
+            while (++word < BITMAP_WORDS) {
+                bits = bitmap[word];
+                if (bits != 0) {
+                    return (word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        } else if (arrays[block] != null) {
+            final short[] array = arrays[block];
+            final int i = lowerBound(array, low);
+            if (i < array.length) {
+                return array[i] & 0xFFFF;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the last lower bits in <code>block</code> that are less than or equal to <code>low</code>, or -1. */
+    private int prevInBlock(int block, int low) {
+        if (bitmaps[block] != null) {
+            final long[] bitmap = bitmaps[block];
+            int word = low >>> 6;
+            long bits = bitmap[word] << (63 - (low & 63));
+            if (bits != 0) {
+                return low - Long.numberOfLeadingZeros(bits);
+            }
+            while (--word >= 0) {
+                bits = bitmap[word];
+                if (bits != 0) {
+                    return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                }
+            }
+        } else if (arrays[block] != null) {
+            final short[] array = arrays[block];
+            final int i = lowerBound(array, low + 1) - 1;
+            if (i >= 0) {
+                return array[i] & 0xFFFF;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the index of the first value of <code>array</code> that is greater than or equal to <code>low</code>. */
+    private static int lowerBound(short[] array, int low) {
+        int lo = 0;
+        int hi = array.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if ((array[mid] & 0xFFFF) < low) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void set(int i) {
+        throw new UnsupportedOperationException("RoaringBitSet is immutable");
+    }
+
+    @Override
+    public void clear(int index) {
+        throw new UnsupportedOperationException("RoaringBitSet is immutable");
+    }
+
+    @Override
+    public void clear(int startIndex, int endIndex) {
+        throw new UnsupportedOperationException("RoaringBitSet is immutable");
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
+    public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "RoaringBitSet(length=" + length + ",cardinality=" + cardinality + ")";
+    }
+
+    /**
+     * A builder of {@link RoaringBitSet}s, documents must be added in order.
+     */
+    public static final class Builder {
+
+        private final int maxDoc;
+        private final short[][] arrays;
+        private final long[][] bitmaps;
+        private final short[] buffer = new short[MAX_ARRAY_LENGTH];
+        private int bufferSize;
+        private long[] currentBitmap;
+        private int currentBlock = -1;
+        private int lastDoc = -1;
+        private int cardinality;
+
+        public Builder(int maxDoc) {
+            this.maxDoc = maxDoc;
+            final int numBlocks = (int) (((long) maxDoc + BLOCK_MASK) >>> BLOCK_SHIFT);
+            this.arrays = new short[numBlocks][];
+            this.bitmaps = new long[numBlocks][];
+        }
+
+        /** Add a document, which must be greater than all previously added documents. */
+        public Builder add(int doc) {
+            if (doc <= lastDoc) {
+                throw new IllegalArgumentException("Doc ids must be added in order, got " + doc + " after " + lastDoc);
+            }
+            if (doc >= maxDoc) {
+                throw new IllegalArgumentException("Doc id " + doc + " is out of bounds, maxDoc is " + maxDoc);
+            }
+            final int block = doc >>> BLOCK_SHIFT;
+            if (block != currentBlock) {
+                flush();
+                currentBlock = block;
+            }
+            final int low = doc & BLOCK_MASK;
+            if (currentBitmap != null) {
+                currentBitmap[low >>> 6] |= 1L << low;
+            } else if (bufferSize == MAX_ARRAY_LENGTH) {
+                // too many documents for an array, switch to a bitmap
+                currentBitmap = new long[BITMAP_WORDS];
+                for (int i = 0; i < bufferSize; ++i) {
+                    final int l = buffer[i] & 0xFFFF;
+                    currentBitmap[l >>> 6] |= 1L << l;
+                }
+                bufferSize = 0;
+                currentBitmap[low >>> 6] |= 1L << low;
+            } else {
+                buffer[bufferSize++] = (short) low;
+            }
+            lastDoc = doc;
+            cardinality++;
+            return this;
+        }
+
+        /** Add all documents of the iterator, which must be unpositioned. */
+        public Builder add(DocIdSetIterator iterator) throws IOException {
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                add(doc);
+            }
+            return this;
+        }
+
+        private void flush() {
+            if (currentBitmap != null) {
+                bitmaps[currentBlock] = currentBitmap;
+                currentBitmap = null;
+            } else if (bufferSize > 0) {
+                arrays[currentBlock] = Arrays.copyOf(buffer, bufferSize);
+            }
+            bufferSize = 0;
+        }
+
+        public RoaringBitSet build() {
+            flush();
+            return new RoaringBitSet(maxDoc, cardinality, arrays, bitmaps);
+        }
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.search;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.PerFieldSimilarityWrapper;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A query that matches the same documents with the same scores as a disjunction of term queries, but that only
+ * collects the documents that may make it to the top <code>numHits</code> hits by score. It implements the
+ * MaxScore algorithm: clauses are sorted by the maximum score that they may contribute, and as the score of the
+ * worst of the top hits collected so far grows, the clauses whose maximum scores sum up to less than it become
+ * non-essential. Documents that only match non-essential clauses are skipped, and non-essential clauses are only
+ * advanced to the documents of the other clauses, and only as long as these documents may still compete.
+ * <p/>
+ * Maximum scores are computed from term statistics, which is only possible for fields that use the BM25 similarity,
+ * since BM25 saturates term frequencies. This query scores like the wrapped disjunction without skipping any
+ * documents if one of its fields uses another similarity. Since skipped documents are not collected, the total
+ * number of hits of a search with this query is a lower bound of the number of matching documents.
+ */
+public final class MaxScoreDisjunctionQuery extends Query {
+
+    // scores are summed in a different order than maximum scores, leave some room for rounding errors
+    private static final double MAX_SCORE_SLACK = 1e-5;
+
+    private final Query original;
+    private final Query query;
+    private final TermQuery[] terms;
+    private final float boost;
+    private final boolean disableCoord;
+    private final int numHits;
+
+    private MaxScoreDisjunctionQuery(Query original, Query query, TermQuery[] terms, float boost, boolean disableCoord, int numHits) {
+        this.original = original;
+        this.query = query;
+        this.terms = terms;
+        this.boost = boost;
+        this.disableCoord = disableCoord;
+        this.numHits = numHits;
+    }
+
+    /**
+     * Wrap the given rewritten query if it is a term query or a disjunction of term queries, so that a search for
+     * its top <code>numHits</code> hits by score does not collect documents that cannot make it to the top hits.
+     * Other queries are returned as-is.
+     */
+    public static Query wrap(Query query, int numHits) {
+        return wrap(query, query, numHits);
+    }
+
+    /**
+     * Same as {@link #wrap(Query, int)}, for a query that has been rewritten from <code>original</code>: the
+     * wrapper remembers it so that callers can still recognize it through {@link #getOriginalQuery()}, and
+     * <code>original</code> is returned as-is if the rewritten query can't be wrapped.
+     */
+    public static Query wrap(Query original, Query query, int numHits) {
+        if (numHits <= 0) {
+            return original;
+        }
+        if (query instanceof TermQuery) {
+            return new MaxScoreDisjunctionQuery(original, query, new TermQuery[] {(TermQuery) query}, 1f, true, numHits);
+        }
+        if (query instanceof BooleanQuery) {
+            final BooleanQuery booleanQuery = (BooleanQuery) query;
+            final List<BooleanClause> clauses = booleanQuery.clauses();
+            if (clauses.isEmpty() || booleanQuery.getMinimumNumberShouldMatch() > 1) {
+                return original;
+            }
+            final TermQuery[] terms = new TermQuery[clauses.size()];
+            for (int i = 0; i < terms.length; ++i) {
+                final BooleanClause clause = clauses.get(i);
+                if (clause.getOccur() != Occur.SHOULD || !(clause.getQuery() instanceof TermQuery)) {
+                    return original;
+                }
+                terms[i] = (TermQuery) clause.getQuery();
+            }
+            return new MaxScoreDisjunctionQuery(original, query, terms, booleanQuery.getBoost(), booleanQuery.isCoordDisabled(), numHits);
+        }
+        return original;
+    }
+
+    /**
+     * Return the wrapped query.
+     */
+    public Query getQuery() {
+        return query;
+    }
+
+    /**
+     * Return the query that the wrapped query was rewritten from.
+     */
+    public Query getOriginalQuery() {
+        return original;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        // term contexts are shared between the disjunction and the clauses that are scored on their own
+        final TermContext[] termContexts = new TermContext[terms.length];
+        final TermQuery[] clauses = new TermQuery[terms.length];
+        final BooleanQuery disjunction = new BooleanQuery(disableCoord);
+        disjunction.setBoost(boost);
+        for (int i = 0; i < terms.length; ++i) {
+            final Term term = terms[i].getTerm();
+            termContexts[i] = TermContext.build(searcher.getTopReaderContext(), term);
+            clauses[i] = new TermQuery(term, termContexts[i]);
+            clauses[i].setBoost(terms[i].getBoost());
+            disjunction.add(clauses[i], Occur.SHOULD);
+        }
+        final Weight disjunctionWeight = disjunction.createWeight(searcher, needsScores);
+        if (needsScores == false) {
+            return disjunctionWeight;
+        }
+        for (TermQuery clause : clauses) {
+            if (similarity(searcher, clause.getTerm().field()).getClass() != BM25Similarity.class) {
+                return disjunctionWeight;
+            }
+        }
+        return new MaxScoreWeight(searcher, disjunctionWeight, clauses, termContexts);
+    }
+
+    private static Similarity similarity(IndexSearcher searcher, String field) {
+        final Similarity similarity = searcher.getSimilarity(true);
+        if (similarity instanceof PerFieldSimilarityWrapper) {
+            return ((PerFieldSimilarityWrapper) similarity).get(field);
+        }
+        return similarity;
+    }
+
+    // same as BM25Similarity.idf, which is protected
+    private static float idf(long docFreq, long docCount) {
+        return (float) Math.log(1 + (docCount - docFreq + 0.5D) / (docFreq + 0.5D));
+    }
+
+    @Override
+    public String toString(String field) {
+        return "max_score(" + query.toString(field) + ",top=" + numHits + ")" + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (super.equals(obj) == false) {
+            return false;
+        }
+        final MaxScoreDisjunctionQuery other = (MaxScoreDisjunctionQuery) obj;
+        return numHits == other.numHits && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + query.hashCode()) + numHits;
+    }
+
+    private final class MaxScoreWeight extends Weight {
+
+        // the weight of the equivalent disjunction, which explanations and scorers are delegated to
+        private final Weight disjunctionWeight;
+        private final Weight[] weights;
+        // the maximum score of each clause, without the top-level boost
+        private final float[] maxScoreFactors;
+        private final float[] maxScores;
+        private final float[] coords;
+        private final float maxCoord;
+        // shared by all segments, which are searched sequentially
+        private final TopScores topScores = new TopScores(numHits);
+
+        MaxScoreWeight(IndexSearcher searcher, Weight disjunctionWeight, TermQuery[] clauses, TermContext[] termContexts) throws IOException {
+            super(MaxScoreDisjunctionQuery.this);
+            this.disjunctionWeight = disjunctionWeight;
+            this.weights = new Weight[clauses.length];
+            this.maxScoreFactors = new float[clauses.length];
+            this.maxScores = new float[clauses.length];
+            for (int i = 0; i < clauses.length; ++i) {
+                final Term term = clauses[i].getTerm();
+                weights[i] = clauses[i].createWeight(searcher, true);
+                final CollectionStatistics collectionStats = searcher.collectionStatistics(term.field());
+                final TermStatistics termStats = searcher.termStatistics(term, termContexts[i]);
+                final long docCount = collectionStats.docCount() == -1 ? collectionStats.maxDoc() : collectionStats.docCount();
+                final float k1 = ((BM25Similarity) similarity(searcher, term.field())).getK1();
+                // BM25 scores are idf * boost * (k1 + 1) * freq / (freq + norm), where the norm is positive
+                maxScoreFactors[i] = idf(termStats.docFreq(), docCount) * clauses[i].getBoost() * (k1 + 1);
+            }
+            // same as BooleanWeight, which does not apply coord to single clauses
+            this.coords = new float[clauses.length + 1];
+            float maxCoord = 0f;
+            for (int i = 0; i < coords.length; ++i) {
+                coords[i] = disableCoord || clauses.length == 1 ? 1f : searcher.getSimilarity(true).coord(i, clauses.length);
+                maxCoord = Math.max(maxCoord, coords[i]);
+            }
+            this.maxCoord = maxCoord;
+        }
+
+        @Override
+        public void extractTerms(Set<Term> terms) {
+            disjunctionWeight.extractTerms(terms);
+        }
+
+        @Override
+        public float getValueForNormalization() throws IOException {
+            float sum = disjunctionWeight.getValueForNormalization();
+            sum *= getBoost() * getBoost();
+            return sum;
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            topLevelBoost *= getBoost();
+            disjunctionWeight.normalize(norm, topLevelBoost);
+            // the disjunction passes its own boost down to its clauses
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i].normalize(norm, topLevelBoost * boost);
+                // negative boosts make scores negative, so zero is still a maximum score
+                maxScores[i] = Math.max(0f, maxScoreFactors[i] * topLevelBoost * boost);
+            }
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+            return disjunctionWeight.explain(context, doc);
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context, Bits acceptDocs) throws IOException {
+            return disjunctionWeight.scorer(context, acceptDocs);
+        }
+
+        @Override
+        public BulkScorer bulkScorer(LeafReaderContext context, Bits acceptDocs) throws IOException {
+            final List<SubScorer> subScorers = new ArrayList<>(weights.length);
+            for (int i = 0; i < weights.length; ++i) {
+                // scorers skip documents that are not accepted
+                final Scorer scorer = weights[i].scorer(context, acceptDocs);
+                if (scorer != null) {
+                    subScorers.add(new SubScorer(scorer, maxScores[i]));
+                }
+            }
+            if (subScorers.isEmpty()) {
+                return null;
+            }
+            Collections.sort(subScorers, new Comparator<SubScorer>() {
+                @Override
+                public int compare(SubScorer o1, SubScorer o2) {
+                    return Float.compare(o1.maxScore, o2.maxScore);
+                }
+            });
+            return new MaxScoreBulkScorer(this, subScorers.toArray(new SubScorer[subScorers.size()]), coords, maxCoord, topScores);
+        }
+    }
+
+    private static final class SubScorer {
+
+        final Scorer scorer;
+        final float maxScore;
+        int doc = -1;
+
+        SubScorer(Scorer scorer, float maxScore) {
+            this.scorer = scorer;
+            this.maxScore = maxScore;
+        }
+    }
+
+    private static final class MaxScoreBulkScorer extends BulkScorer {
+
+        // sorted by increasing maximum score
+        private final SubScorer[] subScorers;
+        // the sum of the maximum scores of the sub scorers up to each index, included
+        private final double[] maxScoreSums;
+        private final float[] coords;
+        // scores are multiplied by coord factors, which may be greater than 1 for some similarities
+        private final double maxScoreScale;
+        private final TopScores topScores;
+        private final FakeScorer fakeScorer;
+        // sub scorers before this index are not essential: documents that only match them cannot compete
+        private int firstEssential;
+
+        MaxScoreBulkScorer(Weight weight, SubScorer[] subScorers, float[] coords, float maxCoord, TopScores topScores) {
+            this.subScorers = subScorers;
+            this.maxScoreSums = new double[subScorers.length];
+            double sum = 0;
+            for (int i = 0; i < subScorers.length; ++i) {
+                sum += subScorers[i].maxScore;
+                maxScoreSums[i] = sum;
+            }
+            this.coords = coords;
+            this.maxScoreScale = maxCoord * (1 + MAX_SCORE_SLACK);
+            this.topScores = topScores;
+            this.fakeScorer = new FakeScorer(weight);
+        }
+
+        /** Whether documents whose score is at most <code>maxScore</code> may compete with the top hits. */
+        private boolean competitive(double maxScore) {
+            // documents that have the same score as the worst top hit do not compete since they have greater doc ids
+            return maxScore * maxScoreScale > topScores.minCompetitiveScore();
+        }
+
+        private void updateFirstEssential() {
+            while (firstEssential < subScorers.length && competitive(maxScoreSums[firstEssential]) == false) {
+                firstEssential++;
+            }
+        }
+
+        @Override
+        public int score(LeafCollector collector, int min, int max) throws IOException {
+            collector.setScorer(fakeScorer);
+            updateFirstEssential();
+            while (firstEssential < subScorers.length) {
+                // linear scans are fine since disjunctions rarely have many terms
+                int doc = DocIdSetIterator.NO_MORE_DOCS;
+                for (int i = firstEssential; i < subScorers.length; ++i) {
+                    final SubScorer subScorer = subScorers[i];
+                    if (subScorer.doc < min) {
+                        subScorer.doc = subScorer.scorer.advance(min);
+                    }
+                    doc = Math.min(doc, subScorer.doc);
+                }
+                if (doc >= max) {
+                    return doc;
+                }
+
+                double score = 0;
+                int freq = 0;
+                for (int i = firstEssential; i < subScorers.length; ++i) {
+                    if (subScorers[i].doc == doc) {
+                        score += subScorers[i].scorer.score();
+                        freq++;
+                    }
+                }
+                boolean competitive = true;
+                // only advance non-essential sub scorers as long as the document may compete
+                for (int i = firstEssential - 1; i >= 0; --i) {
+                    if (competitive(score + maxScoreSums[i]) == false) {
+                        competitive = false;
+                        break;
+                    }
+                    final SubScorer subScorer = subScorers[i];
+                    if (subScorer.doc < doc) {
+                        subScorer.doc = subScorer.scorer.advance(doc);
+                    }
+                    if (subScorer.doc == doc) {
+                        score += subScorer.scorer.score();
+                        freq++;
+                    }
+                }
+
+                if (competitive) {
+                    // same as BooleanScorer
+                    fakeScorer.doc = doc;
+                    fakeScorer.freq = freq;
+                    fakeScorer.score = (float) score * coords[freq];
+                    collector.collect(doc);
+                    if (topScores.add(fakeScorer.score)) {
+                        updateFirstEssential();
+                    }
+                }
+                min = doc + 1;
+            }
+            return DocIdSetIterator.NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            long cost = 0;
+            for (SubScorer subScorer : subScorers) {
+                cost += subScorer.scorer.cost();
+            }
+            return cost;
+        }
+    }
+
+    /**
+     * The scores of the top hits collected so far, which are the same as the ones the top docs collector keeps.
+     */
+    static final class TopScores {
+
+        // a min-heap
+        private final float[] heap;
+        private int size;
+        private float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+
+        TopScores(int numHits) {
+            this.heap = new float[numHits];
+        }
+
+        /** Return the score of the worst top hit, or negative infinity if fewer than <code>numHits</code> hits have been collected. */
+        float minCompetitiveScore() {
+            return minCompetitiveScore;
+        }
+
+        /** Add the score of a collected hit, and return whether the minimum competitive score changed. */
+        boolean add(float score) {
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0) {
+                    final int parent = (i - 1) >>> 1;
+                    if (heap[parent] <= score) {
+                        break;
+                    }
+                    heap[i] = heap[parent];
+                    i = parent;
+                }
+                heap[i] = score;
+            } else if (score > heap[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heap[child + 1] < heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] >= score) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = score;
+            } else {
+                return false;
+            }
+            if (size == heap.length && heap[0] != minCompetitiveScore) {
+                minCompetitiveScore = heap[0];
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class FakeScorer extends Scorer {
+
+        int doc = -1;
+        int freq;
+        float score;
+
+        FakeScorer(Weight weight) {
+            super(weight);
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public float score() throws IOException {
+            return score;
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return freq;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long cost() {
+            return 1;
+        }
+    }
+}
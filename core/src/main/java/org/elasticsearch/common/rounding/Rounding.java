@@ -61,6 +61,16 @@ public abstract class Rounding implements Streamable {
      */
     public abstract long nextRoundingValue(long value);
 
+    /**
+     * Return a rounding that returns the same keys as this rounding for values in <code>[min, max]</code>
+     * but may be faster, for instance by precomputing keys. At most <code>maxKeys</code> keys may be
+     * precomputed. The returned rounding must only be used locally, it should not be serialized.
+     * By default, this rounding is returned.
+     */
+    public Rounding prepare(long min, long max, int maxKeys) {
+        return this;
+    }
+
     /**
      * Rounding strategy which is based on an interval
      *
@@ -164,6 +174,14 @@ public abstract class Rounding implements Streamable {
             return rounding.nextRoundingValue(value);
         }
 
+        @Override
+        public Rounding prepare(long min, long max, int maxKeys) {
+            final long a = (long) (factor * min);
+            final long b = (long) (factor * max);
+            final Rounding prepared = rounding.prepare(Math.min(a, b), Math.max(a, b), maxKeys);
+            return prepared == rounding ? this : new FactorRounding(prepared, factor);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             rounding = (TimeZoneRounding) Rounding.Streams.read(in);
@@ -213,6 +231,12 @@ public abstract class Rounding implements Streamable {
             return rounding.nextRoundingValue(value - offset) + offset;
         }
 
+        @Override
+        public Rounding prepare(long min, long max, int maxKeys) {
+            final Rounding prepared = rounding.prepare(min - offset, max - offset, maxKeys);
+            return prepared == rounding ? this : new OffsetRounding(prepared, offset);
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             rounding = Rounding.Streams.read(in);
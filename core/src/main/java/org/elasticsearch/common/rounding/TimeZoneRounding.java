@@ -19,6 +19,7 @@
 
 package org.elasticsearch.common.rounding;
 
+import org.apache.lucene.util.ArrayUtil;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
@@ -27,6 +28,7 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.DurationField;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  */
@@ -40,6 +42,11 @@ public abstract class TimeZoneRounding extends Rounding {
         return new Builder(interval);
     }
 
+    @Override
+    public Rounding prepare(long min, long max, int maxKeys) {
+        return PrecomputedRounding.build(this, min, max, maxKeys);
+    }
+
     public static class Builder {
 
         private DateTimeUnit unit;
@@ -212,4 +219,94 @@ public abstract class TimeZoneRounding extends Rounding {
             out.writeString(timeZone.getID());
         }
     }
+
+    /**
+     * A rounding that looks up keys in a sorted table of precomputed keys instead of
+     * converting every value to local time and back. Values outside of the range of the
+     * table are delegated to the original rounding.
+     */
+    static class PrecomputedRounding extends Rounding {
+
+        private final TimeZoneRounding rounding;
+        // keys[i] is the start of the bucket that ends at keys[i+1], or at end for the last key
+        private final long[] keys;
+        private final long end;
+
+        private PrecomputedRounding(TimeZoneRounding rounding, long[] keys, long end) {
+            this.rounding = rounding;
+            this.keys = keys;
+            this.end = end;
+        }
+
+        /**
+         * Build a rounding that precomputes the keys of <code>rounding</code> between <code>min</code>
+         * and <code>max</code>, or return <code>rounding</code> if this would require more than
+         * <code>maxKeys</code> keys.
+         */
+        static Rounding build(TimeZoneRounding rounding, long min, long max, int maxKeys) {
+            if (min > max || maxKeys < 1) {
+                return rounding;
+            }
+            long key = rounding.roundKey(min);
+            if (rounding.roundKey(key) != key) {
+                return rounding;
+            }
+            long[] keys = new long[Math.min(16, maxKeys)];
+            int numKeys = 0;
+            while (true) {
+                if (numKeys == maxKeys) {
+                    return rounding;
+                }
+                keys = ArrayUtil.grow(keys, numKeys + 1);
+                keys[numKeys++] = key;
+                final long next = rounding.nextRoundingValue(key);
+                if (next <= key || rounding.roundKey(next) != next || rounding.roundKey(next - 1) != key) {
+                    // can happen around time zone transitions, don't take the risk to compute wrong keys
+                    return rounding;
+                }
+                if (next > max) {
+                    return new PrecomputedRounding(rounding, Arrays.copyOf(keys, numKeys), next);
+                }
+                key = next;
+            }
+        }
+
+        @Override
+        public byte id() {
+            return rounding.id();
+        }
+
+        @Override
+        public long roundKey(long value) {
+            if (value < keys[0] || value >= end) {
+                return rounding.roundKey(value);
+            }
+            int index = Arrays.binarySearch(keys, value);
+            if (index < 0) {
+                // the insertion point is the index of the next key
+                index = -2 - index;
+            }
+            return keys[index];
+        }
+
+        @Override
+        public long valueForKey(long key) {
+            return rounding.valueForKey(key);
+        }
+
+        @Override
+        public long nextRoundingValue(long value) {
+            return rounding.nextRoundingValue(value);
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            throw new UnsupportedOperationException("Precomputed roundings can't be read, the original rounding is serialized instead");
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            rounding.writeTo(out);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+/**
+ * A {@link BigArrays} that accounts memory like the instance it is created from, and
+ * additionally keeps track of how many bytes the arrays that it creates use. This class
+ * is not thread-safe.
+ */
+public final class TrackingBigArrays extends BigArrays {
+
+    private long allocatedBytes;
+    private long usedBytes;
+    private long peakBytes;
+
+    public TrackingBigArrays(BigArrays bigArrays) {
+        super(bigArrays.recycler, bigArrays.breakerService, bigArrays.checkBreaker);
+    }
+
+    @Override
+    void adjustBreaker(long delta) {
+        try {
+            super.adjustBreaker(delta);
+        } finally {
+            // the breaker is adjusted even if it trips, so that releasing the array restores the same value
+            if (delta > 0) {
+                allocatedBytes += delta;
+            }
+            usedBytes += delta;
+            peakBytes = Math.max(peakBytes, usedBytes);
+        }
+    }
+
+    /**
+     * Return the total number of bytes that have been allocated through this instance, including
+     * arrays that have been released since then.
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Return the maximum number of bytes that arrays created by this instance used at the same time.
+     */
+    public long peakBytes() {
+        return peakBytes;
+    }
+}
@@ -80,6 +80,23 @@ public class EsExecutors {
         return new EsThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, queue, threadFactory, new EsAbortPolicy());
     }
 
+    /**
+     * Return a new fork-join pool whose daemon worker threads are named after <code>namePrefix</code>.
+     */
+    public static ForkJoinPool newForkJoinPool(int parallelism, final String namePrefix) {
+        return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+            final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(namePrefix + "[T#" + threadNumber.getAndIncrement() + "]");
+                return thread;
+            }
+        }, null, false);
+    }
+
     public static String threadName(Settings settings, String ... names) {
         return threadName(settings, "[" +  Joiner.on(".").skipNulls().join(names) + "]");
     }
@@ -25,8 +25,13 @@ import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -160,39 +165,9 @@ public class XContentMapValues {
                 continue;
             }
 
-            boolean exactIncludeMatch = false; // true if the current position was specifically mentioned
-            boolean pathIsPrefixOfAnInclude = false; // true if potentially a sub scope can be included
-            if (includes.length == 0) {
-                // implied match anything
-                exactIncludeMatch = true;
-            } else {
-                for (String include : includes) {
-                    // check for prefix matches as well to see if we need to zero in, something like: obj1.arr1.* or *.field
-                    // note, this does not work well with middle matches, like obj1.*.obj3
-                    if (include.charAt(0) == '*') {
-                        if (Regex.simpleMatch(include, path)) {
-                            exactIncludeMatch = true;
-                            break;
-                        }
-                        pathIsPrefixOfAnInclude = true;
-                        continue;
-                    }
-                    if (include.startsWith(path)) {
-                        if (include.length() == path.length()) {
-                            exactIncludeMatch = true;
-                            break;
-                        } else if (include.length() > path.length() && include.charAt(path.length()) == '.') {
-                            // include might may match deeper paths. Dive deeper.
-                            pathIsPrefixOfAnInclude = true;
-                            continue;
-                        }
-                    }
-                    if (Regex.simpleMatch(include, path)) {
-                        exactIncludeMatch = true;
-                        break;
-                    }
-                }
-            }
+            final int includeMatch = includeMatch(includes, path);
+            final boolean exactIncludeMatch = includeMatch == EXACT_INCLUDE_MATCH; // true if the current position was specifically mentioned
+            final boolean pathIsPrefixOfAnInclude = includeMatch == PREFIX_INCLUDE_MATCH; // true if potentially a sub scope can be included
 
             if (!(pathIsPrefixOfAnInclude || exactIncludeMatch)) {
                 // skip subkeys, not interesting.
@@ -221,6 +196,46 @@ public class XContentMapValues {
         }
     }
 
+    private static final int NO_INCLUDE_MATCH = 0;
+    private static final int PREFIX_INCLUDE_MATCH = 1;
+    private static final int EXACT_INCLUDE_MATCH = 2;
+
+    /**
+     * Check whether the given path is included: either because it was specifically mentioned, or because it is a
+     * prefix of an include, in which case some of its sub fields might be included.
+     */
+    private static int includeMatch(String[] includes, String path) {
+        if (includes.length == 0) {
+            // implied match anything
+            return EXACT_INCLUDE_MATCH;
+        }
+        boolean pathIsPrefixOfAnInclude = false;
+        for (String include : includes) {
+            // check for prefix matches as well to see if we need to zero in, something like: obj1.arr1.* or *.field
+            // note, this does not work well with middle matches, like obj1.*.obj3
+            if (include.charAt(0) == '*') {
+                if (Regex.simpleMatch(include, path)) {
+                    return EXACT_INCLUDE_MATCH;
+                }
+                pathIsPrefixOfAnInclude = true;
+                continue;
+            }
+            if (include.startsWith(path)) {
+                if (include.length() == path.length()) {
+                    return EXACT_INCLUDE_MATCH;
+                } else if (include.length() > path.length() && include.charAt(path.length()) == '.') {
+                    // include might may match deeper paths. Dive deeper.
+                    pathIsPrefixOfAnInclude = true;
+                    continue;
+                }
+            }
+            if (Regex.simpleMatch(include, path)) {
+                return EXACT_INCLUDE_MATCH;
+            }
+        }
+        return pathIsPrefixOfAnInclude ? PREFIX_INCLUDE_MATCH : NO_INCLUDE_MATCH;
+    }
+
     private static void filter(List<Object> from, List<Object> to, String[] includes, String[] excludes, StringBuilder sb) {
         if (includes.length == 0 && excludes.length == 0) {
             to.addAll(from);
@@ -246,6 +261,149 @@ public class XContentMapValues {
         }
     }
 
+    /**
+     * Copy the object that the parser is positioned on to the generator, filtering it the same way as
+     * {@link #filter(Map, String[], String[])} does. Unlike the map-based version, the object is never fully loaded
+     * in memory: sub-trees that are not included are skipped token by token, so that filtering a large object down to
+     * a few fields costs allocations that are proportional to the output rather than to the input. The order of the
+     * fields of the object is preserved.
+     */
+    public static void filter(XContentParser parser, XContentGenerator generator, String[] includes, String[] excludes) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new ElasticsearchParseException("expected an object to filter but got [{}]", token);
+        }
+        final StreamingFilter filter = new StreamingFilter(parser, generator);
+        filter.push(null, false);
+        // the root object is always written, even if nothing is included
+        filter.writePath();
+        filter.filterObject(includes == null ? Strings.EMPTY_ARRAY : includes, excludes == null ? Strings.EMPTY_ARRAY : excludes);
+        filter.pop();
+    }
+
+    /**
+     * Copies a parser to a generator while filtering. Objects and arrays are only written once some of their content
+     * is included, which is why the structures that are being traversed are tracked in a stack.
+     */
+    private static final class StreamingFilter {
+
+        private final XContentParser parser;
+        private final XContentGenerator generator;
+        private final StringBuilder path = new StringBuilder();
+        // field names, or null for the root and array elements, and types of the structures that are being traversed
+        private String[] names = new String[8];
+        private boolean[] arrays = new boolean[8];
+        private int depth;
+        // the number of structures, from the root, whose start has been written
+        private int written;
+
+        StreamingFilter(XContentParser parser, XContentGenerator generator) {
+            this.parser = parser;
+            this.generator = generator;
+        }
+
+        void push(String name, boolean array) {
+            if (depth == names.length) {
+                names = Arrays.copyOf(names, depth << 1);
+                arrays = Arrays.copyOf(arrays, depth << 1);
+            }
+            names[depth] = name;
+            arrays[depth] = array;
+            depth++;
+        }
+
+        void pop() throws IOException {
+            depth--;
+            if (written > depth) {
+                if (arrays[depth]) {
+                    generator.writeEndArray();
+                } else {
+                    generator.writeEndObject();
+                }
+                written = depth;
+            }
+            names[depth] = null;
+        }
+
+        /** Write the start of the structures that are being traversed and have not been written yet. */
+        void writePath() throws IOException {
+            for (; written < depth; ++written) {
+                if (names[written] != null) {
+                    generator.writeFieldName(names[written]);
+                }
+                if (arrays[written]) {
+                    generator.writeStartArray();
+                } else {
+                    generator.writeStartObject();
+                }
+            }
+        }
+
+        void filterObject(String[] includes, String[] excludes) throws IOException {
+            while (parser.nextToken() != XContentParser.Token.END_OBJECT) {
+                final String name = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                final int mark = path.length();
+                if (mark > 0) {
+                    path.append('.');
+                }
+                path.append(name);
+                final String fullPath = path.toString();
+
+                final int includeMatch = Regex.simpleMatch(excludes, fullPath) ? NO_INCLUDE_MATCH : includeMatch(includes, fullPath);
+                if (includeMatch == NO_INCLUDE_MATCH) {
+                    // skip subkeys, not interesting.
+                    parser.skipChildren();
+                } else if (includeMatch == EXACT_INCLUDE_MATCH && excludes.length == 0) {
+                    // nothing left to filter
+                    writePath();
+                    generator.writeFieldName(name);
+                    XContentHelper.copyCurrentStructure(generator, parser);
+                } else if (token == XContentParser.Token.START_OBJECT) {
+                    push(name, false);
+                    if (includeMatch == EXACT_INCLUDE_MATCH) {
+                        writePath();
+                    }
+                    // if we had an exact match, we want give deeper excludes their chance
+                    filterObject(includeMatch == EXACT_INCLUDE_MATCH ? Strings.EMPTY_ARRAY : includes, excludes);
+                    pop();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    push(name, true);
+                    // arrays are written even if none of their elements is included
+                    writePath();
+                    filterArray(includeMatch == EXACT_INCLUDE_MATCH ? Strings.EMPTY_ARRAY : includes, excludes);
+                    pop();
+                } else if (includeMatch == EXACT_INCLUDE_MATCH) {
+                    writePath();
+                    generator.writeFieldName(name);
+                    XContentHelper.copyCurrentEvent(generator, parser);
+                }
+                path.setLength(mark);
+            }
+        }
+
+        void filterArray(String[] includes, String[] excludes) throws IOException {
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token == XContentParser.Token.START_OBJECT) {
+                    push(null, false);
+                    filterObject(includes, excludes);
+                    pop();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    push(null, true);
+                    filterArray(includes, excludes);
+                    pop();
+                } else {
+                    writePath();
+                    XContentHelper.copyCurrentEvent(generator, parser);
+                }
+            }
+        }
+    }
+
     public static boolean isObject(Object node) {
         return node instanceof Map;
     }
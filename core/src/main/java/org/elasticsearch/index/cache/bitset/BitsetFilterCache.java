@@ -31,10 +31,14 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.join.BitDocIdSetFilter;
 import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.SparseFixedBitSet;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.RoaringBitSet;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
@@ -140,15 +144,14 @@ public class BitsetFilterCache extends AbstractIndexComponent implements LeafRea
                 if (docIdSet instanceof BitDocIdSet) {
                     bitSet = (BitDocIdSet) docIdSet;
                 } else {
-                    BitDocIdSet.Builder builder = new BitDocIdSet.Builder(context.reader().maxDoc());
+                    BitDocIdSet bits = null;
                     if (docIdSet != null && docIdSet != DocIdSet.EMPTY) {
                         DocIdSetIterator iterator = docIdSet.iterator();
                         // some filters (QueryWrapperFilter) return not null or DocIdSet.EMPTY if there no matching docs
                         if (iterator != null) {
-                            builder.or(iterator);
+                            bits = buildBitDocIdSet(iterator, context.reader().maxDoc());
                         }
                     }
-                    BitDocIdSet bits = builder.build();
                     // code expects this to be non-null
                     if (bits == null) {
                         bits = new BitDocIdSet(new SparseFixedBitSet(context.reader().maxDoc()), 0);
@@ -168,6 +171,27 @@ public class BitsetFilterCache extends AbstractIndexComponent implements LeafRea
         }).bitset;
     }
 
+    /**
+     * Build a {@link BitDocIdSet} out of the given iterator, using a {@link RoaringBitSet} unless the set is dense
+     * enough for a {@link FixedBitSet} not to take more memory. Returns <tt>null</tt> if the iterator is empty.
+     */
+    static BitDocIdSet buildBitDocIdSet(DocIdSetIterator iterator, int maxDoc) throws IOException {
+        final RoaringBitSet roaringBitSet = new RoaringBitSet.Builder(maxDoc).add(iterator).build();
+        final int cardinality = roaringBitSet.cardinality();
+        if (cardinality == 0) {
+            return null;
+        }
+        final long fixedBitSetBytes = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) RamUsageEstimator.NUM_BYTES_LONG * FixedBitSet.bits2words(maxDoc));
+        if (fixedBitSetBytes > roaringBitSet.ramBytesUsed()) {
+            return new BitDocIdSet(roaringBitSet, cardinality);
+        }
+        // dense sets take less memory and are faster to access as a FixedBitSet
+        final FixedBitSet fixedBitSet = new FixedBitSet(maxDoc);
+        fixedBitSet.or(new BitSetIterator(roaringBitSet, cardinality));
+        return new BitDocIdSet(fixedBitSet, cardinality);
+    }
+
     @Override
     public void onRemoval(RemovalNotification<Object, Cache<Filter, Value>> notification) {
         Object key = notification.getKey();
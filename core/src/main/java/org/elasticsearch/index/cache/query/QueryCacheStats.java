@@ -23,11 +23,13 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  */
@@ -38,16 +40,18 @@ public class QueryCacheStats implements Streamable, ToXContent {
     long missCount;
     long cacheCount;
     long cacheSize;
+    long timeSavedNanos;
 
     public QueryCacheStats() {
     }
 
-    public QueryCacheStats(long ramBytesUsed, long hitCount, long missCount, long cacheCount, long cacheSize) {
+    public QueryCacheStats(long ramBytesUsed, long hitCount, long missCount, long cacheCount, long cacheSize, long timeSavedNanos) {
         this.ramBytesUsed = ramBytesUsed;
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.cacheCount = cacheCount;
         this.cacheSize = cacheSize;
+        this.timeSavedNanos = timeSavedNanos;
     }
 
     public void add(QueryCacheStats stats) {
@@ -56,6 +60,7 @@ public class QueryCacheStats implements Streamable, ToXContent {
         missCount += stats.missCount;
         cacheCount += stats.cacheCount;
         cacheSize += stats.cacheSize;
+        timeSavedNanos += stats.timeSavedNanos;
     }
 
     public long getMemorySizeInBytes() {
@@ -108,6 +113,13 @@ public class QueryCacheStats implements Streamable, ToXContent {
         return cacheCount - cacheSize;
     }
 
+    /**
+     * An estimation of the time that hits saved by not having to build the {@link DocIdSet}s again.
+     */
+    public TimeValue getTimeSaved() {
+        return new TimeValue(timeSavedNanos, TimeUnit.NANOSECONDS);
+    }
+
     public static QueryCacheStats readQueryCacheStats(StreamInput in) throws IOException {
         QueryCacheStats stats = new QueryCacheStats();
         stats.readFrom(in);
@@ -122,6 +134,7 @@ public class QueryCacheStats implements Streamable, ToXContent {
         missCount = in.readLong();
         cacheCount = in.readLong();
         cacheSize = in.readLong();
+        timeSavedNanos = in.readLong();
     }
 
     @Override
@@ -131,6 +144,7 @@ public class QueryCacheStats implements Streamable, ToXContent {
         out.writeLong(missCount);
         out.writeLong(cacheCount);
         out.writeLong(cacheSize);
+        out.writeLong(timeSavedNanos);
     }
 
     @Override
@@ -143,6 +157,7 @@ public class QueryCacheStats implements Streamable, ToXContent {
         builder.field(Fields.CACHE_SIZE, getCacheSize());
         builder.field(Fields.CACHE_COUNT, getCacheCount());
         builder.field(Fields.EVICTIONS, getEvictions());
+        builder.timeValueField(Fields.TIME_SAVED_IN_MILLIS, Fields.TIME_SAVED, getTimeSaved());
         builder.endObject();
         return builder;
     }
@@ -157,6 +172,8 @@ public class QueryCacheStats implements Streamable, ToXContent {
         static final XContentBuilderString CACHE_SIZE = new XContentBuilderString("cache_size");
         static final XContentBuilderString CACHE_COUNT = new XContentBuilderString("cache_count");
         static final XContentBuilderString EVICTIONS = new XContentBuilderString("evictions");
+        static final XContentBuilderString TIME_SAVED = new XContentBuilderString("time_saved");
+        static final XContentBuilderString TIME_SAVED_IN_MILLIS = new XContentBuilderString("time_saved_in_millis");
     }
 
 }
@@ -71,6 +71,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.elasticsearch.common.collect.MapBuilder.newMapBuilder;
@@ -136,6 +137,13 @@ public class MapperService extends AbstractIndexComponent  {
 
     private volatile ImmutableSet<String> parentTypes = ImmutableSet.of();
 
+    // shared by all indices of the node so that a mapper service never reuses the version of another one, like the
+    // one of the same index before it was closed and reopened
+    private static final AtomicLong MAPPINGS_VERSION = new AtomicLong();
+
+    // updated on every mapping update, under the mapping write lock
+    private volatile long mappingsVersion = MAPPINGS_VERSION.incrementAndGet();
+
     @Inject
     public MapperService(Index index, @IndexSettings Settings indexSettings, AnalysisService analysisService,
                          SimilarityLookupService similarityLookupService,
@@ -189,6 +197,14 @@ public class MapperService extends AbstractIndexComponent  {
         return this.hasNested;
     }
 
+    /**
+     * A number that changes whenever the mappings of this index are updated, for the caches of data that is derived
+     * from the mappings. Versions are unique across all the mapper services of the node.
+     */
+    public long mappingsVersion() {
+        return this.mappingsVersion;
+    }
+
     /**
      * returns an immutable iterator over current document mappers.
      *
@@ -303,6 +319,7 @@ public class MapperService extends AbstractIndexComponent  {
                     typeListener.beforeCreate(mapper);
                 }
                 mappers = newMapBuilder(mappers).put(mapper.type(), mapper).map();
+                mappingsVersion = MAPPINGS_VERSION.incrementAndGet();
                 if (mapper.parentFieldMapper().active()) {
                     ImmutableSet.Builder<String> parentTypesCopy = ImmutableSet.builder();
                     parentTypesCopy.addAll(parentTypes);
@@ -355,6 +372,7 @@ public class MapperService extends AbstractIndexComponent  {
         }
         this.fullPathObjectMappers = fullPathObjectMappers.build();
         this.fieldTypes = this.fieldTypes.copyAndAddAll(fieldMappers);
+        mappingsVersion = MAPPINGS_VERSION.incrementAndGet();
     }
 
     public DocumentMapper parse(String mappingType, CompressedXContent mappingSource, boolean applyDefault) throws MapperParsingException {
@@ -114,6 +114,7 @@ public class GeoShapeQueryParser implements QueryParser {
                             } else if (type == null) {
                                 throw new QueryParsingException(parseContext, "Type for indexed shape not provided");
                             }
+                            parseContext.markAsNotCacheable();
                             GetRequest getRequest = new GetRequest(index, type, id);
                             getRequest.copyContextAndHeadersFrom(SearchContext.current());
                             shape = fetchService.fetch(getRequest, shapePath);
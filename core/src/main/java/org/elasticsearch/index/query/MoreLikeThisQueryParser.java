@@ -275,6 +275,7 @@ public class MoreLikeThisQueryParser implements QueryParser {
                 }
             }
             // fetching the items with multi-termvectors API
+            parseContext.markAsNotCacheable();
             items.copyContextAndHeadersFrom(SearchContext.current());
             MultiTermVectorsResponse responses = fetchService.fetchResponse(items);
 
@@ -99,6 +99,8 @@ public class QueryParseContext {
 
     private boolean isFilter;
 
+    private boolean cacheable = true;
+
     public QueryParseContext(Index index, IndexQueryParserService indexQueryParser) {
         this.index = index;
         this.indexVersionCreated = Version.indexCreated(indexQueryParser.indexSettings());
@@ -121,6 +123,7 @@ public class QueryParseContext {
         this.namedQueries.clear();
         this.nestedScope = new NestedScope();
         this.isFilter = false;
+        this.cacheable = true;
     }
 
     public Index index() {
@@ -200,7 +203,23 @@ public class QueryParseContext {
         return isFilter;
     }
 
+    /**
+     * Mark the query being parsed as depending on the request that it is parsed for, like its search context or
+     * the current time, or on documents fetched while parsing, so that it is not reused for other requests.
+     */
+    public void markAsNotCacheable() {
+        this.cacheable = false;
+    }
+
+    /**
+     * Whether the query being parsed only depends on its source, the mappings and the types of the request.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
     public void addInnerHits(String name, InnerHitsContext.BaseInnerHits context) {
+        markAsNotCacheable();
         SearchContext sc = SearchContext.current();
         if (sc == null) {
             throw new QueryParsingException(this, "inner_hits unsupported");
@@ -354,6 +373,7 @@ public class QueryParseContext {
     private SearchLookup lookup = null;
 
     public SearchLookup lookup() {
+        markAsNotCacheable();
         SearchContext current = SearchContext.current();
         if (current != null) {
             return current.lookup();
@@ -365,6 +385,7 @@ public class QueryParseContext {
     }
 
     public long nowInMillis() {
+        markAsNotCacheable();
         SearchContext current = SearchContext.current();
         if (current != null) {
             return current.nowInMillis();
@@ -25,10 +25,12 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.indices.cache.query.template.IndicesTemplateQueryCache;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.ScriptContext;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.script.Template;
+import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -47,6 +49,8 @@ public class TemplateQueryParser implements QueryParser {
 
     private final ScriptService scriptService;
 
+    private IndicesTemplateQueryCache templateQueryCache;
+
     private final static Map<String, ScriptService.ScriptType> parametersToTypes = new HashMap<>();
     static {
         parametersToTypes.put("query", ScriptService.ScriptType.INLINE);
@@ -59,6 +63,11 @@ public class TemplateQueryParser implements QueryParser {
         this.scriptService = scriptService;
     }
 
+    @Inject(optional = true)
+    public void setTemplateQueryCache(IndicesTemplateQueryCache templateQueryCache) {
+        this.templateQueryCache = templateQueryCache;
+    }
+
     @Override
     public String[] names() {
         return new String[] { NAME };
@@ -81,10 +90,39 @@ public class TemplateQueryParser implements QueryParser {
 
         BytesReference querySource = (BytesReference) executable.run();
 
+        IndicesTemplateQueryCache.Key key = null;
+        if (templateQueryCache != null) {
+            key = templateQueryCache.key(parseContext, querySource);
+            final Query cached = templateQueryCache.get(key);
+            if (cached != null) {
+                onTemplateQueryCache(true);
+                return cached;
+            }
+            onTemplateQueryCache(false);
+        }
+
         try (XContentParser qSourceParser = XContentFactory.xContent(querySource).createParser(querySource)) {
             final QueryParseContext context = new QueryParseContext(parseContext.index(), parseContext.indexQueryParserService());
             context.reset(qSourceParser);
-            return context.parseInnerQuery();
+            final Query query = context.parseInnerQuery();
+            if (context.isCacheable() == false) {
+                parseContext.markAsNotCacheable();
+            } else if (key != null && query != null) {
+                templateQueryCache.put(key, query);
+            }
+            return query;
+        }
+    }
+
+    private static void onTemplateQueryCache(boolean hit) {
+        final SearchContext searchContext = SearchContext.current();
+        if (searchContext == null || searchContext.indexShard() == null) {
+            return;
+        }
+        if (hit) {
+            searchContext.indexShard().searchService().onTemplateQueryCacheHit();
+        } else {
+            searchContext.indexShard().searchService().onTemplateQueryCacheMiss();
         }
     }
 
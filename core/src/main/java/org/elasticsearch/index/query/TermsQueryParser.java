@@ -38,6 +38,8 @@ import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.core.StringFieldMapper;
+import org.elasticsearch.indices.cache.query.terms.IndicesTermsLookupCache;
 import org.elasticsearch.indices.cache.query.terms.TermsLookup;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -52,6 +54,7 @@ public class TermsQueryParser implements QueryParser {
     public static final String NAME = "terms";
     private static final ParseField MIN_SHOULD_MATCH_FIELD = new ParseField("min_match", "min_should_match").withAllDeprecated("Use [bool] query instead");
     private Client client;
+    private IndicesTermsLookupCache termsLookupCache;
 
     @Deprecated
     public static final String EXECUTION_KEY = "execution";
@@ -70,6 +73,11 @@ public class TermsQueryParser implements QueryParser {
         this.client = client;
     }
 
+    @Inject(optional = true)
+    public void setTermsLookupCache(IndicesTermsLookupCache termsLookupCache) {
+        this.termsLookupCache = termsLookupCache;
+    }
+
     @Override
     public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
         XContentParser parser = parseContext.parser();
@@ -164,21 +172,48 @@ public class TermsQueryParser implements QueryParser {
             fieldName = fieldType.names().indexName();
         }
 
+        IndicesTermsLookupCache.Terms lookupTerms = null;
         if (lookupId != null) {
             final TermsLookup lookup = new TermsLookup(lookupIndex, lookupType, lookupId, lookupRouting, lookupPath, parseContext);
-            GetRequest getRequest = new GetRequest(lookup.getIndex(), lookup.getType(), lookup.getId()).preference("_local").routing(lookup.getRouting());
-            getRequest.copyContextAndHeadersFrom(SearchContext.current());
-            final GetResponse getResponse = client.get(getRequest).actionGet();
-            if (getResponse.isExists()) {
-                List<Object> values = XContentMapValues.extractRawValues(lookup.getPath(), getResponse.getSourceAsMap());
-                terms.addAll(values);
+            parseContext.markAsNotCacheable();
+            if (termsLookupCache != null) {
+                lookupTerms = termsLookupCache.getTerms(lookup, SearchContext.current());
+                if (lookupTerms.isEmpty()) {
+                    return Queries.newMatchNoDocsQuery();
+                }
+            } else {
+                GetRequest getRequest = new GetRequest(lookup.getIndex(), lookup.getType(), lookup.getId()).preference("_local").routing(lookup.getRouting());
+                getRequest.copyContextAndHeadersFrom(SearchContext.current());
+                final GetResponse getResponse = client.get(getRequest).actionGet();
+                if (getResponse.isExists()) {
+                    List<Object> values = XContentMapValues.extractRawValues(lookup.getPath(), getResponse.getSourceAsMap());
+                    terms.addAll(values);
+                }
+            }
+        }
+
+        Query query;
+        if (lookupTerms != null && parseContext.isFilter() && (fieldType == null || fieldType instanceof StringFieldMapper.StringFieldType)) {
+            // cached lookup terms are already converted to what string fields index, and sorted
+            query = new TermsQuery(fieldName, lookupTerms.sortedTerms());
+        } else {
+            if (lookupTerms != null) {
+                terms.addAll(lookupTerms.values());
             }
+            if (terms.isEmpty()) {
+                return Queries.newMatchNoDocsQuery();
+            }
+            query = buildQuery(parseContext, fieldName, fieldType, terms, minShouldMatch);
         }
+        query.setBoost(boost);
 
-        if (terms.isEmpty()) {
-            return Queries.newMatchNoDocsQuery();
+        if (queryName != null) {
+            parseContext.addNamedQuery(queryName, query);
         }
+        return query;
+    }
 
+    private static Query buildQuery(QueryParseContext parseContext, String fieldName, MappedFieldType fieldType, List<Object> terms, String minShouldMatch) {
         Query query;
         if (parseContext.isFilter()) {
             if (fieldType != null) {
@@ -202,11 +237,6 @@ public class TermsQueryParser implements QueryParser {
             Queries.applyMinimumShouldMatch(bq, minShouldMatch);
             query = bq;
         }
-        query.setBoost(boost);
-
-        if (queryName != null) {
-            parseContext.addNamedQuery(queryName, query);
-        }
         return query;
     }
 }
@@ -259,6 +259,7 @@ public abstract class DecayFunctionParser implements ScoreFunctionParser {
                 throw new ElasticsearchParseException("parameter [{}] not supported!", parameterName);
             }
         }
+        parseContext.markAsNotCacheable();
         long origin = SearchContext.current().nowInMillis();
         if (originString != null) {
             origin = dateFieldType.parseToMilliseconds(originString, false, null, null);
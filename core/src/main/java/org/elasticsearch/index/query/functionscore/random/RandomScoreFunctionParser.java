@@ -83,6 +83,8 @@ public class RandomScoreFunctionParser implements ScoreFunctionParser {
             }
         }
 
+        // the function depends on the shard
+        parseContext.markAsNotCacheable();
         final MappedFieldType fieldType = SearchContext.current().mapperService().smartNameFieldType("_uid");
         if (fieldType == null) {
             // mapper could be null if we are on a shard with no docs yet, so this won't actually be used
@@ -55,6 +55,7 @@ public class InnerHitsQueryParserHelper {
         String fieldName = null;
         XContentParser.Token token;
         String innerHitName = null;
+        parserContext.markAsNotCacheable();
         SubSearchContext subSearchContext = new SubSearchContext(SearchContext.current());
         try {
             XContentParser parser = parserContext.parser();
@@ -23,6 +23,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -199,6 +200,9 @@ public class SearchStats implements Streamable, ToXContent {
 
     Stats totalStats;
     long openContexts;
+    long openContextsMemoryInBytes;
+    long templateQueryCacheHitCount;
+    long templateQueryCacheMissCount;
 
     @Nullable
     Map<String, Stats> groupStats;
@@ -207,9 +211,13 @@ public class SearchStats implements Streamable, ToXContent {
         totalStats = new Stats();
     }
 
-    public SearchStats(Stats totalStats, long openContexts, @Nullable Map<String, Stats> groupStats) {
+    public SearchStats(Stats totalStats, long openContexts, long openContextsMemoryInBytes,
+                       long templateQueryCacheHitCount, long templateQueryCacheMissCount, @Nullable Map<String, Stats> groupStats) {
         this.totalStats = totalStats;
         this.openContexts = openContexts;
+        this.openContextsMemoryInBytes = openContextsMemoryInBytes;
+        this.templateQueryCacheHitCount = templateQueryCacheHitCount;
+        this.templateQueryCacheMissCount = templateQueryCacheMissCount;
         this.groupStats = groupStats;
     }
 
@@ -223,6 +231,9 @@ public class SearchStats implements Streamable, ToXContent {
         }
         totalStats.add(searchStats.totalStats);
         openContexts += searchStats.openContexts;
+        openContextsMemoryInBytes += searchStats.openContextsMemoryInBytes;
+        templateQueryCacheHitCount += searchStats.templateQueryCacheHitCount;
+        templateQueryCacheMissCount += searchStats.templateQueryCacheMissCount;
         if (includeTypes && searchStats.groupStats != null && !searchStats.groupStats.isEmpty()) {
             if (groupStats == null) {
                 groupStats = new HashMap<>(searchStats.groupStats.size());
@@ -246,6 +257,31 @@ public class SearchStats implements Streamable, ToXContent {
         return this.openContexts;
     }
 
+    /**
+     * The estimated memory that open search contexts retain, including the segments they keep open.
+     */
+    public ByteSizeValue getOpenContextsMemory() {
+        return new ByteSizeValue(openContextsMemoryInBytes);
+    }
+
+    public long getOpenContextsMemoryInBytes() {
+        return this.openContextsMemoryInBytes;
+    }
+
+    /**
+     * The number of <code>template</code> queries whose parsed query was found in the template query cache.
+     */
+    public long getTemplateQueryCacheHitCount() {
+        return this.templateQueryCacheHitCount;
+    }
+
+    /**
+     * The number of <code>template</code> queries that had to be parsed because their parsed query was not cached.
+     */
+    public long getTemplateQueryCacheMissCount() {
+        return this.templateQueryCacheMissCount;
+    }
+
     @Nullable
     public Map<String, Stats> getGroupStats() {
         return this.groupStats;
@@ -255,6 +291,9 @@ public class SearchStats implements Streamable, ToXContent {
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.SEARCH);
         builder.field(Fields.OPEN_CONTEXTS, openContexts);
+        builder.byteSizeField(Fields.OPEN_CONTEXTS_MEMORY_IN_BYTES, Fields.OPEN_CONTEXTS_MEMORY, openContextsMemoryInBytes);
+        builder.field(Fields.TEMPLATE_QUERY_CACHE_HIT_COUNT, templateQueryCacheHitCount);
+        builder.field(Fields.TEMPLATE_QUERY_CACHE_MISS_COUNT, templateQueryCacheMissCount);
         totalStats.toXContent(builder, params);
         if (groupStats != null && !groupStats.isEmpty()) {
             builder.startObject(Fields.GROUPS);
@@ -272,6 +311,10 @@ public class SearchStats implements Streamable, ToXContent {
     static final class Fields {
         static final XContentBuilderString SEARCH = new XContentBuilderString("search");
         static final XContentBuilderString OPEN_CONTEXTS = new XContentBuilderString("open_contexts");
+        static final XContentBuilderString OPEN_CONTEXTS_MEMORY = new XContentBuilderString("open_contexts_memory");
+        static final XContentBuilderString OPEN_CONTEXTS_MEMORY_IN_BYTES = new XContentBuilderString("open_contexts_memory_in_bytes");
+        static final XContentBuilderString TEMPLATE_QUERY_CACHE_HIT_COUNT = new XContentBuilderString("template_query_cache_hit_count");
+        static final XContentBuilderString TEMPLATE_QUERY_CACHE_MISS_COUNT = new XContentBuilderString("template_query_cache_miss_count");
         static final XContentBuilderString GROUPS = new XContentBuilderString("groups");
         static final XContentBuilderString QUERY_TOTAL = new XContentBuilderString("query_total");
         static final XContentBuilderString QUERY_TIME = new XContentBuilderString("query_time");
@@ -297,6 +340,9 @@ public class SearchStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         totalStats = Stats.readStats(in);
         openContexts = in.readVLong();
+        openContextsMemoryInBytes = in.readVLong();
+        templateQueryCacheHitCount = in.readVLong();
+        templateQueryCacheMissCount = in.readVLong();
         if (in.readBoolean()) {
             int size = in.readVInt();
             groupStats = new HashMap<>(size);
@@ -310,6 +356,9 @@ public class SearchStats implements Streamable, ToXContent {
     public void writeTo(StreamOutput out) throws IOException {
         totalStats.writeTo(out);
         out.writeVLong(openContexts);
+        out.writeVLong(openContextsMemoryInBytes);
+        out.writeVLong(templateQueryCacheHitCount);
+        out.writeVLong(templateQueryCacheMissCount);
         if (groupStats == null || groupStats.isEmpty()) {
             out.writeBoolean(false);
         } else {
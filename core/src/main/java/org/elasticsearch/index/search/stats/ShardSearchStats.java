@@ -38,6 +38,9 @@ public final class ShardSearchStats {
     private final SearchSlowLog slowLogSearchService;
     private final StatsHolder totalStats = new StatsHolder();
     private final CounterMetric openContexts = new CounterMetric();
+    private final CounterMetric openContextsMemory = new CounterMetric();
+    private final CounterMetric templateQueryCacheHits = new CounterMetric();
+    private final CounterMetric templateQueryCacheMisses = new CounterMetric();
     private volatile Map<String, StatsHolder> groupsStats = ImmutableMap.of();
 
     public ShardSearchStats(Settings indexSettings) {
@@ -66,7 +69,8 @@ public final class ShardSearchStats {
                 }
             }
         }
-        return new SearchStats(total, openContexts.count(), groupsSt);
+        return new SearchStats(total, openContexts.count(), openContextsMemory.count(),
+                templateQueryCacheHits.count(), templateQueryCacheMisses.count(), groupsSt);
     }
 
     public void onPreQueryPhase(SearchContext searchContext) {
@@ -169,6 +173,18 @@ public final class ShardSearchStats {
         openContexts.dec();
     }
 
+    public void onContextMemoryChanged(long deltaBytes) {
+        openContextsMemory.inc(deltaBytes);
+    }
+
+    public void onTemplateQueryCacheHit() {
+        templateQueryCacheHits.inc();
+    }
+
+    public void onTemplateQueryCacheMiss() {
+        templateQueryCacheMisses.inc();
+    }
+
     public void onNewScrollContext(SearchContext context) {
         totalStats.scrollCurrent.inc();
     }
@@ -61,11 +61,23 @@ public class HierarchyCircuitBreakerService extends CircuitBreakerService {
     public static final String REQUEST_CIRCUIT_BREAKER_TYPE_SETTING = "indices.breaker.request.type";
     public static final String DEFAULT_REQUEST_BREAKER_LIMIT = "40%";
 
+    public static final String SEARCH_CONTEXTS_CIRCUIT_BREAKER_LIMIT_SETTING = "indices.breaker.search_contexts.limit";
+    public static final String SEARCH_CONTEXTS_CIRCUIT_BREAKER_OVERHEAD_SETTING = "indices.breaker.search_contexts.overhead";
+    public static final String SEARCH_CONTEXTS_CIRCUIT_BREAKER_TYPE_SETTING = "indices.breaker.search_contexts.type";
+    public static final String DEFAULT_SEARCH_CONTEXTS_BREAKER_LIMIT = "10%";
+
+    public static final String TERMS_LOOKUP_CIRCUIT_BREAKER_LIMIT_SETTING = "indices.breaker.terms_lookup.limit";
+    public static final String TERMS_LOOKUP_CIRCUIT_BREAKER_OVERHEAD_SETTING = "indices.breaker.terms_lookup.overhead";
+    public static final String TERMS_LOOKUP_CIRCUIT_BREAKER_TYPE_SETTING = "indices.breaker.terms_lookup.type";
+    public static final String DEFAULT_TERMS_LOOKUP_BREAKER_LIMIT = "5%";
+
     public static final String DEFAULT_BREAKER_TYPE = "memory";
 
     private volatile BreakerSettings parentSettings;
     private volatile BreakerSettings fielddataSettings;
     private volatile BreakerSettings requestSettings;
+    private volatile BreakerSettings searchContextsSettings;
+    private volatile BreakerSettings termsLookupSettings;
 
     // Tripped count for when redistribution was attempted but wasn't successful
     private final AtomicLong parentTripCount = new AtomicLong(0);
@@ -104,6 +116,18 @@ public class HierarchyCircuitBreakerService extends CircuitBreakerService {
                 CircuitBreaker.Type.parseValue(settings.get(REQUEST_CIRCUIT_BREAKER_TYPE_SETTING, DEFAULT_BREAKER_TYPE))
         );
 
+        this.searchContextsSettings = new BreakerSettings(CircuitBreaker.SEARCH_CONTEXTS,
+                settings.getAsMemory(SEARCH_CONTEXTS_CIRCUIT_BREAKER_LIMIT_SETTING, DEFAULT_SEARCH_CONTEXTS_BREAKER_LIMIT).bytes(),
+                settings.getAsDouble(SEARCH_CONTEXTS_CIRCUIT_BREAKER_OVERHEAD_SETTING, 1.0),
+                CircuitBreaker.Type.parseValue(settings.get(SEARCH_CONTEXTS_CIRCUIT_BREAKER_TYPE_SETTING, DEFAULT_BREAKER_TYPE))
+        );
+
+        this.termsLookupSettings = new BreakerSettings(CircuitBreaker.TERMS_LOOKUP,
+                settings.getAsMemory(TERMS_LOOKUP_CIRCUIT_BREAKER_LIMIT_SETTING, DEFAULT_TERMS_LOOKUP_BREAKER_LIMIT).bytes(),
+                settings.getAsDouble(TERMS_LOOKUP_CIRCUIT_BREAKER_OVERHEAD_SETTING, 1.0),
+                CircuitBreaker.Type.parseValue(settings.get(TERMS_LOOKUP_CIRCUIT_BREAKER_TYPE_SETTING, DEFAULT_BREAKER_TYPE))
+        );
+
         this.parentSettings = new BreakerSettings(CircuitBreaker.PARENT,
                 settings.getAsMemory(TOTAL_CIRCUIT_BREAKER_LIMIT_SETTING, DEFAULT_TOTAL_CIRCUIT_BREAKER_LIMIT).bytes(), 1.0, CircuitBreaker.Type.PARENT);
         if (logger.isTraceEnabled()) {
@@ -112,6 +136,8 @@ public class HierarchyCircuitBreakerService extends CircuitBreakerService {
 
         registerBreaker(this.requestSettings);
         registerBreaker(this.fielddataSettings);
+        registerBreaker(this.searchContextsSettings);
+        registerBreaker(this.termsLookupSettings);
 
         nodeSettingsService.addListener(new ApplySettings());
     }
@@ -149,6 +175,34 @@ public class HierarchyCircuitBreakerService extends CircuitBreakerService {
                 logger.info("Updated breaker settings request: {}", newRequestSettings);
             }
 
+            // Search contexts settings
+            ByteSizeValue newSearchContextsMax = settings.getAsMemory(SEARCH_CONTEXTS_CIRCUIT_BREAKER_LIMIT_SETTING, null);
+            Double newSearchContextsOverhead = settings.getAsDouble(SEARCH_CONTEXTS_CIRCUIT_BREAKER_OVERHEAD_SETTING, null);
+            if (newSearchContextsMax != null || newSearchContextsOverhead != null) {
+                long newSearchContextsLimitBytes = newSearchContextsMax == null ? HierarchyCircuitBreakerService.this.searchContextsSettings.getLimit() : newSearchContextsMax.bytes();
+                newSearchContextsOverhead = newSearchContextsOverhead == null ? HierarchyCircuitBreakerService.this.searchContextsSettings.getOverhead() : newSearchContextsOverhead;
+
+                BreakerSettings newSearchContextsSettings = new BreakerSettings(CircuitBreaker.SEARCH_CONTEXTS, newSearchContextsLimitBytes, newSearchContextsOverhead,
+                        HierarchyCircuitBreakerService.this.searchContextsSettings.getType());
+                registerBreaker(newSearchContextsSettings);
+                HierarchyCircuitBreakerService.this.searchContextsSettings = newSearchContextsSettings;
+                logger.info("Updated breaker settings search_contexts: {}", newSearchContextsSettings);
+            }
+
+            // Terms lookup settings
+            ByteSizeValue newTermsLookupMax = settings.getAsMemory(TERMS_LOOKUP_CIRCUIT_BREAKER_LIMIT_SETTING, null);
+            Double newTermsLookupOverhead = settings.getAsDouble(TERMS_LOOKUP_CIRCUIT_BREAKER_OVERHEAD_SETTING, null);
+            if (newTermsLookupMax != null || newTermsLookupOverhead != null) {
+                long newTermsLookupLimitBytes = newTermsLookupMax == null ? HierarchyCircuitBreakerService.this.termsLookupSettings.getLimit() : newTermsLookupMax.bytes();
+                newTermsLookupOverhead = newTermsLookupOverhead == null ? HierarchyCircuitBreakerService.this.termsLookupSettings.getOverhead() : newTermsLookupOverhead;
+
+                BreakerSettings newTermsLookupSettings = new BreakerSettings(CircuitBreaker.TERMS_LOOKUP, newTermsLookupLimitBytes, newTermsLookupOverhead,
+                        HierarchyCircuitBreakerService.this.termsLookupSettings.getType());
+                registerBreaker(newTermsLookupSettings);
+                HierarchyCircuitBreakerService.this.termsLookupSettings = newTermsLookupSettings;
+                logger.info("Updated breaker settings terms_lookup: {}", newTermsLookupSettings);
+            }
+
             // Parent settings
             long oldParentMax = HierarchyCircuitBreakerService.this.parentSettings.getLimit();
             ByteSizeValue newParentMax = settings.getAsMemory(TOTAL_CIRCUIT_BREAKER_LIMIT_SETTING, null);
@@ -19,6 +19,8 @@
 
 package org.elasticsearch.indices.cache.query;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Explanation;
@@ -45,6 +47,7 @@ import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class IndicesQueryCache extends AbstractComponent implements QueryCache, Closeable {
 
@@ -52,8 +55,13 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
     @Deprecated
     public static final String DEPRECATED_INDICES_CACHE_QUERY_SIZE = "indices.cache.filter.size";
     public static final String INDICES_CACHE_QUERY_COUNT = "indices.queries.cache.count";
+    public static final String INDICES_CACHE_QUERY_MIN_NANOS_PER_DOC = "indices.queries.cache.min_nanos_per_doc";
 
     private final LRUQueryCache cache;
+    // measured cost of building the doc id sets of queries, kept for more queries than the cache
+    // holds so that queries that are not worth caching are remembered
+    private final Cache<Query, QueryCost> queryCosts;
+    private final long minNanosPerDoc;
     private final ShardCoreKeyMap shardKeyMap = new ShardCoreKeyMap();
     private final Map<ShardId, Stats> shardStats = new ConcurrentHashMap<>();
     private volatile long sharedRamBytesUsed;
@@ -79,8 +87,10 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
         }
         final ByteSizeValue size = MemorySizeValue.parseBytesSizeValueOrHeapRatio(sizeString, INDICES_CACHE_QUERY_SIZE);
         final int count = settings.getAsInt(INDICES_CACHE_QUERY_COUNT, 1000);
-        logger.debug("using [node] query cache with size [{}], actual_size [{}], max filter count [{}]",
-                sizeString, size, count);
+        minNanosPerDoc = settings.getAsLong(INDICES_CACHE_QUERY_MIN_NANOS_PER_DOC, 20L);
+        logger.debug("using [node] query cache with size [{}], actual_size [{}], max filter count [{}], min nanos per doc [{}]",
+                sizeString, size, count, minNanosPerDoc);
+        queryCosts = CacheBuilder.newBuilder().maximumSize(10L * count).build();
         cache = new LRUQueryCache(count, size.bytes()) {
 
             private Stats getStats(Object coreKey) {
@@ -207,7 +217,7 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
                 ? 1d / stats.size()
                 : shardStats.getCacheSize() / totalSize;
         final long additionalRamBytesUsed = Math.round(weight * sharedRamBytesUsed);
-        shardStats.add(new QueryCacheStats(additionalRamBytesUsed, 0, 0, 0, 0));
+        shardStats.add(new QueryCacheStats(additionalRamBytesUsed, 0, 0, 0, 0, 0));
         return shardStats;
     }
 
@@ -216,19 +226,79 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
         while (weight instanceof CachingWeightWrapper) {
             weight = ((CachingWeightWrapper) weight).in;
         }
-        final Weight in = cache.doCache(weight, policy);
+        final CostAwareCachingPolicy costAwarePolicy = new CostAwareCachingPolicy(policy);
+        final Weight in = cache.doCache(weight, costAwarePolicy);
         // We wrap the weight to track the readers it sees and map them with
         // the shards they belong to
-        return new CachingWeightWrapper(in);
+        return new CachingWeightWrapper(in, costAwarePolicy);
+    }
+
+    /**
+     * The cost of building the doc id sets of a query, summed over the segments it was built on.
+     */
+    static final class QueryCost {
+
+        private long buildNanos;
+        private long cardinality;
+
+        synchronized void onBuild(long nanos, long cardinality) {
+            this.buildNanos += nanos;
+            this.cardinality += cardinality;
+        }
+
+        /** The average time it took to build the doc id sets per matching document. */
+        synchronized double nanosPerDoc() {
+            return (double) buildNanos / Math.max(1, cardinality);
+        }
+    }
+
+    /**
+     * Wraps the caching policy of the shard in order to only admit queries whose doc id sets were
+     * expensive enough to build, measured per matching document, so that cheap queries, whose
+     * doc id sets are almost as fast to rebuild as to read from the cache, do not evict
+     * expensive ones. Queries that have not been measured yet are admitted as usual.
+     * A new instance is created for every weight and remembers which segment it was last asked
+     * about, which tells the weight wrapper whether the cache hit, built or skipped a doc id set.
+     */
+    private class CostAwareCachingPolicy implements QueryCachingPolicy {
+
+        private final QueryCachingPolicy in;
+        private LeafReaderContext consulted;
+        private boolean admitted;
+
+        CostAwareCachingPolicy(QueryCachingPolicy in) {
+            this.in = in;
+        }
+
+        @Override
+        public void onUse(Query query) {
+            in.onUse(query);
+        }
+
+        @Override
+        public boolean shouldCache(Query query, LeafReaderContext context) throws IOException {
+            boolean shouldCache = in.shouldCache(query, context);
+            if (shouldCache && in != QueryCachingPolicy.ALWAYS_CACHE) {
+                final QueryCost cost = queryCosts.getIfPresent(query);
+                if (cost != null && cost.nanosPerDoc() < minNanosPerDoc) {
+                    shouldCache = false;
+                }
+            }
+            consulted = context;
+            admitted = shouldCache;
+            return shouldCache;
+        }
     }
 
     private class CachingWeightWrapper extends Weight {
 
         private final Weight in;
+        private final CostAwareCachingPolicy policy;
 
-        protected CachingWeightWrapper(Weight in) {
+        protected CachingWeightWrapper(Weight in, CostAwareCachingPolicy policy) {
             super(in.getQuery());
             this.in = in;
+            this.policy = policy;
         }
 
         @Override
@@ -255,7 +325,40 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
         @Override
         public Scorer scorer(LeafReaderContext context, Bits acceptDocs) throws IOException {
             shardKeyMap.add(context.reader());
-            return in.scorer(context, acceptDocs);
+            policy.consulted = null;
+            final long start = System.nanoTime();
+            final Scorer scorer = in.scorer(context, acceptDocs);
+            final long took = System.nanoTime() - start;
+            if (policy.consulted != context) {
+                // the policy is only consulted on cache misses
+                onHit(context, scorer == null ? 0 : scorer.cost());
+            } else if (policy.admitted) {
+                // the doc id set has just been built, which is included in the time it took to create the scorer
+                onBuild(scorer == null ? 0 : scorer.cost(), took);
+            }
+            return scorer;
+        }
+
+        private void onBuild(long cardinality, long took) {
+            final Query query = getQuery();
+            QueryCost cost = queryCosts.getIfPresent(query);
+            if (cost == null) {
+                final QueryCost newCost = new QueryCost();
+                cost = queryCosts.asMap().putIfAbsent(query, newCost);
+                if (cost == null) {
+                    cost = newCost;
+                }
+            }
+            cost.onBuild(took, cardinality);
+        }
+
+        private void onHit(LeafReaderContext context, long cardinality) {
+            final QueryCost cost = queryCosts.getIfPresent(getQuery());
+            final ShardId shardId = shardKeyMap.getShardId(context.reader().getCoreCacheKey());
+            final Stats stats = shardId == null ? null : shardStats.get(shardId);
+            if (cost != null && stats != null) {
+                stats.timeSavedNanos.addAndGet(Math.round(cost.nanosPerDoc() * cardinality));
+            }
         }
     }
 
@@ -290,9 +393,11 @@ public class IndicesQueryCache extends AbstractComponent implements QueryCache,
         volatile long missCount;
         volatile long cacheCount;
         volatile long cacheSize;
+        // updated outside of the lock of the cache
+        final AtomicLong timeSavedNanos = new AtomicLong();
 
         QueryCacheStats toQueryCacheStats() {
-            return new QueryCacheStats(ramBytesUsed, hitCount, missCount, cacheCount, cacheSize);
+            return new QueryCacheStats(ramBytesUsed, hitCount, missCount, cacheCount, cacheSize, timeSavedNanos.get());
         }
     }
 
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query.template;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.indices.IndicesLifecycle;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * A node level cache of the queries that <code>template</code> queries render to, so that templates that keep
+ * being rendered with the same parameters only need to be rendered, not parsed. Entries are keyed by the index,
+ * the version of its mappings, the types of the request and the rendered query, which is what the parsed query
+ * depends on, as long as its parsing did not mark it as {@link QueryParseContext#isCacheable() not cacheable}.
+ * The entries of an index are dropped when the index is closed or deleted on this node.
+ * <p/>
+ * The size of the cache is approximated by the size of the rendered queries.
+ */
+public class IndicesTemplateQueryCache extends AbstractComponent {
+
+    public static final String INDICES_TEMPLATE_QUERY_CACHE_SIZE = "indices.template_queries.cache.size";
+
+    // fixed overhead of an entry, on top of its rendered query
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<Key, Query> cache;
+
+    @Inject
+    public IndicesTemplateQueryCache(Settings settings, IndicesLifecycle indicesLifecycle) {
+        super(settings);
+        final String size = settings.get(INDICES_TEMPLATE_QUERY_CACHE_SIZE, "1%");
+        final long sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(size, INDICES_TEMPLATE_QUERY_CACHE_SIZE).bytes();
+        logger.debug("using size [{}] [{}]", size, new ByteSizeValue(sizeInBytes));
+        this.cache = CacheBuilder.newBuilder().maximumWeight(sizeInBytes).weigher(new KeyWeigher()).build();
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void afterIndexClosed(Index index, @IndexSettings Settings indexSettings) {
+                invalidate(index);
+            }
+
+            @Override
+            public void afterIndexDeleted(Index index, @IndexSettings Settings indexSettings) {
+                invalidate(index);
+            }
+        });
+    }
+
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Create the key of the query that <code>source</code> parses to in the given context.
+     */
+    public Key key(QueryParseContext parseContext, BytesReference source) {
+        final String indexUUID = parseContext.indexQueryParserService().indexSettings().get(IndexMetaData.SETTING_INDEX_UUID, IndexMetaData.INDEX_UUID_NA_VALUE);
+        return new Key(parseContext.index().name(), indexUUID, parseContext.mapperService().mappingsVersion(),
+                QueryParseContext.getTypes(), source.toBytesArray());
+    }
+
+    /**
+     * Return a copy of the cached query for the given key, or <code>null</code> if it is not cached.
+     */
+    @Nullable
+    public Query get(Key key) {
+        final Query query = cache.getIfPresent(key);
+        // callers may change the boost of the returned query
+        return query == null ? null : query.clone();
+    }
+
+    /**
+     * Cache a copy of the query that was parsed for the given key.
+     */
+    public void put(Key key, Query query) {
+        cache.put(key, query.clone());
+    }
+
+    /**
+     * Drop the cached queries of the given index.
+     */
+    void invalidate(Index index) {
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext(); ) {
+            if (it.next().index.equals(index.name())) {
+                it.remove();
+            }
+        }
+    }
+
+    long count() {
+        return cache.size();
+    }
+
+    private static class KeyWeigher implements Weigher<Key, Query> {
+
+        @Override
+        public int weigh(Key key, Query query) {
+            return ENTRY_OVERHEAD + key.source.length();
+        }
+    }
+
+    public static final class Key {
+
+        private final String index;
+        private final String indexUUID;
+        private final long mappingsVersion;
+        @Nullable
+        private final String[] types;
+        private final BytesReference source;
+        private final int hashCode;
+
+        Key(String index, String indexUUID, long mappingsVersion, @Nullable String[] types, BytesReference source) {
+            this.index = index;
+            this.indexUUID = indexUUID;
+            this.mappingsVersion = mappingsVersion;
+            this.types = types;
+            this.source = source;
+            this.hashCode = Objects.hash(index, indexUUID, mappingsVersion, Arrays.hashCode(types), source);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mappingsVersion == key.mappingsVersion && index.equals(key.index) && indexUUID.equals(key.indexUUID)
+                    && Arrays.equals(types, key.types) && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
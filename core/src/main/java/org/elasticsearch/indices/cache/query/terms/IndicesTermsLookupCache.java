@@ -0,0 +1,361 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query.terms;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.HasContextAndHeaders;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.BytesRefs;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A node level cache of the terms that terms lookups fetch from their lookup document, so that queries which keep
+ * looking up the same document do not need to fetch and parse its source every time. Entries are keyed by the
+ * coordinates of the lookup and remember the version of the document they were extracted from: a lookup first
+ * fetches the current version of the document, which does not need to load its source, and only fetches the
+ * source again if the version changed. Since versions start over when an index is deleted and created again, cached
+ * terms also remember the uuid of the concrete index they were read from, and the entries of an index are dropped
+ * when it is deleted.
+ * <p/>
+ * Cached terms are accounted against the {@link CircuitBreaker#TERMS_LOOKUP} breaker. If caching the terms of
+ * a lookup would trip the breaker, they are used for the current query but not cached.
+ */
+public class IndicesTermsLookupCache extends AbstractComponent implements RemovalListener<IndicesTermsLookupCache.Key, IndicesTermsLookupCache.Terms>, ClusterStateListener {
+
+    public static final String INDICES_TERMS_LOOKUP_CACHE_SIZE = "indices.terms_lookup.cache.size";
+    public static final String INDICES_TERMS_LOOKUP_CACHE_EXPIRE = "indices.terms_lookup.cache.expire";
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final CircuitBreakerService circuitBreakerService;
+    private final Cache<Key, Terms> cache;
+
+    @Inject
+    public IndicesTermsLookupCache(Settings settings, Client client, ClusterService clusterService, CircuitBreakerService circuitBreakerService) {
+        super(settings);
+        this.client = client;
+        this.clusterService = clusterService;
+        this.circuitBreakerService = circuitBreakerService;
+        final String size = settings.get(INDICES_TERMS_LOOKUP_CACHE_SIZE, "1%");
+        final long sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(size, INDICES_TERMS_LOOKUP_CACHE_SIZE).bytes();
+        final TimeValue expire = settings.getAsTime(INDICES_TERMS_LOOKUP_CACHE_EXPIRE, null);
+        CacheBuilder<Key, Terms> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumWeight(sizeInBytes).weigher(new TermsWeigher()).removalListener(this);
+        if (expire != null && expire.millis() > 0) {
+            cacheBuilder.expireAfterAccess(expire.millis(), TimeUnit.MILLISECONDS);
+        }
+        logger.debug("using size [{}] [{}], expire [{}]", size, new ByteSizeValue(sizeInBytes), expire);
+        this.cache = cacheBuilder.build();
+        clusterService.add(this);
+    }
+
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Return the terms of the given lookup, from the cache if the lookup document did not change since they were
+     * cached. <code>context</code> is the request whose context and headers the get requests should copy.
+     */
+    public Terms getTerms(TermsLookup lookup, @Nullable HasContextAndHeaders context) {
+        final Key key = new Key(lookup);
+        final Terms cached = cache.getIfPresent(key);
+        if (cached != null) {
+            final GetRequest versionRequest = getRequest(lookup, context).fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE);
+            final GetResponse versionResponse = client.get(versionRequest).actionGet();
+            if (versionResponse.isExists() == false) {
+                cache.invalidate(key);
+                return Terms.EMPTY;
+            }
+            // the uuid is read after the document so that an index that is created again in between is detected
+            if (versionResponse.getVersion() == cached.version()
+                    && cached.indexUUID().equals(indexUUID(clusterService.state(), versionResponse.getIndex()))) {
+                return cached;
+            }
+        }
+
+        // the uuid is read before the document so that an index that is created again in between is not mistaken
+        // for the one the terms were read from
+        final ClusterState state = clusterService.state();
+        final GetResponse getResponse = client.get(getRequest(lookup, context)).actionGet();
+        if (getResponse.isExists() == false) {
+            cache.invalidate(key);
+            return Terms.EMPTY;
+        }
+        final List<Object> values = XContentMapValues.extractRawValues(lookup.getPath(), getResponse.getSourceAsMap());
+        final String indexUUID = indexUUID(state, getResponse.getIndex());
+        final Terms terms = Terms.of(getResponse.getIndex(), indexUUID, getResponse.getVersion(), values);
+        if (indexUUID == null) {
+            // the index did not exist yet when the lookup started
+            cache.invalidate(key);
+            return terms;
+        }
+        final CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.TERMS_LOOKUP);
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(terms.ramBytesUsed(), "terms_lookup [" + lookup + "]");
+        } catch (CircuitBreakingException e) {
+            logger.debug("not caching the terms of lookup [{}]: {}", lookup, e.getMessage());
+            cache.invalidate(key);
+            return terms;
+        }
+        // the removal listener releases the replaced entry, if any
+        cache.put(key, terms);
+        return terms;
+    }
+
+    @Nullable
+    private static String indexUUID(ClusterState state, String index) {
+        final IndexMetaData indexMetaData = state.metaData().index(index);
+        return indexMetaData == null ? null : indexMetaData.getIndexUUID();
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        final List<String> indicesDeleted = event.indicesDeleted();
+        if (indicesDeleted.isEmpty()) {
+            return;
+        }
+        for (Iterator<Map.Entry<Key, Terms>> it = cache.asMap().entrySet().iterator(); it.hasNext(); ) {
+            if (indicesDeleted.contains(it.next().getValue().index())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static GetRequest getRequest(TermsLookup lookup, @Nullable HasContextAndHeaders context) {
+        GetRequest getRequest = new GetRequest(lookup.getIndex(), lookup.getType(), lookup.getId()).preference("_local").routing(lookup.getRouting());
+        getRequest.copyContextAndHeadersFrom(context);
+        return getRequest;
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, Terms> notification) {
+        final Terms terms = notification.getValue();
+        if (terms != null) {
+            circuitBreakerService.getBreaker(CircuitBreaker.TERMS_LOOKUP).addWithoutBreaking(-terms.ramBytesUsed());
+        }
+    }
+
+    private static class TermsWeigher implements Weigher<Key, Terms> {
+
+        @Override
+        public int weigh(Key key, Terms value) {
+            return (int) Math.min(Integer.MAX_VALUE, value.ramBytesUsed());
+        }
+    }
+
+    static final class Key {
+
+        final String index;
+        final String type;
+        final String id;
+        final String routing;
+        final String path;
+
+        Key(TermsLookup lookup) {
+            this.index = lookup.getIndex();
+            this.type = lookup.getType();
+            this.id = lookup.getId();
+            this.routing = lookup.getRouting();
+            this.path = lookup.getPath();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return index.equals(key.index) && type.equals(key.type) && id.equals(key.id)
+                    && Objects.equals(routing, key.routing) && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, type, id, routing, path);
+        }
+    }
+
+    /**
+     * The terms of a lookup document. They are stored as a sorted array of unique {@link BytesRef}s, which is what
+     * string fields index and what {@link org.apache.lucene.queries.TermsQuery} consumes.
+     */
+    public static final class Terms implements Accountable {
+
+        static final Terms EMPTY = new Terms(null, null, -1, new BytesRef[0], null);
+
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Terms.class);
+        private static final long BYTES_REF_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+        private static final long STRING_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(String.class);
+
+        // the concrete index the terms were read from and its uuid
+        private final String index;
+        private final String indexUUID;
+        private final long version;
+        private final BytesRef[] sortedTerms;
+        // the raw values, only kept when they are not all strings since other field types need them to build their terms
+        @Nullable
+        private final List<Object> values;
+        private final long ramBytesUsed;
+
+        private Terms(String index, String indexUUID, long version, BytesRef[] sortedTerms, @Nullable List<Object> values) {
+            this.index = index;
+            this.indexUUID = indexUUID;
+            this.version = version;
+            this.sortedTerms = sortedTerms;
+            this.values = values;
+            long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * sortedTerms.length);
+            for (BytesRef term : sortedTerms) {
+                ramBytesUsed += BYTES_REF_RAM_BYTES_USED + RamUsageEstimator.sizeOf(term.bytes);
+            }
+            if (values != null) {
+                for (Object value : values) {
+                    ramBytesUsed += RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+                    if (value instanceof String) {
+                        ramBytesUsed += STRING_RAM_BYTES_USED + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                                + (long) RamUsageEstimator.NUM_BYTES_CHAR * ((String) value).length());
+                    } else {
+                        // boxed numbers and booleans
+                        ramBytesUsed += RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG);
+                    }
+                }
+            }
+            this.ramBytesUsed = ramBytesUsed;
+        }
+
+        static Terms of(String index, String indexUUID, long version, List<Object> values) {
+            BytesRef[] terms = new BytesRef[values.size()];
+            boolean allStrings = true;
+            for (int i = 0; i < terms.length; i++) {
+                final Object value = values.get(i);
+                allStrings &= value instanceof String;
+                // copy to trim the arrays that UTF-8 conversion sizes for the worst case
+                terms[i] = BytesRef.deepCopyOf(BytesRefs.toBytesRef(value));
+            }
+            ArrayUtil.timSort(terms);
+            int uniqueCount = 0;
+            for (int i = 0; i < terms.length; i++) {
+                if (uniqueCount == 0 || terms[i].equals(terms[uniqueCount - 1]) == false) {
+                    terms[uniqueCount++] = terms[i];
+                }
+            }
+            if (uniqueCount < terms.length) {
+                terms = Arrays.copyOf(terms, uniqueCount);
+            }
+            return new Terms(index, indexUUID, version, terms, allStrings ? null : Collections.unmodifiableList(values));
+        }
+
+        String index() {
+            return index;
+        }
+
+        String indexUUID() {
+            return indexUUID;
+        }
+
+        long version() {
+            return version;
+        }
+
+        public boolean isEmpty() {
+            return sortedTerms.length == 0;
+        }
+
+        /**
+         * The unique terms, as {@link BytesRefs#toBytesRef(Object)} converts the values of the lookup document, in
+         * sorted order. Callers must not modify the returned array.
+         */
+        public BytesRef[] sortedTerms() {
+            return sortedTerms;
+        }
+
+        /**
+         * The values of the lookup document, for fields whose terms are not the bytes of the values. When all
+         * values were strings, these are the unique values in sorted order.
+         */
+        public List<Object> values() {
+            if (values != null) {
+                return values;
+            }
+            return new AbstractList<Object>() {
+                @Override
+                public Object get(int index) {
+                    return sortedTerms[index].utf8ToString();
+                }
+
+                @Override
+                public int size() {
+                    return sortedTerms.length;
+                }
+            };
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return ramBytesUsed;
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -63,6 +63,8 @@ import org.elasticsearch.indices.IndicesModule;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.breaker.CircuitBreakerModule;
 import org.elasticsearch.indices.cache.query.IndicesQueryCache;
+import org.elasticsearch.indices.cache.query.template.IndicesTemplateQueryCache;
+import org.elasticsearch.indices.cache.query.terms.IndicesTermsLookupCache;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
 import org.elasticsearch.indices.memory.IndexingMemoryController;
@@ -85,6 +87,8 @@ import org.elasticsearch.script.ScriptModule;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.SearchModule;
 import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.bucket.significant.BackgroundFrequencyCache;
+import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.snapshots.SnapshotsService;
 import org.elasticsearch.snapshots.SnapshotShardsService;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -251,6 +255,7 @@ public class Node implements Releasable {
         injector.getInstance(ClusterService.class).start();
         injector.getInstance(RoutingService.class).start();
         injector.getInstance(SearchService.class).start();
+        injector.getInstance(SearchPhaseController.class).start();
         injector.getInstance(MonitorService.class).start();
         injector.getInstance(RestController.class).start();
 
@@ -300,6 +305,7 @@ public class Node implements Releasable {
         injector.getInstance(MonitorService.class).stop();
         injector.getInstance(GatewayService.class).stop();
         injector.getInstance(SearchService.class).stop();
+        injector.getInstance(SearchPhaseController.class).stop();
         injector.getInstance(RestController.class).stop();
         injector.getInstance(TransportService.class).stop();
 
@@ -349,6 +355,9 @@ public class Node implements Releasable {
         injector.getInstance(IndicesService.class).close();
         // close filter/fielddata caches after indices
         injector.getInstance(IndicesQueryCache.class).close();
+        injector.getInstance(IndicesTermsLookupCache.class).close();
+        injector.getInstance(BackgroundFrequencyCache.class).close();
+        injector.getInstance(IndicesTemplateQueryCache.class).close();
         injector.getInstance(IndicesFieldDataCache.class).close();
         injector.getInstance(IndicesStore.class).close();
         stopWatch.stop().start("routing");
@@ -363,6 +372,7 @@ public class Node implements Releasable {
         injector.getInstance(GatewayService.class).close();
         stopWatch.stop().start("search");
         injector.getInstance(SearchService.class).close();
+        injector.getInstance(SearchPhaseController.class).close();
         stopWatch.stop().start("rest");
         injector.getInstance(RestController.class).close();
         stopWatch.stop().start("transport");
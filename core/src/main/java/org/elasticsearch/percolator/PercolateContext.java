@@ -70,6 +70,7 @@ import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.lookup.LeafSearchLookup;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
@@ -478,6 +479,26 @@ public class PercolateContext extends SearchContext {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Object[] searchAfter() {
+        return null;
+    }
+
+    @Override
+    public void searchAfter(Object[] sortValues) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Query sliceFilter() {
+        return null;
+    }
+
+    @Override
+    public void sliceFilter(Query sliceFilter) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public SearchContext minimumScore(float minimumScore) {
         throw new UnsupportedOperationException();
@@ -510,6 +531,16 @@ public class PercolateContext extends SearchContext {
         return trackScores;
     }
 
+    @Override
+    public boolean trackTotalHits() {
+        return true;
+    }
+
+    @Override
+    public SearchContext trackTotalHits(boolean trackTotalHits) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public SearchContext parsedPostFilter(ParsedQuery postFilter) {
         throw new UnsupportedOperationException();
@@ -572,6 +603,16 @@ public class PercolateContext extends SearchContext {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Profiler profiler() {
+        return null;
+    }
+
+    @Override
+    public void profile(boolean profile) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<String> groupStats() {
         throw new UnsupportedOperationException();
@@ -0,0 +1,181 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.query.QuerySearchResult;
+
+import java.util.Set;
+
+/**
+ * The memory that an open {@link SearchContext} retains between the requests that use it. It is made of the state of
+ * the context itself (the doc ids to load, the top docs of the last query phase, ...) and of the heap of the segments
+ * that the context keeps open although the shard does not use them anymore, typically because they were merged away.
+ * Both parts are estimated separately since finding out which segments are pinned requires to look at the reader that
+ * the shard currently uses.
+ */
+final class SearchContextMemory {
+
+    /** Rough size of a context and of the objects that it always holds on to. */
+    static final long CONTEXT_SHALLOW_BYTES = 1024;
+
+    private static final long SCORE_DOC_SHALLOW_BYTES = RamUsageEstimator.shallowSizeOfInstance(ScoreDoc.class);
+    private static final long FIELD_DOC_SHALLOW_BYTES = RamUsageEstimator.shallowSizeOfInstance(FieldDoc.class);
+    private static final long BYTES_REF_SHALLOW_BYTES = RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+    private static final long BOXED_VALUE_BYTES = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG);
+
+    private long retainedBytes;
+    private long pinnedBytes;
+    private long accountedBytes;
+    private boolean released;
+
+    /**
+     * Create the memory of a new context, whose <code>retainedBytes</code> have already been accounted for.
+     */
+    SearchContextMemory(long retainedBytes) {
+        this.retainedBytes = retainedBytes;
+        this.accountedBytes = retainedBytes;
+    }
+
+    /**
+     * Set the memory that the state of the context retains and return by how many bytes the accounted memory changed.
+     */
+    synchronized long retained(long bytes) {
+        retainedBytes = bytes;
+        return update();
+    }
+
+    /**
+     * Set the memory of the segments that only the context keeps open and return by how many bytes the accounted
+     * memory changed.
+     */
+    synchronized long pinned(long bytes) {
+        pinnedBytes = bytes;
+        return update();
+    }
+
+    /**
+     * Stop tracking memory and return the number of bytes that were accounted for. Updates that happen after the
+     * context has been released do not change the accounted memory anymore.
+     */
+    synchronized long release() {
+        released = true;
+        final long bytes = accountedBytes;
+        accountedBytes = 0;
+        return bytes;
+    }
+
+    /**
+     * The number of bytes that are currently accounted for.
+     */
+    synchronized long bytes() {
+        return accountedBytes;
+    }
+
+    private long update() {
+        if (released) {
+            return 0;
+        }
+        final long total = retainedBytes + pinnedBytes;
+        final long delta = total - accountedBytes;
+        accountedBytes = total;
+        return delta;
+    }
+
+    /**
+     * Estimate the memory that the state of the given context retains. Aggregators are not included since they are
+     * released at the end of every phase and their big arrays are accounted against the request breaker anyway.
+     */
+    static long estimateRetainedBytes(SearchContext context) {
+        long bytes = CONTEXT_SHALLOW_BYTES;
+        final int[] docIdsToLoad = context.docIdsToLoad();
+        if (docIdsToLoad != null) {
+            bytes += RamUsageEstimator.sizeOf(docIdsToLoad);
+        }
+        final QuerySearchResult queryResult = context.queryResult();
+        if (queryResult != null && queryResult.topDocs() != null) {
+            bytes += estimateBytes(queryResult.topDocs());
+        }
+        return bytes;
+    }
+
+    static long estimateBytes(TopDocs topDocs) {
+        final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        long bytes = shallowSizeOf(scoreDocs);
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            if (scoreDoc instanceof FieldDoc) {
+                final Object[] fields = ((FieldDoc) scoreDoc).fields;
+                bytes += FIELD_DOC_SHALLOW_BYTES;
+                if (fields != null) {
+                    bytes += shallowSizeOf(fields);
+                    for (Object field : fields) {
+                        bytes += estimateSortValueBytes(field);
+                    }
+                }
+            } else {
+                bytes += SCORE_DOC_SHALLOW_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private static long shallowSizeOf(Object[] array) {
+        return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * array.length);
+    }
+
+    private static long estimateSortValueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof BytesRef) {
+            return BYTES_REF_SHALLOW_BYTES + RamUsageEstimator.sizeOf(((BytesRef) value).bytes);
+        } else {
+            // numbers and booleans
+            return BOXED_VALUE_BYTES;
+        }
+    }
+
+    /**
+     * Estimate the heap of the segments of <code>reader</code> whose core cache key is not in
+     * <code>liveCoreCacheKeys</code>, the core cache keys of the segments that the shard currently uses.
+     */
+    static long estimatePinnedBytes(IndexReader reader, Set<Object> liveCoreCacheKeys) {
+        long bytes = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            final LeafReader leafReader = leaf.reader();
+            if (liveCoreCacheKeys.contains(leafReader.getCoreCacheKey()) == false) {
+                final LeafReader unwrapped = FilterLeafReader.unwrap(leafReader);
+                if (unwrapped instanceof Accountable) {
+                    bytes += ((Accountable) unwrapped).ramBytesUsed();
+                }
+            }
+        }
+        return bytes;
+    }
+}
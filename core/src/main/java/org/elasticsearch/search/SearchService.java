@@ -24,6 +24,7 @@ import com.carrotsearch.hppc.ObjectSet;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.search.QueryCachingPolicy;
@@ -37,6 +38,8 @@ import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseFieldMatcher;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -74,6 +77,7 @@ import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.IndicesWarmer;
 import org.elasticsearch.indices.IndicesWarmer.TerminationHandle;
 import org.elasticsearch.indices.IndicesWarmer.WarmerContext;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cache.request.IndicesRequestCache;
 import org.elasticsearch.node.settings.NodeSettingsService;
 import org.elasticsearch.script.ExecutableScript;
@@ -93,8 +97,14 @@ import org.elasticsearch.search.warmer.IndexWarmersMetaData;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -117,6 +127,14 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     public static final TimeValue NO_TIMEOUT = timeValueMillis(-1);
 
+    /**
+     * Idle scroll contexts start being freed before their keep alive expires once the memory that open contexts retain
+     * goes above this ratio of the limit of the {@link CircuitBreaker#SEARCH_CONTEXTS} breaker...
+     */
+    static final double CONTEXTS_MEMORY_PRESSURE_RATIO = 0.9;
+    /** ...and are freed until the memory goes back to this ratio of the limit. */
+    static final double CONTEXTS_MEMORY_TARGET_RATIO = 0.75;
+
     private final ThreadPool threadPool;
 
     private final ClusterService clusterService;
@@ -139,6 +157,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final IndicesRequestCache indicesQueryCache;
 
+    private final CircuitBreakerService circuitBreakerService;
+
     private final long defaultKeepAlive;
 
     private volatile TimeValue defaultSearchTimeout;
@@ -149,6 +169,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
 
+    private final ConcurrentMapLong<SearchContextMemory> contextsMemory = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
+
     private final ImmutableMap<String, SearchParseElement> elementParsers;
 
     private final ParseFieldMatcher parseFieldMatcher;
@@ -156,7 +178,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     @Inject
     public SearchService(Settings settings, NodeSettingsService nodeSettingsService, ClusterService clusterService, IndicesService indicesService,IndicesWarmer indicesWarmer, ThreadPool threadPool,
                          ScriptService scriptService, PageCacheRecycler pageCacheRecycler, BigArrays bigArrays, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase,
-                         IndicesRequestCache indicesQueryCache) {
+                         IndicesRequestCache indicesQueryCache, CircuitBreakerService circuitBreakerService) {
         super(settings);
         this.parseFieldMatcher = new ParseFieldMatcher(settings);
         this.threadPool = threadPool;
@@ -191,6 +213,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         this.queryPhase = queryPhase;
         this.fetchPhase = fetchPhase;
         this.indicesQueryCache = indicesQueryCache;
+        this.circuitBreakerService = circuitBreakerService;
 
         TimeValue keepAliveInterval = settings.getAsTime(KEEPALIVE_INTERVAL_KEY, timeValueMinutes(1));
         // we can have 5 minutes here, since we make sure to clean with search requests and when shard/index closes
@@ -622,6 +645,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                 context.indexShard().searchService().onNewScrollContext(context);
             }
             context.indexShard().searchService().onNewContext(context);
+            accountNewContext(context);
             success = true;
             return context;
         } finally {
@@ -694,6 +718,10 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         final SearchContext context = removeContext(id);
         if (context != null) {
             try {
+                final SearchContextMemory memory = contextsMemory.remove(id);
+                if (memory != null) {
+                    accountContextMemory(context, -memory.release());
+                }
                 context.indexShard().searchService().onFreeContext(context);
                 if (context.scroll() != null) {
                     context.indexShard().searchService().onFreeScrollContext(context);
@@ -720,9 +748,137 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     }
 
     private void contextProcessedSuccessfully(SearchContext context) {
+        final SearchContextMemory memory = contextsMemory.get(context.id());
+        if (memory != null) {
+            accountContextMemory(context, memory.retained(SearchContextMemory.estimateRetainedBytes(context)));
+        }
         context.accessed(threadPool.estimatedTimeInMillis());
     }
 
+    private CircuitBreaker contextsBreaker() {
+        return circuitBreakerService.getBreaker(CircuitBreaker.SEARCH_CONTEXTS);
+    }
+
+    /**
+     * Account the memory of a new context against the {@link CircuitBreaker#SEARCH_CONTEXTS} breaker, freeing idle
+     * scroll contexts if the breaker trips.
+     */
+    private void accountNewContext(SearchContext context) {
+        final long bytes = SearchContextMemory.estimateRetainedBytes(context);
+        final CircuitBreaker breaker = contextsBreaker();
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, "<search_context>");
+        } catch (CircuitBreakingException e) {
+            if (freeIdleContextsUnderPressure(bytes) == 0) {
+                throw e;
+            }
+            breaker.addEstimateBytesAndMaybeBreak(bytes, "<search_context>");
+        }
+        contextsMemory.put(context.id(), new SearchContextMemory(bytes));
+        context.indexShard().searchService().onContextMemoryChanged(bytes);
+    }
+
+    private void accountContextMemory(SearchContext context, long delta) {
+        if (delta != 0) {
+            contextsBreaker().addWithoutBreaking(delta);
+            context.indexShard().searchService().onContextMemoryChanged(delta);
+        }
+    }
+
+    /**
+     * Compute how much memory open contexts retain through segments that their shard does not use anymore.
+     */
+    private void updatePinnedContextsMemory() {
+        final Map<IndexShard, Set<Object>> liveCoreCacheKeys = new HashMap<>();
+        for (SearchContext context : activeContexts.values()) {
+            final SearchContextMemory memory = contextsMemory.get(context.id());
+            if (memory == null) {
+                continue;
+            }
+            try {
+                final IndexShard indexShard = context.indexShard();
+                Set<Object> coreCacheKeys = liveCoreCacheKeys.get(indexShard);
+                if (coreCacheKeys == null) {
+                    coreCacheKeys = new HashSet<>();
+                    try (Engine.Searcher searcher = indexShard.acquireSearcher("search_contexts_memory")) {
+                        for (LeafReaderContext leaf : searcher.reader().leaves()) {
+                            coreCacheKeys.add(leaf.reader().getCoreCacheKey());
+                        }
+                    }
+                    liveCoreCacheKeys.put(indexShard, coreCacheKeys);
+                }
+                final IndexReader reader = context.searcher().getIndexReader();
+                accountContextMemory(context, memory.pinned(SearchContextMemory.estimatePinnedBytes(reader, coreCacheKeys)));
+            } catch (Throwable t) {
+                // the shard or the context is being closed
+                logger.trace("failed to compute the pinned memory of search context [{}]", t, context.id());
+            }
+        }
+    }
+
+    /**
+     * Free idle scroll contexts, before their keep alive expires, until the memory accounted against the
+     * {@link CircuitBreaker#SEARCH_CONTEXTS} breaker plus <code>extraBytes</code> goes back to
+     * {@link #CONTEXTS_MEMORY_TARGET_RATIO} of its limit. Contexts are freed by decreasing product of the time they
+     * have been idle for and of the memory that they retain, so that the oldest and largest ones go first.
+     *
+     * @return the number of freed contexts
+     */
+    int freeIdleContextsUnderPressure(long extraBytes) {
+        final CircuitBreaker breaker = contextsBreaker();
+        final long limit = breaker.getLimit();
+        if (limit <= 0) {
+            // the breaker is disabled
+            return 0;
+        }
+        long bytesToFree = breaker.getUsed() + extraBytes - (long) (limit * CONTEXTS_MEMORY_TARGET_RATIO);
+        if (bytesToFree <= 0) {
+            return 0;
+        }
+        final long time = threadPool.estimatedTimeInMillis();
+        final List<IdleContext> idleContexts = new ArrayList<>();
+        for (SearchContext context : activeContexts.values()) {
+            final long lastAccessTime = context.lastAccessTime();
+            final SearchContextMemory memory = contextsMemory.get(context.id());
+            if (context.scroll() == null || lastAccessTime == -1l || memory == null) {
+                // contexts that are not scrolled are only kept between the phases of a search
+                continue;
+            }
+            idleContexts.add(new IdleContext(context, memory.bytes(), (double) (Math.max(0, time - lastAccessTime) + 1) * memory.bytes()));
+        }
+        Collections.sort(idleContexts, new Comparator<IdleContext>() {
+            @Override
+            public int compare(IdleContext o1, IdleContext o2) {
+                return Double.compare(o2.cost, o1.cost);
+            }
+        });
+        int freed = 0;
+        for (IdleContext idleContext : idleContexts) {
+            if (bytesToFree <= 0) {
+                break;
+            }
+            logger.debug("freeing search context [{}] retaining [{}] bytes under memory pressure, lastAccessTime [{}]",
+                    idleContext.context.id(), idleContext.bytes, idleContext.context.lastAccessTime());
+            if (freeContext(idleContext.context.id())) {
+                bytesToFree -= idleContext.bytes;
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    private static class IdleContext {
+        final SearchContext context;
+        final long bytes;
+        final double cost;
+
+        IdleContext(SearchContext context, long bytes, double cost) {
+            this.context = context;
+            this.bytes = bytes;
+            this.cost = cost;
+        }
+    }
+
     private void cleanContext(SearchContext context) {
         assert context == SearchContext.current();
         context.clearReleasables(Lifetime.PHASE);
@@ -1172,6 +1328,16 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                     freeContext(context.id());
                 }
             }
+            updatePinnedContextsMemory();
+            final CircuitBreaker breaker = contextsBreaker();
+            final long used = breaker.getUsed();
+            if (breaker.getLimit() > 0 && used > breaker.getLimit() * CONTEXTS_MEMORY_PRESSURE_RATIO) {
+                final int freed = freeIdleContextsUnderPressure(0);
+                if (freed > 0) {
+                    logger.info("freed [{}] idle scroll contexts since open search contexts retained [{}] bytes, more than [{}] of the [{}] breaker limit",
+                            freed, used, CONTEXTS_MEMORY_PRESSURE_RATIO, CircuitBreaker.SEARCH_CONTEXTS);
+                }
+            }
         }
     }
 }
@@ -70,6 +70,9 @@ public class AggregationPhase implements SearchPhase {
     public void preProcess(SearchContext context) {
         if (context.aggregations() != null) {
             AggregationContext aggregationContext = new AggregationContext(context);
+            if (context.profiler() != null) {
+                aggregationContext = aggregationContext.withProfile(new AggregatorProfile("", "", context.bigArrays()));
+            }
             context.aggregations().aggregationContext(aggregationContext);
 
             List<Aggregator> collectors = new ArrayList<>();
@@ -137,12 +140,23 @@ public class AggregationPhase implements SearchPhase {
         for (Aggregator aggregator : context.aggregations().aggregators()) {
             try {
                 aggregator.postCollection();
-                aggregations.add(aggregator.buildAggregation(0));
+                aggregations.add(AggregatorProfile.buildAggregation(aggregator, 0));
             } catch (IOException e) {
                 throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
             }
         }
+        for (SearchContextAggregations.BuildListener listener : context.aggregations().buildListeners()) {
+            try {
+                listener.onAggregationsBuilt();
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to build aggregations", e);
+            }
+        }
         context.queryResult().aggregations(new InternalAggregations(aggregations));
+        final AggregatorProfile profile = context.aggregations().aggregationContext().profile();
+        if (profile != null) {
+            context.profiler().aggregations(profile.childResults());
+        }
         try {
             List<PipelineAggregator> pipelineAggregators = context.aggregations().factories().createPipelineAggregators();
             List<SiblingPipelineAggregator> siblingPipelineAggregators = new ArrayList<>(pipelineAggregators.size());
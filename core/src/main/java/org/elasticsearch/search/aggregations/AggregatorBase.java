@@ -129,7 +129,9 @@ public abstract class AggregatorBase extends Aggregator {
     @Override
     public final LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
         final LeafBucketCollector sub = collectableSubAggregators.getLeafCollector(ctx);
-        return getLeafCollector(ctx, sub);
+        final LeafBucketCollector collector = getLeafCollector(ctx, sub);
+        final AggregatorProfile profile = context.profile();
+        return profile == null ? collector : profile.wrap(collector);
     }
 
     /**
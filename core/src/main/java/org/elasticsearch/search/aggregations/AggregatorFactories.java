@@ -72,7 +72,7 @@ public class AggregatorFactories {
             // propagate the fact that only bucket 0 will be collected with single-bucket
             // aggs
             final boolean collectsFromSingleBucket = false;
-            aggregators[i] = factories[i].create(parent.context(), parent, collectsFromSingleBucket);
+            aggregators[i] = factories[i].create(contextFor(factories[i], parent.context()), parent, collectsFromSingleBucket);
         }
         return aggregators;
     }
@@ -83,11 +83,24 @@ public class AggregatorFactories {
         for (int i = 0; i < factories.length; i++) {
             // top-level aggs only get called with bucket 0
             final boolean collectsFromSingleBucket = true;
-            aggregators[i] = factories[i].create(ctx, null, collectsFromSingleBucket);
+            aggregators[i] = factories[i].create(contextFor(factories[i], ctx), null, collectsFromSingleBucket);
         }
         return aggregators;
     }
 
+    /**
+     * Return the context to create the aggregator of the given factory with: if profiling is enabled, the aggregator
+     * records into its own profile under the profile of its parent.
+     */
+    private static AggregationContext contextFor(AggregatorFactory factory, AggregationContext parentContext) {
+        final AggregatorProfile parentProfile = parentContext.profile();
+        if (parentProfile == null) {
+            return parentContext;
+        }
+        final AggregatorProfile profile = parentProfile.child(factory.name, factory.type, parentContext.searchContext().bigArrays());
+        return parentContext.withProfile(profile);
+    }
+
     public int count() {
         return factories.length;
     }
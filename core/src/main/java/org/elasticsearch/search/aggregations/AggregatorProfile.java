@@ -0,0 +1,144 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.TrackingBigArrays;
+import org.elasticsearch.search.aggregations.bucket.InternalSingleBucketAggregation;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.profile.AggregationProfileResult;
+import org.elasticsearch.search.profile.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records what aggregators spend their time and memory on: how many times they are asked to collect a document and
+ * to build an aggregation, how long it takes, how many bytes they allocate through {@link BigArrays} and how many
+ * buckets they produce. All aggregators that are created for the same aggregation on a shard record into the same
+ * profile. Times are inclusive of sub-aggregations.
+ *
+ * In order to keep the overhead low, collection is only timed for one call out of {@link #COLLECT_SAMPLING_INTERVAL}.
+ */
+public final class AggregatorProfile {
+
+    static final int COLLECT_SAMPLING_INTERVAL = 16;
+
+    private final String name;
+    private final String type;
+    private final TrackingBigArrays bigArrays;
+    private final Map<String, AggregatorProfile> children = new LinkedHashMap<>();
+
+    private final Timer collectTimer = new Timer(COLLECT_SAMPLING_INTERVAL);
+    private final Timer buildTimer = new Timer();
+    private long buckets;
+
+    public AggregatorProfile(String name, String type, BigArrays bigArrays) {
+        this.name = name;
+        this.type = type;
+        this.bigArrays = new TrackingBigArrays(bigArrays);
+    }
+
+    /** Return the {@link BigArrays} instance that aggregators that record into this profile should use. */
+    public BigArrays bigArrays() {
+        return bigArrays;
+    }
+
+    /**
+     * Return the profile of the sub-aggregation with the given name, creating it if this is the first aggregator of
+     * this sub-aggregation.
+     */
+    public AggregatorProfile child(String name, String type, BigArrays bigArrays) {
+        AggregatorProfile child = children.get(name);
+        if (child == null) {
+            child = new AggregatorProfile(name, type, bigArrays);
+            children.put(name, child);
+        }
+        return child;
+    }
+
+    /** Wrap the given collector so that calls to {@link LeafBucketCollector#collect(int, long)} are recorded. */
+    public LeafBucketCollector wrap(final LeafBucketCollector in) {
+        if (in == LeafBucketCollector.NO_OP_COLLECTOR) {
+            return in;
+        }
+        return new LeafBucketCollector() {
+
+            @Override
+            public void setScorer(Scorer scorer) throws IOException {
+                in.setScorer(scorer);
+            }
+
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                final long start = collectTimer.start();
+                try {
+                    in.collect(doc, bucket);
+                } finally {
+                    collectTimer.stop(start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Build the aggregation of the given bucket, recording the call into the profile of the aggregator if profiling
+     * is enabled.
+     */
+    public static InternalAggregation buildAggregation(Aggregator aggregator, long bucket) throws IOException {
+        final AggregationContext context = aggregator.context();
+        final AggregatorProfile profile = context == null ? null : context.profile();
+        if (profile == null) {
+            return aggregator.buildAggregation(bucket);
+        }
+        final long start = profile.buildTimer.start();
+        final InternalAggregation aggregation;
+        try {
+            aggregation = aggregator.buildAggregation(bucket);
+        } finally {
+            profile.buildTimer.stop(start);
+        }
+        if (aggregation instanceof InternalMultiBucketAggregation) {
+            profile.buckets += ((InternalMultiBucketAggregation<?, ?>) aggregation).getBuckets().size();
+        } else if (aggregation instanceof InternalSingleBucketAggregation) {
+            profile.buckets++;
+        }
+        return aggregation;
+    }
+
+    /** Return the recorded activity of the sub-aggregations. */
+    public List<AggregationProfileResult> childResults() {
+        final List<AggregationProfileResult> results = new ArrayList<>(children.size());
+        for (AggregatorProfile child : children.values()) {
+            results.add(child.result());
+        }
+        return results;
+    }
+
+    /** Return the recorded activity of this aggregation and its sub-aggregations. */
+    public AggregationProfileResult result() {
+        return new AggregationProfileResult(name, type, collectTimer.count(), collectTimer.nanos(), buildTimer.count(), buildTimer.nanos(), buckets,
+                bigArrays.allocatedBytes(), bigArrays.peakBytes(), childResults());
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.search.aggregations;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -38,6 +39,7 @@ import org.elasticsearch.search.aggregations.support.AggregationPath;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An internal implementation of {@link Aggregation}. Serves as a base class for all aggregation implementations.
@@ -95,10 +97,19 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
 
         private final BigArrays bigArrays;
         private ScriptService scriptService;
+        private final ForkJoinPool reducePool;
 
         public ReduceContext(BigArrays bigArrays, ScriptService scriptService) {
+            this(bigArrays, scriptService, null);
+        }
+
+        /**
+         * @param reducePool pool to reduce sibling aggregations in parallel, or <tt>null</tt> to reduce them sequentially
+         */
+        public ReduceContext(BigArrays bigArrays, ScriptService scriptService, @Nullable ForkJoinPool reducePool) {
             this.bigArrays = bigArrays;
             this.scriptService = scriptService;
+            this.reducePool = reducePool;
         }
 
         public BigArrays bigArrays() {
@@ -108,6 +119,11 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
         public ScriptService scriptService() {
             return scriptService;
         }
+
+        @Nullable
+        public ForkJoinPool reducePool() {
+            return reducePool;
+        }
     }
 
 
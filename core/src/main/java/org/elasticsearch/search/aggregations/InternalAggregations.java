@@ -37,10 +37,15 @@ import org.elasticsearch.search.aggregations.support.AggregationPath;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.google.common.collect.Maps.newHashMap;
 
@@ -143,14 +148,14 @@ public class InternalAggregations implements Aggregations, ToXContent, Streamabl
      * @param aggregationsList  A list of aggregation to reduce
      * @return                  The reduced addAggregation
      */
-    public static InternalAggregations reduce(List<InternalAggregations> aggregationsList, ReduceContext context) {
+    public static InternalAggregations reduce(List<InternalAggregations> aggregationsList, final ReduceContext context) {
         if (aggregationsList.isEmpty()) {
             return null;
         }
 
         // first we collect all aggregations of the same type and list them together
 
-        Map<String, List<InternalAggregation>> aggByName = new HashMap<>();
+        Map<String, List<InternalAggregation>> aggByName = new LinkedHashMap<>();
         for (InternalAggregations aggregations : aggregationsList) {
             for (InternalAggregation aggregation : aggregations.aggregations) {
                 List<InternalAggregation> aggs = aggByName.get(aggregation.getName());
@@ -164,13 +169,51 @@ public class InternalAggregations implements Aggregations, ToXContent, Streamabl
 
         // now we can use the first aggregation of each list to handle the reduce of its list
 
-        List<InternalAggregation> reducedAggregations = new ArrayList<>();
-        for (Map.Entry<String, List<InternalAggregation>> entry : aggByName.entrySet()) {
-            List<InternalAggregation> aggregations = entry.getValue();
-            InternalAggregation first = aggregations.get(0); // the list can't be empty as it's created on demand
-            reducedAggregations.add(first.reduce(aggregations, context));
+        final List<List<InternalAggregation>> siblings = new ArrayList<>(aggByName.values());
+        final InternalAggregation[] reducedAggregations = new InternalAggregation[siblings.size()];
+        final ForkJoinPool reducePool = context.reducePool();
+        if (reducePool == null || siblings.size() < 2) {
+            for (int i = 0; i < reducedAggregations.length; ++i) {
+                reducedAggregations[i] = reduceSiblings(siblings.get(i), context);
+            }
+        } else {
+            // sibling aggregations are independent so they can be reduced in parallel, results are stored by
+            // index so that the output does not depend on the order in which tasks complete
+            final List<RecursiveAction> tasks = new ArrayList<>(siblings.size());
+            for (int i = 0; i < reducedAggregations.length; ++i) {
+                final int index = i;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        reducedAggregations[index] = reduceSiblings(siblings.get(index), context);
+                    }
+                });
+            }
+            if (ForkJoinTask.getPool() == reducePool) {
+                // we are already reducing a parent aggregation in the pool, eg. the sub-aggregations of a bucket
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                try {
+                    reducePool.invoke(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            invokeAll(tasks);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // the pool has been shut down because the node is stopping
+                    for (int i = 0; i < reducedAggregations.length; ++i) {
+                        reducedAggregations[i] = reduceSiblings(siblings.get(i), context);
+                    }
+                }
+            }
         }
-        return new InternalAggregations(reducedAggregations);
+        return new InternalAggregations(Arrays.asList(reducedAggregations));
+    }
+
+    private static InternalAggregation reduceSiblings(List<InternalAggregation> aggregations, ReduceContext context) {
+        InternalAggregation first = aggregations.get(0); // the list can't be empty as it's created on demand
+        return first.reduce(aggregations, context);
     }
 
     /** The fields required to write this addAggregation to xcontent */
@@ -20,6 +20,7 @@
 package org.elasticsearch.search.aggregations;
 
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 
 import java.util.List;
@@ -28,6 +29,9 @@ import java.util.Map;
 public abstract class InternalMultiBucketAggregation<A extends InternalMultiBucketAggregation, B extends InternalMultiBucketAggregation.InternalBucket>
         extends InternalAggregation implements MultiBucketsAggregation {
 
+    // not serialized, only shared by the pipeline aggregations that run on this aggregation
+    private BucketColumns bucketColumns;
+
     public InternalMultiBucketAggregation() {
     }
 
@@ -57,6 +61,26 @@ public abstract class InternalMultiBucketAggregation<A extends InternalMultiBuck
      */
     public abstract B createBucket(InternalAggregations aggregations, B prototype);
 
+    /**
+     * Return a columnar view of the buckets of this aggregation, for use by pipeline aggregations.
+     */
+    public BucketColumns bucketColumns() {
+        if (bucketColumns == null) {
+            bucketColumns = BucketColumns.build(this);
+        }
+        return bucketColumns;
+    }
+
+    /**
+     * Set the columnar view of the buckets of this aggregation. This is used by pipeline aggregations that
+     * create a new aggregation from the buckets of another one so that the next pipeline aggregations do not
+     * need to resolve values again.
+     */
+    public void bucketColumns(BucketColumns bucketColumns) {
+        assert bucketColumns.size() == getBuckets().size();
+        this.bucketColumns = bucketColumns;
+    }
+
     @Override
     public Object getProperty(List<String> path) {
         if (path.isEmpty()) {
@@ -20,14 +20,31 @@ package org.elasticsearch.search.aggregations;
 
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The aggregation context that is part of the search context.
  */
 public class SearchContextAggregations {
 
+    /**
+     * A callback that is called once all top-level aggregations have been built.
+     */
+    public interface BuildListener {
+
+        /**
+         * Called after all top-level aggregations have been built, eg. to load data
+         * for all buckets at once instead of bucket by bucket.
+         */
+        void onAggregationsBuilt() throws IOException;
+    }
+
     private final AggregatorFactories factories;
     private Aggregator[] aggregators;
     private AggregationContext aggregationContext;
+    private final List<BuildListener> buildListeners = new ArrayList<>();
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -61,4 +78,15 @@ public class SearchContextAggregations {
         this.aggregators = aggregators;
     }
 
+    /**
+     * Register a listener that will be notified once all top-level aggregations have been built.
+     */
+    public void addBuildListener(BuildListener listener) {
+        buildListeners.add(listener);
+    }
+
+    public List<BuildListener> buildListeners() {
+        return buildListeners;
+    }
+
 }
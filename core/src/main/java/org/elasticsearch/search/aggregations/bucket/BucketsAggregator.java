@@ -113,7 +113,7 @@ public abstract class BucketsAggregator extends AggregatorBase {
     protected final InternalAggregations bucketAggregations(long bucket) throws IOException {
         final InternalAggregation[] aggregations = new InternalAggregation[subAggregators.length];
         for (int i = 0; i < subAggregators.length; i++) {
-            aggregations[i] = subAggregators[i].buildAggregation(bucket);
+            aggregations[i] = AggregatorProfile.buildAggregation(subAggregators[i], bucket);
         }
         return new InternalAggregations(Arrays.asList(aggregations));
     }
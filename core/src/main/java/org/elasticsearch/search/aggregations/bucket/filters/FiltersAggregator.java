@@ -21,10 +21,19 @@ package org.elasticsearch.search.aggregations.bucket.filters;
 
 import com.google.common.collect.Lists;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -38,6 +47,7 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -59,6 +69,8 @@ public class FiltersAggregator extends BucketsAggregator {
 
     private final String[] keys;
     private final Weight[] filters;
+    // filters that can be checked against the min and max values of a segment, or null
+    private final NumericRangeQuery<?>[] rangeFilters;
     private final boolean keyed;
     private final boolean showOtherBucket;
     private final String otherBucketKey;
@@ -72,6 +84,7 @@ public class FiltersAggregator extends BucketsAggregator {
         this.keyed = keyed;
         this.keys = new String[filters.size()];
         this.filters = new Weight[filters.size()];
+        this.rangeFilters = new NumericRangeQuery<?>[filters.size()];
         this.showOtherBucket = otherBucketKey != null;
         this.otherBucketKey = otherBucketKey;
         if (showOtherBucket) {
@@ -79,26 +92,128 @@ public class FiltersAggregator extends BucketsAggregator {
         } else {
             this.totalNumKeys = filters.size();
         }
+        final IndexSearcher searcher = aggregationContext.searchContext().searcher();
         for (int i = 0; i < filters.size(); ++i) {
             KeyedFilter keyedFilter = filters.get(i);
             this.keys[i] = keyedFilter.key;
-            this.filters[i] = aggregationContext.searchContext().searcher().createNormalizedWeight(keyedFilter.filter, false);
+            // the weight goes on rewriting from the partially rewritten filter, so filters are only rewritten once
+            final Query filter = rewriteUntilRangeQuery(keyedFilter.filter, searcher.getIndexReader());
+            this.filters[i] = searcher.createNormalizedWeight(filter, false);
+            this.rangeFilters[i] = unwrapRangeQuery(filter);
         }
     }
 
+    /**
+     * Rewrite <code>query</code> until it is a numeric range query, possibly wrapped in constant score queries or
+     * query wrapper filters, or until it does not rewrite anymore. Numeric range queries themselves are not rewritten
+     * since their rewritten form does not expose their bounds anymore.
+     */
+    static Query rewriteUntilRangeQuery(Query query, IndexReader reader) throws IOException {
+        // eg. date ranges are only resolved to numeric range queries on rewrite
+        while (unwrapRangeQuery(query) == null) {
+            final Query rewritten = query.rewrite(reader);
+            if (rewritten == query) {
+                break;
+            }
+            query = rewritten;
+        }
+        return query;
+    }
+
+    /**
+     * Return the numeric range query that <code>query</code> wraps, or <tt>null</tt> if it is not a numeric range
+     * query. Queries are not rewritten, see {@link #rewriteUntilRangeQuery(Query, IndexReader)}.
+     */
+    static NumericRangeQuery<?> unwrapRangeQuery(Query query) {
+        while (true) {
+            if (query instanceof NumericRangeQuery) {
+                return (NumericRangeQuery<?>) query;
+            } else if (query instanceof ConstantScoreQuery) {
+                query = ((ConstantScoreQuery) query).getQuery();
+            } else if (query instanceof QueryWrapperFilter) {
+                query = ((QueryWrapperFilter) query).getQuery();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Return whether all documents of the segment match <code>query</code>, based on the minimum
+     * and maximum values of the field in this segment.
+     */
+    static boolean matchesAllDocs(NumericRangeQuery<?> query, LeafReader reader) throws IOException {
+        final Terms terms = reader.terms(query.getField());
+        if (terms == null || terms.getDocCount() != reader.maxDoc()) {
+            // some documents do not have a value
+            return false;
+        }
+        final Number from = query.getMin();
+        final Number to = query.getMax();
+        final Number type = from != null ? from : to;
+        final double min, max;
+        if (type == null) {
+            return true;
+        } else if (type instanceof Long) {
+            min = NumericUtils.getMinLong(terms);
+            max = NumericUtils.getMaxLong(terms);
+        } else if (type instanceof Integer) {
+            min = NumericUtils.getMinInt(terms);
+            max = NumericUtils.getMaxInt(terms);
+        } else if (type instanceof Double) {
+            min = NumericUtils.sortableLongToDouble(NumericUtils.getMinLong(terms));
+            max = NumericUtils.sortableLongToDouble(NumericUtils.getMaxLong(terms));
+        } else if (type instanceof Float) {
+            min = NumericUtils.sortableIntToFloat(NumericUtils.getMinInt(terms));
+            max = NumericUtils.sortableIntToFloat(NumericUtils.getMaxInt(terms));
+        } else {
+            return false;
+        }
+        if (from != null) {
+            final int cmp = Double.compare(min, from.doubleValue());
+            if (cmp < 0 || (cmp == 0 && query.includesMin() == false)) {
+                return false;
+            }
+        }
+        if (to != null) {
+            final int cmp = Double.compare(max, to.doubleValue());
+            if (cmp > 0 || (cmp == 0 && query.includesMax() == false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
         // no need to provide deleted docs to the filter
+        final int maxDoc = ctx.reader().maxDoc();
         final Bits[] bits = new Bits[filters.length];
+        final int[] matchingFilters = new int[filters.length];
+        int numMatchingFilters = 0;
         for (int i = 0; i < filters.length; ++i) {
-            bits[i] = Lucene.asSequentialAccessBits(ctx.reader().maxDoc(), filters[i].scorer(ctx, null));
+            if (rangeFilters[i] != null && matchesAllDocs(rangeFilters[i], ctx.reader())) {
+                bits[i] = new Bits.MatchAllBits(maxDoc);
+            } else {
+                final Scorer scorer = filters[i].scorer(ctx, null);
+                if (scorer == null) {
+                    // no document of this segment matches this filter
+                    continue;
+                }
+                bits[i] = Lucene.asSequentialAccessBits(maxDoc, scorer);
+            }
+            matchingFilters[numMatchingFilters++] = i;
+        }
+        if (numMatchingFilters == 0 && showOtherBucket == false) {
+            return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        final int[] filterOrds = Arrays.copyOf(matchingFilters, numMatchingFilters);
         return new LeafBucketCollectorBase(sub, null) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
                 boolean matched = false;
-                for (int i = 0; i < bits.length; i++) {
+                for (int i : filterOrds) {
                     if (bits[i].get(doc)) {
                         collectBucket(sub, doc, bucketOrd(bucket, i));
                         matched = true;
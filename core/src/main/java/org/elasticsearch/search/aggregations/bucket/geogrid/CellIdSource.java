@@ -0,0 +1,127 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.geogrid;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.inject.internal.Nullable;
+import org.elasticsearch.index.fielddata.MultiGeoPointValues;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+import org.elasticsearch.index.fielddata.SortingNumericDocValues;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+
+import java.io.IOException;
+
+/**
+ * Exposes the ids of the cells that geo points fall into as numeric values. If bounds are provided, points
+ * that are outside of the bounds are ignored.
+ */
+class CellIdSource extends ValuesSource.Numeric {
+
+    private final ValuesSource.GeoPoint valuesSource;
+    private final GeoGridCellType cellType;
+    private final int precision;
+    private final GeoBoundingBox bounds;
+
+    CellIdSource(ValuesSource.GeoPoint valuesSource, GeoGridCellType cellType, int precision, @Nullable GeoBoundingBox bounds) {
+        this.valuesSource = valuesSource;
+        this.cellType = cellType;
+        //different GeoPoints could map to the same or different cells.
+        this.precision = precision;
+        this.bounds = bounds;
+    }
+
+    GeoGridCellType cellType() {
+        return cellType;
+    }
+
+    /**
+     * Return whether some points of the segment might be within the bounds. Segments that return <tt>false</tt>
+     * don't need to be collected at all.
+     */
+    boolean intersects(LeafReaderContext ctx) throws IOException {
+        if (bounds == null) {
+            return true;
+        }
+        final double[] segmentBounds = valuesSource.latLonBounds(ctx);
+        return segmentBounds == null || bounds.intersects(segmentBounds[0], segmentBounds[1], segmentBounds[2], segmentBounds[3]);
+    }
+
+    @Override
+    public boolean isFloatingPoint() {
+        return false;
+    }
+
+    @Override
+    public SortedNumericDocValues longValues(LeafReaderContext ctx) throws IOException {
+        GeoBoundingBox bounds = this.bounds;
+        if (bounds != null) {
+            final double[] segmentBounds = valuesSource.latLonBounds(ctx);
+            if (segmentBounds != null && bounds.contains(segmentBounds[0], segmentBounds[1], segmentBounds[2], segmentBounds[3])) {
+                // all points of the segment are within the bounds, no need to check them one by one
+                bounds = null;
+            }
+        }
+        return new CellValues(valuesSource.geoPointValues(ctx), cellType, precision, bounds);
+    }
+
+    @Override
+    public SortedNumericDoubleValues doubleValues(LeafReaderContext ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedBinaryDocValues bytesValues(LeafReaderContext ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static class CellValues extends SortingNumericDocValues {
+
+        private final MultiGeoPointValues geoValues;
+        private final GeoGridCellType cellType;
+        private final int precision;
+        private final GeoBoundingBox bounds;
+
+        CellValues(MultiGeoPointValues geoValues, GeoGridCellType cellType, int precision, @Nullable GeoBoundingBox bounds) {
+            this.geoValues = geoValues;
+            this.cellType = cellType;
+            this.precision = precision;
+            this.bounds = bounds;
+        }
+
+        @Override
+        public void setDocument(int docId) {
+            geoValues.setDocument(docId);
+            resize(geoValues.count());
+            int count = 0;
+            for (int i = 0; i < geoValues.count(); ++i) {
+                GeoPoint target = geoValues.valueAt(i);
+                if (bounds == null || bounds.contains(target.getLat(), target.getLon())) {
+                    values[count++] = cellType.encode(target.getLat(), target.getLon(), precision);
+                }
+            }
+            resize(count);
+            sort();
+        }
+
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.geogrid;
+
+/**
+ * The bounds of a geo grid aggregation. The box crosses the dateline if <code>left</code> is greater than
+ * <code>right</code>.
+ */
+final class GeoBoundingBox {
+
+    final double top;
+    final double left;
+    final double bottom;
+    final double right;
+
+    GeoBoundingBox(double top, double left, double bottom, double right) {
+        if (top < bottom) {
+            throw new IllegalArgumentException("top [" + top + "] cannot be less than bottom [" + bottom + "]");
+        }
+        this.top = top;
+        this.left = left;
+        this.bottom = bottom;
+        this.right = right;
+    }
+
+    private boolean crossesDateline() {
+        return left > right;
+    }
+
+    boolean contains(double lat, double lon) {
+        if (lat < bottom || lat > top) {
+            return false;
+        }
+        if (crossesDateline()) {
+            return lon >= left || lon <= right;
+        }
+        return lon >= left && lon <= right;
+    }
+
+    /** Whether the given box, which does not cross the dateline, is within these bounds. */
+    boolean contains(double minLat, double maxLat, double minLon, double maxLon) {
+        if (minLat < bottom || maxLat > top) {
+            return false;
+        }
+        if (crossesDateline()) {
+            return minLon >= left || maxLon <= right;
+        }
+        return minLon >= left && maxLon <= right;
+    }
+
+    /** Whether the given box, which does not cross the dateline, intersects these bounds. */
+    boolean intersects(double minLat, double maxLat, double minLon, double maxLon) {
+        if (maxLat < bottom || minLat > top) {
+            return false;
+        }
+        if (crossesDateline()) {
+            return maxLon >= left || minLon <= right;
+        }
+        return maxLon >= left && minLon <= right;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.geogrid;
+
+import org.elasticsearch.common.geo.GeoHashUtils;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The kind of cells that a geo grid aggregation buckets points into. Cells are always encoded as a single long.
+ */
+public enum GeoGridCellType {
+
+    /**
+     * Geohash cells, the precision is the length of the geohash.
+     */
+    GEOHASH((byte) 0, 1, GeoHashUtils.PRECISION) {
+
+        @Override
+        long encode(double lat, double lon, int precision) {
+            return GeoHashUtils.encodeAsLong(lat, lon, precision);
+        }
+
+        @Override
+        String toString(long cell) {
+            return GeoHashUtils.toString(cell);
+        }
+
+        @Override
+        GeoPoint center(long cell) {
+            return GeoHashUtils.decode(cell);
+        }
+
+        @Override
+        long cellCount(double top, double left, double bottom, double right, int precision) {
+            // geohashes interleave longitude and latitude bits, starting with longitude
+            final int lonBits = (5 * precision + 1) / 2;
+            final int latBits = (5 * precision) / 2;
+            final long lonCells = span(index(left, -180, 180, lonBits), index(right, -180, 180, lonBits), 1L << lonBits);
+            final long latCells = span(index(bottom, -90, 90, latBits), index(top, -90, 90, latBits), 1L << latBits);
+            return lonCells * latCells;
+        }
+
+        private long index(double value, double min, double max, int bits) {
+            final long n = 1L << bits;
+            return Math.min(n - 1, (long) Math.floor((value - min) / (max - min) * n));
+        }
+    },
+
+    /**
+     * Web mercator map tiles, the precision is the zoom level. Keys are formatted as <tt>zoom/x/y</tt>.
+     */
+    TILE((byte) 1, 0, 29) {
+
+        private static final double MAX_LAT = 85.05112878;
+
+        @Override
+        long encode(double lat, double lon, int precision) {
+            return (((long) precision) << 58) | (x(lon, precision) << 29) | y(lat, precision);
+        }
+
+        @Override
+        String toString(long cell) {
+            return zoom(cell) + "/" + tileX(cell) + "/" + tileY(cell);
+        }
+
+        @Override
+        GeoPoint center(long cell) {
+            final double n = 1L << zoom(cell);
+            final double lon = (tileX(cell) + 0.5) / n * 360 - 180;
+            final double lat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (tileY(cell) + 0.5) / n))));
+            return new GeoPoint(lat, lon);
+        }
+
+        @Override
+        long cellCount(double top, double left, double bottom, double right, int precision) {
+            final long n = 1L << precision;
+            // tile rows are numbered from the north
+            return span(x(left, precision), x(right, precision), n) * (y(bottom, precision) - y(top, precision) + 1);
+        }
+
+        private int zoom(long cell) {
+            return (int) (cell >>> 58);
+        }
+
+        private long tileX(long cell) {
+            return (cell >>> 29) & ((1L << 29) - 1);
+        }
+
+        private long tileY(long cell) {
+            return cell & ((1L << 29) - 1);
+        }
+
+        private long x(double lon, int zoom) {
+            final long n = 1L << zoom;
+            return Math.max(0, Math.min(n - 1, (long) Math.floor((lon + 180) / 360 * n)));
+        }
+
+        private long y(double lat, int zoom) {
+            final long n = 1L << zoom;
+            final double latRad = Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)));
+            final double y = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2;
+            return Math.max(0, Math.min(n - 1, (long) Math.floor(y * n)));
+        }
+    };
+
+    private final byte id;
+    private final int minPrecision;
+    private final int maxPrecision;
+
+    private GeoGridCellType(byte id, int minPrecision, int maxPrecision) {
+        this.id = id;
+        this.minPrecision = minPrecision;
+        this.maxPrecision = maxPrecision;
+    }
+
+    public int minPrecision() {
+        return minPrecision;
+    }
+
+    public int maxPrecision() {
+        return maxPrecision;
+    }
+
+    /** Encode the cell of the given precision that contains the given point. */
+    abstract long encode(double lat, double lon, int precision);
+
+    /** Format a cell as a string, which is used as the key of buckets. */
+    abstract String toString(long cell);
+
+    /** Return the center of the cell. */
+    abstract GeoPoint center(long cell);
+
+    /**
+     * Return the number of cells of the given precision that intersect the given bounding box. If <code>left</code>
+     * is greater than <code>right</code>, the bounding box crosses the dateline.
+     */
+    abstract long cellCount(double top, double left, double bottom, double right, int precision);
+
+    /**
+     * Return the highest precision whose cells that intersect the given bounding box are at most
+     * <code>maxCells</code>, or the lowest precision if there is none.
+     */
+    public int precision(double top, double left, double bottom, double right, int maxCells) {
+        int precision = minPrecision;
+        while (precision < maxPrecision && cellCount(top, left, bottom, right, precision + 1) <= maxCells) {
+            ++precision;
+        }
+        return precision;
+    }
+
+    /** Number of cells between <code>from</code> and <code>to</code> included, wrapping around <code>n</code> cells. */
+    private static long span(long from, long to, long n) {
+        return from <= to ? to - from + 1 : n - from + to + 1;
+    }
+
+    public static GeoGridCellType parse(String type) {
+        for (GeoGridCellType cellType : values()) {
+            if (cellType.name().toLowerCase(Locale.ROOT).equals(type)) {
+                return cellType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown geo grid cell type [" + type + "]");
+    }
+
+    public static GeoGridCellType readFrom(StreamInput in) throws IOException {
+        final byte id = in.readByte();
+        for (GeoGridCellType cellType : values()) {
+            if (cellType.id == id) {
+                return cellType;
+            }
+        }
+        throw new IllegalStateException("Unknown geo grid cell type id [" + id + "]");
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeByte(id);
+    }
+}
@@ -18,10 +18,12 @@
  */
 package org.elasticsearch.search.aggregations.bucket.geogrid;
 
+import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 
 import java.io.IOException;
+import java.util.Locale;
 
 /**
  * Creates an aggregation based on bucketing points into GeoHashes
@@ -30,9 +32,12 @@ public class GeoHashGridBuilder extends AggregationBuilder<GeoHashGridBuilder> {
 
 
     private String field;
-    private int precision = GeoHashGridParser.DEFAULT_PRECISION;
+    private GeoGridCellType cellType = GeoGridCellType.GEOHASH;
+    private Integer precision;
     private int requiredSize = GeoHashGridParser.DEFAULT_MAX_NUM_CELLS;
     private int shardSize = 0;
+    private GeoPoint topLeft;
+    private GeoPoint bottomRight;
 
     /**
      * Sole constructor.
@@ -50,18 +55,42 @@ public class GeoHashGridBuilder extends AggregationBuilder<GeoHashGridBuilder> {
     }
 
     /**
-     * Set the geohash precision to use for this aggregation. The higher the
-     * precision, the more fine-grained this aggregation will be.
+     * Set the type of cells to bucket points into, geohashes by default.
+     */
+    public GeoHashGridBuilder cellType(GeoGridCellType cellType) {
+        if (precision != null && (precision < cellType.minPrecision() || precision > cellType.maxPrecision())) {
+            throw new IllegalArgumentException("Invalid geohash aggregation precision of " + precision
+                    + " must be between " + cellType.minPrecision() + " and " + cellType.maxPrecision());
+        }
+        this.cellType = cellType;
+        return this;
+    }
+
+    /**
+     * Set the geohash precision to use for this aggregation, or the zoom level
+     * for tiles. The higher the precision, the more fine-grained this
+     * aggregation will be.
      */
     public GeoHashGridBuilder precision(int precision) {
-        if ((precision < 1) || (precision > 12)) {
+        if ((precision < cellType.minPrecision()) || (precision > cellType.maxPrecision())) {
             throw new IllegalArgumentException("Invalid geohash aggregation precision of " + precision
-                    + "must be between 1 and 12");
+                    + " must be between " + cellType.minPrecision() + " and " + cellType.maxPrecision());
         }
         this.precision = precision;
         return this;
     }
 
+    /**
+     * Only aggregate points that are within the given bounding box. If no
+     * precision is set, the highest precision that creates at most
+     * <code>size</code> cells within the bounding box will be used.
+     */
+    public GeoHashGridBuilder bounds(GeoPoint topLeft, GeoPoint bottomRight) {
+        this.topLeft = topLeft;
+        this.bottomRight = bottomRight;
+        return this;
+    }
+
     /**
      * Set the number of buckets to return.
      */
@@ -85,9 +114,18 @@ public class GeoHashGridBuilder extends AggregationBuilder<GeoHashGridBuilder> {
         if (field != null) {
             builder.field("field", field);
         }
-        if (precision != GeoHashGridParser.DEFAULT_PRECISION) {
+        if (cellType != GeoGridCellType.GEOHASH) {
+            builder.field(GeoHashGridParser.TYPE_FIELD.getPreferredName(), cellType.name().toLowerCase(Locale.ROOT));
+        }
+        if (precision != null) {
             builder.field("precision", precision);
         }
+        if (topLeft != null && bottomRight != null) {
+            builder.startObject(GeoHashGridParser.BOUNDS_FIELD.getPreferredName());
+            builder.array(GeoHashGridParser.TOP_LEFT_FIELD.getPreferredName(), topLeft.lon(), topLeft.lat());
+            builder.array(GeoHashGridParser.BOTTOM_RIGHT_FIELD.getPreferredName(), bottomRight.lon(), bottomRight.lat());
+            builder.endObject();
+        }
         if (requiredSize != GeoHashGridParser.DEFAULT_MAX_NUM_CELLS) {
             builder.field("size", requiredSize);
         }
@@ -18,18 +18,13 @@
  */
 package org.elasticsearch.search.aggregations.bucket.geogrid;
 
-import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.SortedNumericDocValues;
-import org.elasticsearch.common.geo.GeoHashUtils;
+import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.geo.GeoUtils;
 import org.elasticsearch.common.xcontent.XContentParser;
-import org.elasticsearch.index.fielddata.MultiGeoPointValues;
-import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
-import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
-import org.elasticsearch.index.fielddata.SortingNumericDocValues;
 import org.elasticsearch.index.query.GeoBoundingBoxQueryBuilder;
+import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.aggregations.Aggregator;
-import org.elasticsearch.search.aggregations.AggregatorBase;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.NonCollectingAggregator;
@@ -51,6 +46,10 @@ import java.util.Map;
  * Aggregates Geo information into cells determined by geohashes of a given precision.
  * WARNING - for high-precision geohashes it may prove necessary to use a {@link GeoBoundingBoxQueryBuilder}
  * aggregation to focus in on a smaller area to avoid generating too many buckets and using too much RAM
+ *
+ * Alternatively, <tt>bounds</tt> can be provided in order to only aggregate points of the viewport. If the
+ * precision is not configured, the highest precision whose cells that intersect the bounds are at most
+ * <tt>size</tt> is then used.
  */
 public class GeoHashGridParser implements Aggregator.Parser {
 
@@ -62,14 +61,22 @@ public class GeoHashGridParser implements Aggregator.Parser {
     public static final int DEFAULT_PRECISION = 5;
     public static final int DEFAULT_MAX_NUM_CELLS = 10000;
 
+    static final ParseField TYPE_FIELD = new ParseField("type");
+    static final ParseField BOUNDS_FIELD = new ParseField("bounds");
+    static final ParseField TOP_LEFT_FIELD = new ParseField("top_left");
+    static final ParseField BOTTOM_RIGHT_FIELD = new ParseField("bottom_right");
+
     @Override
     public AggregatorFactory parse(String aggregationName, XContentParser parser, SearchContext context) throws IOException {
 
         ValuesSourceParser vsParser = ValuesSourceParser.geoPoint(aggregationName, InternalGeoHashGrid.TYPE, context).build();
 
-        int precision = DEFAULT_PRECISION;
+        int precision = -1;
         int requiredSize = DEFAULT_MAX_NUM_CELLS;
         int shardSize = -1;
+        GeoGridCellType cellType = GeoGridCellType.GEOHASH;
+        GeoPoint topLeft = null;
+        GeoPoint bottomRight = null;
 
         XContentParser.Token token;
         String currentFieldName = null;
@@ -86,6 +93,46 @@ public class GeoHashGridParser implements Aggregator.Parser {
                 } else if ("shard_size".equals(currentFieldName) || "shardSize".equals(currentFieldName)) {
                     shardSize = parser.intValue();
                 }
+            } else if (token == XContentParser.Token.VALUE_STRING) {
+                if (context.parseFieldMatcher().match(currentFieldName, TYPE_FIELD)) {
+                    try {
+                        cellType = GeoGridCellType.parse(parser.text());
+                    } catch (IllegalArgumentException e) {
+                        throw new SearchParseException(context, e.getMessage() + " in [" + aggregationName + "]", parser.getTokenLocation());
+                    }
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (context.parseFieldMatcher().match(currentFieldName, BOUNDS_FIELD)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                        if (token == XContentParser.Token.FIELD_NAME) {
+                            currentFieldName = parser.currentName();
+                        } else if (context.parseFieldMatcher().match(currentFieldName, TOP_LEFT_FIELD)) {
+                            topLeft = GeoUtils.parseGeoPoint(parser);
+                        } else if (context.parseFieldMatcher().match(currentFieldName, BOTTOM_RIGHT_FIELD)) {
+                            bottomRight = GeoUtils.parseGeoPoint(parser);
+                        } else {
+                            throw new SearchParseException(context, "Unknown key for bounds in [" + aggregationName + "]: ["
+                                    + currentFieldName + "].", parser.getTokenLocation());
+                        }
+                    }
+                } else {
+                    throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: ["
+                            + currentFieldName + "].", parser.getTokenLocation());
+                }
+            }
+        }
+
+        GeoBoundingBox bounds = null;
+        if (topLeft != null || bottomRight != null) {
+            if (topLeft == null || bottomRight == null) {
+                throw new SearchParseException(context, "[bounds] of [" + aggregationName + "] requires both [top_left] and [bottom_right]",
+                        parser.getTokenLocation());
+            }
+            try {
+                bounds = new GeoBoundingBox(topLeft.lat(), topLeft.lon(), bottomRight.lat(), bottomRight.lon());
+            } catch (IllegalArgumentException e) {
+                throw new SearchParseException(context, "Invalid [bounds] in [" + aggregationName + "]: " + e.getMessage(),
+                        parser.getTokenLocation());
             }
         }
 
@@ -106,20 +153,37 @@ public class GeoHashGridParser implements Aggregator.Parser {
             shardSize = requiredSize;
         }
 
-        return new GeoGridFactory(aggregationName, vsParser.config(), precision, requiredSize, shardSize);
+        if (precision == -1) {
+            if (bounds != null) {
+                // the number of cells of the viewport is bounded by the number of buckets that will be returned
+                precision = cellType.precision(bounds.top, bounds.left, bounds.bottom, bounds.right, requiredSize);
+            } else {
+                precision = Math.max(cellType.minPrecision(), Math.min(DEFAULT_PRECISION, cellType.maxPrecision()));
+            }
+        } else if (precision < cellType.minPrecision() || precision > cellType.maxPrecision()) {
+            throw new SearchParseException(context, "Invalid precision of [" + precision + "] in [" + aggregationName + "], must be between "
+                    + cellType.minPrecision() + " and " + cellType.maxPrecision(), parser.getTokenLocation());
+        }
+
+        return new GeoGridFactory(aggregationName, vsParser.config(), cellType, precision, bounds, requiredSize, shardSize);
 
     }
 
 
     private static class GeoGridFactory extends ValuesSourceAggregatorFactory<ValuesSource.GeoPoint> {
 
-        private int precision;
-        private int requiredSize;
-        private int shardSize;
+        private final GeoGridCellType cellType;
+        private final int precision;
+        private final GeoBoundingBox bounds;
+        private final int requiredSize;
+        private final int shardSize;
 
-        public GeoGridFactory(String name, ValuesSourceConfig<ValuesSource.GeoPoint> config, int precision, int requiredSize, int shardSize) {
+        public GeoGridFactory(String name, ValuesSourceConfig<ValuesSource.GeoPoint> config, GeoGridCellType cellType, int precision,
+                GeoBoundingBox bounds, int requiredSize, int shardSize) {
             super(name, InternalGeoHashGrid.TYPE.name(), config);
+            this.cellType = cellType;
             this.precision = precision;
+            this.bounds = bounds;
             this.requiredSize = requiredSize;
             this.shardSize = shardSize;
         }
@@ -127,7 +191,7 @@ public class GeoHashGridParser implements Aggregator.Parser {
         @Override
         protected Aggregator createUnmapped(AggregationContext aggregationContext, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
                 Map<String, Object> metaData) throws IOException {
-            final InternalAggregation aggregation = new InternalGeoHashGrid(name, requiredSize,
+            final InternalAggregation aggregation = new InternalGeoHashGrid(name, requiredSize, cellType,
                     Collections.<InternalGeoHashGrid.Bucket> emptyList(), pipelineAggregators, metaData);
             return new NonCollectingAggregator(name, aggregationContext, parent, pipelineAggregators, metaData) {
                 public InternalAggregation buildEmptyAggregation() {
@@ -143,66 +207,11 @@ public class GeoHashGridParser implements Aggregator.Parser {
             if (collectsFromSingleBucket == false) {
                 return asMultiBucketAggregator(this, aggregationContext, parent);
             }
-            ValuesSource.Numeric cellIdSource = new CellIdSource(valuesSource, precision);
+            CellIdSource cellIdSource = new CellIdSource(valuesSource, cellType, precision, bounds);
             return new GeoHashGridAggregator(name, factories, cellIdSource, requiredSize, shardSize, aggregationContext, parent, pipelineAggregators,
                     metaData);
 
         }
-
-        private static class CellValues extends SortingNumericDocValues {
-
-            private MultiGeoPointValues geoValues;
-            private int precision;
-
-            protected CellValues(MultiGeoPointValues geoValues, int precision) {
-                this.geoValues = geoValues;
-                this.precision = precision;
-            }
-
-            @Override
-            public void setDocument(int docId) {
-                geoValues.setDocument(docId);
-                resize(geoValues.count());
-                for (int i = 0; i < count(); ++i) {
-                    GeoPoint target = geoValues.valueAt(i);
-                    values[i] = GeoHashUtils.encodeAsLong(target.getLat(), target.getLon(), precision);
-                }
-                sort();
-            }
-
-        }
-
-        private static class CellIdSource extends ValuesSource.Numeric {
-            private final ValuesSource.GeoPoint valuesSource;
-            private final int precision;
-
-            public CellIdSource(ValuesSource.GeoPoint valuesSource, int precision) {
-                this.valuesSource = valuesSource;
-                //different GeoPoints could map to the same or different geohash cells.
-                this.precision = precision;
-            }
-
-            @Override
-            public boolean isFloatingPoint() {
-                return false;
-            }
-
-            @Override
-            public SortedNumericDocValues longValues(LeafReaderContext ctx) {
-                return new CellValues(valuesSource.geoPointValues(ctx), precision);
-            }
-
-            @Override
-            public SortedNumericDoubleValues doubleValues(LeafReaderContext ctx) {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public SortedBinaryDocValues bytesValues(LeafReaderContext ctx) {
-                throw new UnsupportedOperationException();
-            }
-
-        }
     }
 
-}
\ No newline at end of file
+}
@@ -19,7 +19,7 @@
 package org.elasticsearch.search.aggregations.bucket.geogrid;
 
 import org.apache.lucene.util.PriorityQueue;
-import org.elasticsearch.common.geo.GeoHashUtils;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -38,12 +38,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Represents a grid of cells where each cell's location is determined by a geohash.
- * All geohashes in a grid are of the same precision and held internally as a single long
+ * Represents a grid of cells where each cell's location is determined by a geohash, or a map tile.
+ * All cells in a grid are of the same precision and held internally as a single long
  * for efficiency's sake.
  */
 public class InternalGeoHashGrid extends InternalMultiBucketAggregation<InternalGeoHashGrid, InternalGeoHashGrid.Bucket> implements
@@ -51,6 +52,8 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
 
     public static final Type TYPE = new Type("geohash_grid", "ghcells");
 
+    private static final String CELL_TYPE_ATTRIBUTE = "cell_type";
+
     public static final AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
         @Override
         public InternalGeoHashGrid readResult(StreamInput in) throws IOException {
@@ -65,6 +68,9 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
         @Override
         public Bucket readResult(StreamInput in, BucketStreamContext context) throws IOException {
             Bucket bucket = new Bucket();
+            if (context.attributes() != null && context.attributes().containsKey(CELL_TYPE_ATTRIBUTE)) {
+                bucket.cellType = (GeoGridCellType) context.attributes().get(CELL_TYPE_ATTRIBUTE);
+            }
             bucket.readFrom(in);
             return bucket;
         }
@@ -72,6 +78,11 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
         @Override
         public BucketStreamContext getBucketStreamContext(Bucket bucket) {
             BucketStreamContext context = new BucketStreamContext();
+            if (bucket.cellType != GeoGridCellType.GEOHASH) {
+                Map<String, Object> attributes = new HashMap<>();
+                attributes.put(CELL_TYPE_ATTRIBUTE, bucket.cellType);
+                context.attributes(attributes);
+            }
             return context;
         }
     };
@@ -87,6 +98,7 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
         protected long geohashAsLong;
         protected long docCount;
         protected InternalAggregations aggregations;
+        protected GeoGridCellType cellType = GeoGridCellType.GEOHASH;
 
         public Bucket() {
             // For Serialization only
@@ -100,12 +112,12 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
 
         @Override
         public String getKeyAsString() {
-            return GeoHashUtils.toString(geohashAsLong);
+            return cellType.toString(geohashAsLong);
         }
 
         @Override
         public GeoPoint getKey() {
-            return GeoHashUtils.decode(geohashAsLong);
+            return cellType.center(geohashAsLong);
         }
 
         @Override
@@ -137,7 +149,9 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
                 aggregationsList.add(bucket.aggregations);
             }
             final InternalAggregations aggs = InternalAggregations.reduce(aggregationsList, context);
-            return new Bucket(geohashAsLong, docCount, aggs);
+            final Bucket reduced = new Bucket(geohashAsLong, docCount, aggs);
+            reduced.cellType = cellType;
+            return reduced;
         }
 
         @Override
@@ -165,6 +179,7 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
         }
     }
     private int requiredSize;
+    private GeoGridCellType cellType;
     private Collection<Bucket> buckets;
     protected Map<String, Bucket> bucketMap;
 
@@ -173,9 +188,18 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
 
     public InternalGeoHashGrid(String name, int requiredSize, Collection<Bucket> buckets, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) {
+        this(name, requiredSize, GeoGridCellType.GEOHASH, buckets, pipelineAggregators, metaData);
+    }
+
+    public InternalGeoHashGrid(String name, int requiredSize, GeoGridCellType cellType, Collection<Bucket> buckets,
+            List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
         super(name, pipelineAggregators, metaData);
         this.requiredSize = requiredSize;
+        this.cellType = cellType;
         this.buckets = buckets;
+        for (Bucket bucket : buckets) {
+            bucket.cellType = cellType;
+        }
     }
 
     @Override
@@ -185,12 +209,14 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
 
     @Override
     public InternalGeoHashGrid create(List<Bucket> buckets) {
-        return new InternalGeoHashGrid(this.name, this.requiredSize, buckets, this.pipelineAggregators(), this.metaData);
+        return new InternalGeoHashGrid(this.name, this.requiredSize, cellType, buckets, this.pipelineAggregators(), this.metaData);
     }
 
     @Override
     public Bucket createBucket(InternalAggregations aggregations, Bucket prototype) {
-        return new Bucket(prototype.geohashAsLong, prototype.docCount, aggregations);
+        Bucket bucket = new Bucket(prototype.geohashAsLong, prototype.docCount, aggregations);
+        bucket.cellType = prototype.cellType;
+        return bucket;
     }
 
     @Override
@@ -229,16 +255,22 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
         for (int i = ordered.size() - 1; i >= 0; i--) {
             list[i] = ordered.pop();
         }
-        return new InternalGeoHashGrid(getName(), requiredSize, Arrays.asList(list), pipelineAggregators(), getMetaData());
+        return new InternalGeoHashGrid(getName(), requiredSize, cellType, Arrays.asList(list), pipelineAggregators(), getMetaData());
     }
 
     @Override
     protected void doReadFrom(StreamInput in) throws IOException {
         this.requiredSize = readSize(in);
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            cellType = GeoGridCellType.readFrom(in);
+        } else {
+            cellType = GeoGridCellType.GEOHASH;
+        }
         int size = in.readVInt();
         List<Bucket> buckets = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
             Bucket bucket = new Bucket();
+            bucket.cellType = cellType;
             bucket.readFrom(in);
             buckets.add(bucket);
         }
@@ -249,6 +281,11 @@ public class InternalGeoHashGrid extends InternalMultiBucketAggregation<Internal
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
         writeSize(requiredSize, out);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            cellType.writeTo(out);
+        } else if (cellType != GeoGridCellType.GEOHASH) {
+            throw new IllegalStateException("Cannot send [" + cellType + "] cells to nodes on version [" + out.getVersion() + "]");
+        }
         out.writeVInt(buckets.size());
         for (Bucket bucket : buckets) {
             bucket.writeTo(out);
@@ -0,0 +1,219 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.histogram;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.rounding.DateTimeUnit;
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.rounding.TimeZoneRounding;
+import org.elasticsearch.common.unit.TimeValue;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+
+/**
+ * Picks the interval of a <tt>date_histogram</tt> so that it has at most <code>max_buckets</code> buckets.
+ *
+ * Candidate intervals are sorted from the finest to the coarsest and each of them is a multiple of the finer
+ * ones, so that buckets that have been computed with an interval can be merged into the buckets of any coarser
+ * interval by rounding their keys. This is what allows shards to pick an interval based on their own data and
+ * the reduce phase to reconcile them.
+ */
+final class AutoInterval {
+
+    private static final long DAY_MILLIS = TimeValue.timeValueHours(24).millis();
+
+    /**
+     * A candidate interval along with the minimum and maximum length of its buckets in a fixed time zone.
+     */
+    private static class Candidate {
+
+        final Object interval; // a DateTimeUnit or a TimeValue
+        final String expression;
+        final long minMillis;
+        final long maxMillis;
+
+        Candidate(DateTimeUnit unit, String expression, long minMillis, long maxMillis) {
+            this.interval = unit;
+            this.expression = expression;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        Candidate(DateTimeUnit unit, String expression, TimeValue length) {
+            this(unit, expression, length.millis(), length.millis());
+        }
+
+        Candidate(TimeValue interval) {
+            this.interval = interval;
+            this.expression = interval.toString();
+            this.minMillis = this.maxMillis = interval.millis();
+        }
+    }
+
+    private static final Candidate[] CANDIDATES = new Candidate[] {
+            new Candidate(DateTimeUnit.SECOND_OF_MINUTE, "second", TimeValue.timeValueSeconds(1)),
+            new Candidate(TimeValue.timeValueSeconds(5)),
+            new Candidate(TimeValue.timeValueSeconds(10)),
+            new Candidate(TimeValue.timeValueSeconds(30)),
+            new Candidate(DateTimeUnit.MINUTES_OF_HOUR, "minute", TimeValue.timeValueMinutes(1)),
+            new Candidate(TimeValue.timeValueMinutes(5)),
+            new Candidate(TimeValue.timeValueMinutes(10)),
+            new Candidate(TimeValue.timeValueMinutes(30)),
+            new Candidate(DateTimeUnit.HOUR_OF_DAY, "hour", TimeValue.timeValueHours(1)),
+            new Candidate(TimeValue.timeValueHours(3)),
+            new Candidate(TimeValue.timeValueHours(12)),
+            new Candidate(DateTimeUnit.DAY_OF_MONTH, "day", TimeValue.timeValueHours(24)),
+            new Candidate(DateTimeUnit.MONTH_OF_YEAR, "month", 28 * DAY_MILLIS, 31 * DAY_MILLIS),
+            new Candidate(DateTimeUnit.QUARTER, "quarter", 89 * DAY_MILLIS, 92 * DAY_MILLIS),
+            new Candidate(DateTimeUnit.YEAR_OF_CENTURY, "year", 365 * DAY_MILLIS, 366 * DAY_MILLIS)
+    };
+
+    static final int COARSEST = CANDIDATES.length - 1;
+
+    private final int maxBuckets;
+    private final DateTimeZone timeZone;
+    private final long offset;
+    private final int index;
+    private final Rounding rounding;
+
+    AutoInterval(int maxBuckets, DateTimeZone timeZone, long offset) {
+        this(maxBuckets, timeZone, offset, 0);
+    }
+
+    private AutoInterval(int maxBuckets, DateTimeZone timeZone, long offset, int index) {
+        if (maxBuckets < 1) {
+            throw new IllegalArgumentException("[max_buckets] must be greater than 0, got [" + maxBuckets + "]");
+        }
+        this.maxBuckets = maxBuckets;
+        this.timeZone = timeZone;
+        this.offset = offset;
+        this.index = index;
+        this.rounding = buildRounding(index);
+    }
+
+    private Rounding buildRounding(int index) {
+        final Object interval = CANDIDATES[index].interval;
+        final TimeZoneRounding.Builder builder;
+        if (interval instanceof DateTimeUnit) {
+            builder = TimeZoneRounding.builder((DateTimeUnit) interval);
+        } else {
+            builder = TimeZoneRounding.builder((TimeValue) interval);
+        }
+        return builder.timeZone(timeZone).offset(offset).build();
+    }
+
+    int maxBuckets() {
+        return maxBuckets;
+    }
+
+    /** The position of the selected interval among candidate intervals, 0 being the finest one. */
+    int index() {
+        return index;
+    }
+
+    /** The rounding of the selected interval. */
+    Rounding rounding() {
+        return rounding;
+    }
+
+    /** The selected interval, as it would be given in the <code>interval</code> of a <tt>date_histogram</tt>. */
+    String expression() {
+        return CANDIDATES[index].expression;
+    }
+
+    /**
+     * Return the finest interval that is not finer than the current one and creates at most <code>maxBuckets</code>
+     * buckets between <code>min</code> and <code>max</code>. The coarsest interval is returned if none qualifies.
+     */
+    AutoInterval select(long min, long max) {
+        assert min <= max;
+        AutoInterval selected = this;
+        while (selected.index < COARSEST && selected.fits(min, max) == false) {
+            selected = selected.withIndex(selected.index + 1);
+        }
+        return selected;
+    }
+
+    /** Return the coarsest candidate interval, used when the range of values is unknown. */
+    AutoInterval coarsest() {
+        return withIndex(COARSEST);
+    }
+
+    AutoInterval withIndex(int index) {
+        if (index == this.index) {
+            return this;
+        }
+        return new AutoInterval(maxBuckets, timeZone, offset, index);
+    }
+
+    /**
+     * Whether the selected interval creates at most <code>maxBuckets</code> buckets between <code>min</code> and
+     * <code>max</code>. The number of buckets is estimated from the length of buckets, and buckets are only counted
+     * when the estimate is too close to <code>maxBuckets</code> to decide.
+     */
+    boolean fits(long min, long max) {
+        final Candidate candidate = CANDIDATES[index];
+        final double range = (double) max - min;
+        // time zone transitions, eg. daylight saving time, make some buckets shorter or longer, we assume that there
+        // are at most two transitions per year and that they shift time by less than a day
+        final double shift = timeZone.isFixed() ? 0 : 2 * DAY_MILLIS * (range / (365 * DAY_MILLIS) + 1);
+        if ((range - shift) / candidate.maxMillis > maxBuckets + 1) {
+            return false;
+        }
+        if ((range + shift) / candidate.minMillis + 3 <= maxBuckets) {
+            return true;
+        }
+        return countFits(rounding, min, max, maxBuckets);
+    }
+
+    /**
+     * Whether <code>rounding</code> creates at most <code>maxBuckets</code> buckets between <code>min</code> and
+     * <code>max</code>, by enumerating buckets. Runs in O(maxBuckets) at most.
+     */
+    static boolean countFits(Rounding rounding, long min, long max, int maxBuckets) {
+        int count = 0;
+        for (long key = rounding.round(min); key <= max; key = rounding.nextRoundingValue(key)) {
+            if (++count > maxBuckets) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static AutoInterval readFrom(StreamInput in) throws IOException {
+        final int maxBuckets = in.readVInt();
+        final DateTimeZone timeZone = DateTimeZone.forID(in.readString());
+        final long offset = in.readLong();
+        final int index = in.readVInt();
+        if (index > COARSEST) {
+            throw new IllegalStateException("Unknown auto interval [" + index + "]");
+        }
+        return new AutoInterval(maxBuckets, timeZone, offset, index);
+    }
+
+    void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(maxBuckets);
+        out.writeString(timeZone.getID());
+        out.writeLong(offset);
+        out.writeVInt(index);
+    }
+}
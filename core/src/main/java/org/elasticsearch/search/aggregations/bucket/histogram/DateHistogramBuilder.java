@@ -33,6 +33,7 @@ import java.io.IOException;
 public class DateHistogramBuilder extends ValuesSourceAggregationBuilder<DateHistogramBuilder> {
 
     private Object interval;
+    private Integer maxBuckets;
     private Histogram.Order order;
     private Long minDocCount;
     private Object extendedBoundsMin;
@@ -65,6 +66,15 @@ public class DateHistogramBuilder extends ValuesSourceAggregationBuilder<DateHis
         return this;
     }
 
+    /**
+     * Instead of setting a fixed interval, let shards pick the finest interval that creates at most
+     * <code>maxBuckets</code> buckets.
+     */
+    public DateHistogramBuilder maxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+        return this;
+    }
+
     /**
      * Set the order by which the buckets will be returned.
      */
@@ -151,13 +161,21 @@ public class DateHistogramBuilder extends ValuesSourceAggregationBuilder<DateHis
 
     @Override
     protected XContentBuilder doInternalXContent(XContentBuilder builder, Params params) throws IOException {
-        if (interval == null) {
-            throw new SearchSourceBuilderException("[interval] must be defined for histogram aggregation [" + getName() + "]");
-        }
-        if (interval instanceof Number) {
-            interval = TimeValue.timeValueMillis(((Number) interval).longValue()).toString();
+        if (maxBuckets != null) {
+            if (interval != null) {
+                throw new SearchSourceBuilderException("[interval] and [max_buckets] cannot be both defined for histogram aggregation ["
+                        + getName() + "]");
+            }
+            builder.field(DateHistogramParser.MAX_BUCKETS.getPreferredName(), maxBuckets);
+        } else {
+            if (interval == null) {
+                throw new SearchSourceBuilderException("[interval] must be defined for histogram aggregation [" + getName() + "]");
+            }
+            if (interval instanceof Number) {
+                interval = TimeValue.timeValueMillis(((Number) interval).longValue()).toString();
+            }
+            builder.field("interval", interval);
         }
-        builder.field("interval", interval);
 
         if (minDocCount != null) {
             builder.field("min_doc_count", minDocCount);
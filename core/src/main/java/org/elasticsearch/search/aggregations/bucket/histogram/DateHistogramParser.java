@@ -48,6 +48,7 @@ public class DateHistogramParser implements Aggregator.Parser {
     static final ParseField TIME_ZONE = new ParseField("time_zone");
     static final ParseField OFFSET = new ParseField("offset");
     static final ParseField INTERVAL = new ParseField("interval");
+    static final ParseField MAX_BUCKETS = new ParseField("max_buckets");
 
     public static final ImmutableMap<String, DateTimeUnit> DATE_FIELD_UNITS;
 
@@ -90,6 +91,7 @@ public class DateHistogramParser implements Aggregator.Parser {
         ExtendedBounds extendedBounds = null;
         InternalOrder order = (InternalOrder) Histogram.Order.KEY_ASC;
         String interval = null;
+        Integer maxBuckets = null;
         DateTimeZone timeZone = DateTimeZone.UTC;
         long offset = 0;
 
@@ -123,6 +125,8 @@ public class DateHistogramParser implements Aggregator.Parser {
                     minDocCount = parser.longValue();
                 } else if ("time_zone".equals(currentFieldName) || "timeZone".equals(currentFieldName)) {
                     timeZone = DateTimeZone.forOffsetHours(parser.intValue());
+                } else if (context.parseFieldMatcher().match(currentFieldName, MAX_BUCKETS)) {
+                    maxBuckets = parser.intValue();
                 } else {
                     throw new SearchParseException(context, "Unknown key for a " + token + " in [" + aggregationName + "]: ["
                             + currentFieldName + "].", parser.getTokenLocation());
@@ -178,6 +182,26 @@ public class DateHistogramParser implements Aggregator.Parser {
             }
         }
 
+        ValuesSourceConfig config = vsParser.config();
+        if (config.formatter()!=null) {
+            ((DateTime) config.formatter()).setTimeZone(timeZone);
+        }
+
+        if (maxBuckets != null) {
+            if (interval != null) {
+                throw new SearchParseException(context, "[interval] and [max_buckets] cannot be used together in histogram aggregation ["
+                        + aggregationName + "]", parser.getTokenLocation());
+            }
+            if (maxBuckets < 1) {
+                throw new SearchParseException(context, "[max_buckets] must be greater than 0 in histogram aggregation ["
+                        + aggregationName + "], got [" + maxBuckets + "]", parser.getTokenLocation());
+            }
+            // the interval is picked on each shard, the finest one is only used if the field is unmapped
+            AutoInterval autoInterval = new AutoInterval(maxBuckets, timeZone, offset);
+            return new HistogramAggregator.Factory(aggregationName, config, autoInterval.rounding(), order, keyed, minDocCount,
+                    extendedBounds, new InternalDateHistogram.Factory(), autoInterval);
+        }
+
         if (interval == null) {
             throw new SearchParseException(context,
                     "Missing required field [interval] for histogram aggregation [" + aggregationName + "]", parser.getTokenLocation());
@@ -196,10 +220,6 @@ public class DateHistogramParser implements Aggregator.Parser {
                 .timeZone(timeZone)
                 .offset(offset).build();
 
-        ValuesSourceConfig config = vsParser.config();
-        if (config.formatter()!=null) {
-            ((DateTime) config.formatter()).setTimeZone(timeZone);
-        }
         return new HistogramAggregator.Factory(aggregationName, config, rounding, order, keyed, minDocCount, extendedBounds,
                 new InternalDateHistogram.Factory());
 
@@ -42,6 +42,12 @@ public interface Histogram extends MultiBucketsAggregation {
     @Override
     List<? extends Bucket> getBuckets();
 
+    /**
+     * @return  The interval that was picked based on <code>max_buckets</code>, eg. <code>1h</code> or <code>month</code>,
+     *          or <tt>null</tt> if the interval was given explicitly
+     */
+    String getAutoInterval();
+
 
     /**
      * A strategy defining the order in which the buckets in this histogram are ordered.
@@ -18,8 +18,10 @@
  */
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.inject.internal.Nullable;
 import org.elasticsearch.common.lease.Releasables;
@@ -46,6 +48,16 @@ import java.util.Map;
 
 public class HistogramAggregator extends BucketsAggregator {
 
+    /**
+     * Maximum number of keys that may be precomputed for a segment. Precomputing a key costs a few roundings, so it only
+     * pays off if there are many more documents than keys.
+     */
+    static final int MAX_PREPARED_KEYS = 1024;
+
+    static int maxPreparedKeys(int maxDoc) {
+        return Math.min(MAX_PREPARED_KEYS, maxDoc / 8);
+    }
+
     private final ValuesSource.Numeric valuesSource;
     private final ValueFormatter formatter;
     private final Rounding rounding;
@@ -55,6 +67,7 @@ public class HistogramAggregator extends BucketsAggregator {
     private final long minDocCount;
     private final ExtendedBounds extendedBounds;
     private final InternalHistogram.Factory histogramFactory;
+    private final AutoInterval autoInterval;
 
     private final LongHash bucketOrds;
 
@@ -62,8 +75,19 @@ public class HistogramAggregator extends BucketsAggregator {
             long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
             ValueFormatter formatter, InternalHistogram.Factory<?> histogramFactory, AggregationContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        this(name, factories, rounding, order, keyed, minDocCount, extendedBounds, valuesSource, formatter, histogramFactory, null,
+                aggregationContext, parent, pipelineAggregators, metaData);
+    }
+
+    HistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, InternalOrder order, boolean keyed,
+            long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
+            ValueFormatter formatter, InternalHistogram.Factory<?> histogramFactory, @Nullable AutoInterval autoInterval,
+            AggregationContext aggregationContext, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
+            Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
+        assert autoInterval == null || autoInterval.rounding() == rounding;
+        this.autoInterval = autoInterval;
         this.rounding = rounding;
         this.order = order;
         this.keyed = keyed;
@@ -88,6 +112,40 @@ public class HistogramAggregator extends BucketsAggregator {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
+        final long[] minMax = valuesSource.longMinMax(ctx);
+        if (minMax != null && rounding.roundKey(minMax[0]) == rounding.roundKey(minMax[1])) {
+            // all values of the segment fall into the same bucket, only check which documents have a value
+            final long key = rounding.roundKey(minMax[0]);
+            final Bits docsWithValue = valuesSource.docsWithValue(ctx);
+            return new LeafBucketCollectorBase(sub, values) {
+
+                long bucketOrd = -1;
+
+                @Override
+                public void collect(int doc, long bucket) throws IOException {
+                    assert bucket == 0;
+                    if (docsWithValue.get(doc) == false) {
+                        return;
+                    }
+                    if (bucketOrd >= 0) {
+                        collectExistingBucket(sub, doc, bucketOrd);
+                    } else {
+                        bucketOrd = bucketOrds.add(key);
+                        if (bucketOrd < 0) { // already seen
+                            bucketOrd = -1 - bucketOrd;
+                            collectExistingBucket(sub, doc, bucketOrd);
+                        } else {
+                            collectBucket(sub, doc, bucketOrd);
+                        }
+                    }
+                }
+            };
+        }
+        // time zone roundings are costly, so precompute the keys of the segment when there are
+        // much fewer keys than documents
+        final Rounding rounding = minMax == null
+                ? this.rounding
+                : this.rounding.prepare(minMax[0], minMax[1], maxPreparedKeys(ctx.reader().maxDoc()));
         return new LeafBucketCollectorBase(sub, values) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
@@ -129,14 +187,19 @@ public class HistogramAggregator extends BucketsAggregator {
 
         // value source will be null for unmapped fields
         InternalHistogram.EmptyBucketInfo emptyBucketInfo = minDocCount == 0 ? new InternalHistogram.EmptyBucketInfo(rounding, buildEmptySubAggregations(), extendedBounds) : null;
-        return histogramFactory.create(name, buckets, order, minDocCount, emptyBucketInfo, formatter, keyed, pipelineAggregators(), metaData());
+        InternalHistogram<?> histogram = histogramFactory.create(name, buckets, order, minDocCount, emptyBucketInfo, formatter, keyed,
+                pipelineAggregators(), metaData());
+        histogram.autoInterval(autoInterval);
+        return histogram;
     }
 
     @Override
     public InternalAggregation buildEmptyAggregation() {
         InternalHistogram.EmptyBucketInfo emptyBucketInfo = minDocCount == 0 ? new InternalHistogram.EmptyBucketInfo(rounding, buildEmptySubAggregations(), extendedBounds) : null;
-        return histogramFactory.create(name, Collections.emptyList(), order, minDocCount, emptyBucketInfo, formatter, keyed, pipelineAggregators(),
-                metaData());
+        InternalHistogram<?> histogram = histogramFactory.create(name, Collections.emptyList(), order, minDocCount, emptyBucketInfo,
+                formatter, keyed, pipelineAggregators(), metaData());
+        histogram.autoInterval(autoInterval);
+        return histogram;
     }
 
     @Override
@@ -152,12 +215,28 @@ public class HistogramAggregator extends BucketsAggregator {
         private final long minDocCount;
         private final ExtendedBounds extendedBounds;
         private final InternalHistogram.Factory<?> histogramFactory;
+        private final AutoInterval autoInterval;
+        // the interval that was selected for the reader it was selected on, so that it is only selected once even if
+        // there is an aggregator per parent bucket
+        private IndexReader selectedReader;
+        private AutoInterval selectedInterval;
 
         public Factory(String name, ValuesSourceConfig<ValuesSource.Numeric> config,
                        Rounding rounding, InternalOrder order, boolean keyed, long minDocCount,
                        ExtendedBounds extendedBounds, InternalHistogram.Factory<?> histogramFactory) {
+            this(name, config, rounding, order, keyed, minDocCount, extendedBounds, histogramFactory, null);
+        }
+
+        /**
+         * Create a factory for a histogram whose interval is picked on each shard among the intervals of
+         * <code>autoInterval</code>. <code>rounding</code> is only used for unmapped fields.
+         */
+        Factory(String name, ValuesSourceConfig<ValuesSource.Numeric> config,
+                Rounding rounding, InternalOrder order, boolean keyed, long minDocCount,
+                ExtendedBounds extendedBounds, InternalHistogram.Factory<?> histogramFactory, @Nullable AutoInterval autoInterval) {
 
             super(name, histogramFactory.type(), config);
+            this.autoInterval = autoInterval;
             this.rounding = rounding;
             this.order = order;
             this.keyed = keyed;
@@ -174,7 +253,7 @@ public class HistogramAggregator extends BucketsAggregator {
         protected Aggregator createUnmapped(AggregationContext aggregationContext, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
                 Map<String, Object> metaData) throws IOException {
             return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, null, null, config.formatter(),
-                    histogramFactory, aggregationContext, parent, pipelineAggregators, metaData);
+                    histogramFactory, autoInterval, aggregationContext, parent, pipelineAggregators, metaData);
         }
 
         @Override
@@ -190,10 +269,76 @@ public class HistogramAggregator extends BucketsAggregator {
             if (extendedBounds != null) {
                 // we need to process & validate here using the parser
                 extendedBounds.processAndValidate(name, aggregationContext.searchContext(), config.parser());
+            }
+            Rounding rounding = this.rounding;
+            AutoInterval autoInterval = this.autoInterval;
+            if (autoInterval != null) {
+                final IndexReader reader = aggregationContext.searchContext().searcher().getIndexReader();
+                if (selectedReader != reader) {
+                    selectedInterval = selectInterval(autoInterval, valuesSource, aggregationContext);
+                    selectedReader = reader;
+                }
+                autoInterval = selectedInterval;
+                rounding = autoInterval.rounding();
+            }
+            if (extendedBounds != null) {
                 roundedBounds = extendedBounds.round(rounding);
             }
             return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, roundedBounds, valuesSource,
-                    config.formatter(), histogramFactory, aggregationContext, parent, pipelineAggregators, metaData);
+                    config.formatter(), histogramFactory, autoInterval, aggregationContext, parent, pipelineAggregators, metaData);
+        }
+
+        /**
+         * Pick the interval based on the range of values of this shard, extended with the extended bounds if any.
+         * Buckets are then directly collected with this interval, which keeps the number of buckets bounded.
+         */
+        private AutoInterval selectInterval(AutoInterval autoInterval, ValuesSource.Numeric valuesSource,
+                AggregationContext aggregationContext) throws IOException {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            if (extendedBounds != null && extendedBounds.min != null) {
+                min = max = extendedBounds.min;
+            }
+            if (extendedBounds != null && extendedBounds.max != null) {
+                min = Math.min(min, extendedBounds.max);
+                max = Math.max(max, extendedBounds.max);
+            }
+            for (LeafReaderContext ctx : aggregationContext.searchContext().searcher().getIndexReader().leaves()) {
+                long[] minMax = valuesSource.longMinMax(ctx);
+                if (minMax == null && valuesSource instanceof ValuesSource.Numeric.FieldData) {
+                    // the field is not indexed, fall back to doc values
+                    minMax = docValuesMinMax(valuesSource.longValues(ctx), ctx.reader().maxDoc());
+                    if (minMax == null) {
+                        continue; // no values in this segment
+                    }
+                }
+                if (minMax == null) {
+                    // eg. scripts, the range of values is unknown
+                    return autoInterval.coarsest();
+                }
+                min = Math.min(min, minMax[0]);
+                max = Math.max(max, minMax[1]);
+            }
+            if (min > max) {
+                // no values and no bounds, any interval works
+                return autoInterval;
+            }
+            return autoInterval.select(min, max);
+        }
+
+        private static long[] docValuesMinMax(SortedNumericDocValues values, int maxDoc) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int doc = 0; doc < maxDoc; ++doc) {
+                values.setDocument(doc);
+                final int count = values.count();
+                if (count > 0) {
+                    // values are sorted
+                    min = Math.min(min, values.valueAt(0));
+                    max = Math.max(max, values.valueAt(count - 1));
+                }
+            }
+            return min > max ? null : new long[] { min, max };
         }
 
     }
@@ -22,6 +22,7 @@ import com.google.common.collect.Lists;
 
 import org.apache.lucene.util.CollectionUtil;
 import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.rounding.Rounding;
@@ -55,6 +56,8 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
 
     final static Type TYPE = new Type("histogram", "histo");
 
+    static final String INTERVAL = "interval";
+
     private final static AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
         @Override
         public InternalHistogram readResult(StreamInput in) throws IOException {
@@ -176,6 +179,10 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         @Override
         public void readFrom(StreamInput in) throws IOException {
             key = in.readLong();
+            readDocCountAndAggregations(in);
+        }
+
+        void readDocCountAndAggregations(StreamInput in) throws IOException {
             docCount = in.readVLong();
             aggregations = InternalAggregations.readAggregations(in);
         }
@@ -183,6 +190,10 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             out.writeLong(key);
+            writeDocCountAndAggregations(out);
+        }
+
+        void writeDocCountAndAggregations(StreamOutput out) throws IOException {
             out.writeVLong(docCount);
             aggregations.writeTo(out);
         }
@@ -250,8 +261,11 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         }
 
         public InternalHistogram<B> create(List<B> buckets, InternalHistogram<B> prototype) {
-            return new InternalHistogram<>(prototype.name, buckets, prototype.order, prototype.minDocCount, prototype.emptyBucketInfo,
-                    prototype.formatter, prototype.keyed, this, prototype.pipelineAggregators(), prototype.metaData);
+            InternalHistogram<B> histogram = new InternalHistogram<>(prototype.name, buckets, prototype.order, prototype.minDocCount,
+                    prototype.emptyBucketInfo, prototype.formatter, prototype.keyed, this, prototype.pipelineAggregators(),
+                    prototype.metaData);
+            histogram.autoInterval(prototype.autoInterval);
+            return histogram;
         }
 
         public B createBucket(InternalAggregations aggregations, B prototype) {
@@ -278,6 +292,7 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
     private boolean keyed;
     private long minDocCount;
     private EmptyBucketInfo emptyBucketInfo;
+    private AutoInterval autoInterval; // null unless the interval is picked based on max_buckets
     protected Factory<B> factory;
 
     InternalHistogram() {} // for serialization
@@ -314,6 +329,15 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         return emptyBucketInfo.rounding;
     }
 
+    void autoInterval(AutoInterval autoInterval) {
+        this.autoInterval = autoInterval;
+    }
+
+    @Override
+    public String getAutoInterval() {
+        return autoInterval == null ? null : autoInterval.expression();
+    }
+
     @Override
     public InternalHistogram<B> create(List<B> buckets) {
         return getFactory().create(buckets, this);
@@ -336,7 +360,12 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
 
     }
 
-    private List<B> reduceBuckets(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+    /**
+     * Merge the buckets of <code>aggregations</code>. If <code>rounding</code> is not null, keys are rounded before
+     * being compared so that buckets that have been built with a finer interval are merged into the buckets of the
+     * interval of <code>rounding</code>.
+     */
+    private List<B> reduceBuckets(List<InternalAggregation> aggregations, final Rounding rounding, ReduceContext reduceContext) {
 
         final PriorityQueue<IteratorAndCurrent<B>> pq = new PriorityQueue<IteratorAndCurrent<B>>(aggregations.size()) {
             @Override
@@ -355,19 +384,22 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         if (pq.size() > 0) {
             // list of buckets coming from different shards that have the same key
             List<B> currentBuckets = new ArrayList<>();
-            long key = pq.top().current.key;
+            long key = rounding == null ? pq.top().current.key : rounding.round(pq.top().current.key);
 
             do {
                 final IteratorAndCurrent<B> top = pq.top();
+                // rounding is monotonic so rounded keys are still sorted
+                final long topKey = rounding == null ? top.current.key : rounding.round(top.current.key);
 
-                if (top.current.key != key) {
+                if (topKey != key) {
                     // the key changes, reduce what we already buffered and reset the buffer for current buckets
                     final B reduced = currentBuckets.get(0).reduce(currentBuckets, reduceContext);
+                    reduced.key = key;
                     if (reduced.getDocCount() >= minDocCount) {
                         reducedBuckets.add(reduced);
                     }
                     currentBuckets.clear();
-                    key = top.current.key;
+                    key = topKey;
                 }
 
                 currentBuckets.add(top.current);
@@ -384,6 +416,7 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
 
             if (currentBuckets.isEmpty() == false) {
                 final B reduced = currentBuckets.get(0).reduce(currentBuckets, reduceContext);
+                reduced.key = key;
                 if (reduced.getDocCount() >= minDocCount) {
                     reducedBuckets.add(reduced);
                 }
@@ -393,7 +426,7 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         return reducedBuckets;
     }
 
-    private void addEmptyBuckets(List<B> list) {
+    private void addEmptyBuckets(List<B> list, EmptyBucketInfo emptyBucketInfo) {
         B lastBucket = null;
         ExtendedBounds bounds = emptyBucketInfo.bounds;
         ListIterator<B> iter = list.listIterator();
@@ -451,11 +484,23 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
 
     @Override
     public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
-        List<B> reducedBuckets = reduceBuckets(aggregations, reduceContext);
+        AutoInterval autoInterval = this.autoInterval;
+        EmptyBucketInfo emptyBucketInfo = this.emptyBucketInfo;
+        Rounding rounding = null;
+        if (autoInterval != null) {
+            autoInterval = reduceAutoInterval(aggregations);
+            rounding = autoInterval.rounding();
+            if (emptyBucketInfo != null) {
+                ExtendedBounds bounds = emptyBucketInfo.bounds == null ? null : emptyBucketInfo.bounds.round(rounding);
+                emptyBucketInfo = new EmptyBucketInfo(rounding, emptyBucketInfo.subAggregations, bounds);
+            }
+        }
+
+        List<B> reducedBuckets = reduceBuckets(aggregations, rounding, reduceContext);
 
         // adding empty buckets if needed
         if (minDocCount == 0) {
-            addEmptyBuckets(reducedBuckets);
+            addEmptyBuckets(reducedBuckets, emptyBucketInfo);
         }
 
         if (order == InternalOrder.KEY_ASC) {
@@ -470,8 +515,46 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
             CollectionUtil.introSort(reducedBuckets, order.comparator());
         }
 
-        return getFactory().create(getName(), reducedBuckets, order, minDocCount, emptyBucketInfo, formatter, keyed, pipelineAggregators(),
-                getMetaData());
+        InternalHistogram<B> reduced = getFactory().create(getName(), reducedBuckets, order, minDocCount, emptyBucketInfo, formatter, keyed,
+                pipelineAggregators(), getMetaData());
+        reduced.autoInterval(autoInterval);
+        return reduced;
+    }
+
+    /**
+     * Shards pick their interval based on their own data, so the merged range of keys might need a coarser interval
+     * to fit into <code>max_buckets</code>. Since intervals only get coarser, each shard response is merged at most
+     * once and the number of buckets stays bounded.
+     */
+    private AutoInterval reduceAutoInterval(List<InternalAggregation> aggregations) {
+        AutoInterval coarsest = autoInterval;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (InternalAggregation aggregation : aggregations) {
+            InternalHistogram<?> histogram = (InternalHistogram<?>) aggregation;
+            if (histogram.autoInterval != null && histogram.autoInterval.index() > coarsest.index()) {
+                coarsest = histogram.autoInterval;
+            }
+            if (histogram.buckets.isEmpty() == false) {
+                // buckets are sorted by key on shards
+                min = Math.min(min, histogram.buckets.get(0).key);
+                max = Math.max(max, histogram.buckets.get(histogram.buckets.size() - 1).key);
+            }
+        }
+        if (emptyBucketInfo != null && emptyBucketInfo.bounds != null) {
+            if (emptyBucketInfo.bounds.min != null) {
+                min = Math.min(min, emptyBucketInfo.bounds.min);
+                max = Math.max(max, emptyBucketInfo.bounds.min);
+            }
+            if (emptyBucketInfo.bounds.max != null) {
+                min = Math.min(min, emptyBucketInfo.bounds.max);
+                max = Math.max(max, emptyBucketInfo.bounds.max);
+            }
+        }
+        if (min > max) {
+            return coarsest;
+        }
+        return coarsest.select(min, max);
     }
 
     @Override
@@ -484,12 +567,27 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         }
         formatter = ValueFormatterStreams.readOptional(in);
         keyed = in.readBoolean();
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1) && in.readBoolean()) {
+            autoInterval = AutoInterval.readFrom(in);
+        }
         int size = in.readVInt();
         List<B> buckets = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            B bucket = getFactory().createEmptyBucket(keyed, formatter);
-            bucket.readFrom(in);
-            buckets.add(bucket);
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            // keys are delta-encoded, which is compact since buckets are sorted by key on shards
+            long key = 0;
+            for (int i = 0; i < size; i++) {
+                B bucket = getFactory().createEmptyBucket(keyed, formatter);
+                key += in.readZLong();
+                bucket.key = key;
+                bucket.readDocCountAndAggregations(in);
+                buckets.add(bucket);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                B bucket = getFactory().createEmptyBucket(keyed, formatter);
+                bucket.readFrom(in);
+                buckets.add(bucket);
+            }
         }
         this.buckets = buckets;
     }
@@ -515,14 +613,32 @@ public class InternalHistogram<B extends InternalHistogram.Bucket> extends Inter
         }
         ValueFormatterStreams.writeOptional(formatter, out);
         out.writeBoolean(keyed);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            out.writeBoolean(autoInterval != null);
+            if (autoInterval != null) {
+                autoInterval.writeTo(out);
+            }
+        }
         out.writeVInt(buckets.size());
-        for (B bucket : buckets) {
-            bucket.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            long previousKey = 0;
+            for (B bucket : buckets) {
+                out.writeZLong(bucket.key - previousKey);
+                previousKey = bucket.key;
+                bucket.writeDocCountAndAggregations(out);
+            }
+        } else {
+            for (B bucket : buckets) {
+                bucket.writeTo(out);
+            }
         }
     }
 
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        if (autoInterval != null) {
+            builder.field(INTERVAL, autoInterval.expression());
+        }
         if (keyed) {
             builder.startObject(CommonFields.BUCKETS);
         } else {
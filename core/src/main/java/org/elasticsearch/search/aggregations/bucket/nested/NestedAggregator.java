@@ -23,6 +23,7 @@ import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.join.BitDocIdSetFilter;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.BitSet;
 import org.elasticsearch.common.lucene.Lucene;
@@ -50,12 +51,21 @@ import java.util.Map;
  */
 public class NestedAggregator extends SingleBucketAggregator {
 
+    private Filter parentFilterNotCached;
     private BitDocIdSetFilter parentFilter;
     private final Filter childFilter;
 
+    private DocIdSet childDocIdSet;
     private DocIdSetIterator childDocs;
     private BitSet parentDocs;
 
+    // the parent doc that is being collected and its child docs, so that they can be collected into
+    // several buckets without iterating over child docs again
+    private LeafReaderContext currentLeaf;
+    private int currentParentDoc = -1;
+    private int[] currentChildDocs = new int[16];
+    private int currentChildCount;
+
     public NestedAggregator(String name, AggregatorFactories factories, ObjectMapper objectMapper, AggregationContext aggregationContext, Aggregator parentAggregator, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         super(name, factories, aggregationContext, parentAggregator, pipelineAggregators, metaData);
         childFilter = objectMapper.nestedTypeFilter();
@@ -65,9 +75,13 @@ public class NestedAggregator extends SingleBucketAggregator {
     public LeafBucketCollector getLeafCollector(final LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
         // Reset parentFilter, so we resolve the parentDocs for each new segment being searched
         this.parentFilter = null;
+        this.currentLeaf = ctx;
+        this.currentParentDoc = -1;
+        this.currentChildCount = 0;
         // In ES if parent is deleted, then also the children are deleted. Therefore acceptedDocs can also null here.
-        DocIdSet childDocIdSet = childFilter.getDocIdSet(ctx, null);
+        childDocIdSet = childFilter.getDocIdSet(ctx, null);
         if (Lucene.isEmpty(childDocIdSet)) {
+            childDocIdSet = null;
             childDocs = null;
         } else {
             childDocs = childDocIdSet.iterator();
@@ -91,11 +105,7 @@ public class NestedAggregator extends SingleBucketAggregator {
                     // Additional NOTE: Before this logic was performed in the setNextReader(...) method, but the the assumption
                     // that aggs instances are constructed in reverse doesn't hold when buckets are constructed lazily during
                     // aggs execution
-                    Filter parentFilterNotCached = findClosestNestedPath(parent());
-                    if (parentFilterNotCached == null) {
-                        parentFilterNotCached = Queries.newNonNestedFilter();
-                    }
-                    parentFilter = context.searchContext().bitsetFilterCache().getBitDocIdSetFilter(parentFilterNotCached);
+                    parentFilter = context.searchContext().bitsetFilterCache().getBitDocIdSetFilter(parentFilterNotCached());
                     BitDocIdSet parentSet = parentFilter.getDocIdSet(ctx);
                     if (Lucene.isEmpty(parentSet)) {
                         // There are no parentDocs in the segment, so return and set childDocs to null, so we exit early for future invocations.
@@ -106,19 +116,65 @@ public class NestedAggregator extends SingleBucketAggregator {
                     }
                 }
 
-                final int prevParentDoc = parentDocs.prevSetBit(parentDoc - 1);
-                int childDocId = childDocs.docID();
-                if (childDocId <= prevParentDoc) {
-                    childDocId = childDocs.advance(prevParentDoc + 1);
+                if (parentDoc != currentParentDoc) {
+                    if (parentDoc < currentParentDoc) {
+                        // parent docs are collected in order, possibly several times in a row if they fall into several
+                        // buckets, unless the parent is itself a nested aggregation that replays its child docs for every
+                        // bucket: child docs can't be iterated backwards, so start over
+                        childDocs = childDocIdSet.iterator();
+                    }
+                    loadChildDocs(parentDoc);
                 }
-
-                for (; childDocId < parentDoc; childDocId = childDocs.nextDoc()) {
-                    collectBucket(sub, childDocId, bucket);
+                for (int i = 0; i < currentChildCount; ++i) {
+                    collectBucket(sub, currentChildDocs[i], bucket);
                 }
             }
         };
     }
-        
+
+    private void loadChildDocs(int parentDoc) throws IOException {
+        currentParentDoc = parentDoc;
+        currentChildCount = 0;
+        final int prevParentDoc = parentDocs.prevSetBit(parentDoc - 1);
+        int childDocId = childDocs.docID();
+        if (childDocId <= prevParentDoc) {
+            childDocId = childDocs.advance(prevParentDoc + 1);
+        }
+
+        for (; childDocId < parentDoc; childDocId = childDocs.nextDoc()) {
+            if (currentChildCount == currentChildDocs.length) {
+                currentChildDocs = ArrayUtil.grow(currentChildDocs);
+            }
+            currentChildDocs[currentChildCount++] = childDocId;
+        }
+    }
+
+    /**
+     * Return the parent doc of <code>childDoc</code> if it is one of the child docs that are being collected,
+     * or -1 otherwise.
+     */
+    int currentParentDoc(LeafReaderContext ctx, int childDoc) {
+        if (ctx == currentLeaf && currentChildCount > 0
+                && childDoc >= currentChildDocs[0] && childDoc <= currentChildDocs[currentChildCount - 1]) {
+            return currentParentDoc;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the filter that matches the parent documents of the documents that this aggregation collects.
+     */
+    Filter parentFilterNotCached() {
+        if (parentFilterNotCached == null) {
+            Filter filter = findClosestNestedPath(parent());
+            if (filter == null) {
+                filter = Queries.newNonNestedFilter();
+            }
+            parentFilterNotCached = filter;
+        }
+        return parentFilterNotCached;
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         return new InternalNested(name, bucketDocCount(owningBucketOrdinal), bucketAggregations(owningBucketOrdinal), pipelineAggregators(),
@@ -135,7 +191,7 @@ public class NestedAggregator extends SingleBucketAggregator {
             if (parent instanceof NestedAggregator) {
                 return ((NestedAggregator) parent).childFilter;
             } else if (parent instanceof ReverseNestedAggregator) {
-                return ((ReverseNestedAggregator) parent).getParentFilter();
+                return ((ReverseNestedAggregator) parent).getParentFilterNotCached();
             }
         }
         return null;
@@ -153,9 +209,8 @@ public class NestedAggregator extends SingleBucketAggregator {
         @Override
         public Aggregator createInternal(AggregationContext context, Aggregator parent, boolean collectsFromSingleBucket,
                 List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
-            if (collectsFromSingleBucket == false) {
-                return asMultiBucketAggregator(this, context, parent);
-            }
+            // child docs of the current parent doc are buffered, so the same aggregator can collect into several buckets
+            // even if its parent collects the same docs into every bucket
             ObjectMapper objectMapper = context.searchContext().getObjectMapper(path);
             if (objectMapper == null) {
                 return new Unmapped(name, context, parent, pipelineAggregators, metaData);
@@ -18,16 +18,16 @@
  */
 package org.elasticsearch.search.aggregations.bucket.nested;
 
-import com.carrotsearch.hppc.LongIntHashMap;
-
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.join.BitDocIdSetFilter;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.BitSet;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.util.IntArray;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.object.ObjectMapper;
 import org.elasticsearch.search.SearchParseException;
@@ -52,22 +52,28 @@ import java.util.Map;
  */
 public class ReverseNestedAggregator extends SingleBucketAggregator {
 
+    private final Filter parentFilterNotCached;
     private final BitDocIdSetFilter parentFilter;
+    private final NestedAggregator closestNestedAggregator;
+    // the global doc id + 1 of the last parent doc that has been collected, per bucket
+    private IntArray lastCollectedParentDocs;
 
     public ReverseNestedAggregator(String name, AggregatorFactories factories, ObjectMapper objectMapper,
             AggregationContext aggregationContext, Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
         if (objectMapper == null) {
-            parentFilter = context.searchContext().bitsetFilterCache().getBitDocIdSetFilter(Queries.newNonNestedFilter());
+            parentFilterNotCached = Queries.newNonNestedFilter();
         } else {
-            parentFilter = context.searchContext().bitsetFilterCache().getBitDocIdSetFilter(objectMapper.nestedTypeFilter());
+            parentFilterNotCached = objectMapper.nestedTypeFilter();
         }
-
+        parentFilter = context.searchContext().bitsetFilterCache().getBitDocIdSetFilter(parentFilterNotCached);
+        closestNestedAggregator = findClosestNestedAggregator(parent);
+        lastCollectedParentDocs = context.bigArrays().newIntArray(1, true);
     }
 
     @Override
-    protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
+    protected LeafBucketCollector getLeafCollector(final LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
         // In ES if parent is deleted, then also the children are deleted, so the child docs this agg receives
         // must belong to parent docs that is alive. For this reason acceptedDocs can be null here.
         BitDocIdSet docIdSet = parentFilter.getDocIdSet(ctx);
@@ -77,24 +83,31 @@ public class ReverseNestedAggregator extends SingleBucketAggregator {
         } else {
             parentDocs = docIdSet.bits();
         }
-        final LongIntHashMap bucketOrdToLastCollectedParentDoc = new LongIntHashMap(32);
+        // if we join back to the parent level of the closest nested aggregation, it already knows the parent doc
+        final NestedAggregator nestedAggregator;
+        if (closestNestedAggregator != null && parentFilterNotCached.equals(closestNestedAggregator.parentFilterNotCached())) {
+            nestedAggregator = closestNestedAggregator;
+        } else {
+            nestedAggregator = null;
+        }
         return new LeafBucketCollectorBase(sub, null) {
             @Override
             public void collect(int childDoc, long bucket) throws IOException {
-                // fast forward to retrieve the parentDoc this childDoc belongs to
-                final int parentDoc = parentDocs.nextSetBit(childDoc);
+                int parentDoc = nestedAggregator == null ? -1 : nestedAggregator.currentParentDoc(ctx, childDoc);
+                if (parentDoc == -1) {
+                    // fast forward to retrieve the parentDoc this childDoc belongs to
+                    parentDoc = parentDocs.nextSetBit(childDoc);
+                }
                 assert childDoc <= parentDoc && parentDoc != DocIdSetIterator.NO_MORE_DOCS;
-                
-                int keySlot = bucketOrdToLastCollectedParentDoc.indexOf(bucket); 
-                if (bucketOrdToLastCollectedParentDoc.indexExists(keySlot)) {
-                    int lastCollectedParentDoc = bucketOrdToLastCollectedParentDoc.indexGet(keySlot);
-                    if (parentDoc > lastCollectedParentDoc) {
-                        collectBucket(sub, parentDoc, bucket);
-                        bucketOrdToLastCollectedParentDoc.indexReplace(keySlot, parentDoc);
-                    }
-                } else {
+
+                // parent docs are stored as global doc ids so that they keep increasing across segments
+                final int globalParentDoc = ctx.docBase + parentDoc + 1;
+                if (bucket >= lastCollectedParentDocs.size()) {
+                    lastCollectedParentDocs = context.bigArrays().grow(lastCollectedParentDocs, bucket + 1);
+                }
+                if (globalParentDoc > lastCollectedParentDocs.get(bucket)) {
                     collectBucket(sub, parentDoc, bucket);
-                    bucketOrdToLastCollectedParentDoc.indexInsert(keySlot, bucket, parentDoc);
+                    lastCollectedParentDocs.set(bucket, globalParentDoc);
                 }
             }
         };
@@ -120,8 +133,13 @@ public class ReverseNestedAggregator extends SingleBucketAggregator {
         return new InternalReverseNested(name, 0, buildEmptySubAggregations(), pipelineAggregators(), metaData());
     }
 
-    Filter getParentFilter() {
-        return parentFilter;
+    Filter getParentFilterNotCached() {
+        return parentFilterNotCached;
+    }
+
+    @Override
+    protected void doClose() {
+        Releasables.close(lastCollectedParentDocs);
     }
 
     public static class Factory extends AggregatorFactory {
@@ -21,6 +21,7 @@ package org.elasticsearch.search.aggregations.bucket.range;
 import com.google.common.collect.Lists;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.InPlaceMergeSorter;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -95,6 +96,9 @@ public class RangeAggregator extends BucketsAggregator {
 
     final double[] maxTo;
 
+    // the ordinals of the ranges that contain all values of the current segment
+    private final int[] matchingRanges;
+
     public RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, ValueFormat format,
             InternalRange.Factory rangeFactory, List<Range> ranges, boolean keyed, AggregationContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
@@ -118,6 +122,7 @@ public class RangeAggregator extends BucketsAggregator {
         for (int i = 1; i < this.ranges.length; ++i) {
             maxTo[i] = Math.max(this.ranges[i].to,maxTo[i-1]);
         }
+        matchingRanges = new int[this.ranges.length];
 
     }
 
@@ -130,6 +135,27 @@ public class RangeAggregator extends BucketsAggregator {
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
+        final double[] minMax = valuesSource.doubleMinMax(ctx);
+        if (minMax != null) {
+            final int numMatchingRanges = matchingRanges(minMax[0], minMax[1]);
+            if (numMatchingRanges >= 0) {
+                // every range either contains all values of the segment or none of them
+                if (numMatchingRanges == 0) {
+                    return LeafBucketCollector.NO_OP_COLLECTOR;
+                }
+                final Bits docsWithValue = valuesSource.docsWithValue(ctx);
+                return new LeafBucketCollectorBase(sub, values) {
+                    @Override
+                    public void collect(int doc, long bucket) throws IOException {
+                        if (docsWithValue.get(doc)) {
+                            for (int i = 0; i < numMatchingRanges; ++i) {
+                                collectBucket(sub, doc, subBucketOrdinal(bucket, matchingRanges[i]));
+                            }
+                        }
+                    }
+                };
+            }
+        }
         return new LeafBucketCollectorBase(sub, values) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
@@ -192,6 +218,29 @@ public class RangeAggregator extends BucketsAggregator {
         };
     }
 
+    /**
+     * Fill {@link #matchingRanges} with the ordinals of the ranges that contain all values in <code>[min, max]</code>
+     * and return their number, or return <tt>-1</tt> if some ranges contain only part of these values, in which case
+     * ranges need to be checked per value.
+     */
+    private int matchingRanges(double min, double max) {
+        if (Double.isNaN(min) || Double.isNaN(max)) {
+            return -1;
+        }
+        int numMatching = 0;
+        for (int i = 0; i < ranges.length; ++i) {
+            final Range range = ranges[i];
+            if (max < range.from || min >= range.to) {
+                continue;
+            } else if (range.matches(min) && range.matches(max)) {
+                matchingRanges[numMatching++] = i;
+            } else {
+                return -1;
+            }
+        }
+        return numMatching;
+    }
+
     private final long subBucketOrdinal(long owningBucketOrdinal, int rangeOrd) {
         return owningBucketOrdinal * ranges.length + rangeOrd;
     }
@@ -0,0 +1,269 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.significant;
+
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.index.FilterableTermsEnum;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A node level cache of the background frequencies that are used by the <tt>significant_terms</tt> aggregation.
+ *
+ * Frequencies are cached per top-level reader, so that they are invalidated on refresh, and then per field
+ * and background filter. The cache is bounded by the <code>indices.significant_terms.background_cache.size</code>
+ * setting, which defaults to <code>1%</code> of the heap: entries that are evicted are still used by the requests
+ * that hold them, but stop caching frequencies.
+ */
+public class BackgroundFrequencyCache extends AbstractComponent
+        implements RemovalListener<BackgroundFrequencyCache.Key, BackgroundFrequencyCache.Frequencies>, IndexReader.ReaderClosedListener {
+
+    public static final String INDICES_SIGNIFICANT_TERMS_BACKGROUND_CACHE_SIZE = "indices.significant_terms.background_cache.size";
+
+    // rough estimate of the memory usage of a cached frequency, on top of the bytes of the term
+    static final long BYTES_PER_ENTRY = 64;
+
+    // entries grow as frequencies are cached, they are weighed again every time they grew by that many bytes
+    static final long REWEIGH_BYTES = 1024;
+
+    private final Cache<Key, Frequencies> cache;
+    private final Set<Object> readerKeys = ConcurrentCollections.newConcurrentSet();
+
+    @Inject
+    public BackgroundFrequencyCache(Settings settings) {
+        super(settings);
+        final String size = settings.get(INDICES_SIGNIFICANT_TERMS_BACKGROUND_CACHE_SIZE, "1%");
+        final long sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(size, INDICES_SIGNIFICANT_TERMS_BACKGROUND_CACHE_SIZE).bytes();
+        logger.debug("using size [{}] [{}]", size, new ByteSizeValue(sizeInBytes));
+        this.cache = CacheBuilder.newBuilder().maximumWeight(sizeInBytes).weigher(new FrequenciesWeigher()).removalListener(this).build();
+    }
+
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Return the background frequencies of terms of <code>field</code> in the documents of <code>reader</code>
+     * that match <code>filter</code>.
+     */
+    public Frequencies frequencies(IndexReader reader, String field, @Nullable Query filter) throws IOException {
+        if (filter != null) {
+            final SearchContext context = SearchContext.current();
+            final boolean nowUsedBefore = context == null || context.nowInMillisUsed();
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setQueryCache(null);
+            final Query rewritten = searcher.rewrite(filter);
+            // rewriting resolves date math against the current time, so filters that use `now` would create a new
+            // entry on every request. If the current time was already used, we can't tell whether the filter used it,
+            // so only filters that rewriting left unchanged are cached.
+            final boolean dependsOnNow = nowUsedBefore ? rewritten.equals(filter) == false : context.nowInMillisUsed();
+            if (dependsOnNow) {
+                return uncached(reader, field, rewritten);
+            }
+            filter = rewritten;
+        }
+        final Object readerKey = reader.getCoreCacheKey();
+        if (readerKeys.add(readerKey)) {
+            reader.addReaderClosedListener(this);
+        }
+
+        final Key key = new Key(readerKey, field, filter);
+        Frequencies frequencies = cache.getIfPresent(key);
+        if (frequencies == null) {
+            // filters are materialized as one bit per document
+            final long bytes = filter == null ? 0 : reader.maxDoc() / 8;
+            final Frequencies created = new Frequencies(new FilterableTermsEnum(reader, field, PostingsEnum.NONE, filter), this, key, bytes);
+            frequencies = cache.asMap().putIfAbsent(key, created);
+            if (frequencies == null) {
+                frequencies = created;
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Same as {@link #frequencies(IndexReader, String, Query)} but without caching.
+     */
+    public static Frequencies uncached(IndexReader reader, String field, @Nullable Query filter) throws IOException {
+        return new Frequencies(new FilterableTermsEnum(reader, field, PostingsEnum.NONE, filter), null, null, 0);
+    }
+
+    /** Update the weight of an entry that grew, unless it has been evicted in the meantime. */
+    private void reweigh(Key key, Frequencies frequencies) {
+        cache.asMap().replace(key, frequencies, frequencies);
+    }
+
+    @Override
+    public void onClose(IndexReader reader) {
+        final Object readerKey = reader.getCoreCacheKey();
+        readerKeys.remove(readerKey);
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext(); ) {
+            if (it.next().readerKey == readerKey) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, Frequencies> notification) {
+        // entries are replaced by themselves when they are weighed again
+        if (notification.getCause() != RemovalCause.REPLACED && notification.getValue() != null) {
+            notification.getValue().release();
+        }
+    }
+
+    /**
+     * Return the number of bytes that are used by this cache.
+     */
+    public long getMemorySizeInBytes() {
+        long bytes = 0;
+        for (Frequencies frequencies : cache.asMap().values()) {
+            bytes += frequencies.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private static class FrequenciesWeigher implements Weigher<Key, Frequencies> {
+
+        @Override
+        public int weigh(Key key, Frequencies value) {
+            return (int) Math.min(Integer.MAX_VALUE, BYTES_PER_ENTRY + value.weighedBytes);
+        }
+    }
+
+    /**
+     * Background frequencies of the terms of a field. Instances are thread-safe.
+     */
+    public static final class Frequencies {
+
+        private final FilterableTermsEnum termsEnum;
+        private final BackgroundFrequencyCache cache; // null if frequencies should not be cached
+        private final Key key;
+        private final ObjectLongHashMap<BytesRef> docFreqs = new ObjectLongHashMap<>();
+        private long sizeInBytes;
+        // read by the weigher without locking, since it runs while the cache is locked
+        private volatile long weighedBytes;
+        private boolean full;
+
+        private Frequencies(FilterableTermsEnum termsEnum, @Nullable BackgroundFrequencyCache cache, @Nullable Key key, long sizeInBytes) {
+            this.termsEnum = termsEnum;
+            this.cache = cache;
+            this.key = key;
+            this.sizeInBytes = sizeInBytes;
+            this.weighedBytes = sizeInBytes;
+            this.full = cache == null;
+        }
+
+        /**
+         * Return the number of documents in the background set.
+         */
+        public long supersetSize() {
+            return termsEnum.getNumDocs();
+        }
+
+        /**
+         * Return the number of documents in the background set that contain <code>term</code>.
+         */
+        public long docFreq(BytesRef term) throws IOException {
+            final long docFreq;
+            boolean reweigh = false;
+            synchronized (this) {
+                long freq = docFreqs.getOrDefault(term, -1);
+                if (freq == -1) {
+                    freq = termsEnum.seekExact(term) ? termsEnum.docFreq() : 0;
+                    if (full == false) {
+                        docFreqs.put(BytesRef.deepCopyOf(term), freq);
+                        sizeInBytes += BYTES_PER_ENTRY + term.length;
+                        if (sizeInBytes - weighedBytes >= REWEIGH_BYTES) {
+                            weighedBytes = sizeInBytes;
+                            reweigh = true;
+                        }
+                    }
+                }
+                docFreq = freq;
+            }
+            if (reweigh) {
+                // outside of the lock since the cache might call release() on eviction
+                cache.reweigh(key, this);
+            }
+            return docFreq;
+        }
+
+        synchronized long sizeInBytes() {
+            return sizeInBytes;
+        }
+
+        private synchronized void release() {
+            // requests that still use these frequencies keep computing them, but don't cache them anymore
+            sizeInBytes = 0;
+            docFreqs.clear();
+            full = true;
+        }
+    }
+
+    static class Key {
+
+        private final Object readerKey;
+        private final String field;
+        private final Query filter;
+
+        Key(Object readerKey, String field, @Nullable Query filter) {
+            this.readerKey = readerKey;
+            this.field = field;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return readerKey == that.readerKey && field.equals(that.field) && Objects.equals(filter, that.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(readerKey) + field.hashCode()) + Objects.hashCode(filter);
+        }
+    }
+}
@@ -19,16 +19,14 @@
 package org.elasticsearch.search.aggregations.bucket.significant;
 
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParseFieldMatcher;
 import org.elasticsearch.common.lease.Releasable;
-import org.elasticsearch.common.lucene.index.FilterableTermsEnum;
-import org.elasticsearch.common.lucene.index.FreqTermsEnum;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.search.aggregations.*;
 import org.elasticsearch.search.aggregations.bucket.significant.heuristics.SignificanceHeuristic;
@@ -129,24 +127,26 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
     private final String executionHint;
     private String indexedFieldName;
     private MappedFieldType fieldType;
-    private FilterableTermsEnum termsEnum;
-    private int numberOfAggregatorsCreated = 0;
+    private BackgroundFrequencyCache.Frequencies backgroundFrequencies;
     private final Query filter;
     private final TermsAggregator.BucketCountThresholds bucketCountThresholds;
     private final SignificanceHeuristic significanceHeuristic;
+    private final BackgroundFrequencyCache backgroundFrequencyCache;
 
     protected TermsAggregator.BucketCountThresholds getBucketCountThresholds() {
         return new TermsAggregator.BucketCountThresholds(bucketCountThresholds);
     }
 
     public SignificantTermsAggregatorFactory(String name, ValuesSourceConfig valueSourceConfig, TermsAggregator.BucketCountThresholds bucketCountThresholds, IncludeExclude includeExclude,
-                                             String executionHint, Query filter, SignificanceHeuristic significanceHeuristic) {
+                                             String executionHint, Query filter, SignificanceHeuristic significanceHeuristic,
+                                             @Nullable BackgroundFrequencyCache backgroundFrequencyCache) {
 
         super(name, SignificantStringTerms.TYPE.name(), valueSourceConfig);
         this.bucketCountThresholds = bucketCountThresholds;
         this.includeExclude = includeExclude;
         this.executionHint = executionHint;
         this.significanceHeuristic = significanceHeuristic;
+        this.backgroundFrequencyCache = backgroundFrequencyCache;
         if (!valueSourceConfig.unmapped()) {
             this.indexedFieldName = config.fieldContext().field();
             fieldType = SearchContext.current().smartNameFieldType(indexedFieldName);
@@ -176,8 +176,6 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
             return asMultiBucketAggregator(this, aggregationContext, parent);
         }
 
-        numberOfAggregatorsCreated++;
-
         if (valuesSource instanceof ValuesSource.Bytes) {
             ExecutionMode execution = null;
             if (executionHint != null) {
@@ -222,43 +220,37 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
     }
 
     /**
-     * Creates the TermsEnum (if not already created) and must be called before any calls to getBackgroundFrequency
+     * Loads the background frequencies (if not already loaded) and must be called before any calls to getBackgroundFrequency
      * @param context The aggregation context 
      * @return The number of documents in the index (after an optional filter might have been applied)
      */
     public long prepareBackground(AggregationContext context) {
-        if (termsEnum != null) {
+        if (backgroundFrequencies != null) {
             // already prepared - return 
-            return termsEnum.getNumDocs();
+            return backgroundFrequencies.supersetSize();
         }
         SearchContext searchContext = context.searchContext();
         IndexReader reader = searchContext.searcher().getIndexReader();
         try {
-            if (numberOfAggregatorsCreated == 1) {
-                // Setup a termsEnum for sole use by one aggregator
-                termsEnum = new FilterableTermsEnum(reader, indexedFieldName, PostingsEnum.NONE, filter);
+            if (backgroundFrequencyCache != null) {
+                // background frequencies are shared across requests and aggregators until the next refresh
+                backgroundFrequencies = backgroundFrequencyCache.frequencies(reader, indexedFieldName, filter);
             } else {
-                // When we have > 1 agg we have possibility of duplicate term frequency lookups 
-                // and so use a TermsEnum that caches results of all term lookups
-                termsEnum = new FreqTermsEnum(reader, indexedFieldName, true, false, filter, searchContext.bigArrays());
+                backgroundFrequencies = BackgroundFrequencyCache.uncached(reader, indexedFieldName, filter);
             }
         } catch (IOException e) {
             throw new ElasticsearchException("failed to build terms enumeration", e);
         }
-        return termsEnum.getNumDocs();
+        return backgroundFrequencies.supersetSize();
     }
 
     public long getBackgroundFrequency(BytesRef termBytes) {
-        assert termsEnum != null; // having failed to find a field in the index we don't expect any calls for frequencies
-        long result = 0;
+        assert backgroundFrequencies != null; // having failed to find a field in the index we don't expect any calls for frequencies
         try {
-            if (termsEnum.seekExact(termBytes)) {
-                result = termsEnum.docFreq();
-            }
+            return backgroundFrequencies.docFreq(termBytes);
         } catch (IOException e) {
             throw new ElasticsearchException("IOException loading background document frequency info", e);
         }
-        return result;
     }
 
 
@@ -269,12 +261,7 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
 
     @Override
     public void close() {
-        try {
-            if (termsEnum instanceof Releasable) {
-                ((Releasable) termsEnum).close();
-            }
-        } finally {
-            termsEnum = null;
-        }
+        // frequencies are owned by the cache
+        backgroundFrequencies = null;
     }
 }
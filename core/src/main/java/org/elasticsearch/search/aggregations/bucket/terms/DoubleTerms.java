@@ -121,7 +121,7 @@ public class DoubleTerms extends InternalTerms<DoubleTerms, DoubleTerms.Bucket>
             docCount = in.readVLong();
             docCountError = -1;
             if (showDocCountError) {
-                docCountError = in.readLong();
+                docCountError = readDocCountError(in);
             }
             aggregations = InternalAggregations.readAggregations(in);
         }
@@ -131,7 +131,7 @@ public class DoubleTerms extends InternalTerms<DoubleTerms, DoubleTerms.Bucket>
             out.writeDouble(term);
             out.writeVLong(getDocCount());
             if (showDocCountError) {
-                out.writeLong(docCountError);
+                writeDocCountError(docCountError, out);
             }
             aggregations.writeTo(out);
         }
@@ -194,7 +194,7 @@ public class DoubleTerms extends InternalTerms<DoubleTerms, DoubleTerms.Bucket>
     @Override
     protected void doReadFrom(StreamInput in) throws IOException {
         if (in.getVersion().onOrAfter(Version.V_1_4_0_Beta1)) {
-            this.docCountError = in.readLong();
+            this.docCountError = readDocCountError(in);
         } else {
             this.docCountError = -1;
         }
@@ -219,7 +219,7 @@ public class DoubleTerms extends InternalTerms<DoubleTerms, DoubleTerms.Bucket>
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
         if (out.getVersion().onOrAfter(Version.V_1_4_0_Beta1)) {
-            out.writeLong(docCountError);
+            writeDocCountError(docCountError, out);
         }
         InternalOrder.Streams.writeOrder(order, out);
         ValueFormatterStreams.writeOptional(formatter, out);
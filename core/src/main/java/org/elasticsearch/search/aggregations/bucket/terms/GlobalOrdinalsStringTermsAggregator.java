@@ -30,6 +30,7 @@ import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.IntArray;
 import org.elasticsearch.common.util.LongHash;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -43,6 +44,7 @@ import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.bucket.terms.InternalTerms.Bucket;
 import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
+import org.elasticsearch.search.aggregations.bucket.terms.support.CountMinSketch;
 import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
@@ -259,6 +261,55 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
         }
     }
 
+    /**
+     * Variant of {@link GlobalOrdinalsStringTermsAggregator} that also summarizes the counts of all terms of the shard in a
+     * {@link CountMinSketch}, which is shipped with the shard response so that the reduce phase can report tight error bounds
+     * on the counts of the top terms.
+     */
+    public static class WithSketch extends GlobalOrdinalsStringTermsAggregator {
+
+        private final CountMinSketch sketch;
+
+        public WithSketch(String name, AggregatorFactories factories, ValuesSource.Bytes.WithOrdinals valuesSource,
+                Terms.Order order, BucketCountThresholds bucketCountThresholds, IncludeExclude.OrdinalsFilter includeExclude,
+                AggregationContext aggregationContext, Aggregator parent, SubAggCollectionMode collectionMode,
+                boolean showTermDocCountError, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
+                throws IOException {
+            super(name, factories, valuesSource, order, bucketCountThresholds, includeExclude, aggregationContext, parent, collectionMode,
+                    showTermDocCountError, pipelineAggregators, metaData);
+            sketch = new CountMinSketch(CountMinSketch.DEFAULT_DEPTH, CountMinSketch.DEFAULT_WIDTH, aggregationContext.bigArrays());
+        }
+
+        @Override
+        public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
+            final InternalAggregation aggregation = super.buildAggregation(owningBucketOrdinal);
+            if (globalOrds == null) { // no context in this reader
+                return aggregation;
+            }
+            for (long globalTermOrd = 0; globalTermOrd < globalOrds.getValueCount(); ++globalTermOrd) {
+                if (includeExclude != null && !acceptedGlobalOrdinals.get(globalTermOrd)) {
+                    continue;
+                }
+                final int bucketDocCount = bucketDocCount(getBucketOrd(globalTermOrd));
+                if (bucketDocCount > 0) {
+                    sketch.add(globalOrds.lookupOrd(globalTermOrd), bucketDocCount);
+                }
+            }
+            // We need to build a copy because the returned Aggregation needs remain usable after
+            // this Aggregator (and its sketch) is released.
+            CountMinSketch copy = new CountMinSketch(sketch.depth(), sketch.width(), BigArrays.NON_RECYCLING_INSTANCE);
+            copy.merge(sketch);
+            ((StringTerms) aggregation).sketch = copy;
+            return aggregation;
+        }
+
+        @Override
+        protected void doClose() {
+            Releasables.close(sketch);
+        }
+
+    }
+
     /**
      * Variant of {@link GlobalOrdinalsStringTermsAggregator} that rebases hashes in order to make them dense. Might be
      * useful in case few hashes are visited.
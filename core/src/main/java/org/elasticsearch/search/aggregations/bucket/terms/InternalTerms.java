@@ -22,16 +22,22 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
 import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
+import org.elasticsearch.search.aggregations.bucket.terms.support.CountMinSketch;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.format.ValueFormatter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -120,6 +126,8 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
     protected long docCountError;
     protected boolean showTermDocCountError;
     protected long otherDocCount;
+    /** Frequencies of all terms of the shard, only set when using the sketch execution mode. */
+    protected CountMinSketch sketch;
 
     protected InternalTerms() {} // for serialization
 
@@ -170,9 +178,20 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
         Multimap<Object, InternalTerms.Bucket> buckets = ArrayListMultimap.create();
         long sumDocCountError = 0;
         long otherDocCount = 0;
+        CountMinSketch mergedSketch = null;
+        boolean allSketched = true;
         for (InternalAggregation aggregation : aggregations) {
             InternalTerms<A, B> terms = (InternalTerms<A, B>) aggregation;
             otherDocCount += terms.getSumOfOtherDocCounts();
+            if (terms.sketch != null) {
+                if (mergedSketch == null) {
+                    mergedSketch = new CountMinSketch(terms.sketch.depth(), terms.sketch.width(), BigArrays.NON_RECYCLING_INSTANCE);
+                }
+                mergedSketch.merge(terms.sketch);
+            } else if (terms instanceof UnmappedTerms == false) {
+                // the counts of this shard are not in the sketch, so it does not bound them
+                allSketched = false;
+            }
             final long thisAggDocCountError;
             if (terms.buckets.size() < this.shardSize || this.order == InternalOrder.TERM_ASC || this.order == InternalOrder.TERM_DESC) {
                 thisAggDocCountError = 0;
@@ -207,6 +226,14 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
                     b.docCountError = sumDocCountError - b.docCountError;
                 }
             }
+            if (mergedSketch != null && allSketched) {
+                // the sketch never under-estimates, so the difference with the observed count bounds the counts that
+                // shards did not report for this term. Sketches are only built for string terms, see TermsParser.
+                final long sketchError = mergedSketch.estimate(((StringTerms.Bucket) b).termBytes) - b.docCount;
+                if (b.docCountError == -1 || sketchError < b.docCountError) {
+                    b.docCountError = sketchError;
+                }
+            }
             if (b.docCount >= minDocCount) {
                 Terms.Bucket removed = ordered.insertWithOverflow(b);
                 if (removed != null) {
@@ -224,10 +251,31 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
         } else {
             docCountError = aggregations.size() == 1 ? 0 : sumDocCountError;
         }
+        // the merged sketch is only needed to compute error bounds, it is not part of the reduced response
         return create(name, Arrays.asList(list), docCountError, otherDocCount, this);
     }
 
     protected abstract A create(String name, List<InternalTerms.Bucket> buckets, long docCountError, long otherDocCount,
             InternalTerms prototype);
 
+    /**
+     * Read a doc count error. Errors are usually small but may be <tt>-1</tt> when unknown, so they are zig-zag encoded
+     * when supported by the sending node.
+     */
+    static long readDocCountError(StreamInput in) throws IOException {
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            return in.readZLong();
+        } else {
+            return in.readLong();
+        }
+    }
+
+    static void writeDocCountError(long docCountError, StreamOutput out) throws IOException {
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            out.writeZLong(docCountError);
+        } else {
+            out.writeLong(docCountError);
+        }
+    }
+
 }
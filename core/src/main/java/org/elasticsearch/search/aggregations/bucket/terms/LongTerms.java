@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -116,21 +117,29 @@ public class LongTerms extends InternalTerms<LongTerms, LongTerms.Bucket> {
 
         @Override
         public void readFrom(StreamInput in) throws IOException {
-            term = in.readLong();
+            if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+                term = in.readZLong();
+            } else {
+                term = in.readLong();
+            }
             docCount = in.readVLong();
             docCountError = -1;
             if (showDocCountError) {
-                docCountError = in.readLong();
+                docCountError = readDocCountError(in);
             }
             aggregations = InternalAggregations.readAggregations(in);
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
-            out.writeLong(term);
+            if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+                out.writeZLong(term);
+            } else {
+                out.writeLong(term);
+            }
             out.writeVLong(getDocCount());
             if (showDocCountError) {
-                out.writeLong(docCountError);
+                writeDocCountError(docCountError, out);
             }
             aggregations.writeTo(out);
         }
@@ -191,7 +200,7 @@ public class LongTerms extends InternalTerms<LongTerms, LongTerms.Bucket> {
 
     @Override
     protected void doReadFrom(StreamInput in) throws IOException {
-        this.docCountError = in.readLong();
+        this.docCountError = readDocCountError(in);
         this.order = InternalOrder.Streams.readOrder(in);
         this.formatter = ValueFormatterStreams.readOptional(in);
         this.requiredSize = readSize(in);
@@ -212,7 +221,7 @@ public class LongTerms extends InternalTerms<LongTerms, LongTerms.Bucket> {
 
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
-        out.writeLong(docCountError);
+        writeDocCountError(docCountError, out);
         InternalOrder.Streams.writeOrder(order, out);
         ValueFormatterStreams.writeOptional(formatter, out);
         writeSize(requiredSize, out);
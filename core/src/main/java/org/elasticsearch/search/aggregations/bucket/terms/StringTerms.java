@@ -19,14 +19,19 @@
 package org.elasticsearch.search.aggregations.bucket.terms;
 
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntroSorter;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.AggregationStreams;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.bucket.BucketStreamContext;
 import org.elasticsearch.search.aggregations.bucket.BucketStreams;
+import org.elasticsearch.search.aggregations.bucket.terms.support.CountMinSketch;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 
 import java.io.IOException;
@@ -116,10 +121,14 @@ public class StringTerms extends InternalTerms<StringTerms, StringTerms.Bucket>
         @Override
         public void readFrom(StreamInput in) throws IOException {
             termBytes = in.readBytesRef();
+            readDocCountAndAggregations(in);
+        }
+
+        void readDocCountAndAggregations(StreamInput in) throws IOException {
             docCount = in.readVLong();
             docCountError = -1;
             if (showDocCountError) {
-                docCountError = in.readLong();
+                docCountError = readDocCountError(in);
             }
             aggregations = InternalAggregations.readAggregations(in);
         }
@@ -127,9 +136,13 @@ public class StringTerms extends InternalTerms<StringTerms, StringTerms.Bucket>
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             out.writeBytesRef(termBytes);
+            writeDocCountAndAggregations(out);
+        }
+
+        void writeDocCountAndAggregations(StreamOutput out) throws IOException {
             out.writeVLong(getDocCount());
             if (showDocCountError) {
-                out.writeLong(docCountError);
+                writeDocCountError(docCountError, out);
             }
             aggregations.writeTo(out);
         }
@@ -183,7 +196,7 @@ public class StringTerms extends InternalTerms<StringTerms, StringTerms.Bucket>
 
     @Override
     protected void doReadFrom(StreamInput in) throws IOException {
-        this.docCountError = in.readLong();
+        this.docCountError = readDocCountError(in);
         this.order = InternalOrder.Streams.readOrder(in);
         this.requiredSize = readSize(in);
         this.shardSize = readSize(in);
@@ -192,18 +205,33 @@ public class StringTerms extends InternalTerms<StringTerms, StringTerms.Bucket>
         this.otherDocCount = in.readVLong();
         int size = in.readVInt();
         List<InternalTerms.Bucket> buckets = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            Bucket bucket = new Bucket(showTermDocCountError);
-            bucket.readFrom(in);
-            buckets.add(bucket);
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            final BytesRef[] terms = readTerms(in, size);
+            for (int i = 0; i < size; i++) {
+                Bucket bucket = new Bucket(showTermDocCountError);
+                bucket.termBytes = terms[i];
+                bucket.readDocCountAndAggregations(in);
+                buckets.add(bucket);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                Bucket bucket = new Bucket(showTermDocCountError);
+                bucket.readFrom(in);
+                buckets.add(bucket);
+            }
         }
         this.buckets = buckets;
         this.bucketMap = null;
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1) && in.readBoolean()) {
+            this.sketch = CountMinSketch.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        } else {
+            this.sketch = null;
+        }
     }
 
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
-        out.writeLong(docCountError);
+        writeDocCountError(docCountError, out);
         InternalOrder.Streams.writeOrder(order, out);
         writeSize(requiredSize, out);
         writeSize(shardSize, out);
@@ -211,9 +239,136 @@ public class StringTerms extends InternalTerms<StringTerms, StringTerms.Bucket>
         out.writeVLong(minDocCount);
         out.writeVLong(otherDocCount);
         out.writeVInt(buckets.size());
-        for (InternalTerms.Bucket bucket : buckets) {
-            bucket.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            writeTerms(out);
+            for (InternalTerms.Bucket bucket : buckets) {
+                ((Bucket) bucket).writeDocCountAndAggregations(out);
+            }
+        } else {
+            for (InternalTerms.Bucket bucket : buckets) {
+                bucket.writeTo(out);
+            }
+        }
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            if (sketch != null) {
+                out.writeBoolean(true);
+                sketch.writeTo(out);
+            } else {
+                out.writeBoolean(false);
+            }
+        }
+    }
+
+    /**
+     * Write the terms of all buckets. Buckets are typically sorted by count, so terms are written in sorted
+     * order along with the position of their bucket, which allows to only write the suffix that a term does
+     * not share with the previous one (front coding). Since positions need to be written too, front coding
+     * is only used if the shared prefixes are longer than the positions.
+     */
+    private void writeTerms(StreamOutput out) throws IOException {
+        final int size = buckets.size();
+        final BytesRef[] terms = new BytesRef[size];
+        final int[] positions = new int[size];
+        for (int i = 0; i < size; ++i) {
+            terms[i] = ((Bucket) buckets.get(i)).termBytes;
+            positions[i] = i;
+        }
+        new IntroSorter() {
+
+            int pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                final int tmp = positions[i];
+                positions[i] = positions[j];
+                positions[j] = tmp;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return terms[positions[i]].compareTo(terms[positions[j]]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = positions[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return terms[pivot].compareTo(terms[positions[j]]);
+            }
+
+        }.sort(0, size);
+
+        long sharedBytes = 0;
+        long positionBytes = 0;
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                sharedBytes += sharedPrefixLength(terms[positions[i - 1]], terms[positions[i]]);
+            }
+            // the position and the prefix length
+            positionBytes += vIntLength(positions[i]) + 1;
+        }
+
+        final boolean frontCoded = sharedBytes > positionBytes;
+        out.writeBoolean(frontCoded);
+        if (frontCoded) {
+            BytesRef previous = new BytesRef();
+            for (int i = 0; i < size; ++i) {
+                final BytesRef term = terms[positions[i]];
+                final int prefix = sharedPrefixLength(previous, term);
+                out.writeVInt(positions[i]);
+                out.writeVInt(prefix);
+                out.writeVInt(term.length - prefix);
+                out.writeBytes(term.bytes, term.offset + prefix, term.length - prefix);
+                previous = term;
+            }
+        } else {
+            for (BytesRef term : terms) {
+                out.writeBytesRef(term);
+            }
+        }
+    }
+
+    private static BytesRef[] readTerms(StreamInput in, int size) throws IOException {
+        final BytesRef[] terms = new BytesRef[size];
+        if (in.readBoolean()) {
+            final BytesRefBuilder previous = new BytesRefBuilder();
+            for (int i = 0; i < size; ++i) {
+                final int position = in.readVInt();
+                final int prefix = in.readVInt();
+                final int suffix = in.readVInt();
+                previous.grow(prefix + suffix);
+                in.readBytes(previous.bytes(), prefix, suffix);
+                previous.setLength(prefix + suffix);
+                terms[position] = previous.toBytesRef();
+            }
+        } else {
+            for (int i = 0; i < size; ++i) {
+                terms[i] = in.readBytesRef();
+            }
+        }
+        return terms;
+    }
+
+    private static int sharedPrefixLength(BytesRef a, BytesRef b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; ++i) {
+            if (a.bytes[a.offset + i] != b.bytes[b.offset + i]) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int vIntLength(int i) {
+        int length = 1;
+        while ((i & ~0x7F) != 0) {
+            i >>>= 7;
+            ++length;
         }
+        return length;
     }
 
     @Override
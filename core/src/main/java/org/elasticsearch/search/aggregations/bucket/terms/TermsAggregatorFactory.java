@@ -99,6 +99,30 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
                 return true;
             }
         },
+        GLOBAL_ORDINALS_SKETCH(new ParseField("global_ordinals_sketch")) {
+
+            @Override
+            Aggregator create(String name, AggregatorFactories factories, ValuesSource valuesSource, Terms.Order order,
+                    TermsAggregator.BucketCountThresholds bucketCountThresholds, IncludeExclude includeExclude,
+                    AggregationContext aggregationContext, Aggregator parent, SubAggCollectionMode subAggCollectMode,
+                    boolean showTermDocCountError, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
+                    throws IOException {
+                if (Aggregator.descendsFromBucketAggregator(parent)) {
+                    // sketches have a fixed size which would be paid for every parent bucket
+                    return GLOBAL_ORDINALS_HASH.create(name, factories, valuesSource, order, bucketCountThresholds, includeExclude,
+                            aggregationContext, parent, subAggCollectMode, showTermDocCountError, pipelineAggregators, metaData);
+                }
+                final IncludeExclude.OrdinalsFilter filter = includeExclude == null ? null : includeExclude.convertToOrdinalsFilter();
+                return new GlobalOrdinalsStringTermsAggregator.WithSketch(name, factories, (ValuesSource.Bytes.WithOrdinals) valuesSource,
+                        order, bucketCountThresholds, filter, aggregationContext, parent, subAggCollectMode, showTermDocCountError,
+                        pipelineAggregators, metaData);
+            }
+
+            @Override
+            boolean needsGlobalOrdinals() {
+                return true;
+            }
+        },
         GLOBAL_ORDINALS_LOW_CARDINALITY(new ParseField("global_ordinals_low_cardinality")) {
 
             @Override
@@ -19,12 +19,16 @@
 package org.elasticsearch.search.aggregations.bucket.terms;
 
 import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.fielddata.IndexOrdinalsFieldData;
+import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.bucket.BucketUtils;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms.Order;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregatorFactory.ExecutionMode;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsParametersParser.OrderElement;
 import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.aggregations.support.ValuesSourceParser;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -73,7 +77,29 @@ public class TermsParser implements Aggregator.Parser {
                     context.numberOfShards()));
         }
         bucketCountThresholds.ensureValidity();
-        return new TermsAggregatorFactory(aggregationName, vsParser.config(), order, bucketCountThresholds, aggParser.getIncludeExclude(), aggParser.getExecutionHint(), aggParser.getCollectionMode(), aggParser.showTermDocCountError());
+        ValuesSourceConfig<?> config = vsParser.config();
+        String executionHint = aggParser.getExecutionHint();
+        if (executionHint != null
+                && ExecutionMode.fromString(executionHint, context.parseFieldMatcher()) == ExecutionMode.GLOBAL_ORDINALS_SKETCH
+                && isSketchable(config) == false) {
+            // other execution modes fall back silently, but this one changes the response
+            throw new SearchParseException(context, "Execution hint [" + executionHint + "] of aggregation [" + aggregationName
+                    + "] can only be used on string fields that support ordinals", parser.getTokenLocation());
+        }
+        return new TermsAggregatorFactory(aggregationName, config, order, bucketCountThresholds, aggParser.getIncludeExclude(), executionHint, aggParser.getCollectionMode(), aggParser.showTermDocCountError());
+    }
+
+    /**
+     * Return whether terms of the given config can be summarized in a sketch.
+     */
+    static boolean isSketchable(ValuesSourceConfig<?> config) {
+        if (config.script() != null) {
+            return false;
+        }
+        if (config.unmapped()) {
+            return true;
+        }
+        return config.fieldContext() == null || config.fieldContext().indexFieldData() instanceof IndexOrdinalsFieldData;
     }
 
     static Terms.Order resolveOrder(String key, boolean asc) {
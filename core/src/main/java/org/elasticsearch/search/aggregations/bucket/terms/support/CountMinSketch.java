@@ -0,0 +1,167 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.terms.support;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
+
+import java.io.IOException;
+
+/**
+ * Count-min sketch of term frequencies, implemented based on
+ * http://dimacs.rutgers.edu/~graham/pubs/papers/cm-full.pdf
+ *
+ * The sketch has a fixed size of <code>depth * width</code> counters regardless of the number of
+ * unique terms that are added to it and two sketches of the same dimensions can be merged by
+ * summing their counters. Estimates never under-estimate the true frequency of a term, and
+ * over-estimate it by at most <code>e / width * totalCount()</code> with probability
+ * <code>1 - exp(-depth)</code>.
+ */
+public final class CountMinSketch implements Releasable {
+
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 1024;
+
+    private static final long SEED = 0;
+
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final MurmurHash3.Hash128 hash;
+    private LongArray counters;
+    private long totalCount;
+
+    public CountMinSketch(int depth, int width, BigArrays bigArrays) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be >= 1, got " + depth);
+        }
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two, got " + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.mask = width - 1;
+        this.hash = new MurmurHash3.Hash128();
+        this.counters = bigArrays.newLongArray((long) depth * width);
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Return the sum of all counts that have been added to this sketch.
+     */
+    public long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Return the maximum over-estimation of {@link #estimate(BytesRef)} that holds with
+     * probability <code>1 - exp(-depth)</code>.
+     */
+    public long errorBound() {
+        return (long) Math.ceil(Math.E / width * totalCount);
+    }
+
+    private long index(int row) {
+        // Kirsch-Mitzenmacher: derive the row hashes from the two halves of a single 128-bits hash
+        final long h = hash.h1 + row * hash.h2;
+        return (long) row * width + (h & mask);
+    }
+
+    /**
+     * Add <code>count</code> occurrences of <code>term</code> to the sketch.
+     */
+    public void add(BytesRef term, long count) {
+        assert count >= 0;
+        MurmurHash3.hash128(term.bytes, term.offset, term.length, SEED, hash);
+        for (int row = 0; row < depth; ++row) {
+            counters.increment(index(row), count);
+        }
+        totalCount += count;
+    }
+
+    /**
+     * Return an estimate of the number of occurrences of <code>term</code>. The returned
+     * value is always greater than or equal to the number of times it has been added.
+     */
+    public long estimate(BytesRef term) {
+        MurmurHash3.hash128(term.bytes, term.offset, term.length, SEED, hash);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; ++row) {
+            estimate = Math.min(estimate, counters.get(index(row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Add the counts of <code>other</code> to this sketch.
+     */
+    public void merge(CountMinSketch other) {
+        if (depth != other.depth || width != other.width) {
+            throw new IllegalArgumentException("Cannot merge sketches of different dimensions: [" + depth + "x" + width + "] and ["
+                    + other.depth + "x" + other.width + "]");
+        }
+        for (long i = 0; i < counters.size(); ++i) {
+            final long count = other.counters.get(i);
+            if (count != 0) {
+                counters.increment(i, count);
+            }
+        }
+        totalCount += other.totalCount;
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(counters);
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(depth);
+        out.writeVInt(width);
+        out.writeVLong(totalCount);
+        for (long i = 0; i < counters.size(); ++i) {
+            out.writeVLong(counters.get(i));
+        }
+    }
+
+    public static CountMinSketch readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
+        final int depth = in.readVInt();
+        final int width = in.readVInt();
+        CountMinSketch sketch = new CountMinSketch(depth, width, bigArrays);
+        sketch.totalCount = in.readVLong();
+        for (long i = 0; i < sketch.counters.size(); ++i) {
+            sketch.counters.set(i, in.readVLong());
+        }
+        return sketch;
+    }
+
+}
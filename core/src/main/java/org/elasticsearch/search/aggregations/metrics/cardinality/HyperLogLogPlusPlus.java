@@ -19,12 +19,14 @@
 
 package org.elasticsearch.search.aggregations.metrics.cardinality;
 
+import com.carrotsearch.hppc.BitMixer;
 import com.google.common.base.Preconditions;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongBitSet;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -33,10 +35,10 @@ import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.ByteArray;
 import org.elasticsearch.common.util.ByteUtils;
 import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.ObjectArray;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -48,7 +50,10 @@ import java.util.Arrays;
  * This implementation is different from the original implementation in that it
  * uses a hash table instead of a sorted list for linear counting. Although this
  * requires more space and makes hyperloglog (which is less accurate) used sooner,
- * this is also considerably faster.
+ * this is also considerably faster. Hash tables are allocated per bucket and
+ * grow with the number of unique values, and registers are only allocated when
+ * a bucket is upgraded to hyperloglog, so that low-cardinality buckets only
+ * require a few bytes.
  *
  * Trying to understand what this class does whithout having read the paper is
  * considered adventurous.
@@ -76,7 +81,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     /**
-     * Return the expected per-bucket memory usage for the given precision.
+     * Return the maximum per-bucket memory usage for the given precision.
      */
     public static long memoryUsage(int precision) {
         return 1L << precision;
@@ -155,10 +160,15 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     private final BigArrays bigArrays;
     private final OpenBitSet algorithm;
+    // 1 + the index of the registers of each bucket in runLens, or 0 if the bucket still uses linear counting
+    private LongArray registersSlots;
+    private long numRegistersSlots;
     private ByteArray runLens;
     private final Hashset hashSet;
     private final int p, m;
     private final double alphaMM;
+    private final BytesRef thisSpare, otherSpare;
+    private final byte[] writeSpare;
 
     public HyperLogLogPlusPlus(int precision, BigArrays bigArrays, long initialBucketCount) {
         Preconditions.checkArgument(precision >= 4, "precision must be >= 4");
@@ -167,8 +177,14 @@ public final class HyperLogLogPlusPlus implements Releasable {
         m = 1 << p;
         this.bigArrays = bigArrays;
         algorithm = new OpenBitSet();
-        runLens = bigArrays.newByteArray(initialBucketCount << p);
+        registersSlots = bigArrays.newLongArray(initialBucketCount);
+        numRegistersSlots = 0;
+        // registers are only allocated when buckets are upgraded to hyperloglog
+        runLens = bigArrays.newByteArray(0);
         hashSet = new Hashset(initialBucketCount);
+        thisSpare = new BytesRef();
+        otherSpare = new BytesRef();
+        writeSpare = new byte[8];
         final double alpha;
         switch (p) {
         case 4:
@@ -189,42 +205,97 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     public long maxBucket() {
-        return runLens.size() >>> p;
+        return registersSlots.size();
     }
 
     private void ensureCapacity(long numBuckets) {
-        runLens = bigArrays.grow(runLens, numBuckets << p);
+        registersSlots = bigArrays.grow(registersSlots, numBuckets);
+    }
+
+    /**
+     * Return the index of the first register of <code>bucket</code>, which must use hyperloglog.
+     */
+    private long registersStart(long bucket) {
+        final long slot = registersSlots.get(bucket) - 1;
+        assert slot >= 0;
+        return slot << p;
+    }
+
+    /**
+     * Allocate registers for <code>bucket</code>, initialized with zeros.
+     */
+    private long allocateRegisters(long bucket) {
+        assert registersSlots.get(bucket) == 0;
+        final long slot = numRegistersSlots++;
+        runLens = bigArrays.grow(runLens, (slot + 1) << p);
+        final long start = slot << p;
+        runLens.fill(start, start + m, (byte) 0);
+        registersSlots.set(bucket, slot + 1);
+        return start;
     }
 
     public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
         Preconditions.checkArgument(p == other.p);
         ensureCapacity(thisBucket + 1);
         if (other.algorithm.get(otherBucket) == LINEAR_COUNTING) {
-            final IntArray values = other.hashSet.values(otherBucket);
-            try {
-                for (long i = 0; i < values.size(); ++i) {
-                    final int encoded = values.get(i);
-                    if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
-                        collectLcEncoded(thisBucket, encoded);
-                    } else {
-                        collectHllEncoded(thisBucket, encoded);
-                    }
+            final IntArray table = other.hashSet.table(otherBucket);
+            if (table == null) {
+                return;
+            }
+            for (long i = 0; i < table.size(); ++i) {
+                final int encoded = table.get(i);
+                if (encoded == 0) {
+                    continue;
+                }
+                if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
+                    collectLcEncoded(thisBucket, encoded);
+                } else {
+                    collectHllEncoded(thisBucket, encoded);
                 }
-            } finally {
-                Releasables.close(values);
             }
         } else {
             if (algorithm.get(thisBucket) != HYPERLOGLOG) {
                 upgradeToHll(thisBucket);
             }
-            final long thisStart = thisBucket << p;
-            final long otherStart = otherBucket << p;
-            for (int i = 0; i < m; ++i) {
-                runLens.set(thisStart + i, (byte) Math.max(runLens.get(thisStart + i), other.runLens.get(otherStart + i)));
+            mergeRegisters(registersStart(thisBucket), other.runLens, other.registersStart(otherBucket));
+        }
+    }
+
+    /**
+     * Merge registers 8 at a time: registers are stored on one byte each, and
+     * since <code>m</code> is a multiple of 8, slices of 8 registers never cross
+     * pages of the underlying array.
+     */
+    private void mergeRegisters(long thisStart, ByteArray otherRunLens, long otherStart) {
+        for (int i = 0; i < m; i += 8) {
+            otherRunLens.get(otherStart + i, 8, otherSpare);
+            final long otherWord = ByteUtils.readLongLE(otherSpare.bytes, otherSpare.offset);
+            if (otherWord == 0) {
+                continue;
+            }
+            runLens.get(thisStart + i, 8, thisSpare);
+            final long thisWord = ByteUtils.readLongLE(thisSpare.bytes, thisSpare.offset);
+            final long max = maxBytes(thisWord, otherWord);
+            if (max != thisWord) {
+                ByteUtils.writeLongLE(max, writeSpare, 0);
+                runLens.set(thisStart + i, writeSpare, 0, 8);
             }
         }
     }
 
+    /**
+     * Compute the byte-wise maximum of <code>a</code> and <code>b</code>, assuming that
+     * no byte has its most significant bit set, which holds for run lengths.
+     */
+    static long maxBytes(long a, long b) {
+        final long msbs = 0x8080808080808080L;
+        // the msb of each byte is set iff the byte of a is greater than or equal to the byte of b,
+        // subtractions can't borrow from the next byte since all bytes of b are less than 0x80
+        final long aGreaterOrEqual = ((a | msbs) - b) & msbs;
+        final long mask = (aGreaterOrEqual >>> 7) * 0xFF;
+        return (a & mask) | (b & ~mask);
+    }
+
     public void collect(long bucket, long hash) {
         ensureCapacity(bucket + 1);
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
@@ -259,7 +330,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     private void collectHll(long bucket, long index, int runLen) {
-        final long bucketIndex = (bucket << p) + index;
+        final long bucketIndex = registersStart(bucket) + index;
         runLens.set(bucketIndex, (byte) Math.max(runLen, runLens.get(bucketIndex)));
     }
 
@@ -280,7 +351,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     private long cardinalityHll(long bucket) {
         double inverseSum = 0;
         int zeros = 0;
-        for (long i = bucket << p, end = i + m; i < end; ++i) {
+        for (long i = registersStart(bucket), end = i + m; i < end; ++i) {
             final int runLen = runLens.get(i);
             inverseSum += 1. / (1L << runLen);
             if (runLen == 0) {
@@ -304,17 +375,18 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     void upgradeToHll(long bucket) {
         ensureCapacity(bucket + 1);
-        final IntArray values = hashSet.values(bucket);
-        try {
-            runLens.fill(bucket << p, (bucket << p) + m, (byte) 0);
-            for (long i = 0; i < values.size(); ++i) {
-                final int encoded = values.get(i);
-                collectHllEncoded(bucket, encoded);
+        allocateRegisters(bucket);
+        algorithm.set(bucket);
+        final IntArray table = hashSet.table(bucket);
+        if (table != null) {
+            for (long i = 0; i < table.size(); ++i) {
+                final int encoded = table.get(i);
+                if (encoded != 0) {
+                    collectHllEncoded(bucket, encoded);
+                }
             }
-            algorithm.set(bucket);
-        } finally {
-            Releasables.close(values);
         }
+        hashSet.clear(bucket);
     }
 
     static long linearCounting(long m, long v) {
@@ -407,51 +479,51 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     @Override
     public void close() {
-        Releasables.close(runLens, hashSet.sizes);
+        Releasables.close(runLens, registersSlots, hashSet);
     }
 
     /**
-     * We are actually using HyperLogLog's runLens array but interpreting it as a hash set
-     * for linear counting.
+     * Hash tables for linear counting. Tables are allocated per bucket and grow
+     * with the number of unique hashes of the bucket, so that buckets that only
+     * see a few unique values don't require as much memory as the hyperloglog
+     * registers they will be upgraded to. Tables can't grow beyond <code>m</code>
+     * bytes, and buckets are upgraded to hyperloglog when they fill them.
      */
-    private class Hashset {
+    private class Hashset implements Releasable {
 
-        private final int capacity;
+        private static final int MIN_CAPACITY = 16;
+
+        private final int maxCapacity;
         private final int threshold;
-        private final int mask;
+        private ObjectArray<IntArray> tables;
         private IntArray sizes;
-        private final BytesRef readSpare;
-        private final ByteBuffer writeSpare;
 
         public Hashset(long initialBucketCount) {
-            capacity = m / 4; // because ints take 4 bytes
-            threshold = (int) (capacity * MAX_LOAD_FACTOR);
-            mask = capacity - 1;
+            maxCapacity = m / 4; // because ints take 4 bytes
+            threshold = (int) (maxCapacity * MAX_LOAD_FACTOR);
+            tables = bigArrays.newObjectArray(initialBucketCount);
             sizes = bigArrays.newIntArray(initialBucketCount);
-            readSpare = new BytesRef();
-            writeSpare = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
         }
 
-        private long index (long bucket, int index) {
-            return (bucket << p) + (index << 2);
-        }
-
-        private int get(long bucket, int index) {
-            runLens.get(index(bucket, index), 4, readSpare);
-            return ByteUtils.readIntLE(readSpare.bytes, readSpare.offset);
-        }
-
-        private void set(long bucket, int index, int value) {
-            writeSpare.putInt(0, value);
-            runLens.set(index(bucket, index), writeSpare.array(), 0, 4);
+        /**
+         * Return the hash table of <code>bucket</code>, where unused slots are <tt>0</tt>,
+         * or <tt>null</tt> if this bucket has never been added any value.
+         */
+        public IntArray table(long bucket) {
+            if (bucket >= tables.size()) {
+                return null;
+            }
+            return tables.get(bucket);
         }
 
         private int recomputedSize(long bucket) {
+            final IntArray table = table(bucket);
             int size = 0;
-            for (int i = 0; i <= mask; ++i) {
-                final int v = get(bucket, i);
-                if (v != 0) {
-                    ++size;
+            if (table != null) {
+                for (long i = 0; i < table.size(); ++i) {
+                    if (table.get(i) != 0) {
+                        ++size;
+                    }
                 }
             }
             return size;
@@ -471,54 +543,137 @@ public final class HyperLogLogPlusPlus implements Releasable {
          * Return <tt>-1</tt> if the value was already in the set or the new set size if it was added.
          */
         public int add(long bucket, int k) {
-            sizes = bigArrays.grow(sizes, bucket + 1);
             assert k != 0;
-            for (int i = (k & mask); ; i = (i + 1) & mask) {
-                final int v = get(bucket, i);
+            tables = bigArrays.grow(tables, bucket + 1);
+            sizes = bigArrays.grow(sizes, bucket + 1);
+            IntArray table = tables.get(bucket);
+            if (table == null) {
+                table = bigArrays.newIntArray(Math.min(MIN_CAPACITY, maxCapacity));
+                tables.set(bucket, table);
+            } else if (table.size() < maxCapacity && sizes.get(bucket) + 1 > table.size() * MAX_LOAD_FACTOR) {
+                table = rehash(table, table.size() * 2);
+                tables.set(bucket, table);
+            }
+            if (add(table, k)) {
+                return sizes.increment(bucket, 1);
+            } else {
+                return -1;
+            }
+        }
+
+        private boolean add(IntArray table, int k) {
+            final int mask = (int) table.size() - 1;
+            for (int i = BitMixer.mix32(k) & mask; ; i = (i + 1) & mask) {
+                final int v = table.get(i);
                 if (v == 0) {
                     // means unused, take it!
-                    set(bucket, i, k);
-                    return sizes.increment(bucket, 1);
+                    table.set(i, k);
+                    return true;
                 } else if (v == k) {
                     // k is already in the set
-                    return -1;
+                    return false;
                 }
             }
         }
 
-        public IntArray values(final long bucket) {
-            final int size = size(bucket);
-            final IntArray values = bigArrays.newIntArray(size);
-            if (size == 0) {
-                return values;
-            }
-            int i = 0;
-            for (int j = 0; j < capacity; ++j) {
-                final int k = get(bucket, j);
-                if (k != 0) {
-                    values.set(i++, k);
+        private IntArray rehash(IntArray table, long newCapacity) {
+            final IntArray newTable = bigArrays.newIntArray(newCapacity);
+            try {
+                for (long i = 0; i < table.size(); ++i) {
+                    final int k = table.get(i);
+                    if (k != 0) {
+                        add(newTable, k);
+                    }
                 }
+            } finally {
+                Releasables.close(table);
+            }
+            return newTable;
+        }
+
+        /**
+         * Release the hash table of <code>bucket</code>.
+         */
+        public void clear(long bucket) {
+            if (bucket < tables.size()) {
+                Releasables.close(tables.set(bucket, null));
+                sizes.set(bucket, 0);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (long i = 0; i < tables.size(); ++i) {
+                Releasables.close(tables.get(i));
             }
-            assert i == values.size();
-            return values;
+            Releasables.close(tables, sizes);
         }
 
     }
 
     public void writeTo(long bucket, StreamOutput out) throws IOException {
         out.writeVInt(p);
+        final boolean compressed = out.getVersion().onOrAfter(Version.V_2_0_0_beta1);
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
             out.writeBoolean(LINEAR_COUNTING);
-            try (IntArray hashes = hashSet.values(bucket)) {
-                out.writeVLong(hashes.size());
-                for (long i = 0; i < hashes.size(); ++i) {
-                    out.writeInt(hashes.get(i));
+            out.writeVLong(hashSet.size(bucket));
+            final IntArray table = hashSet.table(bucket);
+            if (compressed) {
+                // hashes are uniformly distributed, so once sorted the deltas between them are much smaller than the hashes
+                final long[] sorted = new long[hashSet.size(bucket)];
+                int size = 0;
+                if (table != null) {
+                    for (long i = 0; i < table.size(); ++i) {
+                        final int encoded = table.get(i);
+                        if (encoded != 0) {
+                            sorted[size++] = encoded & 0xFFFFFFFFL;
+                        }
+                    }
+                }
+                assert size == sorted.length;
+                Arrays.sort(sorted);
+                long previous = 0;
+                for (long encoded : sorted) {
+                    out.writeVLong(encoded - previous);
+                    previous = encoded;
+                }
+            } else if (table != null) {
+                for (long i = 0; i < table.size(); ++i) {
+                    final int encoded = table.get(i);
+                    if (encoded != 0) {
+                        out.writeInt(encoded);
+                    }
                 }
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            for (long i = bucket << p, end = i + m; i < end; ++i) {
-                out.writeByte(runLens.get(i));
+            final long start = registersStart(bucket);
+            if (compressed) {
+                // run lengths are at most 64 - p + 1, so they fit on 6 bits or less
+                int maxRunLen = 0;
+                for (long i = start, end = start + m; i < end; ++i) {
+                    maxRunLen = Math.max(maxRunLen, runLens.get(i));
+                }
+                final int bitsPerValue = PackedInts.bitsRequired(maxRunLen);
+                out.writeByte((byte) bitsPerValue);
+                long buffer = 0;
+                int bufferedBits = 0;
+                for (long i = start, end = start + m; i < end; ++i) {
+                    buffer |= (long) runLens.get(i) << bufferedBits;
+                    bufferedBits += bitsPerValue;
+                    while (bufferedBits >= 8) {
+                        out.writeByte((byte) buffer);
+                        buffer >>>= 8;
+                        bufferedBits -= 8;
+                    }
+                }
+                if (bufferedBits > 0) {
+                    out.writeByte((byte) buffer);
+                }
+            } else {
+                for (long i = start, end = i + m; i < end; ++i) {
+                    out.writeByte(runLens.get(i));
+                }
             }
         }
     }
@@ -526,23 +681,48 @@ public final class HyperLogLogPlusPlus implements Releasable {
     public static HyperLogLogPlusPlus readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
         final int precision = in.readVInt();
         HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, bigArrays, 1);
+        final boolean compressed = in.getVersion().onOrAfter(Version.V_2_0_0_beta1);
         final boolean algorithm = in.readBoolean();
         if (algorithm == LINEAR_COUNTING) {
             counts.algorithm.clear(0);
             final long size = in.readVLong();
+            long previous = 0;
             for (long i = 0; i < size; ++i) {
-                final int encoded = in.readInt();
+                final int encoded;
+                if (compressed) {
+                    previous += in.readVLong();
+                    encoded = (int) previous;
+                } else {
+                    encoded = in.readInt();
+                }
                 counts.hashSet.add(0, encoded);
             }
         } else {
             counts.algorithm.set(0);
-            for (int i = 0; i < counts.m; ++i) {
-                counts.runLens.set(i, in.readByte());
+            final long start = counts.allocateRegisters(0);
+            if (compressed) {
+                final int bitsPerValue = in.readByte();
+                final long mask = (1L << bitsPerValue) - 1;
+                long buffer = 0;
+                int bufferedBits = 0;
+                for (int i = 0; i < counts.m; ++i) {
+                    while (bufferedBits < bitsPerValue) {
+                        buffer |= (in.readByte() & 0xFFL) << bufferedBits;
+                        bufferedBits += 8;
+                    }
+                    counts.runLens.set(start + i, (byte) (buffer & mask));
+                    buffer >>>= bitsPerValue;
+                    bufferedBits -= bitsPerValue;
+                }
+            } else {
+                for (int i = 0; i < counts.m; ++i) {
+                    counts.runLens.set(start + i, in.readByte());
+                }
             }
         }
         return counts;
     }
-    
+
     /** looks and smells like the old openbitset. */
     static class OpenBitSet {
         LongBitSet impl = new LongBitSet(64);
@@ -17,36 +17,299 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
 
-import com.tdunning.math.stats.AVLTreeDigest;
-import com.tdunning.math.stats.Centroid;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
 
 /**
- * Extension of {@link com.tdunning.math.stats.TDigest} with custom serialization.
+ * Merging t-digest, based on https://github.com/tdunning/t-digest/blob/master/docs/t-digest-paper/histo.pdf
+ *
+ * Unlike tree-based digests, centroids are stored sorted in primitive arrays and
+ * new values are appended to a buffer. When the buffer is full, it is sorted and
+ * merged with the existing centroids in a single pass, using the arcsine scale
+ * function of the paper to decide which centroids may be merged together. This
+ * makes adding values allocation-free once arrays have grown to their maximum
+ * size, and makes the memory usage of a digest bounded by <code>O(compression)</code>.
  */
-public class TDigestState extends AVLTreeDigest {
+public final class TDigestState {
+
+    private static final int INITIAL_CAPACITY = 16;
 
     private final double compression;
+    private final int maxBufferSize;
+
+    // sorted centroids
+    private double[] means;
+    private long[] counts;
+    private int centroidCount;
+    // recycled between merges of the buffer
+    private double[] spareMeans;
+    private long[] spareCounts;
+
+    // values that have not been merged into centroids yet
+    private double[] bufferMeans;
+    private long[] bufferCounts;
+    private int bufferCount;
+    private final IntroSorter bufferSorter;
+
+    private long totalCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
 
     public TDigestState(double compression) {
-        super(compression);
         this.compression = compression;
+        // the number of centroids is bounded by 2 * compression + 1
+        maxBufferSize = Math.max(INITIAL_CAPACITY, 5 * (int) Math.ceil(compression));
+        // arrays start small and grow on demand so that digests that only see a few values are cheap
+        means = new double[INITIAL_CAPACITY];
+        counts = new long[INITIAL_CAPACITY];
+        spareMeans = new double[INITIAL_CAPACITY];
+        spareCounts = new long[INITIAL_CAPACITY];
+        bufferMeans = new double[INITIAL_CAPACITY];
+        bufferCounts = new long[INITIAL_CAPACITY];
+        bufferSorter = new IntroSorter() {
+
+            double pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                final double tmpMean = bufferMeans[i];
+                bufferMeans[i] = bufferMeans[j];
+                bufferMeans[j] = tmpMean;
+                final long tmpCount = bufferCounts[i];
+                bufferCounts[i] = bufferCounts[j];
+                bufferCounts[j] = tmpCount;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Double.compare(bufferMeans[i], bufferMeans[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = bufferMeans[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Double.compare(pivot, bufferMeans[j]);
+            }
+
+        };
     }
 
-    @Override
     public double compression() {
         return compression;
     }
 
+    /**
+     * Return the number of values that have been added to this digest.
+     */
+    public long size() {
+        return totalCount;
+    }
+
+    public int centroidCount() {
+        flush();
+        return centroidCount;
+    }
+
+    /**
+     * Return an estimate of the memory usage of this digest.
+     */
+    public long byteSize() {
+        return RamUsageEstimator.shallowSizeOfInstance(TDigestState.class)
+                + RamUsageEstimator.sizeOf(means) + RamUsageEstimator.sizeOf(counts)
+                + RamUsageEstimator.sizeOf(spareMeans) + RamUsageEstimator.sizeOf(spareCounts)
+                + RamUsageEstimator.sizeOf(bufferMeans) + RamUsageEstimator.sizeOf(bufferCounts);
+    }
+
+    public void add(double x) {
+        add(x, 1);
+    }
+
+    public void add(double x, long count) {
+        if (Double.isNaN(x)) {
+            throw new IllegalArgumentException("Cannot add NaN to a t-digest");
+        }
+        if (bufferCount == bufferMeans.length) {
+            if (bufferCount < maxBufferSize) {
+                bufferMeans = ArrayUtil.grow(bufferMeans, Math.min(maxBufferSize, 2 * bufferCount));
+                bufferCounts = ArrayUtil.grow(bufferCounts, bufferMeans.length);
+            } else {
+                flush();
+            }
+        }
+        bufferMeans[bufferCount] = x;
+        bufferCounts[bufferCount] = count;
+        ++bufferCount;
+        totalCount += count;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    /**
+     * Add all values of <code>other</code> to this digest.
+     */
+    public void add(TDigestState other) {
+        other.flush();
+        for (int i = 0; i < other.centroidCount; ++i) {
+            add(other.means[i], other.counts[i]);
+        }
+        if (other.totalCount > 0) {
+            // centroids don't keep track of the extreme values
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * Return the k-scale value of quantile <code>q</code>. Two adjacent centroids may only be
+     * merged if the difference of the k-scale values at their bounds is at most 1, which
+     * keeps centroids small in the tails of the distribution.
+     */
+    private double k(double q) {
+        return compression / Math.PI * Math.asin(2 * q - 1);
+    }
+
+    /**
+     * Merge the buffer into the centroids.
+     */
+    private void flush() {
+        if (bufferCount == 0) {
+            return;
+        }
+        bufferSorter.sort(0, bufferCount);
+
+        final double[] oldMeans = means;
+        final long[] oldCounts = counts;
+        final int oldCount = centroidCount;
+        if (spareMeans.length < oldMeans.length) {
+            spareMeans = new double[oldMeans.length];
+            spareCounts = new long[oldMeans.length];
+        }
+        means = spareMeans;
+        counts = spareCounts;
+        centroidCount = 0;
+
+        long countSoFar = 0; // total count of the centroids on the left of the current one
+        double kLeft = k(0);
+        for (int i = 0, j = 0; i < oldCount || j < bufferCount; ) {
+            final double mean;
+            final long count;
+            if (j == bufferCount || (i < oldCount && oldMeans[i] <= bufferMeans[j])) {
+                mean = oldMeans[i];
+                count = oldCounts[i];
+                ++i;
+            } else {
+                mean = bufferMeans[j];
+                count = bufferCounts[j];
+                ++j;
+            }
+            if (centroidCount > 0) {
+                final int last = centroidCount - 1;
+                final long proposedCount = counts[last] + count;
+                if (k((double) (countSoFar + proposedCount) / totalCount) - kLeft <= 1) {
+                    counts[last] = proposedCount;
+                    means[last] += (mean - means[last]) * count / proposedCount;
+                    continue;
+                }
+                countSoFar += counts[last];
+                kLeft = k((double) countSoFar / totalCount);
+            }
+            if (centroidCount == means.length) {
+                means = ArrayUtil.grow(means);
+                counts = ArrayUtil.grow(counts, means.length);
+            }
+            means[centroidCount] = mean;
+            counts[centroidCount] = count;
+            ++centroidCount;
+        }
+        spareMeans = oldMeans;
+        spareCounts = oldCounts;
+        bufferCount = 0;
+    }
+
+    /**
+     * Return an estimate of the value at quantile <code>q</code>, interpolating
+     * linearly between the centers of centroids.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("q should be in [0,1], got " + q);
+        }
+        flush();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        } else if (centroidCount == 1) {
+            return means[0];
+        }
+        final double index = q * totalCount;
+        final double firstHalf = counts[0] / 2.;
+        if (index < firstHalf) {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+        double countSoFar = firstHalf;
+        for (int i = 0; i < centroidCount - 1; ++i) {
+            final double delta = (counts[i] + counts[i + 1]) / 2.;
+            if (countSoFar + delta > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - countSoFar) / delta;
+            }
+            countSoFar += delta;
+        }
+        final int last = centroidCount - 1;
+        final double lastHalf = counts[last] / 2.;
+        return means[last] + (max - means[last]) * Math.min(1, (index - countSoFar) / lastHalf);
+    }
+
+    /**
+     * Return an estimate of the fraction of values that are less than or equal to <code>x</code>.
+     */
+    public double cdf(double x) {
+        flush();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        } else if (x < min) {
+            return 0;
+        } else if (x >= max) {
+            return 1;
+        } else if (centroidCount == 1) {
+            return (x - min) / (max - min);
+        }
+        final double firstHalf = counts[0] / 2.;
+        if (x < means[0]) {
+            return firstHalf * (x - min) / (means[0] - min) / totalCount;
+        }
+        double countSoFar = firstHalf;
+        for (int i = 0; i < centroidCount - 1; ++i) {
+            final double delta = (counts[i] + counts[i + 1]) / 2.;
+            if (x < means[i + 1]) {
+                return (countSoFar + delta * (x - means[i]) / (means[i + 1] - means[i])) / totalCount;
+            }
+            countSoFar += delta;
+        }
+        final int last = centroidCount - 1;
+        final double lastHalf = counts[last] / 2.;
+        return (countSoFar + lastHalf * (x - means[last]) / (max - means[last])) / totalCount;
+    }
+
     public static void write(TDigestState state, StreamOutput out) throws IOException {
+        state.flush();
         out.writeDouble(state.compression);
-        out.writeVInt(state.centroidCount());
-        for (Centroid centroid : state.centroids()) {
-            out.writeDouble(centroid.mean());
-            out.writeVLong(centroid.count());
+        out.writeVInt(state.centroidCount);
+        for (int i = 0; i < state.centroidCount; ++i) {
+            out.writeDouble(state.means[i]);
+            out.writeVLong(state.counts[i]);
+        }
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            out.writeDouble(state.min);
+            out.writeDouble(state.max);
         }
     }
 
@@ -54,8 +317,24 @@ public class TDigestState extends AVLTreeDigest {
         double compression = in.readDouble();
         TDigestState state = new TDigestState(compression);
         int n = in.readVInt();
+        state.means = new double[Math.max(n, INITIAL_CAPACITY)];
+        state.counts = new long[state.means.length];
+        // centroids are written sorted, so they can be copied as-is without being merged again
         for (int i = 0; i < n; i++) {
-            state.add(in.readDouble(), in.readVInt());
+            final double mean = in.readDouble();
+            final long count = in.readVLong();
+            state.means[i] = mean;
+            state.counts[i] = count;
+            state.totalCount += count;
+        }
+        state.centroidCount = n;
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            state.min = in.readDouble();
+            state.max = in.readDouble();
+        } else if (n > 0) {
+            // older nodes do not send min and max, the outermost centroids are the best approximation
+            state.min = state.means[0];
+            state.max = state.means[n - 1];
         }
         return state;
     }
@@ -0,0 +1,180 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.tophits;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.FloatArray;
+import org.elasticsearch.common.util.IntArray;
+
+/**
+ * Per-bucket top-N (doc, score) pairs, sorted by descending score then ascending doc id like
+ * {@link org.apache.lucene.search.TopScoreDocCollector}. Every bucket owns a slice of <code>topN</code>
+ * entries in big arrays which is organized as a min-heap, so that collecting a document does not
+ * allocate any object.
+ */
+final class BucketScoreDocs implements Releasable {
+
+    private final BigArrays bigArrays;
+    private final int topN;
+    private IntArray docs;
+    private FloatArray scores;
+    private IntArray sizes;
+    private IntArray totalHits;
+
+    BucketScoreDocs(int topN, BigArrays bigArrays) {
+        this.bigArrays = bigArrays;
+        this.topN = topN;
+        boolean success = false;
+        try {
+            docs = bigArrays.newIntArray(topN, false);
+            scores = bigArrays.newFloatArray(topN, false);
+            sizes = bigArrays.newIntArray(1, true);
+            totalHits = bigArrays.newIntArray(1, true);
+            success = true;
+        } finally {
+            if (success == false) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Return whether at least one document has been collected into <code>bucket</code>.
+     */
+    boolean hasDocs(long bucket) {
+        return bucket < totalHits.size() && totalHits.get(bucket) > 0;
+    }
+
+    void collect(long bucket, int doc, float score) {
+        if (bucket >= totalHits.size()) {
+            totalHits = bigArrays.grow(totalHits, bucket + 1);
+            sizes = bigArrays.resize(sizes, totalHits.size());
+            docs = bigArrays.resize(docs, totalHits.size() * topN);
+            scores = bigArrays.resize(scores, totalHits.size() * topN);
+        }
+        totalHits.increment(bucket, 1);
+        if (topN == 0) {
+            return;
+        }
+        final long start = bucket * topN;
+        final int size = sizes.get(bucket);
+        if (size < topN) {
+            docs.set(start + size, doc);
+            scores.set(start + size, score);
+            sizes.set(bucket, size + 1);
+            upHeap(start, size);
+        } else if (score > scores.get(start)) {
+            // docs are collected in increasing order so on equal scores the heap top is the best one
+            docs.set(start, doc);
+            scores.set(start, score);
+            downHeap(start, size);
+        }
+    }
+
+    /** Whether the entry at <code>i</code> ranks lower than the entry at <code>j</code>. */
+    private boolean lessThan(long i, long j) {
+        final float si = scores.get(i);
+        final float sj = scores.get(j);
+        return si < sj || (si == sj && docs.get(i) > docs.get(j));
+    }
+
+    private void swap(long i, long j) {
+        final int doc = docs.get(i);
+        docs.set(i, docs.get(j));
+        docs.set(j, doc);
+        final float score = scores.get(i);
+        scores.set(i, scores.get(j));
+        scores.set(j, score);
+    }
+
+    private void upHeap(long start, int i) {
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (lessThan(start + i, start + parent) == false) {
+                break;
+            }
+            swap(start + i, start + parent);
+            i = parent;
+        }
+    }
+
+    private void downHeap(long start, int size) {
+        int i = 0;
+        while (true) {
+            int least = i;
+            final int left = 2 * i + 1;
+            final int right = left + 1;
+            if (left < size && lessThan(start + left, start + least)) {
+                least = left;
+            }
+            if (right < size && lessThan(start + right, start + least)) {
+                least = right;
+            }
+            if (least == i) {
+                break;
+            }
+            swap(start + i, start + least);
+            i = least;
+        }
+    }
+
+    /**
+     * Return the top docs of <code>bucket</code>, best hits first.
+     */
+    TopDocs topDocs(long bucket) {
+        if (hasDocs(bucket) == false) {
+            return new TopDocs(0, new ScoreDoc[0], Float.NaN);
+        }
+        final long start = bucket * topN;
+        final ScoreDoc[] scoreDocs = new ScoreDoc[sizes.get(bucket)];
+        for (int i = 0; i < scoreDocs.length; ++i) {
+            scoreDocs[i] = new ScoreDoc(docs.get(start + i), scores.get(start + i));
+        }
+        new InPlaceMergeSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                final ScoreDoc tmp = scoreDocs[i];
+                scoreDocs[i] = scoreDocs[j];
+                scoreDocs[j] = tmp;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                int cmp = Float.compare(scoreDocs[j].score, scoreDocs[i].score);
+                if (cmp == 0) {
+                    cmp = Integer.compare(scoreDocs[i].doc, scoreDocs[j].doc);
+                }
+                return cmp;
+            }
+        }.sort(0, scoreDocs.length);
+        final float maxScore = scoreDocs.length == 0 ? Float.NaN : scoreDocs[0].score;
+        return new TopDocs(totalHits.get(bucket), scoreDocs, maxScore);
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(docs, scores, sizes, totalHits);
+    }
+}
@@ -85,6 +85,17 @@ public class InternalTopHits extends InternalMetricsAggregation implements TopHi
         return searchHits;
     }
 
+    TopDocs topDocs() {
+        return topDocs;
+    }
+
+    /**
+     * Set the hits of this aggregation, for aggregations whose hits are fetched after they have been built.
+     */
+    void searchHits(InternalSearchHits searchHits) {
+        this.searchHits = searchHits;
+    }
+
     @Override
     public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         InternalSearchHits[] shardHits = new InternalSearchHits[aggregations.size()];
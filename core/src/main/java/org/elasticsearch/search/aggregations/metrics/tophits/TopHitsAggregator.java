@@ -29,7 +29,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TopFieldDocs;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.util.IntroSorter;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.util.LongObjectPagedHashMap;
@@ -40,16 +40,17 @@ import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.aggregations.metrics.MetricsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.fetch.FetchPhase;
-import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.internal.InternalSearchHit;
 import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.SubSearchContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -69,14 +70,29 @@ public class TopHitsAggregator extends MetricsAggregator {
 
     final FetchPhase fetchPhase;
     final SubSearchContext subSearchContext;
+    final int topN;
+    // used when sorting on fields
     final LongObjectPagedHashMap<TopDocsAndLeafCollector> topDocsCollectors;
+    // used when sorting by score
+    final BucketScoreDocs scoreDocs;
+    // built aggregations whose hits still need to be fetched
+    final List<InternalTopHits> pendingHits = new ArrayList<>();
 
     public TopHitsAggregator(FetchPhase fetchPhase, SubSearchContext subSearchContext, String name, AggregationContext context,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         super(name, context, parent, pipelineAggregators, metaData);
         this.fetchPhase = fetchPhase;
-        topDocsCollectors = new LongObjectPagedHashMap<>(1, context.bigArrays());
         this.subSearchContext = subSearchContext;
+        // In the QueryPhase we don't need this protection, because it is build into the IndexSearcher,
+        // but here we create collectors ourselves and we need prevent OOM because of crazy an offset and size.
+        topN = Math.min(subSearchContext.from() + subSearchContext.size(), subSearchContext.searcher().getIndexReader().maxDoc());
+        if (subSearchContext.sort() != null) {
+            topDocsCollectors = new LongObjectPagedHashMap<>(1, context.bigArrays());
+            scoreDocs = null;
+        } else {
+            topDocsCollectors = null;
+            scoreDocs = new BucketScoreDocs(topN, context.bigArrays());
+        }
     }
 
     @Override
@@ -94,6 +110,24 @@ public class TopHitsAggregator extends MetricsAggregator {
     public LeafBucketCollector getLeafCollector(final LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
 
+        if (scoreDocs != null) {
+            return new LeafBucketCollectorBase(sub, null) {
+
+                Scorer scorer;
+
+                @Override
+                public void setScorer(Scorer scorer) throws IOException {
+                    this.scorer = scorer;
+                    super.setScorer(scorer);
+                }
+
+                @Override
+                public void collect(int docId, long bucket) throws IOException {
+                    scoreDocs.collect(bucket, ctx.docBase + docId, scorer.score());
+                }
+            };
+        }
+
         for (LongObjectPagedHashMap.Cursor<TopDocsAndLeafCollector> cursor : topDocsCollectors) {
             cursor.value.leafCollector = cursor.value.topLevelCollector.getLeafCollector(ctx);
         }
@@ -116,11 +150,7 @@ public class TopHitsAggregator extends MetricsAggregator {
                 TopDocsAndLeafCollector collectors = topDocsCollectors.get(bucket);
                 if (collectors == null) {
                     Sort sort = subSearchContext.sort();
-                    int topN = subSearchContext.from() + subSearchContext.size();
-                    // In the QueryPhase we don't need this protection, because it is build into the IndexSearcher,
-                    // but here we create collectors ourselves and we need prevent OOM because of crazy an offset and size.
-                    topN = Math.min(topN, subSearchContext.searcher().getIndexReader().maxDoc());
-                    TopDocsCollector<?> topLevelCollector = sort != null ? TopFieldCollector.create(sort, topN, true, subSearchContext.trackScores(), subSearchContext.trackScores()) : TopScoreDocCollector.create(topN);
+                    TopDocsCollector<?> topLevelCollector = TopFieldCollector.create(sort, topN, true, subSearchContext.trackScores(), subSearchContext.trackScores());
                     collectors = new TopDocsAndLeafCollector(topLevelCollector);
                     collectors.leafCollector = collectors.topLevelCollector.getLeafCollector(ctx);
                     collectors.leafCollector.setScorer(scorer);
@@ -132,39 +162,124 @@ public class TopHitsAggregator extends MetricsAggregator {
     }
 
     @Override
-    public InternalAggregation buildAggregation(long owningBucketOrdinal) {
-        TopDocsAndLeafCollector topDocsCollector = topDocsCollectors.get(owningBucketOrdinal);
-        final InternalTopHits topHits;
-        if (topDocsCollector == null) {
-            topHits = buildEmptyAggregation();
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
+        final TopDocs topDocs;
+        if (scoreDocs != null) {
+            if (scoreDocs.hasDocs(owningBucketOrdinal) == false) {
+                return buildEmptyAggregation();
+            }
+            topDocs = scoreDocs.topDocs(owningBucketOrdinal);
         } else {
-            final TopDocs topDocs = topDocsCollector.topLevelCollector.topDocs();
-
-            subSearchContext.queryResult().topDocs(topDocs);
-            int[] docIdsToLoad = new int[topDocs.scoreDocs.length];
-            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
-                docIdsToLoad[i] = topDocs.scoreDocs[i].doc;
+            TopDocsAndLeafCollector topDocsCollector = topDocsCollectors.get(owningBucketOrdinal);
+            if (topDocsCollector == null) {
+                return buildEmptyAggregation();
             }
-            subSearchContext.docIdsToLoad(docIdsToLoad, 0, docIdsToLoad.length);
-            fetchPhase.execute(subSearchContext);
-            FetchSearchResult fetchResult = subSearchContext.fetchResult();
-            InternalSearchHit[] internalHits = fetchResult.fetchResult().hits().internalHits();
-            for (int i = 0; i < internalHits.length; i++) {
-                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
-                InternalSearchHit searchHitFields = internalHits[i];
-                searchHitFields.shard(subSearchContext.shardTarget());
-                searchHitFields.score(scoreDoc.score);
-                if (scoreDoc instanceof FieldDoc) {
-                    FieldDoc fieldDoc = (FieldDoc) scoreDoc;
-                    searchHitFields.sortValues(fieldDoc.fields);
+            topDocs = topDocsCollector.topLevelCollector.topDocs();
+        }
+
+        // hits are fetched later on, at once for all buckets
+        final InternalTopHits topHits = new InternalTopHits(name, subSearchContext.from(), subSearchContext.size(), topDocs, null,
+                pipelineAggregators(), metaData());
+        pendingHits.add(topHits);
+        final SearchContextAggregations aggregations = context.searchContext().aggregations();
+        if (aggregations == null) {
+            // not executed through the aggregation phase, fetch hits right away
+            fetchPendingHits();
+        } else if (pendingHits.size() == 1) {
+            aggregations.addBuildListener(new SearchContextAggregations.BuildListener() {
+                @Override
+                public void onAggregationsBuilt() {
+                    fetchPendingHits();
                 }
-            }
-            topHits = new InternalTopHits(name, subSearchContext.from(), subSearchContext.size(), topDocs, fetchResult.hits(), pipelineAggregators(),
-                    metaData());
+            });
         }
         return topHits;
     }
 
+    /**
+     * Fetch the hits of all built aggregations in a single pass over the index, in doc id order.
+     */
+    private void fetchPendingHits() {
+        if (pendingHits.isEmpty()) {
+            return;
+        }
+        int numDocs = 0;
+        for (InternalTopHits topHits : pendingHits) {
+            numDocs += topHits.topDocs().scoreDocs.length;
+        }
+        // doc ids to load, and the bucket and position in the bucket that they belong to
+        final int[] docIds = new int[numDocs];
+        final int[] owners = new int[numDocs];
+        final int[] slots = new int[numDocs];
+        for (int i = 0, index = 0; i < pendingHits.size(); ++i) {
+            final ScoreDoc[] bucketDocs = pendingHits.get(i).topDocs().scoreDocs;
+            for (int j = 0; j < bucketDocs.length; ++j, ++index) {
+                docIds[index] = bucketDocs[j].doc;
+                owners[index] = i;
+                slots[index] = j;
+            }
+        }
+        new IntroSorter() {
+
+            int pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                swap(docIds, i, j);
+                swap(owners, i, j);
+                swap(slots, i, j);
+            }
+
+            private void swap(int[] array, int i, int j) {
+                final int tmp = array[i];
+                array[i] = array[j];
+                array[j] = tmp;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Integer.compare(docIds[i], docIds[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = docIds[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Integer.compare(pivot, docIds[j]);
+            }
+        }.sort(0, numDocs);
+
+        subSearchContext.queryResult().topDocs(new TopDocs(numDocs, new ScoreDoc[0], Float.NaN));
+        subSearchContext.docIdsToLoad(docIds, 0, numDocs);
+        fetchPhase.execute(subSearchContext);
+        final InternalSearchHit[] fetchedHits = subSearchContext.fetchResult().hits().internalHits();
+
+        final InternalSearchHit[][] bucketHits = new InternalSearchHit[pendingHits.size()][];
+        for (int i = 0; i < bucketHits.length; ++i) {
+            bucketHits[i] = new InternalSearchHit[pendingHits.get(i).topDocs().scoreDocs.length];
+        }
+        for (int index = 0; index < numDocs; ++index) {
+            final ScoreDoc scoreDoc = pendingHits.get(owners[index]).topDocs().scoreDocs[slots[index]];
+            final InternalSearchHit searchHitFields = fetchedHits[index];
+            searchHitFields.shard(subSearchContext.shardTarget());
+            searchHitFields.score(scoreDoc.score);
+            if (scoreDoc instanceof FieldDoc) {
+                FieldDoc fieldDoc = (FieldDoc) scoreDoc;
+                searchHitFields.sortValues(fieldDoc.fields);
+            }
+            bucketHits[owners[index]][slots[index]] = searchHitFields;
+        }
+        for (int i = 0; i < bucketHits.length; ++i) {
+            final InternalTopHits topHits = pendingHits.get(i);
+            final TopDocs topDocs = topHits.topDocs();
+            topHits.searchHits(new InternalSearchHits(bucketHits[i], topDocs.totalHits, topDocs.getMaxScore()));
+        }
+        pendingHits.clear();
+    }
+
     @Override
     public InternalTopHits buildEmptyAggregation() {
         TopDocs topDocs;
@@ -178,7 +293,7 @@ public class TopHitsAggregator extends MetricsAggregator {
 
     @Override
     protected void doClose() {
-        Releasables.close(topDocsCollectors);
+        Releasables.close(topDocsCollectors, scoreDocs);
     }
 
     public static class Factory extends AggregatorFactory {
@@ -0,0 +1,201 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.pipeline;
+
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
+import org.elasticsearch.search.aggregations.InvalidAggregationPathException;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation.Bucket;
+import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
+import org.elasticsearch.search.aggregations.support.AggregationPath;
+import org.joda.time.DateTime;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A columnar view of the buckets of a multi-bucket aggregation that pipeline aggregations read from and write to.
+ *
+ * Bucket keys, doc counts and the values of the metrics that are referenced by buckets paths are stored in
+ * primitive arrays, indexed by the position of the bucket. Each buckets path is parsed and resolved against all
+ * buckets only once, no matter how many pipeline aggregations read it, and the values that pipeline aggregations
+ * compute are added as new columns so that chained pipeline aggregations can read them without resolving them
+ * against buckets again.
+ *
+ * Buckets that a path could not be resolved for, for instance because a pipeline aggregation did not add a value
+ * to them, are tracked separately from gaps: gap policies do not apply to them and they are reported by
+ * {@link #missing(String)}.
+ */
+public final class BucketColumns {
+
+    private static final String DOC_COUNT_PATH = "_count";
+
+    private final String aggName;
+    private final List<? extends Bucket> buckets;
+    private final long[] docCounts;
+    private long[] keys;
+    // raw values by buckets path, gap policies are applied on read
+    private final Map<String, Column> columns;
+
+    private BucketColumns(String aggName, List<? extends Bucket> buckets, long[] docCounts, long[] keys, Map<String, Column> columns) {
+        this.aggName = aggName;
+        this.buckets = buckets;
+        this.docCounts = docCounts;
+        this.keys = keys;
+        this.columns = columns;
+    }
+
+    /**
+     * Build a columnar view of the buckets of <code>agg</code>.
+     */
+    public static BucketColumns build(InternalMultiBucketAggregation<?, ?> agg) {
+        final List<? extends Bucket> buckets = agg.getBuckets();
+        final long[] docCounts = new long[buckets.size()];
+        for (int i = 0; i < docCounts.length; ++i) {
+            docCounts[i] = buckets.get(i).getDocCount();
+        }
+        return new BucketColumns(agg.getName(), buckets, docCounts, null, new HashMap<String, Column>());
+    }
+
+    /**
+     * Return the number of buckets.
+     */
+    public int size() {
+        return docCounts.length;
+    }
+
+    /**
+     * Return the doc count of every bucket.
+     */
+    public long[] docCounts() {
+        return docCounts;
+    }
+
+    /**
+     * Return the key of every bucket as a long. Only works on buckets whose keys are numbers or dates, like
+     * the buckets of histograms.
+     */
+    public long[] keys() {
+        if (keys == null) {
+            final long[] keys = new long[buckets.size()];
+            for (int i = 0; i < keys.length; ++i) {
+                final Object key = buckets.get(i).getKey();
+                if (key instanceof DateTime) {
+                    keys[i] = ((DateTime) key).getMillis();
+                } else if (key instanceof Number) {
+                    keys[i] = ((Number) key).longValue();
+                } else {
+                    throw new AggregationExecutionException("Bucket keys must be either a Number or a DateTime for aggregation ["
+                            + aggName + "]. Found bucket with key " + key);
+                }
+            }
+            this.keys = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * Return the value of <code>bucketsPath</code> for every bucket, with <code>gapPolicy</code> applied to
+     * empty buckets. Buckets that the path could not be resolved for have a value of {@link Double#NaN} whatever
+     * the gap policy, use {@link #missing(String)} to tell them apart. The returned array may be modified.
+     */
+    public double[] values(String bucketsPath, GapPolicy gapPolicy) {
+        final Column column = column(bucketsPath);
+        final double[] raw = column.values;
+        final double[] values = new double[raw.length];
+        final double gapValue = gapPolicy == GapPolicy.INSERT_ZEROS ? 0 : Double.NaN;
+        // doc count never has missing values so gap policy doesn't apply here
+        final boolean isDocCountProperty = DOC_COUNT_PATH.equals(bucketsPath);
+        for (int i = 0; i < values.length; ++i) {
+            final double value = raw[i];
+            if (column.missing.get(i)) {
+                values[i] = Double.NaN;
+            } else if (Double.isInfinite(value) || Double.isNaN(value) || (docCounts[i] == 0 && isDocCountProperty == false)) {
+                values[i] = gapValue;
+            } else {
+                values[i] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return the buckets that <code>bucketsPath</code> could not be resolved for. The returned set must not be
+     * modified.
+     */
+    public BitSet missing(String bucketsPath) {
+        return column(bucketsPath).missing;
+    }
+
+    private Column column(String bucketsPath) {
+        Column column = columns.get(bucketsPath);
+        if (column == null) {
+            final double[] raw = new double[buckets.size()];
+            final BitSet missing = new BitSet(raw.length);
+            if (DOC_COUNT_PATH.equals(bucketsPath)) {
+                for (int i = 0; i < raw.length; ++i) {
+                    raw[i] = docCounts[i];
+                }
+            } else {
+                final List<String> aggPathAsList = AggregationPath.parse(bucketsPath).getPathElementsAsStringList();
+                for (int i = 0; i < raw.length; ++i) {
+                    try {
+                        raw[i] = BucketHelpers.toDouble(buckets.get(i).getProperty(aggName, aggPathAsList));
+                    } catch (InvalidAggregationPathException e) {
+                        raw[i] = Double.NaN;
+                        missing.set(i);
+                    }
+                }
+            }
+            column = new Column(raw, missing);
+            columns.put(bucketsPath, column);
+        }
+        return column;
+    }
+
+    /**
+     * Return the columns of <code>agg</code>, which has been created by a pipeline aggregation named
+     * <code>name</code> by adding <code>values</code> to the buckets that these columns are built on. The
+     * <code>missing</code> buckets are those that did not get a value.
+     */
+    public BucketColumns withValues(InternalMultiBucketAggregation<?, ?> agg, String name, double[] values, BitSet missing) {
+        final List<? extends Bucket> newBuckets = agg.getBuckets();
+        if (newBuckets.size() != buckets.size() || values.length != buckets.size()) {
+            throw new IllegalArgumentException("Cannot add a column of [" + values.length + "] values to [" + buckets.size()
+                    + "] buckets for aggregation [" + aggName + "]");
+        }
+        final Map<String, Column> newColumns = new HashMap<>(columns);
+        newColumns.put(name, new Column(values, missing));
+        return new BucketColumns(aggName, newBuckets, docCounts, keys, newColumns);
+    }
+
+    private static final class Column {
+
+        private final double[] values;
+        private final BitSet missing;
+
+        private Column(double[] values, BitSet missing) {
+            this.values = values;
+            this.missing = missing;
+        }
+    }
+}
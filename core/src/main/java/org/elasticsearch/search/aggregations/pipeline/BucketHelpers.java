@@ -158,36 +158,40 @@ public class BucketHelpers {
             InternalMultiBucketAggregation.Bucket bucket, List<String> aggPathAsList, GapPolicy gapPolicy) {
         try {
             Object propertyValue = bucket.getProperty(agg.getName(), aggPathAsList);
-            if (propertyValue == null) {
-                throw new AggregationExecutionException(DerivativeParser.BUCKETS_PATH.getPreferredName()
-                        + " must reference either a number value or a single value numeric metric aggregation");
-            } else {
-                double value;
-                if (propertyValue instanceof Number) {
-                    value = ((Number) propertyValue).doubleValue();
-                } else if (propertyValue instanceof InternalNumericMetricsAggregation.SingleValue) {
-                    value = ((InternalNumericMetricsAggregation.SingleValue) propertyValue).value();
-                } else {
-                    throw new AggregationExecutionException(DerivativeParser.BUCKETS_PATH.getPreferredName()
-                            + " must reference either a number value or a single value numeric metric aggregation, got: "
-                            + propertyValue.getClass().getCanonicalName());
-                }
-                // doc count never has missing values so gap policy doesn't apply here
-                boolean isDocCountProperty = aggPathAsList.size() == 1 && "_count".equals(aggPathAsList.get(0));
-                if (Double.isInfinite(value) || Double.isNaN(value) || (bucket.getDocCount() == 0 && !isDocCountProperty)) {
-                    switch (gapPolicy) {
-                    case INSERT_ZEROS:
-                        return 0.0;
-                    case SKIP:
-                    default:
-                        return Double.NaN;
-                    }
-                } else {
-                    return value;
+            double value = toDouble(propertyValue);
+            // doc count never has missing values so gap policy doesn't apply here
+            boolean isDocCountProperty = aggPathAsList.size() == 1 && "_count".equals(aggPathAsList.get(0));
+            if (Double.isInfinite(value) || Double.isNaN(value) || (bucket.getDocCount() == 0 && !isDocCountProperty)) {
+                switch (gapPolicy) {
+                case INSERT_ZEROS:
+                    return 0.0;
+                case SKIP:
+                default:
+                    return Double.NaN;
                 }
+            } else {
+                return value;
             }
         } catch (InvalidAggregationPathException e) {
             return null;
         }
     }
+
+    /**
+     * Convert a property that has been resolved from a buckets path to a double.
+     */
+    static double toDouble(Object propertyValue) {
+        if (propertyValue == null) {
+            throw new AggregationExecutionException(DerivativeParser.BUCKETS_PATH.getPreferredName()
+                    + " must reference either a number value or a single value numeric metric aggregation");
+        } else if (propertyValue instanceof Number) {
+            return ((Number) propertyValue).doubleValue();
+        } else if (propertyValue instanceof InternalNumericMetricsAggregation.SingleValue) {
+            return ((InternalNumericMetricsAggregation.SingleValue) propertyValue).value();
+        } else {
+            throw new AggregationExecutionException(DerivativeParser.BUCKETS_PATH.getPreferredName()
+                    + " must reference either a number value or a single value numeric metric aggregation, got: "
+                    + propertyValue.getClass().getCanonicalName());
+        }
+    }
 }
@@ -36,6 +36,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation.Type;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation.Bucket;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 import org.elasticsearch.search.aggregations.pipeline.InternalSimpleValue;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -46,12 +47,11 @@ import org.elasticsearch.search.aggregations.support.format.ValueFormatterStream
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
-
 public class BucketScriptPipelineAggregator extends PipelineAggregator {
 
     public final static Type TYPE = new Type("bucket_script");
@@ -106,22 +106,37 @@ public class BucketScriptPipelineAggregator extends PipelineAggregator {
         List<? extends Bucket> buckets = originalAgg.getBuckets();
 
         CompiledScript compiledScript = reduceContext.scriptService().compile(script, ScriptContext.Standard.AGGS);
+        BucketColumns columns = originalAgg.bucketColumns();
+        String[] varNames = new String[bucketsPathsMap.size()];
+        double[][] varValues = new double[bucketsPathsMap.size()][];
+        BitSet[] varMissing = new BitSet[bucketsPathsMap.size()];
+        int varIndex = 0;
+        for (Map.Entry<String, String> entry : bucketsPathsMap.entrySet()) {
+            varNames[varIndex] = entry.getKey();
+            varValues[varIndex] = columns.values(entry.getValue(), gapPolicy);
+            varMissing[varIndex] = columns.missing(entry.getValue());
+            varIndex++;
+        }
         List newBuckets = new ArrayList<>();
-        for (Bucket bucket : buckets) {
+        double[] results = new double[buckets.size()];
+        BitSet noResult = new BitSet(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            results[i] = Double.NaN;
+            noResult.set(i);
             Map<String, Object> vars = new HashMap<>();
             if (script.getParams() != null) {
                 vars.putAll(script.getParams());
             }
             boolean skipBucket = false;
-            for (Map.Entry<String, String> entry : bucketsPathsMap.entrySet()) {
-                String varName = entry.getKey();
-                String bucketsPath = entry.getValue();
-                Double value = resolveBucketValue(originalAgg, bucket, bucketsPath, gapPolicy);
+            for (int j = 0; j < varNames.length; j++) {
+                // values that could not be resolved are passed to the script as null
+                Double value = varMissing[j].get(i) ? null : varValues[j][i];
                 if (GapPolicy.SKIP == gapPolicy && (value == null || Double.isNaN(value))) {
                     skipBucket = true;
                     break;
                 }
-                vars.put(varName, value);
+                vars.put(varNames[j], value);
             }
             if (skipBucket) {
                 newBuckets.add(bucket);
@@ -135,8 +150,10 @@ public class BucketScriptPipelineAggregator extends PipelineAggregator {
                         throw new AggregationExecutionException("series_arithmetic script for reducer [" + name()
                                 + "] must return a Number");
                     }
+                    results[i] = ((Number) returned).doubleValue();
+                    noResult.clear(i);
                     List<InternalAggregation> aggs = new ArrayList<>(Lists.transform(bucket.getAggregations().asList(), FUNCTION));
-                    aggs.add(new InternalSimpleValue(name(), ((Number) returned).doubleValue(), formatter,
+                    aggs.add(new InternalSimpleValue(name(), results[i], formatter,
                             new ArrayList<PipelineAggregator>(), metaData()));
                     InternalMultiBucketAggregation.InternalBucket newBucket = originalAgg.createBucket(new InternalAggregations(aggs),
                             (InternalMultiBucketAggregation.InternalBucket) bucket);
@@ -144,7 +161,9 @@ public class BucketScriptPipelineAggregator extends PipelineAggregator {
                 }
             }
         }
-        return originalAgg.create(newBuckets);
+        InternalMultiBucketAggregation newAgg = originalAgg.create(newBuckets);
+        newAgg.bucketColumns(columns.withValues(newAgg, name(), results, noResult));
+        return newAgg;
     }
 
     @Override
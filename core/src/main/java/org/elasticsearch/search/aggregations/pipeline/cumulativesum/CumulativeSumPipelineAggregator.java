@@ -30,6 +30,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation.Type;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregator;
 import org.elasticsearch.search.aggregations.bucket.histogram.InternalHistogram;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 import org.elasticsearch.search.aggregations.pipeline.InternalSimpleValue;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -40,11 +41,10 @@ import org.elasticsearch.search.aggregations.support.format.ValueFormatterStream
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
-
 public class CumulativeSumPipelineAggregator extends PipelineAggregator {
 
     public final static Type TYPE = new Type("cumulative_sum");
@@ -84,11 +84,20 @@ public class CumulativeSumPipelineAggregator extends PipelineAggregator {
         List<? extends InternalHistogram.Bucket> buckets = histo.getBuckets();
         InternalHistogram.Factory<? extends InternalHistogram.Bucket> factory = histo.getFactory();
 
+        BucketColumns columns = histo.bucketColumns();
+        double[] values = columns.values(bucketsPaths()[0], GapPolicy.INSERT_ZEROS);
+        BitSet missing = columns.missing(bucketsPaths()[0]);
+
         List newBuckets = new ArrayList<>();
+        double[] sums = new double[buckets.size()];
         double sum = 0;
-        for (InternalHistogram.Bucket bucket : buckets) {
-            Double thisBucketValue = resolveBucketValue(histo, bucket, bucketsPaths()[0], GapPolicy.INSERT_ZEROS);
-            sum += thisBucketValue;
+        for (int i = 0; i < buckets.size(); i++) {
+            InternalHistogram.Bucket bucket = buckets.get(i);
+            // buckets whose value could not be resolved add nothing to the sum, like gaps
+            if (missing.get(i) == false) {
+                sum += values[i];
+            }
+            sums[i] = sum;
             List<InternalAggregation> aggs = new ArrayList<>(Lists.transform(bucket.getAggregations().asList(),
                     AGGREGATION_TRANFORM_FUNCTION));
             aggs.add(new InternalSimpleValue(name(), sum, formatter, new ArrayList<PipelineAggregator>(), metaData()));
@@ -96,7 +105,9 @@ public class CumulativeSumPipelineAggregator extends PipelineAggregator {
                     new InternalAggregations(aggs), bucket.getKeyed(), bucket.getFormatter());
             newBuckets.add(newBucket);
         }
-        return factory.create(newBuckets, histo);
+        InternalHistogram newHisto = factory.create(newBuckets, histo);
+        newHisto.bucketColumns(columns.withValues(newHisto, name(), sums, new BitSet()));
+        return newHisto;
     }
 
     @Override
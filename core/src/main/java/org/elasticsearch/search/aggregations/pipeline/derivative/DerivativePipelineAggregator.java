@@ -23,7 +23,6 @@ import com.google.common.collect.Lists;
 
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
-import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
@@ -31,21 +30,20 @@ import org.elasticsearch.search.aggregations.InternalAggregation.Type;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregator;
 import org.elasticsearch.search.aggregations.bucket.histogram.InternalHistogram;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorFactory;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorStreams;
 import org.elasticsearch.search.aggregations.support.format.ValueFormatter;
 import org.elasticsearch.search.aggregations.support.format.ValueFormatterStreams;
-import org.joda.time.DateTime;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
-
 public class DerivativePipelineAggregator extends PipelineAggregator {
 
     public final static Type TYPE = new Type("derivative");
@@ -88,19 +86,25 @@ public class DerivativePipelineAggregator extends PipelineAggregator {
         InternalHistogram histo = (InternalHistogram) aggregation;
         List<? extends InternalHistogram.Bucket> buckets = histo.getBuckets();
         InternalHistogram.Factory<? extends InternalHistogram.Bucket> factory = histo.getFactory();
+        BucketColumns columns = histo.bucketColumns();
+        double[] values = columns.values(bucketsPaths()[0], gapPolicy);
+        BitSet missing = columns.missing(bucketsPaths()[0]);
+        long[] keys = xAxisUnits == null ? null : columns.keys();
 
         List newBuckets = new ArrayList<>();
-        Long lastBucketKey = null;
-        Double lastBucketValue = null;
-        for (InternalHistogram.Bucket bucket : buckets) {
-            Long thisBucketKey = resolveBucketKeyAsLong(bucket);
-            Double thisBucketValue = resolveBucketValue(histo, bucket, bucketsPaths()[0], gapPolicy);
-            if (lastBucketValue != null) {
-                double gradient = thisBucketValue - lastBucketValue;
+        double[] gradients = new double[buckets.size()];
+        BitSet noGradient = new BitSet(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            InternalHistogram.Bucket bucket = buckets.get(i);
+            // buckets whose value could not be resolved, like the first bucket of a derivative, have no derivative
+            // and neither have the buckets that follow them
+            if (i > 0 && missing.get(i) == false && missing.get(i - 1) == false) {
+                double gradient = values[i] - values[i - 1];
                 double xDiff = -1;
                 if (xAxisUnits != null) {
-                    xDiff = (thisBucketKey - lastBucketKey) / xAxisUnits;
+                    xDiff = (keys[i] - keys[i - 1]) / xAxisUnits;
                 }
+                gradients[i] = gradient;
                 List<InternalAggregation> aggs = new ArrayList<>(Lists.transform(bucket.getAggregations().asList(),
                         AGGREGATION_TRANFORM_FUNCTION));
                 aggs.add(new InternalDerivative(name(), gradient, xDiff, formatter, new ArrayList<PipelineAggregator>(), metaData()));
@@ -108,24 +112,14 @@ public class DerivativePipelineAggregator extends PipelineAggregator {
                         aggs), bucket.getKeyed(), bucket.getFormatter());
                 newBuckets.add(newBucket);
             } else {
+                gradients[i] = Double.NaN;
+                noGradient.set(i);
                 newBuckets.add(bucket);
             }
-            lastBucketKey = thisBucketKey;
-            lastBucketValue = thisBucketValue;
-        }
-        return factory.create(newBuckets, histo);
-    }
-
-    private Long resolveBucketKeyAsLong(InternalHistogram.Bucket bucket) {
-        Object key = bucket.getKey();
-        if (key instanceof DateTime) {
-            return ((DateTime) key).getMillis();
-        } else if (key instanceof Number) {
-            return ((Number) key).longValue();
-        } else {
-            throw new AggregationExecutionException("Bucket keys must be either a Number or a DateTime for aggregation " + name()
-                    + ". Found bucket with key " + key);
         }
+        InternalHistogram newHisto = factory.create(newBuckets, histo);
+        newHisto.bucketColumns(columns.withValues(newHisto, name(), gradients, noGradient));
+        return newHisto;
     }
 
     @Override
@@ -34,6 +34,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.InternalAggregation.Type;
 import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation.Bucket;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorFactory;
@@ -41,12 +42,11 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorStreams;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
-
 public class BucketSelectorPipelineAggregator extends PipelineAggregator {
 
     public final static Type TYPE = new Type("bucket_selector");
@@ -99,17 +99,27 @@ public class BucketSelectorPipelineAggregator extends PipelineAggregator {
         List<? extends Bucket> buckets = originalAgg.getBuckets();
 
         CompiledScript compiledScript = reduceContext.scriptService().compile(script, ScriptContext.Standard.AGGS);
+        BucketColumns columns = originalAgg.bucketColumns();
+        String[] varNames = new String[bucketsPathsMap.size()];
+        double[][] varValues = new double[bucketsPathsMap.size()][];
+        BitSet[] varMissing = new BitSet[bucketsPathsMap.size()];
+        int varIndex = 0;
+        for (Map.Entry<String, String> entry : bucketsPathsMap.entrySet()) {
+            varNames[varIndex] = entry.getKey();
+            varValues[varIndex] = columns.values(entry.getValue(), gapPolicy);
+            varMissing[varIndex] = columns.missing(entry.getValue());
+            varIndex++;
+        }
         List newBuckets = new ArrayList<>();
-        for (Bucket bucket : buckets) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
             Map<String, Object> vars = new HashMap<>();
             if (script.getParams() != null) {
                 vars.putAll(script.getParams());
             }
-            for (Map.Entry<String, String> entry : bucketsPathsMap.entrySet()) {
-                String varName = entry.getKey();
-                String bucketsPath = entry.getValue();
-                Double value = resolveBucketValue(originalAgg, bucket, bucketsPath, gapPolicy);
-                vars.put(varName, value);
+            for (int j = 0; j < varNames.length; j++) {
+                // values that could not be resolved are passed to the script as null
+                vars.put(varNames[j], varMissing[j].get(i) ? null : varValues[j][i]);
             }
             ExecutableScript executableScript = reduceContext.scriptService().executable(compiledScript, vars);
             Object scriptReturnValue = executableScript.run();
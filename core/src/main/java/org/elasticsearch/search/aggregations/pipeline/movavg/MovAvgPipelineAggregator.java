@@ -26,7 +26,6 @@ import com.google.common.collect.Lists;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.search.aggregations.Aggregation;
-import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
@@ -34,6 +33,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation.Type;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregator;
 import org.elasticsearch.search.aggregations.bucket.histogram.InternalHistogram;
+import org.elasticsearch.search.aggregations.pipeline.BucketColumns;
 import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 import org.elasticsearch.search.aggregations.pipeline.InternalSimpleValue;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -43,16 +43,13 @@ import org.elasticsearch.search.aggregations.pipeline.movavg.models.MovAvgModel;
 import org.elasticsearch.search.aggregations.pipeline.movavg.models.MovAvgModelStreams;
 import org.elasticsearch.search.aggregations.support.format.ValueFormatter;
 import org.elasticsearch.search.aggregations.support.format.ValueFormatterStreams;
-import org.joda.time.DateTime;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
-
 public class MovAvgPipelineAggregator extends PipelineAggregator {
 
     public final static Type TYPE = new Type("moving_avg");
@@ -109,31 +106,40 @@ public class MovAvgPipelineAggregator extends PipelineAggregator {
         List<? extends InternalHistogram.Bucket> buckets = histo.getBuckets();
         InternalHistogram.Factory<? extends InternalHistogram.Bucket> factory = histo.getFactory();
 
+        BucketColumns columns = histo.bucketColumns();
+        double[] bucketValues = columns.values(bucketsPaths()[0], gapPolicy);
+
         List newBuckets = new ArrayList<>();
         EvictingQueue<Double> values = EvictingQueue.create(this.window);
+        double[] movavgs = new double[buckets.size()];
+        BitSet noMovavg = new BitSet(buckets.size());
 
         long lastValidKey = 0;
         int lastValidPosition = 0;
-        int counter = 0;
 
         // Do we need to fit the model parameters to the data?
         if (minimize) {
             assert (model.canBeMinimized());
-            model = minimize(buckets, histo, model);
+            model = minimize(bucketValues, model);
         }
 
-        for (InternalHistogram.Bucket bucket : buckets) {
-            Double thisBucketValue = resolveBucketValue(histo, bucket, bucketsPaths()[0], gapPolicy);
+        for (int i = 0; i < buckets.size(); i++) {
+            InternalHistogram.Bucket bucket = buckets.get(i);
+            double thisBucketValue = bucketValues[i];
+            movavgs[i] = Double.NaN;
+            noMovavg.set(i);
 
             // Default is to reuse existing bucket.  Simplifies the rest of the logic,
             // since we only change newBucket if we can add to it
             InternalHistogram.Bucket newBucket = bucket;
 
-            if (!(thisBucketValue == null || thisBucketValue.equals(Double.NaN))) {
+            if (!Double.isNaN(thisBucketValue)) {
 
                 // Some models (e.g. HoltWinters) have certain preconditions that must be met
                 if (model.hasValue(values.size())) {
                     double movavg = model.next(values);
+                    movavgs[i] = movavg;
+                    noMovavg.clear(i);
 
                     List<InternalAggregation> aggs = new ArrayList<>(Lists.transform(bucket.getAggregations().asList(), AGGREGATION_TRANFORM_FUNCTION));
                     aggs.add(new InternalSimpleValue(name(), movavg, formatter, new ArrayList<PipelineAggregator>(), metaData()));
@@ -142,19 +148,12 @@ public class MovAvgPipelineAggregator extends PipelineAggregator {
                 }
 
                 if (predict > 0) {
-                    if (bucket.getKey() instanceof Number) {
-                        lastValidKey  = ((Number) bucket.getKey()).longValue();
-                    } else if (bucket.getKey() instanceof DateTime) {
-                        lastValidKey = ((DateTime) bucket.getKey()).getMillis();
-                    } else {
-                        throw new AggregationExecutionException("Expected key of type Number or DateTime but got [" + lastValidKey + "]");
-                    }
-                    lastValidPosition = counter;
+                    lastValidKey = columns.keys()[i];
+                    lastValidPosition = i;
                 }
 
                 values.offer(thisBucketValue);
             }
-            counter += 1;
             newBuckets.add(newBucket);
 
         }
@@ -200,23 +199,28 @@ public class MovAvgPipelineAggregator extends PipelineAggregator {
             }
         }
 
-        return factory.create(newBuckets, histo);
+        InternalHistogram newHisto = factory.create(newBuckets, histo);
+        if (predict == 0) {
+            // predictions change the buckets, so columns may only be reused when there are none
+            newHisto.bucketColumns(columns.withValues(newHisto, name(), movavgs, noMovavg));
+        }
+        return newHisto;
     }
 
-    private MovAvgModel minimize(List<? extends InternalHistogram.Bucket> buckets, InternalHistogram histo, MovAvgModel model) {
+    private MovAvgModel minimize(double[] bucketValues, MovAvgModel model) {
 
         int counter = 0;
         EvictingQueue<Double> values = EvictingQueue.create(window);
 
         double[] test = new double[window];
-        ListIterator<? extends InternalHistogram.Bucket> iter = buckets.listIterator(buckets.size());
+        int position = bucketValues.length;
 
-        // We have to walk the iterator backwards because we don't know if/how many buckets are empty.
-        while (iter.hasPrevious() && counter < window) {
+        // We have to walk the values backwards because we don't know if/how many buckets are empty.
+        while (position > 0 && counter < window) {
 
-            Double thisBucketValue = resolveBucketValue(histo, iter.previous(), bucketsPaths()[0], gapPolicy);
+            double thisBucketValue = bucketValues[--position];
 
-            if (!(thisBucketValue == null || thisBucketValue.equals(Double.NaN))) {
+            if (!Double.isNaN(thisBucketValue)) {
                 test[window - counter - 1] = thisBucketValue;
                 counter += 1;
             }
@@ -234,11 +238,11 @@ public class MovAvgPipelineAggregator extends PipelineAggregator {
         counter = 0;
         double[] train = new double[window];
 
-        while (iter.hasPrevious() && counter < window) {
+        while (position > 0 && counter < window) {
 
-            Double thisBucketValue = resolveBucketValue(histo, iter.previous(), bucketsPaths()[0], gapPolicy);
+            double thisBucketValue = bucketValues[--position];
 
-            if (!(thisBucketValue == null || thisBucketValue.equals(Double.NaN))) {
+            if (!Double.isNaN(thisBucketValue)) {
                 train[window - counter - 1] = thisBucketValue;
                 counter += 1;
             }
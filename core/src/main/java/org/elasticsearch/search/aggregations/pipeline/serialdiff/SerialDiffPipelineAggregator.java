@@ -19,7 +19,6 @@
 
 package org.elasticsearch.search.aggregations.pipeline.serialdiff;
 
-import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.Lists;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -35,10 +34,10 @@ import org.elasticsearch.search.aggregations.support.format.ValueFormatterStream
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
-import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.resolveBucketValue;
 import static org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
 
 public class SerialDiffPipelineAggregator extends PipelineAggregator {
@@ -84,28 +83,20 @@ public class SerialDiffPipelineAggregator extends PipelineAggregator {
         List<? extends InternalHistogram.Bucket> buckets = histo.getBuckets();
         InternalHistogram.Factory<? extends InternalHistogram.Bucket> factory = histo.getFactory();
 
+        BucketColumns columns = histo.bucketColumns();
+        double[] values = columns.values(bucketsPaths()[0], gapPolicy);
+
         List newBuckets = new ArrayList<>();
-        EvictingQueue<Double> lagWindow = EvictingQueue.create(lag);
-        int counter = 0;
+        double[] diffs = new double[buckets.size()];
+        BitSet noDiff = new BitSet(buckets.size());
 
-        for (InternalHistogram.Bucket bucket : buckets) {
-            Double thisBucketValue = resolveBucketValue(histo, bucket, bucketsPaths()[0], gapPolicy);
+        for (int i = 0; i < buckets.size(); i++) {
+            InternalHistogram.Bucket bucket = buckets.get(i);
+            double thisBucketValue = values[i];
             InternalHistogram.Bucket newBucket = bucket;
 
-            counter += 1;
-
             // Still under the initial lag period, add nothing and move on
-            Double lagValue;
-            if (counter <= lag) {
-                lagValue = Double.NaN;
-            } else {
-                lagValue = lagWindow.peek();  // Peek here, because we rely on add'ing to always move the window
-            }
-
-            // Normalize null's to NaN
-            if (thisBucketValue == null) {
-                thisBucketValue = Double.NaN;
-            }
+            double lagValue = i < lag ? Double.NaN : values[i - lag];
 
             // Both have values, calculate diff and replace the "empty" bucket
             if (!Double.isNaN(thisBucketValue) && !Double.isNaN(lagValue)) {
@@ -115,14 +106,17 @@ public class SerialDiffPipelineAggregator extends PipelineAggregator {
                 aggs.add(new InternalSimpleValue(name(), diff, formatter, new ArrayList<PipelineAggregator>(), metaData()));
                 newBucket = factory.createBucket(bucket.getKey(), bucket.getDocCount(), new InternalAggregations(
                         aggs), bucket.getKeyed(), bucket.getFormatter());
+                diffs[i] = diff;
+            } else {
+                diffs[i] = Double.NaN;
+                noDiff.set(i);
             }
 
-
             newBuckets.add(newBucket);
-            lagWindow.add(thisBucketValue);
-
         }
-        return factory.create(newBuckets, histo);
+        InternalHistogram newHisto = factory.create(newBuckets, histo);
+        newHisto.bucketColumns(columns.withValues(newHisto, name(), diffs, noDiff));
+        return newHisto;
     }
 
     @Override
@@ -32,6 +32,7 @@ import org.elasticsearch.index.fielddata.plain.ParentChildIndexFieldData;
 import org.elasticsearch.index.mapper.core.DateFieldMapper;
 import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.AggregatorProfile;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
@@ -42,9 +43,34 @@ import java.io.IOException;
 public class AggregationContext {
 
     private final SearchContext searchContext;
+    private final BigArrays bigArrays;
+    private final AggregatorProfile profile;
 
     public AggregationContext(SearchContext searchContext) {
+        this(searchContext, searchContext.bigArrays(), null);
+    }
+
+    private AggregationContext(SearchContext searchContext, BigArrays bigArrays, @Nullable AggregatorProfile profile) {
         this.searchContext = searchContext;
+        this.bigArrays = bigArrays;
+        this.profile = profile;
+    }
+
+    /**
+     * Return a copy of this context that records the activity of aggregators into the given profile. Arrays that are
+     * created through {@link #bigArrays()} are accounted in the profile.
+     */
+    public AggregationContext withProfile(AggregatorProfile profile) {
+        return new AggregationContext(searchContext, profile.bigArrays(), profile);
+    }
+
+    /**
+     * Return the profile that aggregators that are created with this context should record their activity into, or
+     * <tt>null</tt> if profiling is disabled.
+     */
+    @Nullable
+    public AggregatorProfile profile() {
+        return profile;
     }
 
     public SearchContext searchContext() {
@@ -56,7 +82,7 @@ public class AggregationContext {
     }
 
     public BigArrays bigArrays() {
-        return searchContext.bigArrays();
+        return bigArrays;
     }
 
     /** Get a value source given its configuration. A return value of null indicates that
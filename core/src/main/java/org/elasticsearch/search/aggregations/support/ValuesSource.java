@@ -24,10 +24,12 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.RandomAccessOrds;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.common.lucene.ScorerAware;
 import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.AtomicParentChildFieldData;
@@ -43,6 +45,7 @@ import org.elasticsearch.index.fielddata.SortingBinaryDocValues;
 import org.elasticsearch.index.fielddata.SortingNumericDocValues;
 import org.elasticsearch.index.fielddata.SortingNumericDoubleValues;
 import org.elasticsearch.index.fielddata.plain.ParentChildIndexFieldData;
+import org.elasticsearch.index.mapper.geo.GeoPointFieldMapper;
 import org.elasticsearch.script.LeafSearchScript;
 import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.aggregations.support.ValuesSource.WithScript.BytesValues;
@@ -259,6 +262,22 @@ public abstract class ValuesSource {
         /** Get the current {@link SortedNumericDoubleValues}. */
         public abstract SortedNumericDoubleValues doubleValues(LeafReaderContext context) throws IOException;
 
+        /**
+         * Return the minimum and maximum of the {@link #longValues(LeafReaderContext) long values} of
+         * the given segment as a <code>{min, max}</code> array, or <tt>null</tt> if they can't be
+         * computed cheaply. Values of deleted documents may be taken into account.
+         */
+        public long[] longMinMax(LeafReaderContext context) throws IOException {
+            return null;
+        }
+
+        /**
+         * Same as {@link #longMinMax(LeafReaderContext)} for the {@link #doubleValues(LeafReaderContext) double values}.
+         */
+        public double[] doubleMinMax(LeafReaderContext context) throws IOException {
+            return null;
+        }
+
         @Override
         public Bits docsWithValue(LeafReaderContext context) throws IOException {
             if (isFloatingPoint()) {
@@ -398,6 +417,54 @@ public abstract class ValuesSource {
             public SortedNumericDoubleValues doubleValues(LeafReaderContext context) {
                 return indexFieldData.load(context).getDoubleValues();
             }
+
+            @Override
+            public long[] longMinMax(LeafReaderContext context) throws IOException {
+                final Terms terms = terms(context);
+                if (terms == null) {
+                    return null;
+                }
+                switch (indexFieldData.getNumericType()) {
+                    case LONG:
+                        return new long[] { NumericUtils.getMinLong(terms), NumericUtils.getMaxLong(terms) };
+                    case INT:
+                    case SHORT:
+                    case BYTE:
+                        return new long[] { NumericUtils.getMinInt(terms), NumericUtils.getMaxInt(terms) };
+                    default:
+                        return null;
+                }
+            }
+
+            @Override
+            public double[] doubleMinMax(LeafReaderContext context) throws IOException {
+                final Terms terms = terms(context);
+                if (terms == null) {
+                    return null;
+                }
+                switch (indexFieldData.getNumericType()) {
+                    case DOUBLE:
+                        return new double[] {
+                                NumericUtils.sortableLongToDouble(NumericUtils.getMinLong(terms)),
+                                NumericUtils.sortableLongToDouble(NumericUtils.getMaxLong(terms)) };
+                    case FLOAT:
+                        return new double[] {
+                                NumericUtils.sortableIntToFloat(NumericUtils.getMinInt(terms)),
+                                NumericUtils.sortableIntToFloat(NumericUtils.getMaxInt(terms)) };
+                    default:
+                        final long[] minMax = longMinMax(context);
+                        return minMax == null ? null : new double[] { minMax[0], minMax[1] };
+                }
+            }
+
+            /**
+             * The indexed terms of numeric fields are prefix-encoded, so the first and last full-precision
+             * terms give the bounds of the values of the segment. Returns <tt>null</tt> if the field is not
+             * indexed since it might still have doc values.
+             */
+            private Terms terms(LeafReaderContext context) throws IOException {
+                return context.reader().terms(indexFieldData.getFieldNames().indexName());
+            }
         }
 
         public static class Script extends Numeric {
@@ -518,6 +585,15 @@ public abstract class ValuesSource {
 
         public abstract MultiGeoPointValues geoPointValues(LeafReaderContext context);
 
+        /**
+         * Return the bounding box of the points of the given segment as a
+         * <code>{minLat, maxLat, minLon, maxLon}</code> array, or <tt>null</tt> if it can't be
+         * computed cheaply. Points of deleted documents may be taken into account.
+         */
+        public double[] latLonBounds(LeafReaderContext context) throws IOException {
+            return null;
+        }
+
         public static class Fielddata extends GeoPoint {
 
             protected final IndexGeoPointFieldData indexFieldData;
@@ -534,6 +610,25 @@ public abstract class ValuesSource {
             public org.elasticsearch.index.fielddata.MultiGeoPointValues geoPointValues(LeafReaderContext context) {
                 return indexFieldData.load(context).getGeoPointValues();
             }
+
+            /**
+             * Bounds can only be computed if latitudes and longitudes are indexed as numbers, ie.
+             * if <tt>lat_lon</tt> is enabled on the mapping.
+             */
+            @Override
+            public double[] latLonBounds(LeafReaderContext context) throws IOException {
+                final String field = indexFieldData.getFieldNames().indexName();
+                final Terms lats = context.reader().terms(field + GeoPointFieldMapper.Names.LAT_SUFFIX);
+                final Terms lons = context.reader().terms(field + GeoPointFieldMapper.Names.LON_SUFFIX);
+                if (lats == null || lons == null) {
+                    return null;
+                }
+                return new double[] {
+                        NumericUtils.sortableLongToDouble(NumericUtils.getMinLong(lats)),
+                        NumericUtils.sortableLongToDouble(NumericUtils.getMaxLong(lats)),
+                        NumericUtils.sortableLongToDouble(NumericUtils.getMinLong(lons)),
+                        NumericUtils.sortableLongToDouble(NumericUtils.getMaxLong(lons)) };
+            }
         }
     }
 
@@ -93,6 +93,15 @@ public class SearchSourceBuilder extends ToXContentToBytes {
 
     private boolean trackScores = false;
 
+    private boolean trackTotalHits = true;
+
+    private Object[] searchAfter;
+
+    private int sliceId = -1;
+    private int sliceMax = -1;
+
+    private boolean profile = false;
+
     private Float minScore;
 
     private long timeoutInMillis = -1;
@@ -375,6 +384,54 @@ public class SearchSourceBuilder extends ToXContentToBytes {
         return this;
     }
 
+    /**
+     * Whether the total number of hits should be accurate. Disabling it allows searches that sort by score to skip
+     * documents that cannot make it to the top hits, the total number of hits is then a lower bound. Defaults to
+     * <tt>true</tt>.
+     */
+    public SearchSourceBuilder trackTotalHits(boolean trackTotalHits) {
+        this.trackTotalHits = trackTotalHits;
+        return this;
+    }
+
+    /**
+     * Only return hits that sort after the hit with the given sort values, typically the sort values of the last hit
+     * of the previous page. There must be one value per sort, and the sort should end with a unique field such as
+     * <tt>_uid</tt> since hits that have the same sort values as the given ones are not returned.
+     */
+    public SearchSourceBuilder searchAfter(Object... sortValues) {
+        if (sortValues == null || sortValues.length == 0) {
+            throw new IllegalArgumentException("searchAfter requires at least one sort value");
+        }
+        this.searchAfter = sortValues;
+        return this;
+    }
+
+    /**
+     * Restrict a scroll to the slice with the given id out of <code>max</code> disjoint slices, so that
+     * <code>max</code> consumers can scroll the same request in parallel.
+     */
+    public SearchSourceBuilder slice(int id, int max) {
+        if (max <= 1) {
+            throw new IllegalArgumentException("max must be > 1");
+        }
+        if (id < 0 || id >= max) {
+            throw new IllegalArgumentException("id must be >= 0 and < max");
+        }
+        this.sliceId = id;
+        this.sliceMax = max;
+        return this;
+    }
+
+    /**
+     * Whether shards should report how long the execution of the request took and how much memory it used,
+     * broken down per query node, phase and aggregation. Defaults to <tt>false</tt>.
+     */
+    public SearchSourceBuilder profile(boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
     /**
      * Add an get to perform as part of the search.
      */
@@ -738,6 +795,29 @@ public class SearchSourceBuilder extends ToXContentToBytes {
             builder.field("track_scores", true);
         }
 
+        if (!trackTotalHits) {
+            builder.field("track_total_hits", false);
+        }
+
+        if (searchAfter != null) {
+            builder.startArray("search_after");
+            for (Object value : searchAfter) {
+                builder.value(value);
+            }
+            builder.endArray();
+        }
+
+        if (sliceMax != -1) {
+            builder.startObject("slice");
+            builder.field("id", sliceId);
+            builder.field("max", sliceMax);
+            builder.endObject();
+        }
+
+        if (profile) {
+            builder.field("profile", true);
+        }
+
         if (indexBoost != null) {
             builder.startObject("indices_boost");
             assert !indexBoost.containsKey(null);
@@ -34,12 +34,13 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.common.collect.HppcMaps;
-import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
@@ -53,6 +54,7 @@ import org.elasticsearch.search.fetch.FetchSearchResultProvider;
 import org.elasticsearch.search.internal.InternalSearchHit;
 import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.search.suggest.Suggest;
@@ -64,11 +66,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
  */
-public class SearchPhaseController extends AbstractComponent {
+public class SearchPhaseController extends AbstractLifecycleComponent<SearchPhaseController> {
 
     public static final Comparator<AtomicArray.Entry<? extends QuerySearchResultProvider>> QUERY_RESULT_ORDERING = new Comparator<AtomicArray.Entry<? extends QuerySearchResultProvider>>() {
         @Override
@@ -83,9 +87,12 @@ public class SearchPhaseController extends AbstractComponent {
 
     public static final ScoreDoc[] EMPTY_DOCS = new ScoreDoc[0];
     public static final String SEARCH_CONTROLLER_OPTIMIZE_SINGLE_SHARD_KEY = "search.controller.optimize_single_shard";
+    public static final String SEARCH_CONTROLLER_REDUCE_PARALLELISM_KEY = "search.controller.reduce_parallelism";
 
     private final BigArrays bigArrays;
     private final boolean optimizeSingleShard;
+    private final int reduceParallelism;
+    private volatile ForkJoinPool reducePool;
 
     private ScriptService scriptService;
 
@@ -95,6 +102,29 @@ public class SearchPhaseController extends AbstractComponent {
         this.bigArrays = bigArrays;
         this.scriptService = scriptService;
         this.optimizeSingleShard = settings.getAsBoolean(SEARCH_CONTROLLER_OPTIMIZE_SINGLE_SHARD_KEY, true);
+        this.reduceParallelism = settings.getAsInt(SEARCH_CONTROLLER_REDUCE_PARALLELISM_KEY, 1);
+    }
+
+    @Override
+    protected void doStart() {
+        // sibling aggregations are reduced sequentially on the calling thread unless parallelism is greater than 1
+        if (reduceParallelism > 1) {
+            reducePool = EsExecutors.newForkJoinPool(reduceParallelism, EsExecutors.threadName(settings, "search_reduce"));
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        final ForkJoinPool pool = reducePool;
+        if (pool != null) {
+            // reduces that are still running complete, later ones are sequential
+            reducePool = null;
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    protected void doClose() {
     }
 
     public boolean optimizeSingleShard() {
@@ -404,7 +434,7 @@ public class SearchPhaseController extends AbstractComponent {
                 for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
                     aggregationsList.add((InternalAggregations) entry.value.queryResult().aggregations());
                 }
-                aggregations = InternalAggregations.reduce(aggregationsList, new ReduceContext(bigArrays, scriptService));
+                aggregations = InternalAggregations.reduce(aggregationsList, new ReduceContext(bigArrays, scriptService, reducePool));
             }
         }
 
@@ -414,16 +444,33 @@ public class SearchPhaseController extends AbstractComponent {
                 List<InternalAggregation> newAggs = new ArrayList<>(Lists.transform(aggregations.asList(), PipelineAggregator.AGGREGATION_TRANFORM_FUNCTION));
                 for (SiblingPipelineAggregator pipelineAggregator : pipelineAggregators) {
                     InternalAggregation newAgg = pipelineAggregator.doReduce(new InternalAggregations(newAggs), new ReduceContext(bigArrays,
-                            scriptService));
+                            scriptService, reducePool));
                     newAggs.add(newAgg);
                 }
                 aggregations = new InternalAggregations(newAggs);
             }
         }
 
+        // gather the profiles of the shards
+        Map<String, ProfileShardResult> profileResults = null;
+        for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
+            QuerySearchResult result = entry.value.queryResult();
+            ProfileShardResult profileResult = result.profileResult();
+            FetchSearchResultProvider fetchResultProvider = fetchResultsArr.get(entry.index);
+            if (fetchResultProvider != null) {
+                profileResult = ProfileShardResult.merge(profileResult, fetchResultProvider.fetchResult().profileResult());
+            }
+            if (profileResult != null) {
+                if (profileResults == null) {
+                    profileResults = new TreeMap<>();
+                }
+                profileResults.put(String.valueOf(result.shardTarget()), profileResult);
+            }
+        }
+
         InternalSearchHits searchHits = new InternalSearchHits(hits.toArray(new InternalSearchHit[hits.size()]), totalHits, maxScore);
 
-        return new InternalSearchResponse(searchHits, aggregations, suggest, timedOut, terminatedEarly);
+        return new InternalSearchResponse(searchHits, aggregations, suggest, timedOut, terminatedEarly, profileResults);
     }
 
 }
@@ -29,6 +29,8 @@ import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.BitSet;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
@@ -63,9 +65,11 @@ import org.elasticsearch.search.internal.InternalSearchHitField;
 import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SourceLookup;
+import org.elasticsearch.search.profile.Profiler;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -81,6 +85,7 @@ import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
 public class FetchPhase implements SearchPhase {
 
     private final FetchSubPhase[] fetchSubPhases;
+    private final String[] fetchSubPhaseNames;
 
     @Inject
     public FetchPhase(HighlightPhase highlightPhase, ScriptFieldsFetchSubPhase scriptFieldsPhase,
@@ -90,6 +95,22 @@ public class FetchPhase implements SearchPhase {
         innerHitsFetchSubPhase.setFetchPhase(this);
         this.fetchSubPhases = new FetchSubPhase[]{scriptFieldsPhase, matchedQueriesPhase, explainPhase, highlightPhase,
                 fetchSourceSubPhase, versionPhase, fieldDataFieldsFetchSubPhase, innerHitsFetchSubPhase};
+        this.fetchSubPhaseNames = new String[fetchSubPhases.length];
+        for (int i = 0; i < fetchSubPhases.length; ++i) {
+            fetchSubPhaseNames[i] = "fetch." + subPhaseName(fetchSubPhases[i]);
+        }
+    }
+
+    /** Return the name of the given sub phase as reported in profiles, eg. <tt>script_fields</tt>. */
+    static String subPhaseName(FetchSubPhase fetchSubPhase) {
+        String name = fetchSubPhase.getClass().getSimpleName();
+        for (String suffix : new String[] {"FetchSubPhase", "SubPhase", "Phase"}) {
+            if (name.endsWith(suffix) && name.length() > suffix.length()) {
+                name = name.substring(0, name.length() - suffix.length());
+                break;
+            }
+        }
+        return Strings.toUnderscoreCase(name);
     }
 
     @Override
@@ -108,6 +129,10 @@ public class FetchPhase implements SearchPhase {
 
     @Override
     public void execute(SearchContext context) {
+        final Profiler profiler = context.profiler();
+        final long startTime = profiler == null ? 0 : System.nanoTime();
+        final long[] subPhaseNanos = profiler == null ? null : new long[fetchSubPhases.length];
+
         FieldsVisitor fieldsVisitor;
         Set<String> fieldNames = null;
         List<String> extractFieldNames = null;
@@ -165,15 +190,31 @@ public class FetchPhase implements SearchPhase {
 
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            LeafReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+        // Load hits in doc id order rather than in score order: segments are visited one after the other, so that
+        // the segment and its nested docs are only looked up once, and stored fields are read forward. Hits are put
+        // back in score order in the hits array.
+        final long[] sortedDocs = sortedDocIdsToLoad(context);
+        final List<LeafReaderContext> leaves = context.searcher().getIndexReader().leaves();
+        LeafReaderContext subReaderContext = null;
+        int readerEndDocId = 0;
+        BitSet nonNestedDocs = null;
+        for (long sortedDoc : sortedDocs) {
+            final int docId = (int) (sortedDoc >>> 32);
+            final int index = (int) sortedDoc;
+            if (docId >= readerEndDocId) {
+                subReaderContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                readerEndDocId = subReaderContext.docBase + subReaderContext.reader().maxDoc();
+                try {
+                    nonNestedDocs = nonNestedDocs(context, subReaderContext);
+                } catch (IOException e) {
+                    throw ExceptionsHelper.convertToElastic(e);
+                }
+            }
             int subDocId = docId - subReaderContext.docBase;
 
             final InternalSearchHit searchHit;
             try {
-                int rootDocId = findRootDocumentIfNested(context, subReaderContext, subDocId);
+                int rootDocId = findRootDocumentIfNested(nonNestedDocs, subDocId);
                 if (rootDocId != -1) {
                     searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, extractFieldNames, loadAllStored, fieldNames, subReaderContext);
                 } else {
@@ -185,29 +226,71 @@ public class FetchPhase implements SearchPhase {
 
             hits[index] = searchHit;
             hitContext.reset(searchHit, subReaderContext, subDocId, context.searcher());
-            for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+            for (int i = 0; i < fetchSubPhases.length; ++i) {
+                final FetchSubPhase fetchSubPhase = fetchSubPhases[i];
                 if (fetchSubPhase.hitExecutionNeeded(context)) {
+                    final long subPhaseStart = profiler == null ? 0 : System.nanoTime();
                     fetchSubPhase.hitExecute(context, hitContext);
+                    if (profiler != null) {
+                        subPhaseNanos[i] += System.nanoTime() - subPhaseStart;
+                    }
                 }
             }
         }
 
-        for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+        for (int i = 0; i < fetchSubPhases.length; ++i) {
+            final FetchSubPhase fetchSubPhase = fetchSubPhases[i];
             if (fetchSubPhase.hitsExecutionNeeded(context)) {
+                final long subPhaseStart = profiler == null ? 0 : System.nanoTime();
                 fetchSubPhase.hitsExecute(context, hits);
+                if (profiler != null) {
+                    subPhaseNanos[i] += System.nanoTime() - subPhaseStart;
+                }
             }
         }
 
         context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
+
+        if (profiler != null) {
+            profiler.addPhaseTime("fetch", System.nanoTime() - startTime);
+            for (int i = 0; i < fetchSubPhases.length; ++i) {
+                if (subPhaseNanos[i] > 0) {
+                    profiler.addPhaseTime(fetchSubPhaseNames[i], subPhaseNanos[i]);
+                }
+            }
+            context.fetchResult().profileResult(profiler.pollResult());
+        }
     }
 
-    private int findRootDocumentIfNested(SearchContext context, LeafReaderContext subReaderContext, int subDocId) throws IOException {
+    /**
+     * Return the doc ids to load, sorted, in the upper 32 bits of each entry, along with their index in the doc ids to
+     * load in the lower 32 bits.
+     */
+    private static long[] sortedDocIdsToLoad(SearchContext context) {
+        final long[] sortedDocs = new long[context.docIdsToLoadSize()];
+        for (int index = 0; index < sortedDocs.length; index++) {
+            final int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
+            sortedDocs[index] = ((long) docId) << 32 | index;
+        }
+        Arrays.sort(sortedDocs);
+        return sortedDocs;
+    }
+
+    /**
+     * Return the set of root documents of the given segment, or <tt>null</tt> if there are no nested documents.
+     */
+    @Nullable
+    private BitSet nonNestedDocs(SearchContext context, LeafReaderContext subReaderContext) throws IOException {
         if (context.mapperService().hasNested()) {
             BitDocIdSet nonNested = context.bitsetFilterCache().getBitDocIdSetFilter(Queries.newNonNestedFilter()).getDocIdSet(subReaderContext);
-            BitSet bits = nonNested.bits();
-            if (!bits.get(subDocId)) {
-                return bits.nextSetBit(subDocId);
-            }
+            return nonNested.bits();
+        }
+        return null;
+    }
+
+    private int findRootDocumentIfNested(@Nullable BitSet nonNestedDocs, int subDocId) {
+        if (nonNestedDocs != null && !nonNestedDocs.get(subDocId)) {
+            return nonNestedDocs.nextSetBit(subDocId);
         }
         return -1;
     }
@@ -19,10 +19,13 @@
 
 package org.elasticsearch.search.fetch;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.transport.TransportResponse;
 
 import java.io.IOException;
@@ -37,6 +40,7 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
     private long id;
     private SearchShardTarget shardTarget;
     private InternalSearchHits hits;
+    private ProfileShardResult profileResult;
     // client side counter
     private transient int counter;
 
@@ -77,6 +81,18 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         return hits;
     }
 
+    /**
+     * Returns the profile of the fetch phase on this shard, or <tt>null</tt> if profiling was not requested.
+     */
+    @Nullable
+    public ProfileShardResult profileResult() {
+        return profileResult;
+    }
+
+    public void profileResult(ProfileShardResult profileResult) {
+        this.profileResult = profileResult;
+    }
+
     public FetchSearchResult initCounter() {
         counter = 0;
         return this;
@@ -97,6 +113,9 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         super.readFrom(in);
         id = in.readLong();
         hits = InternalSearchHits.readSearchHits(in, InternalSearchHits.streamContext().streamShardTarget(StreamContext.ShardTargetType.NO_STREAM));
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1) && in.readBoolean()) {
+            profileResult = ProfileShardResult.readProfileShardResult(in);
+        }
     }
 
     @Override
@@ -104,5 +123,13 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         super.writeTo(out);
         out.writeLong(id);
         hits.writeTo(out, InternalSearchHits.streamContext().streamShardTarget(StreamContext.ShardTargetType.NO_STREAM));
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            if (profileResult == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                profileResult.writeTo(out);
+            }
+        }
     }
 }
@@ -21,10 +21,13 @@ package org.elasticsearch.search.fetch.source;
 
 import com.google.common.collect.ImmutableMap;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.fetch.FetchSubPhase;
 import org.elasticsearch.search.internal.InternalSearchHit;
@@ -74,11 +77,24 @@ public class FetchSourceSubPhase implements FetchSubPhase {
         }
 
         SourceLookup source = context.lookup().source();
-        Object value = source.filter(fetchSourceContext.includes(), fetchSourceContext.excludes());
+        BytesReference sourceRef = source.internalSourceRef();
         try {
-            final int initialCapacity = Math.min(1024, source.internalSourceRef().length());
+            if (sourceRef != null && source.source() == null) {
+                // the source has not been parsed yet, filter it while copying it rather than building a map
+                final int initialCapacity = Math.min(1024, sourceRef.length());
+                BytesStreamOutput streamOutput = new BytesStreamOutput(initialCapacity);
+                try (XContentParser parser = XContentHelper.createParser(sourceRef)) {
+                    XContentBuilder builder = new XContentBuilder(parser.contentType().xContent(), streamOutput);
+                    XContentMapValues.filter(parser, builder.generator(), fetchSourceContext.includes(), fetchSourceContext.excludes());
+                    hitContext.hit().sourceRef(builder.bytes());
+                }
+                return;
+            }
+
+            Object value = source.filter(fetchSourceContext.includes(), fetchSourceContext.excludes());
+            final int initialCapacity = sourceRef == null ? 1024 : Math.min(1024, sourceRef.length());
             BytesStreamOutput streamOutput = new BytesStreamOutput(initialCapacity);
-            XContentBuilder builder = new XContentBuilder(context.lookup().source().sourceContentType().xContent(), streamOutput);
+            XContentBuilder builder = new XContentBuilder(source.sourceContentType().xContent(), streamOutput);
             builder.value(value);
             hitContext.hit().sourceRef(builder.bytes());
         } catch (IOException e) {
@@ -34,10 +34,16 @@ import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
+import org.elasticsearch.common.lucene.search.MaxScoreDisjunctionQuery;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.dfs.CachedDfSource;
 import org.elasticsearch.search.internal.SearchContext.Lifetime;
+import org.elasticsearch.search.profile.ProfileBreakdown;
+import org.elasticsearch.search.profile.ProfileWeight;
+import org.elasticsearch.search.profile.Profiler;
+import org.elasticsearch.search.profile.QueryProfiler;
+import org.elasticsearch.search.profile.Timer;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -106,6 +112,20 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
 
     @Override
     public Query rewrite(Query original) throws IOException {
+        final Profiler profiler = searchContext.profiler();
+        if (profiler == null) {
+            return doRewrite(original);
+        }
+        final Timer timer = profiler.queryProfiler().rewriteTimer();
+        final long start = timer.start();
+        try {
+            return doRewrite(original);
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    private Query doRewrite(Query original) throws IOException {
         if (original == searchContext.query() || original == searchContext.parsedQuery().query()) {
             // optimize in case its the top level search query and we already rewrote it...
             if (searchContext.queryRewritten()) {
@@ -125,9 +145,13 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         // can we avoid dfs stuff here if we dont need scores?
         try {
             // if its the main query, use we have dfs data, only then do it
-            if (dfSource != null && (query == searchContext.query() || query == searchContext.parsedQuery().query())) {
+            if (dfSource != null && isMainQuery(query)) {
                 return dfSource.createNormalizedWeight(query, needsScores);
             }
+            if (searchContext.profiler() != null) {
+                // go through createWeight so that the weights of all query nodes are profiled
+                return super.createNormalizedWeight(query, needsScores);
+            }
             return in.createNormalizedWeight(query, needsScores);
         } catch (Throwable t) {
             searchContext.clearReleasables(Lifetime.COLLECTION);
@@ -135,6 +159,33 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         }
     }
 
+    private boolean isMainQuery(Query query) {
+        if (query instanceof MaxScoreDisjunctionQuery) {
+            // rewriting may have returned another instance, eg. the clause of a boolean query that only has one
+            query = ((MaxScoreDisjunctionQuery) query).getOriginalQuery();
+        }
+        return query == searchContext.query() || query == searchContext.parsedQuery().query();
+    }
+
+    @Override
+    public Weight createWeight(Query query, boolean needsScores) throws IOException {
+        final Profiler profiler = searchContext.profiler();
+        if (profiler == null) {
+            return super.createWeight(query, needsScores);
+        }
+        final QueryProfiler queryProfiler = profiler.queryProfiler();
+        final ProfileBreakdown profile = queryProfiler.push(query);
+        final Timer timer = profile.timer(ProfileBreakdown.TimingType.CREATE_WEIGHT);
+        final long start = timer.start();
+        final Weight weight;
+        try {
+            weight = super.createWeight(query, needsScores);
+        } finally {
+            timer.stop(start);
+            queryProfiler.pop();
+        }
+        return new ProfileWeight(weight, profile);
+    }
 
     @Override
     public void search(Query query, Collector collector) throws IOException {
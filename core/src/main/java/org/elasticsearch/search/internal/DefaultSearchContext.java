@@ -59,6 +59,7 @@ import org.elasticsearch.search.fetch.script.ScriptFieldsContext;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QueryPhaseExecutionException;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
@@ -94,9 +95,12 @@ public class DefaultSearchContext extends SearchContext {
     private long timeoutInMillis;
     // terminate after count
     private int terminateAfter = DEFAULT_TERMINATE_AFTER;
+    private Object[] searchAfter;
+    private Query sliceFilter;
     private List<String> groupStats;
     private Scroll scroll;
     private boolean explain;
+    private Profiler profiler;
     private boolean version = false; // by default, we don't return versions
     private List<String> fieldNames;
     private FieldDataFieldsContext fieldDataFields;
@@ -107,6 +111,7 @@ public class DefaultSearchContext extends SearchContext {
     private Sort sort;
     private Float minimumScore;
     private boolean trackScores = false; // when sorting, track scores as well...
+    private boolean trackTotalHits = true;
     private ParsedQuery originalQuery;
     private Query query;
     private ParsedQuery postFilter;
@@ -148,6 +153,9 @@ public class DefaultSearchContext extends SearchContext {
         this.indexShard = indexShard;
         this.indexService = indexService;
         this.searcher = new ContextIndexSearcher(this, engineSearcher);
+        // weights are only created by the context searcher itself when profiling, it needs to cache them like the engine searcher
+        this.searcher.setQueryCache(indexService.cache().query());
+        this.searcher.setQueryCachingPolicy(indexShard.getQueryCachingPolicy());
         this.timeEstimateCounter = timeEstimateCounter;
         this.timeoutInMillis = timeout.millis();
     }
@@ -172,6 +180,17 @@ public class DefaultSearchContext extends SearchContext {
                 throw new QueryPhaseExecutionException(this, msg);
             }
         }
+        if (searchAfter != null) {
+            if (from() > 0) {
+                throw new QueryPhaseExecutionException(this, "[from] must be 0 when [search_after] is used, got [" + from() + "]");
+            }
+            if (request.scroll() != null) {
+                throw new QueryPhaseExecutionException(this, "[search_after] cannot be used in a scroll context");
+            }
+            if (!rescore().isEmpty()) {
+                throw new QueryPhaseExecutionException(this, "[search_after] cannot be used with [rescore]");
+            }
+        }
 
         // initialize the filtering alias based on the provided filters
         aliasFilter = indexService.aliasesService().aliasFilter(request.filteringAliases());
@@ -195,6 +214,12 @@ public class DefaultSearchContext extends SearchContext {
                 parsedQuery(new ParsedQuery(filtered, parsedQuery()));
             }
         }
+        if (sliceFilter != null) {
+            if (request.scroll() == null) {
+                throw new QueryPhaseExecutionException(this, "[slice] can only be used with [scroll] requests");
+            }
+            parsedQuery(new ParsedQuery(Queries.filtered(query(), sliceFilter), parsedQuery()));
+        }
     }
 
     @Override
@@ -463,6 +488,26 @@ public class DefaultSearchContext extends SearchContext {
         this.terminateAfter = terminateAfter;
     }
 
+    @Override
+    public Object[] searchAfter() {
+        return searchAfter;
+    }
+
+    @Override
+    public void searchAfter(Object[] sortValues) {
+        this.searchAfter = sortValues;
+    }
+
+    @Override
+    public Query sliceFilter() {
+        return sliceFilter;
+    }
+
+    @Override
+    public void sliceFilter(Query sliceFilter) {
+        this.sliceFilter = sliceFilter;
+    }
+
     @Override
     public SearchContext minimumScore(float minimumScore) {
         this.minimumScore = minimumScore;
@@ -496,6 +541,17 @@ public class DefaultSearchContext extends SearchContext {
         return this.trackScores;
     }
 
+    @Override
+    public boolean trackTotalHits() {
+        return this.trackTotalHits;
+    }
+
+    @Override
+    public SearchContext trackTotalHits(boolean trackTotalHits) {
+        this.trackTotalHits = trackTotalHits;
+        return this;
+    }
+
     @Override
     public SearchContext parsedPostFilter(ParsedQuery postFilter) {
         this.postFilter = postFilter;
@@ -601,6 +657,16 @@ public class DefaultSearchContext extends SearchContext {
         this.explain = explain;
     }
 
+    @Override
+    public Profiler profiler() {
+        return profiler;
+    }
+
+    @Override
+    public void profile(boolean profile) {
+        this.profiler = profile ? new Profiler() : null;
+    }
+
     @Override
     @Nullable
     public List<String> groupStats() {
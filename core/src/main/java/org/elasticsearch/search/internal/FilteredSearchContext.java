@@ -51,6 +51,7 @@ import org.elasticsearch.search.fetch.script.ScriptFieldsContext;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
@@ -324,6 +325,26 @@ public abstract class FilteredSearchContext extends SearchContext {
         in.terminateAfter(terminateAfter);
     }
 
+    @Override
+    public Object[] searchAfter() {
+        return in.searchAfter();
+    }
+
+    @Override
+    public void searchAfter(Object[] sortValues) {
+        in.searchAfter(sortValues);
+    }
+
+    @Override
+    public Query sliceFilter() {
+        return in.sliceFilter();
+    }
+
+    @Override
+    public void sliceFilter(Query sliceFilter) {
+        in.sliceFilter(sliceFilter);
+    }
+
     @Override
     public SearchContext minimumScore(float minimumScore) {
         return in.minimumScore(minimumScore);
@@ -354,6 +375,16 @@ public abstract class FilteredSearchContext extends SearchContext {
         return in.trackScores();
     }
 
+    @Override
+    public boolean trackTotalHits() {
+        return in.trackTotalHits();
+    }
+
+    @Override
+    public SearchContext trackTotalHits(boolean trackTotalHits) {
+        return in.trackTotalHits(trackTotalHits);
+    }
+
     @Override
     public SearchContext parsedPostFilter(ParsedQuery postFilter) {
         return in.parsedPostFilter(postFilter);
@@ -439,6 +470,16 @@ public abstract class FilteredSearchContext extends SearchContext {
         in.explain(explain);
     }
 
+    @Override
+    public Profiler profiler() {
+        return in.profiler();
+    }
+
+    @Override
+    public void profile(boolean profile) {
+        in.profile(profile);
+    }
+
     @Override
     public List<String> groupStats() {
         return in.groupStats();
@@ -56,6 +56,7 @@ import org.elasticsearch.search.fetch.script.ScriptFieldsContext;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
@@ -231,6 +232,24 @@ public abstract class SearchContext implements Releasable, HasContextAndHeaders
 
     public abstract void terminateAfter(int terminateAfter);
 
+    /**
+     * Return the sort values of the hit after which hits should be returned, or <tt>null</tt> if hits should be
+     * returned from the top.
+     */
+    @Nullable
+    public abstract Object[] searchAfter();
+
+    public abstract void searchAfter(Object[] sortValues);
+
+    /**
+     * Return the filter that restricts the request to a slice of the matching documents, or <tt>null</tt> if the
+     * request is not sliced.
+     */
+    @Nullable
+    public abstract Query sliceFilter();
+
+    public abstract void sliceFilter(Query sliceFilter);
+
     public abstract SearchContext minimumScore(float minimumScore);
 
     public abstract Float minimumScore();
@@ -243,6 +262,14 @@ public abstract class SearchContext implements Releasable, HasContextAndHeaders
 
     public abstract boolean trackScores();
 
+    /**
+     * Whether the total number of hits must be accurate. If not, searches that sort by score may skip documents that
+     * cannot make it to the top hits, and the total number of hits is then a lower bound.
+     */
+    public abstract boolean trackTotalHits();
+
+    public abstract SearchContext trackTotalHits(boolean trackTotalHits);
+
     public abstract SearchContext parsedPostFilter(ParsedQuery postFilter);
 
     public abstract ParsedQuery parsedPostFilter();
@@ -286,6 +313,14 @@ public abstract class SearchContext implements Releasable, HasContextAndHeaders
 
     public abstract void explain(boolean explain);
 
+    /**
+     * Return the profiler to record the execution of the request into, or <tt>null</tt> if profiling is disabled.
+     */
+    @Nullable
+    public abstract Profiler profiler();
+
+    public abstract void profile(boolean profile);
+
     @Nullable
     public abstract List<String> groupStats();
 
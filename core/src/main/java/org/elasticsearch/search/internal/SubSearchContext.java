@@ -36,6 +36,7 @@ import org.elasticsearch.search.fetch.script.ScriptFieldsContext;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 import org.elasticsearch.search.highlight.SearchContextHighlight;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
@@ -189,6 +190,26 @@ public class SubSearchContext extends FilteredSearchContext {
         throw new UnsupportedOperationException("Not supported");
     }
 
+    @Override
+    public Object[] searchAfter() {
+        return null;
+    }
+
+    @Override
+    public void searchAfter(Object[] sortValues) {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public Query sliceFilter() {
+        return null;
+    }
+
+    @Override
+    public void sliceFilter(Query sliceFilter) {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
     @Override
     public SearchContext minimumScore(float minimumScore) {
         throw new UnsupportedOperationException("Not supported");
@@ -216,6 +237,16 @@ public class SubSearchContext extends FilteredSearchContext {
         return trackScores;
     }
 
+    @Override
+    public boolean trackTotalHits() {
+        return true;
+    }
+
+    @Override
+    public SearchContext trackTotalHits(boolean trackTotalHits) {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
     @Override
     public SearchContext parsedPostFilter(ParsedQuery postFilter) {
         throw new UnsupportedOperationException("Not supported");
@@ -276,6 +307,17 @@ public class SubSearchContext extends FilteredSearchContext {
         this.explain = explain;
     }
 
+    @Override
+    public Profiler profiler() {
+        // executions on sub contexts are accounted in the enclosing phase of the main context
+        return null;
+    }
+
+    @Override
+    public void profile(boolean profile) {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
     @Override
     public void groupStats(List<String> groupStats) {
         throw new UnsupportedOperationException("Not supported");
@@ -0,0 +1,207 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The activity of an aggregation and of its sub-aggregations on a single shard.
+ */
+public class AggregationProfileResult implements Streamable, ToXContent {
+
+    private String name;
+    private String type;
+    private long collectCount;
+    private long collectNanos;
+    private long buildCount;
+    private long buildNanos;
+    private long buckets;
+    private long allocatedBytes;
+    private long peakBytes;
+    private List<AggregationProfileResult> children;
+
+    AggregationProfileResult() {
+    }
+
+    public AggregationProfileResult(String name, String type, long collectCount, long collectNanos, long buildCount, long buildNanos,
+            long buckets, long allocatedBytes, long peakBytes, List<AggregationProfileResult> children) {
+        this.name = name;
+        this.type = type;
+        this.collectCount = collectCount;
+        this.collectNanos = collectNanos;
+        this.buildCount = buildCount;
+        this.buildNanos = buildNanos;
+        this.buckets = buckets;
+        this.allocatedBytes = allocatedBytes;
+        this.peakBytes = peakBytes;
+        this.children = children;
+    }
+
+    /** The name of the aggregation. */
+    public String getName() {
+        return name;
+    }
+
+    /** The type of the aggregation. */
+    public String getType() {
+        return type;
+    }
+
+    /** How many times a document was collected into a bucket of this aggregation. */
+    public long getCollectCount() {
+        return collectCount;
+    }
+
+    /** An estimation of the time spent collecting documents, including sub-aggregations. */
+    public long getCollectNanos() {
+        return collectNanos;
+    }
+
+    /** How many times an aggregation was built for a bucket. */
+    public long getBuildCount() {
+        return buildCount;
+    }
+
+    /** The time spent building aggregations, including sub-aggregations. */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /** The number of buckets of the aggregations that were built. */
+    public long getBuckets() {
+        return buckets;
+    }
+
+    /** The total number of bytes that were allocated through big arrays, excluding sub-aggregations. */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** The maximum number of bytes that big arrays used at the same time, excluding sub-aggregations. */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public List<AggregationProfileResult> getChildren() {
+        return children;
+    }
+
+    public static AggregationProfileResult readAggregationProfileResult(StreamInput in) throws IOException {
+        AggregationProfileResult result = new AggregationProfileResult();
+        result.readFrom(in);
+        return result;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readString();
+        type = in.readString();
+        collectCount = in.readVLong();
+        collectNanos = in.readVLong();
+        buildCount = in.readVLong();
+        buildNanos = in.readVLong();
+        buckets = in.readVLong();
+        allocatedBytes = in.readVLong();
+        peakBytes = in.readVLong();
+        int size = in.readVInt();
+        if (size == 0) {
+            children = Collections.emptyList();
+        } else {
+            children = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                children.add(readAggregationProfileResult(in));
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        out.writeString(type);
+        out.writeVLong(collectCount);
+        out.writeVLong(collectNanos);
+        out.writeVLong(buildCount);
+        out.writeVLong(buildNanos);
+        out.writeVLong(buckets);
+        out.writeVLong(allocatedBytes);
+        out.writeVLong(peakBytes);
+        out.writeVInt(children.size());
+        for (AggregationProfileResult child : children) {
+            child.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(Fields.NAME, name);
+        builder.field(Fields.TYPE, type);
+        builder.field(Fields.COLLECT_COUNT, collectCount);
+        if (builder.humanReadable()) {
+            builder.field(Fields.COLLECT_TIME, TimeValue.timeValueNanos(collectNanos).toString());
+        }
+        builder.field(Fields.COLLECT_TIME_IN_NANOS, collectNanos);
+        builder.field(Fields.BUILD_COUNT, buildCount);
+        if (builder.humanReadable()) {
+            builder.field(Fields.BUILD_TIME, TimeValue.timeValueNanos(buildNanos).toString());
+        }
+        builder.field(Fields.BUILD_TIME_IN_NANOS, buildNanos);
+        builder.field(Fields.BUCKETS, buckets);
+        builder.byteSizeField(Fields.ALLOCATED_IN_BYTES, Fields.ALLOCATED, allocatedBytes);
+        builder.byteSizeField(Fields.PEAK_IN_BYTES, Fields.PEAK, peakBytes);
+        if (children.isEmpty() == false) {
+            builder.startArray(Fields.CHILDREN);
+            for (AggregationProfileResult child : children) {
+                child.toXContent(builder, params);
+            }
+            builder.endArray();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString NAME = new XContentBuilderString("name");
+        static final XContentBuilderString TYPE = new XContentBuilderString("type");
+        static final XContentBuilderString COLLECT_COUNT = new XContentBuilderString("collect_count");
+        static final XContentBuilderString COLLECT_TIME = new XContentBuilderString("collect_time");
+        static final XContentBuilderString COLLECT_TIME_IN_NANOS = new XContentBuilderString("collect_time_in_nanos");
+        static final XContentBuilderString BUILD_COUNT = new XContentBuilderString("build_count");
+        static final XContentBuilderString BUILD_TIME = new XContentBuilderString("build_time");
+        static final XContentBuilderString BUILD_TIME_IN_NANOS = new XContentBuilderString("build_time_in_nanos");
+        static final XContentBuilderString BUCKETS = new XContentBuilderString("buckets");
+        static final XContentBuilderString ALLOCATED = new XContentBuilderString("allocated");
+        static final XContentBuilderString ALLOCATED_IN_BYTES = new XContentBuilderString("allocated_in_bytes");
+        static final XContentBuilderString PEAK = new XContentBuilderString("peak");
+        static final XContentBuilderString PEAK_IN_BYTES = new XContentBuilderString("peak_in_bytes");
+        static final XContentBuilderString CHILDREN = new XContentBuilderString("children");
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import java.util.Locale;
+
+/**
+ * The timings of the calls to the {@link org.apache.lucene.search.Weight} and {@link org.apache.lucene.search.Scorer}
+ * of a single query node.
+ */
+public final class ProfileBreakdown {
+
+    /** The operations that are timed. Operations that are called per document are sampled. */
+    public enum TimingType {
+        CREATE_WEIGHT(1),
+        NORMALIZE(1),
+        BUILD_SCORER(1),
+        NEXT_DOC(16),
+        ADVANCE(16),
+        MATCH(16),
+        SCORE(16);
+
+        private final int samplingInterval;
+
+        TimingType(int samplingInterval) {
+            this.samplingInterval = samplingInterval;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Timer[] timers;
+
+    public ProfileBreakdown() {
+        final TimingType[] types = TimingType.values();
+        timers = new Timer[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            timers[i] = new Timer(types[i].samplingInterval);
+        }
+    }
+
+    /** Return the timer of the given operation. */
+    public Timer timer(TimingType type) {
+        return timers[type.ordinal()];
+    }
+}
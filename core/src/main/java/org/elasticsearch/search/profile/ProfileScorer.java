@@ -0,0 +1,148 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A {@link Scorer} that records the time spent iterating over matches and scoring them into a
+ * {@link ProfileBreakdown}.
+ */
+final class ProfileScorer extends Scorer {
+
+    private final Scorer in;
+    private final Timer nextDocTimer, advanceTimer, matchTimer, scoreTimer;
+
+    ProfileScorer(ProfileWeight weight, Scorer in, ProfileBreakdown profile) {
+        super(weight);
+        this.in = in;
+        nextDocTimer = profile.timer(ProfileBreakdown.TimingType.NEXT_DOC);
+        advanceTimer = profile.timer(ProfileBreakdown.TimingType.ADVANCE);
+        matchTimer = profile.timer(ProfileBreakdown.TimingType.MATCH);
+        scoreTimer = profile.timer(ProfileBreakdown.TimingType.SCORE);
+    }
+
+    @Override
+    public int docID() {
+        return in.docID();
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+        final long start = nextDocTimer.start();
+        try {
+            return in.nextDoc();
+        } finally {
+            nextDocTimer.stop(start);
+        }
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+        final long start = advanceTimer.start();
+        try {
+            return in.advance(target);
+        } finally {
+            advanceTimer.stop(start);
+        }
+    }
+
+    @Override
+    public float score() throws IOException {
+        final long start = scoreTimer.start();
+        try {
+            return in.score();
+        } finally {
+            scoreTimer.stop(start);
+        }
+    }
+
+    @Override
+    public int freq() throws IOException {
+        return in.freq();
+    }
+
+    @Override
+    public long cost() {
+        return in.cost();
+    }
+
+    @Override
+    public Collection<ChildScorer> getChildren() {
+        return in.getChildren();
+    }
+
+    @Override
+    public TwoPhaseIterator asTwoPhaseIterator() {
+        final TwoPhaseIterator inTwoPhase = in.asTwoPhaseIterator();
+        if (inTwoPhase == null) {
+            return null;
+        }
+        final DocIdSetIterator inApproximation = inTwoPhase.approximation();
+        final DocIdSetIterator approximation = new DocIdSetIterator() {
+
+            @Override
+            public int docID() {
+                return inApproximation.docID();
+            }
+
+            @Override
+            public int nextDoc() throws IOException {
+                final long start = nextDocTimer.start();
+                try {
+                    return inApproximation.nextDoc();
+                } finally {
+                    nextDocTimer.stop(start);
+                }
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+                final long start = advanceTimer.start();
+                try {
+                    return inApproximation.advance(target);
+                } finally {
+                    advanceTimer.stop(start);
+                }
+            }
+
+            @Override
+            public long cost() {
+                return inApproximation.cost();
+            }
+        };
+        return new TwoPhaseIterator(approximation) {
+            @Override
+            public boolean matches() throws IOException {
+                final long start = matchTimer.start();
+                try {
+                    return inTwoPhase.matches();
+                } finally {
+                    matchTimer.stop(start);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a search request spent its time and memory on, on a single shard.
+ */
+public class ProfileShardResult implements Streamable, ToXContent {
+
+    private List<QueryProfileResult> queries;
+    private long rewriteNanos;
+    private List<AggregationProfileResult> aggregations;
+    private Map<String, Long> phases;
+
+    ProfileShardResult() {
+    }
+
+    public ProfileShardResult(List<QueryProfileResult> queries, long rewriteNanos, List<AggregationProfileResult> aggregations,
+            Map<String, Long> phases) {
+        this.queries = queries;
+        this.rewriteNanos = rewriteNanos;
+        this.aggregations = aggregations;
+        this.phases = phases;
+    }
+
+    /** The timings of the queries that were executed, one per top-level query. */
+    public List<QueryProfileResult> getQueries() {
+        return queries;
+    }
+
+    /** The time spent rewriting queries. */
+    public long getRewriteTime() {
+        return rewriteNanos;
+    }
+
+    /** The activity of the top-level aggregations. */
+    public List<AggregationProfileResult> getAggregations() {
+        return aggregations;
+    }
+
+    /** The time spent in each phase of the execution of the request, in nanoseconds. */
+    public Map<String, Long> getPhases() {
+        return phases;
+    }
+
+    /**
+     * Merge the profiles of two executions on the same shard, typically the query and the fetch phases. Either
+     * profile may be <tt>null</tt>.
+     */
+    public static ProfileShardResult merge(@Nullable ProfileShardResult first, @Nullable ProfileShardResult second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        final List<QueryProfileResult> queries = new ArrayList<>(first.queries);
+        queries.addAll(second.queries);
+        final List<AggregationProfileResult> aggregations = new ArrayList<>(first.aggregations);
+        aggregations.addAll(second.aggregations);
+        final Map<String, Long> phases = new LinkedHashMap<>(first.phases);
+        for (Map.Entry<String, Long> entry : second.phases.entrySet()) {
+            final Long previous = phases.get(entry.getKey());
+            phases.put(entry.getKey(), previous == null ? entry.getValue() : previous + entry.getValue());
+        }
+        return new ProfileShardResult(queries, first.rewriteNanos + second.rewriteNanos, aggregations, phases);
+    }
+
+    public static ProfileShardResult readProfileShardResult(StreamInput in) throws IOException {
+        ProfileShardResult result = new ProfileShardResult();
+        result.readFrom(in);
+        return result;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        queries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            queries.add(QueryProfileResult.readQueryProfileResult(in));
+        }
+        rewriteNanos = in.readVLong();
+        size = in.readVInt();
+        aggregations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            aggregations.add(AggregationProfileResult.readAggregationProfileResult(in));
+        }
+        size = in.readVInt();
+        phases = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            phases.put(in.readString(), in.readVLong());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(queries.size());
+        for (QueryProfileResult query : queries) {
+            query.writeTo(out);
+        }
+        out.writeVLong(rewriteNanos);
+        out.writeVInt(aggregations.size());
+        for (AggregationProfileResult aggregation : aggregations) {
+            aggregation.writeTo(out);
+        }
+        out.writeVInt(phases.size());
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVLong(entry.getValue());
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startArray(Fields.QUERY);
+        for (QueryProfileResult query : queries) {
+            query.toXContent(builder, params);
+        }
+        builder.endArray();
+        if (builder.humanReadable()) {
+            builder.field(Fields.REWRITE_TIME, TimeValue.timeValueNanos(rewriteNanos).toString());
+        }
+        builder.field(Fields.REWRITE_TIME_IN_NANOS, rewriteNanos);
+        builder.startArray(Fields.AGGREGATIONS);
+        for (AggregationProfileResult aggregation : aggregations) {
+            aggregation.toXContent(builder, params);
+        }
+        builder.endArray();
+        builder.startObject(Fields.PHASES);
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            builder.startObject(entry.getKey());
+            if (builder.humanReadable()) {
+                builder.field(Fields.TIME, TimeValue.timeValueNanos(entry.getValue()).toString());
+            }
+            builder.field(Fields.TIME_IN_NANOS, entry.getValue());
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString QUERY = new XContentBuilderString("query");
+        static final XContentBuilderString REWRITE_TIME = new XContentBuilderString("rewrite_time");
+        static final XContentBuilderString REWRITE_TIME_IN_NANOS = new XContentBuilderString("rewrite_time_in_nanos");
+        static final XContentBuilderString AGGREGATIONS = new XContentBuilderString("aggregations");
+        static final XContentBuilderString PHASES = new XContentBuilderString("phases");
+        static final XContentBuilderString TIME = new XContentBuilderString("time");
+        static final XContentBuilderString TIME_IN_NANOS = new XContentBuilderString("time_in_nanos");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A {@link Weight} that records the time spent normalizing it and building scorers into a {@link ProfileBreakdown}.
+ * {@link #bulkScorer} is not delegated so that collection goes through a {@link ProfileScorer}.
+ */
+public final class ProfileWeight extends Weight {
+
+    private final Weight in;
+    private final ProfileBreakdown profile;
+
+    public ProfileWeight(Weight in, ProfileBreakdown profile) {
+        super(in.getQuery());
+        this.in = in;
+        this.profile = profile;
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        in.extractTerms(terms);
+    }
+
+    @Override
+    public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+        return in.explain(context, doc);
+    }
+
+    @Override
+    public float getValueForNormalization() throws IOException {
+        final Timer timer = profile.timer(ProfileBreakdown.TimingType.NORMALIZE);
+        final long start = timer.start();
+        try {
+            return in.getValueForNormalization();
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    @Override
+    public void normalize(float norm, float topLevelBoost) {
+        final Timer timer = profile.timer(ProfileBreakdown.TimingType.NORMALIZE);
+        final long start = timer.start();
+        try {
+            in.normalize(norm, topLevelBoost);
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context, Bits acceptDocs) throws IOException {
+        final Timer timer = profile.timer(ProfileBreakdown.TimingType.BUILD_SCORER);
+        final long start = timer.start();
+        final Scorer scorer;
+        try {
+            scorer = in.scorer(context, acceptDocs);
+        } finally {
+            timer.stop(start);
+        }
+        if (scorer == null) {
+            return null;
+        }
+        return new ProfileScorer(this, scorer, profile);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers the profile of the execution of a search request on a shard. The profile of the query phase and of the
+ * fetch phase are returned separately through {@link #pollResult()}.
+ */
+public final class Profiler {
+
+    private QueryProfiler queryProfiler = new QueryProfiler();
+    private List<AggregationProfileResult> aggregations = Collections.emptyList();
+    private Map<String, Long> phases = new LinkedHashMap<>();
+
+    /** Return the profiler of the queries that are executed. */
+    public QueryProfiler queryProfiler() {
+        return queryProfiler;
+    }
+
+    /** Set the profiles of the top-level aggregations. */
+    public void aggregations(List<AggregationProfileResult> aggregations) {
+        this.aggregations = aggregations;
+    }
+
+    /** Record the given time as spent in the given phase. */
+    public void addPhaseTime(String phase, long nanos) {
+        final Long previous = phases.get(phase);
+        phases.put(phase, previous == null ? nanos : previous + nanos);
+    }
+
+    /** Return what has been recorded since the previous call and start a new profile. */
+    public ProfileShardResult pollResult() {
+        final ProfileShardResult result = new ProfileShardResult(queryProfiler.results(), queryProfiler.rewriteTimer().nanos(),
+                aggregations, phases);
+        queryProfiler = new QueryProfiler();
+        aggregations = Collections.emptyList();
+        phases = new LinkedHashMap<>();
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The timings of a query node and of its children on a single shard.
+ */
+public class QueryProfileResult implements Streamable, ToXContent {
+
+    private String type;
+    private String description;
+    private long nanos;
+    private Map<String, Long> breakdown;
+    private List<QueryProfileResult> children;
+
+    QueryProfileResult() {
+    }
+
+    QueryProfileResult(Query query, ProfileBreakdown profile, List<QueryProfileResult> children) {
+        this.type = query.getClass().getSimpleName();
+        this.description = query.toString();
+        this.breakdown = new LinkedHashMap<>();
+        for (ProfileBreakdown.TimingType timingType : ProfileBreakdown.TimingType.values()) {
+            final Timer timer = profile.timer(timingType);
+            breakdown.put(timingType.toString(), timer.nanos());
+            breakdown.put(timingType.toString() + "_count", timer.count());
+            nanos += timer.nanos();
+        }
+        this.children = children;
+    }
+
+    /** The simple name of the class of the query. */
+    public String getType() {
+        return type;
+    }
+
+    /** The string representation of the query. */
+    public String getDescription() {
+        return description;
+    }
+
+    /** The total time spent in this query, including its children. */
+    public long getTime() {
+        return nanos;
+    }
+
+    /** The time spent in each kind of operation, in nanoseconds, and the number of times it was called. */
+    public Map<String, Long> getBreakdown() {
+        return breakdown;
+    }
+
+    public List<QueryProfileResult> getChildren() {
+        return children;
+    }
+
+    public static QueryProfileResult readQueryProfileResult(StreamInput in) throws IOException {
+        QueryProfileResult result = new QueryProfileResult();
+        result.readFrom(in);
+        return result;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        type = in.readString();
+        description = in.readString();
+        nanos = in.readVLong();
+        int size = in.readVInt();
+        breakdown = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            breakdown.put(in.readString(), in.readVLong());
+        }
+        size = in.readVInt();
+        if (size == 0) {
+            children = Collections.emptyList();
+        } else {
+            children = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                children.add(readQueryProfileResult(in));
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(type);
+        out.writeString(description);
+        out.writeVLong(nanos);
+        out.writeVInt(breakdown.size());
+        for (Map.Entry<String, Long> entry : breakdown.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVLong(entry.getValue());
+        }
+        out.writeVInt(children.size());
+        for (QueryProfileResult child : children) {
+            child.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(Fields.TYPE, type);
+        builder.field(Fields.DESCRIPTION, description);
+        if (builder.humanReadable()) {
+            builder.field(Fields.TIME, TimeValue.timeValueNanos(nanos).toString());
+        }
+        builder.field(Fields.TIME_IN_NANOS, nanos);
+        builder.startObject(Fields.BREAKDOWN);
+        for (Map.Entry<String, Long> entry : breakdown.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue());
+        }
+        builder.endObject();
+        if (children.isEmpty() == false) {
+            builder.startArray(Fields.CHILDREN);
+            for (QueryProfileResult child : children) {
+                child.toXContent(builder, params);
+            }
+            builder.endArray();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString TYPE = new XContentBuilderString("type");
+        static final XContentBuilderString DESCRIPTION = new XContentBuilderString("description");
+        static final XContentBuilderString TIME = new XContentBuilderString("time");
+        static final XContentBuilderString TIME_IN_NANOS = new XContentBuilderString("time_in_nanos");
+        static final XContentBuilderString BREAKDOWN = new XContentBuilderString("breakdown");
+        static final XContentBuilderString CHILDREN = new XContentBuilderString("children");
+    }
+}
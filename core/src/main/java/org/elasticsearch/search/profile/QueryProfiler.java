@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.search.Query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Builds the tree of the query nodes that are executed on a shard. Weights are created recursively, so the weights
+ * that are created while the weight of a query is being created belong to the children of this query.
+ */
+public final class QueryProfiler {
+
+    private static class Node {
+
+        final Query query;
+        final ProfileBreakdown profile = new ProfileBreakdown();
+        final List<Node> children = new ArrayList<>();
+
+        Node(Query query) {
+            this.query = query;
+        }
+
+        QueryProfileResult result() {
+            final List<QueryProfileResult> childResults = new ArrayList<>(children.size());
+            for (Node child : children) {
+                childResults.add(child.result());
+            }
+            return new QueryProfileResult(query, profile, childResults);
+        }
+    }
+
+    private final List<Node> roots = new ArrayList<>();
+    private final Deque<Node> stack = new ArrayDeque<>();
+    private final Timer rewriteTimer = new Timer();
+
+    /**
+     * Start the creation of the weight of the given query and return the breakdown that its weight and scorers
+     * should record into. {@link #pop()} must be called once the weight is created.
+     */
+    public ProfileBreakdown push(Query query) {
+        final Node node = new Node(query);
+        final Node parent = stack.peek();
+        if (parent == null) {
+            roots.add(node);
+        } else {
+            parent.children.add(node);
+        }
+        stack.push(node);
+        return node.profile;
+    }
+
+    /** Mark the end of the creation of the weight that was started with the last call to {@link #push(Query)}. */
+    public void pop() {
+        stack.pop();
+    }
+
+    /** Return the timer of query rewrites. */
+    public Timer rewriteTimer() {
+        return rewriteTimer;
+    }
+
+    /** Return the profiles of the queries that were executed, one per top-level query. */
+    public List<QueryProfileResult> results() {
+        final List<QueryProfileResult> results = new ArrayList<>(roots.size());
+        for (Node root : roots) {
+            results.add(root.result());
+        }
+        return results;
+    }
+}
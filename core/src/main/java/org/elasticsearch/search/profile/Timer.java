@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+/**
+ * Counts calls to an operation and measures how long they take. Operations that are called very often, like
+ * collecting a document, are only timed for one call out of <code>samplingInterval</code> in order to keep the
+ * overhead of {@link System#nanoTime()} low, and the total time is extrapolated from the sampled calls.
+ * This class is not thread-safe.
+ * <pre>
+ * final long start = timer.start();
+ * try {
+ *     // timed operation
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ */
+public final class Timer {
+
+    private static final long NOT_SAMPLED = -1L;
+
+    private final int samplingInterval;
+    private long count;
+    private long sampledCount;
+    private long sampledNanos;
+
+    /** Create a timer that times every call. */
+    public Timer() {
+        this(1);
+    }
+
+    /** Create a timer that times one call out of <code>samplingInterval</code>. */
+    public Timer(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("samplingInterval must be >= 1, got " + samplingInterval);
+        }
+        this.samplingInterval = samplingInterval;
+    }
+
+    /** Record the start of a call and return a token that must be passed to {@link #stop(long)}. */
+    public long start() {
+        if (count++ % samplingInterval != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /** Record the end of a call that was started with {@link #start()}. */
+    public void stop(long start) {
+        if (start != NOT_SAMPLED) {
+            sampledNanos += System.nanoTime() - start;
+            sampledCount++;
+        }
+    }
+
+    /** Return the number of calls. */
+    public long count() {
+        return count;
+    }
+
+    /** Return the total time spent in calls, which is an estimation if calls are sampled. */
+    public long nanos() {
+        if (sampledCount == 0) {
+            return 0;
+        }
+        if (sampledCount == count) {
+            return sampledNanos;
+        }
+        return (long) ((double) sampledNanos * count / sampledCount);
+    }
+}
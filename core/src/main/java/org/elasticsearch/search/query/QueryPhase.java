@@ -21,19 +21,27 @@ package org.elasticsearch.search.query;
 
 import com.google.common.collect.ImmutableMap;
 
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.MaxScoreDisjunctionQuery;
 import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.aggregations.AggregationPhase;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.profile.ProfileParseElement;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.rescore.RescorePhase;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
+import org.elasticsearch.search.searchafter.SearchAfterParseElement;
+import org.elasticsearch.search.slice.SliceParseElement;
 import org.elasticsearch.search.sort.SortParseElement;
 import org.elasticsearch.search.sort.TrackScoresParseElement;
 import org.elasticsearch.search.suggest.SuggestPhase;
@@ -73,10 +81,15 @@ public class QueryPhase implements SearchPhase {
                 .put("sort", new SortParseElement())
                 .put("trackScores", new TrackScoresParseElement())
                 .put("track_scores", new TrackScoresParseElement())
+                .put("trackTotalHits", new TrackTotalHitsParseElement())
+                .put("track_total_hits", new TrackTotalHitsParseElement())
                 .put("min_score", new MinScoreParseElement())
                 .put("minScore", new MinScoreParseElement())
                 .put("timeout", new TimeoutParseElement())
                 .put("terminate_after", new TerminateAfterParseElement())
+                .put("search_after", new SearchAfterParseElement())
+                .put("slice", new SliceParseElement())
+                .put("profile", new ProfileParseElement())
                 .putAll(aggregationPhase.parseElements())
                 .putAll(suggestPhase.parseElements())
                 .putAll(rescorePhase.parseElements());
@@ -95,6 +108,9 @@ public class QueryPhase implements SearchPhase {
         // here to make sure it happens during the QUERY phase
         aggregationPhase.preProcess(searchContext);
 
+        final Profiler profiler = searchContext.profiler();
+        long startTime = profiler == null ? 0 : System.nanoTime();
+
         searchContext.queryResult().searchTimedOut(false);
 
         searchContext.searcher().inStage(ContextIndexSearcher.Stage.MAIN_QUERY);
@@ -139,6 +155,18 @@ public class QueryPhase implements SearchPhase {
                             searchContext.lastEmittedDoc(topDocs.scoreDocs[size - 1]);
                         }
                     }
+                } else if (searchContext.searchAfter() != null) {
+                    // collect hits that sort after the given sort values, which is a stateless alternative to scrolling
+                    if (searchContext.sort() != null) {
+                        FieldDoc after = SearchAfterParseElement.buildFieldDoc(searchContext.sort(), searchContext.searchAfter());
+                        topDocs = searchContext.searcher().searchAfter(
+                                after, query, null, numDocs, searchContext.sort(),
+                                searchContext.trackScores(), searchContext.trackScores()
+                        );
+                    } else {
+                        FieldDoc after = SearchAfterParseElement.buildFieldDoc(Sort.RELEVANCE, searchContext.searchAfter());
+                        topDocs = searchContext.searcher().searchAfter(new ScoreDoc(after.doc, (Float) after.fields[0]), query, numDocs);
+                    }
                 } else {
                     if (searchContext.sort() != null) {
                         topDocs = searchContext.searcher().search(query, null, numDocs, searchContext.sort(),
@@ -148,6 +176,10 @@ public class QueryPhase implements SearchPhase {
                         for (RescoreSearchContext rescoreContext : searchContext.rescore()) {
                             numDocs = Math.max(rescoreContext.window(), numDocs);
                         }
+                        if (searchContext.trackTotalHits() == false && collectsTopHitsOnly(searchContext)) {
+                            // documents that cannot make it to the top hits do not need to be collected
+                            query = MaxScoreDisjunctionQuery.wrap(query, searchContext.searcher().rewrite(query), numDocs);
+                        }
                         topDocs = searchContext.searcher().search(query, numDocs);
                     }
                 }
@@ -158,10 +190,41 @@ public class QueryPhase implements SearchPhase {
         } finally {
             searchContext.searcher().finishStage(ContextIndexSearcher.Stage.MAIN_QUERY);
         }
+        startTime = recordPhaseTime(profiler, "query", startTime);
         if (rescore) { // only if we do a regular search
             rescorePhase.execute(searchContext);
+            startTime = recordPhaseTime(profiler, "rescore", startTime);
         }
         suggestPhase.execute(searchContext);
+        startTime = recordPhaseTime(profiler, "suggest", startTime);
         aggregationPhase.execute(searchContext);
+        recordPhaseTime(profiler, "aggregations", startTime);
+        if (profiler != null) {
+            searchContext.queryResult().profileResult(profiler.pollResult());
+        }
+    }
+
+    /**
+     * Whether the main query only needs to collect the top hits, as opposed to all matching documents like
+     * aggregations, post filters, minimum scores and <code>terminate_after</code> do.
+     */
+    private static boolean collectsTopHitsOnly(SearchContext searchContext) {
+        return searchContext.aggregations() == null && searchContext.searcher().queryCollectors().isEmpty()
+                && searchContext.parsedPostFilter() == null && searchContext.minimumScore() == null
+                && searchContext.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER
+                && searchContext.profiler() == null;
+    }
+
+    /**
+     * Record the time since <code>startTime</code> as spent in the given phase if profiling is enabled, and return
+     * the start time of the next phase.
+     */
+    private static long recordPhaseTime(@Nullable Profiler profiler, String phase, long startTime) {
+        if (profiler == null) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        profiler.addPhaseTime(phase, now - startTime);
+        return now;
     }
 }
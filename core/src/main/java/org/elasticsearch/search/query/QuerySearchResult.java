@@ -20,6 +20,8 @@
 package org.elasticsearch.search.query;
 
 import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -29,6 +31,7 @@ import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorStreams;
 import org.elasticsearch.search.aggregations.pipeline.SiblingPipelineAggregator;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.suggest.Suggest;
 
 import java.io.IOException;
@@ -53,6 +56,7 @@ public class QuerySearchResult extends QuerySearchResultProvider {
     private Suggest suggest;
     private boolean searchTimedOut;
     private Boolean terminatedEarly = null;
+    private ProfileShardResult profileResult;
 
     public QuerySearchResult() {
 
@@ -136,6 +140,19 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         this.suggest = suggest;
     }
 
+    /**
+     * Returns the profile of the execution of the request on this shard, or <tt>null</tt> if profiling was not
+     * requested.
+     */
+    @Nullable
+    public ProfileShardResult profileResult() {
+        return profileResult;
+    }
+
+    public void profileResult(ProfileShardResult profileResult) {
+        this.profileResult = profileResult;
+    }
+
     public int from() {
         return from;
     }
@@ -191,6 +208,9 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         }
         searchTimedOut = in.readBoolean();
         terminatedEarly = in.readOptionalBoolean();
+        if (in.getVersion().onOrAfter(Version.V_2_0_0_beta1) && in.readBoolean()) {
+            profileResult = ProfileShardResult.readProfileShardResult(in);
+        }
     }
 
     @Override
@@ -229,5 +249,13 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         }
         out.writeBoolean(searchTimedOut);
         out.writeOptionalBoolean(terminatedEarly);
+        if (out.getVersion().onOrAfter(Version.V_2_0_0_beta1)) {
+            if (profileResult == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                profileResult.writeTo(out);
+            }
+        }
     }
 }
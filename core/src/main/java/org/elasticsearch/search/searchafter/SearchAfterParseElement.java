@@ -0,0 +1,134 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.searchafter;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.search.SearchParseElement;
+import org.elasticsearch.search.SearchParseException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses <tt>search_after</tt>: the sort values of the hit after which hits should be returned, typically the last
+ * hit of the previous page. Unlike scrolling, this does not keep any state on the server between pages.
+ * <pre>
+ * "search_after" : [1437486120000, "tweet#654323"]
+ * </pre>
+ */
+public class SearchAfterParseElement implements SearchParseElement {
+
+    @Override
+    public void parse(XContentParser parser, SearchContext context) throws Exception {
+        XContentParser.Token token = parser.currentToken();
+        if (token != XContentParser.Token.START_ARRAY) {
+            throw new SearchParseException(context, "[search_after] must be an array of sort values but got " + token,
+                    parser.getTokenLocation());
+        }
+        List<Object> sortValues = new ArrayList<>();
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            switch (token) {
+                case VALUE_NUMBER:
+                    sortValues.add(parser.numberValue());
+                    break;
+                case VALUE_STRING:
+                    sortValues.add(parser.text());
+                    break;
+                case VALUE_BOOLEAN:
+                    sortValues.add(parser.booleanValue());
+                    break;
+                case VALUE_NULL:
+                    sortValues.add(null);
+                    break;
+                default:
+                    throw new SearchParseException(context, "[search_after] values must be numbers, strings, booleans or null but got "
+                            + token, parser.getTokenLocation());
+            }
+        }
+        if (sortValues.isEmpty()) {
+            throw new SearchParseException(context, "[search_after] must contain at least one value", parser.getTokenLocation());
+        }
+        context.searchAfter(sortValues.toArray());
+    }
+
+    /**
+     * Convert the sort values of a <tt>search_after</tt> request to a {@link FieldDoc} that can be used as a lower
+     * bound when collecting top hits with the given sort. Since the doc id of the hit is unknown, hits that have the
+     * same sort values are not returned, which is why sorts should end with a unique field such as <tt>_uid</tt>.
+     */
+    public static FieldDoc buildFieldDoc(Sort sort, Object[] sortValues) {
+        final SortField[] sortFields = sort.getSort();
+        if (sortFields.length != sortValues.length) {
+            throw new IllegalArgumentException("[search_after] has " + sortValues.length + " value(s) but the sort has "
+                    + sortFields.length + " field(s)");
+        }
+        final Object[] fieldValues = new Object[sortFields.length];
+        for (int i = 0; i < sortFields.length; i++) {
+            fieldValues[i] = convertSortValue(sortFields[i], sortValues[i]);
+        }
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN, fieldValues);
+    }
+
+    private static Object convertSortValue(SortField sortField, Object value) {
+        final SortField.Type type = sortType(sortField);
+        if (value == null) {
+            if (type == SortField.Type.STRING || type == SortField.Type.STRING_VAL) {
+                // documents that have no value
+                return null;
+            }
+            throw new IllegalArgumentException("[search_after] does not accept null values for the sort on [" + sortField.getField() + "]");
+        }
+        try {
+            switch (type) {
+                case DOC:
+                case INT:
+                    return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+                case LONG:
+                    return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+                case SCORE:
+                case FLOAT:
+                    return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+                case DOUBLE:
+                    return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+                case STRING:
+                case STRING_VAL:
+                    return new BytesRef(value.toString());
+                default:
+                    throw new IllegalArgumentException("[search_after] does not support sorting on [" + sortField.getField() + "] of type " + type);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("[search_after] value [" + value + "] cannot be converted to the " + type
+                    + " sort on [" + sortField.getField() + "]", e);
+        }
+    }
+
+    private static SortField.Type sortType(SortField sortField) {
+        if (sortField.getComparatorSource() instanceof IndexFieldData.XFieldComparatorSource) {
+            return ((IndexFieldData.XFieldComparatorSource) sortField.getComparatorSource()).reducedType();
+        }
+        return sortField.getType();
+    }
+}
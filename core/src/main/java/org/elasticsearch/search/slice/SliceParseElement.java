@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.slice;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.search.SearchParseElement;
+import org.elasticsearch.search.SearchParseException;
+import org.elasticsearch.search.internal.SearchContext;
+
+/**
+ * Parses <tt>slice</tt>, which restricts a scroll to one of <tt>max</tt> disjoint slices of the matching documents
+ * so that several consumers can scroll the same request in parallel:
+ * <pre>
+ * "slice" : {
+ *     "id" : 0,
+ *     "max" : 4
+ * }
+ * </pre>
+ */
+public class SliceParseElement implements SearchParseElement {
+
+    @Override
+    public void parse(XContentParser parser, SearchContext context) throws Exception {
+        XContentParser.Token token = parser.currentToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new SearchParseException(context, "[slice] must be an object but got " + token, parser.getTokenLocation());
+        }
+        int id = -1;
+        int max = -1;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if ("id".equals(currentFieldName)) {
+                    id = parser.intValue();
+                } else if ("max".equals(currentFieldName)) {
+                    max = parser.intValue();
+                } else {
+                    throw new SearchParseException(context, "unknown field [" + currentFieldName + "] in [slice]", parser.getTokenLocation());
+                }
+            } else {
+                throw new SearchParseException(context, "unexpected token " + token + " in [slice]", parser.getTokenLocation());
+            }
+        }
+        if (max <= 1) {
+            throw new SearchParseException(context, "[slice] requires [max] to be greater than 1, got [" + max + "]",
+                    parser.getTokenLocation());
+        }
+        if (id < 0 || id >= max) {
+            throw new SearchParseException(context, "[slice] requires [id] to be in [0, " + max + "), got [" + id + "]",
+                    parser.getTokenLocation());
+        }
+        // slices are computed against all shards of the index, not only the shards that the request targets: routing may
+        // restrict the request to some shards and other indices may have a different number of shards
+        final int numShards = context.indexShard().indexSettings().getAsInt(IndexMetaData.SETTING_NUMBER_OF_SHARDS, null);
+        context.sliceFilter(createSliceFilter(id, max, context.indexShard().shardId().id(), numShards));
+    }
+
+    /**
+     * Create the filter that selects the documents of the given slice on the given shard. When there are at least as
+     * many slices as shards, every slice only targets a single shard, so that consumers that read different slices
+     * do not hit the same shards. Otherwise, every slice gets whole shards.
+     */
+    public static Query createSliceFilter(int id, int max, int shardId, int numShards) {
+        if (max >= numShards) {
+            // slices are assigned to shards in a round-robin fashion
+            final int targetShard = id % numShards;
+            if (targetShard != shardId) {
+                return Queries.newMatchNoDocsQuery();
+            }
+            int numSlicesInShard = max / numShards;
+            if (max % numShards > targetShard) {
+                numSlicesInShard++;
+            }
+            if (numSlicesInShard == 1) {
+                return Queries.newMatchAllQuery();
+            }
+            return new TermsSliceFilter(UidFieldMapper.NAME, id / numShards, numSlicesInShard);
+        } else {
+            // shards are assigned to slices in a round-robin fashion
+            return shardId % max == id ? Queries.newMatchAllQuery() : Queries.newMatchNoDocsQuery();
+        }
+    }
+}
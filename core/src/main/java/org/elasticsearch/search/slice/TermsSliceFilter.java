@@ -0,0 +1,105 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.slice;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.math.MathUtils;
+
+import java.io.IOException;
+
+/**
+ * A filter that only matches the documents of a slice: the documents whose terms for the given field hash to the
+ * slice. Since the hash only depends on the terms, the slices are stable across readers, which allows independent
+ * requests to consume disjoint slices. The field should have a single, unique term per document, such as
+ * <tt>_uid</tt>.
+ */
+public final class TermsSliceFilter extends Filter {
+
+    private static final int SEED = 7919;
+
+    private final String field;
+    private final int id;
+    private final int max;
+
+    public TermsSliceFilter(String field, int id, int max) {
+        this.field = field;
+        this.id = id;
+        this.max = max;
+    }
+
+    int id() {
+        return id;
+    }
+
+    int max() {
+        return max;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(LeafReaderContext context, Bits acceptDocs) throws IOException {
+        final Terms terms = context.reader().terms(field);
+        if (terms == null) {
+            return null;
+        }
+        final BitDocIdSet.Builder builder = new BitDocIdSet.Builder(context.reader().maxDoc());
+        final TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            final int hash = StringHelper.murmurhash3_x86_32(term, SEED);
+            if (MathUtils.mod(hash, max) == id) {
+                postings = termsEnum.postings(acceptDocs, postings, PostingsEnum.NONE);
+                builder.or(postings);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString(String field) {
+        return "slice(field=" + this.field + ", id=" + id + ", max=" + max + ")";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (super.equals(obj) == false) {
+            return false;
+        }
+        TermsSliceFilter other = (TermsSliceFilter) obj;
+        return field.equals(other.field) && id == other.id && max == other.max;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = super.hashCode();
+        h = 31 * h + field.hashCode();
+        h = 31 * h + id;
+        h = 31 * h + max;
+        return h;
+    }
+}
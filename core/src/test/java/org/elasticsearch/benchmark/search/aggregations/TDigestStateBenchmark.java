@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.search.aggregations;
+
+import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.TDigest;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestState;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link TDigestState} with the tree-based digest of the t-digest library in the setting of a
+ * percentiles aggregation under a bucket aggregation: many digests that each see few values.
+ */
+public class TDigestStateBenchmark {
+
+    private static final double COMPRESSION = 100;
+    private static final int NUM_BUCKETS = 10000;
+    private static final int VALUES_PER_BUCKET = 200;
+    private static final double[] QUANTILES = { 0.01, 0.1, 0.5, 0.9, 0.99 };
+
+    public static void main(String[] args) throws Exception {
+        final Random random = new Random(0);
+        final double[] values = new double[VALUES_PER_BUCKET * NUM_BUCKETS];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextGaussian();
+        }
+
+        for (int iter = 0; iter < 5; ++iter) {
+            StopWatch stopWatch = new StopWatch().start();
+            final AVLTreeDigest[] treeDigests = new AVLTreeDigest[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                treeDigests[i] = new AVLTreeDigest(COMPRESSION);
+            }
+            for (int i = 0; i < values.length; ++i) {
+                treeDigests[i % NUM_BUCKETS].add(values[i]);
+            }
+            final TDigest treeMerged = new AVLTreeDigest(COMPRESSION);
+            for (AVLTreeDigest digest : treeDigests) {
+                treeMerged.add(digest);
+            }
+            stopWatch.stop();
+            System.out.println("AVLTreeDigest collect+merge: " + stopWatch.totalTime());
+
+            stopWatch = new StopWatch().start();
+            final TDigestState[] states = new TDigestState[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                states[i] = new TDigestState(COMPRESSION);
+            }
+            for (int i = 0; i < values.length; ++i) {
+                states[i % NUM_BUCKETS].add(values[i]);
+            }
+            final TDigestState merged = new TDigestState(COMPRESSION);
+            for (TDigestState state : states) {
+                merged.add(state);
+            }
+            stopWatch.stop();
+            System.out.println("TDigestState collect+merge: " + stopWatch.totalTime());
+
+            stopWatch = new StopWatch().start();
+            long serializedBytes = 0;
+            for (TDigestState state : states) {
+                BytesStreamOutput out = new BytesStreamOutput();
+                TDigestState.write(state, out);
+                TDigestState.read(StreamInput.wrap(out.bytes()));
+                serializedBytes += out.size();
+            }
+            stopWatch.stop();
+            System.out.println("TDigestState serialization round-trips: " + stopWatch.totalTime() + ", " + serializedBytes + " bytes");
+
+            final double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            for (double q : QUANTILES) {
+                final double exact = sorted[(int) (q * sorted.length)];
+                System.out.println("q=" + q + " exact=" + exact + " avl=" + treeMerged.quantile(q) + " merging=" + merged.quantile(q));
+            }
+            System.out.println();
+        }
+    }
+
+}
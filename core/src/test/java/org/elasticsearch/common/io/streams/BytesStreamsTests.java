@@ -304,6 +304,42 @@ public class BytesStreamsTests extends ElasticsearchTestCase {
         out.close();
     }
 
+    @Test
+    public void testZLong() throws Exception {
+        final long[] values = new long[randomIntBetween(1, 100)];
+        for (int i = 0; i < values.length; ++i) {
+            switch (randomInt(3)) {
+            case 0:
+                values[i] = randomLong();
+                break;
+            case 1:
+                values[i] = randomIntBetween(-1000, 1000);
+                break;
+            case 2:
+                values[i] = Long.MIN_VALUE;
+                break;
+            default:
+                values[i] = Long.MAX_VALUE;
+                break;
+            }
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        for (long value : values) {
+            out.writeZLong(value);
+        }
+        StreamInput in = StreamInput.wrap(out.bytes().toBytes());
+        for (long value : values) {
+            assertThat(in.readZLong(), equalTo(value));
+        }
+        in.close();
+        out.close();
+
+        out = new BytesStreamOutput();
+        out.writeZLong(-1);
+        assertThat(out.size(), equalTo(1));
+        out.close();
+    }
+
     // we ignore this test for now since all existing callers of BytesStreamOutput happily
     // call bytes() after close().
     @Ignore
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.lessThan;
+
+public class RoaringBitSetTests extends ElasticsearchTestCase {
+
+    private static FixedBitSet randomSet(int maxDoc, int numDocs) {
+        final FixedBitSet set = new FixedBitSet(maxDoc);
+        for (int i = 0; i < numDocs; ++i) {
+            set.set(randomInt(maxDoc - 1));
+        }
+        return set;
+    }
+
+    private static RoaringBitSet copyOf(FixedBitSet set) {
+        final RoaringBitSet.Builder builder = new RoaringBitSet.Builder(set.length());
+        for (int doc = set.nextSetBit(0); doc != DocIdSetIterator.NO_MORE_DOCS; doc = doc + 1 < set.length() ? set.nextSetBit(doc + 1) : DocIdSetIterator.NO_MORE_DOCS) {
+            builder.add(doc);
+        }
+        return builder.build();
+    }
+
+    private static void assertEquivalent(FixedBitSet expected, RoaringBitSet actual) {
+        final int maxDoc = expected.length();
+        assertEquals(maxDoc, actual.length());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        for (int i = 0; i < maxDoc; ++i) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+        for (int iter = 0; iter < 100; ++iter) {
+            final int index = randomInt(maxDoc - 1);
+            assertEquals(expected.nextSetBit(index), actual.nextSetBit(index));
+            assertEquals(expected.prevSetBit(index), actual.prevSetBit(index));
+        }
+        assertEquals(expected.nextSetBit(0), actual.nextSetBit(0));
+        assertEquals(expected.prevSetBit(maxDoc - 1), actual.prevSetBit(maxDoc - 1));
+    }
+
+    @Test
+    public void randomSets() {
+        for (int iter = 0; iter < 10; ++iter) {
+            final int maxDoc = randomIntBetween(1, 1 << 18);
+            final int numDocs = randomFrom(0, 1, randomInt(100), randomInt(maxDoc / 16), randomInt(maxDoc));
+            final FixedBitSet expected = randomSet(maxDoc, numDocs);
+            assertEquivalent(expected, copyOf(expected));
+        }
+    }
+
+    @Test
+    public void blockBoundaries() {
+        final int maxDoc = 3 << RoaringBitSet.BLOCK_SHIFT;
+        final FixedBitSet expected = new FixedBitSet(maxDoc);
+        // a sparse block, an empty block and a dense block
+        expected.set(0);
+        expected.set((1 << RoaringBitSet.BLOCK_SHIFT) - 1);
+        for (int i = 0; i <= RoaringBitSet.MAX_ARRAY_LENGTH; ++i) {
+            expected.set((2 << RoaringBitSet.BLOCK_SHIFT) + 2 * i);
+        }
+        assertEquivalent(expected, copyOf(expected));
+    }
+
+    @Test
+    public void memoryUsage() {
+        final int maxDoc = 1 << 20;
+        // one document out of 64
+        final FixedBitSet set = new FixedBitSet(maxDoc);
+        for (int doc = 0; doc < maxDoc; doc += 64) {
+            set.set(doc);
+        }
+        final RoaringBitSet roaringBitSet = copyOf(set);
+        assertThat(roaringBitSet.ramBytesUsed() * 3, lessThan(set.ramBytesUsed()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfOrder() {
+        new RoaringBitSet.Builder(10).add(5).add(3);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class MaxScoreDisjunctionQueryTests extends ElasticsearchTestCase {
+
+    private static final String[] TERMS = {"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    private static Directory randomIndex(Similarity similarity) throws Exception {
+        final Directory dir = newDirectory();
+        final IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER).setSimilarity(similarity));
+        final int numDocs = scaledRandomIntBetween(100, 5000);
+        for (int i = 0; i < numDocs; ++i) {
+            final StringBuilder text = new StringBuilder();
+            final int numTokens = randomIntBetween(1, 20);
+            for (int j = 0; j < numTokens; ++j) {
+                // skewed frequencies so that terms have different maximum scores
+                text.append(TERMS[Math.min(randomInt(TERMS.length - 1), randomInt(TERMS.length - 1))]).append(' ');
+            }
+            final Document doc = new Document();
+            doc.add(new Field("field", text.toString(), TextField.TYPE_NOT_STORED));
+            writer.addDocument(doc);
+            if (rarely()) {
+                writer.commit();
+            }
+        }
+        if (randomBoolean()) {
+            writer.deleteDocuments(new Term("field", randomFrom(TERMS)));
+        }
+        writer.close();
+        return dir;
+    }
+
+    private static Query randomDisjunction() {
+        final BooleanQuery query = new BooleanQuery(randomBoolean());
+        final int numClauses = randomIntBetween(1, TERMS.length);
+        for (int i = 0; i < numClauses; ++i) {
+            final TermQuery clause = new TermQuery(new Term("field", randomFrom(TERMS)));
+            if (randomBoolean()) {
+                clause.setBoost(randomFloat() * 5);
+            }
+            query.add(clause, Occur.SHOULD);
+        }
+        if (randomBoolean()) {
+            query.setBoost(randomFloat() * 5);
+        }
+        return query;
+    }
+
+    private static void assertSameTopHits(TopDocs expected, TopDocs actual) {
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; ++i) {
+            assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+            // clause scores may be summed in a different order
+            assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, expected.scoreDocs[i].score * 1e-6f);
+        }
+        assertThat(actual.totalHits, lessThanOrEqualTo(expected.totalHits));
+    }
+
+    @Test
+    public void sameTopHitsAsDisjunction() throws Exception {
+        final Similarity similarity = new BM25Similarity();
+        try (Directory dir = randomIndex(similarity); IndexReader reader = DirectoryReader.open(dir)) {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setSimilarity(similarity);
+            for (int iter = 0; iter < 50; ++iter) {
+                final Query query = searcher.rewrite(randomDisjunction());
+                final int numHits = randomIntBetween(1, 100);
+                final Query maxScoreQuery = MaxScoreDisjunctionQuery.wrap(query, numHits);
+                assertThat(maxScoreQuery, instanceOf(MaxScoreDisjunctionQuery.class));
+                assertSameTopHits(searcher.search(query, numHits), searcher.search(maxScoreQuery, numHits));
+            }
+        }
+    }
+
+    @Test
+    public void otherSimilaritiesCollectAllHits() throws Exception {
+        final Similarity similarity = new DefaultSimilarity();
+        try (Directory dir = randomIndex(similarity); IndexReader reader = DirectoryReader.open(dir)) {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setSimilarity(similarity);
+            final Query query = searcher.rewrite(randomDisjunction());
+            final int numHits = randomIntBetween(1, 10);
+            final TopDocs expected = searcher.search(query, numHits);
+            final TopDocs actual = searcher.search(MaxScoreDisjunctionQuery.wrap(query, numHits), numHits);
+            assertSameTopHits(expected, actual);
+            assertEquals(expected.totalHits, actual.totalHits);
+        }
+    }
+
+    @Test
+    public void onlyWrapsTermDisjunctions() {
+        final Query matchAll = new MatchAllDocsQuery();
+        assertThat(MaxScoreDisjunctionQuery.wrap(matchAll, 10), sameInstance(matchAll));
+
+        final BooleanQuery conjunction = new BooleanQuery();
+        conjunction.add(new TermQuery(new Term("field", "a")), Occur.MUST);
+        conjunction.add(new TermQuery(new Term("field", "b")), Occur.SHOULD);
+        assertThat(MaxScoreDisjunctionQuery.wrap(conjunction, 10), sameInstance((Query) conjunction));
+
+        final BooleanQuery minimumShouldMatch = new BooleanQuery();
+        minimumShouldMatch.add(new TermQuery(new Term("field", "a")), Occur.SHOULD);
+        minimumShouldMatch.add(new TermQuery(new Term("field", "b")), Occur.SHOULD);
+        minimumShouldMatch.setMinimumNumberShouldMatch(2);
+        assertThat(MaxScoreDisjunctionQuery.wrap(minimumShouldMatch, 10), sameInstance((Query) minimumShouldMatch));
+
+        final Query term = new TermQuery(new Term("field", "a"));
+        assertThat(MaxScoreDisjunctionQuery.wrap(term, 10), instanceOf(MaxScoreDisjunctionQuery.class));
+        assertThat(((MaxScoreDisjunctionQuery) MaxScoreDisjunctionQuery.wrap(term, 10)).getQuery(), sameInstance(term));
+        assertThat(((MaxScoreDisjunctionQuery) MaxScoreDisjunctionQuery.wrap(term, 10)).getOriginalQuery(), sameInstance(term));
+
+        // rewritten queries remember the query they were rewritten from, which is returned if they can't be wrapped
+        final BooleanQuery singleClause = new BooleanQuery();
+        singleClause.add(term, Occur.SHOULD);
+        final Query wrapped = MaxScoreDisjunctionQuery.wrap(singleClause, term, 10);
+        assertThat(wrapped, instanceOf(MaxScoreDisjunctionQuery.class));
+        assertThat(((MaxScoreDisjunctionQuery) wrapped).getQuery(), sameInstance(term));
+        assertThat(((MaxScoreDisjunctionQuery) wrapped).getOriginalQuery(), sameInstance((Query) singleClause));
+        final Query matchAllRewritten = new MatchAllDocsQuery();
+        assertThat(MaxScoreDisjunctionQuery.wrap(singleClause, matchAllRewritten, 10), sameInstance((Query) singleClause));
+    }
+
+    @Test
+    public void topScores() {
+        final MaxScoreDisjunctionQuery.TopScores topScores = new MaxScoreDisjunctionQuery.TopScores(3);
+        assertEquals(Float.NEGATIVE_INFINITY, topScores.minCompetitiveScore(), 0f);
+        assertFalse(topScores.add(2f));
+        assertFalse(topScores.add(5f));
+        assertTrue(topScores.add(1f));
+        assertEquals(1f, topScores.minCompetitiveScore(), 0f);
+        assertFalse(topScores.add(1f));
+        assertTrue(topScores.add(3f));
+        assertEquals(2f, topScores.minCompetitiveScore(), 0f);
+        assertTrue(topScores.add(4f));
+        assertEquals(3f, topScores.minCompetitiveScore(), 0f);
+    }
+}
@@ -30,7 +30,9 @@ import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  */
@@ -297,6 +299,52 @@ public class TimeZoneRoundingTests extends ElasticsearchTestCase {
         }
     }
 
+    /**
+     * randomized test that precomputed roundings return the same keys as the original rounding
+     */
+    @Test
+    public void testPrepareRandom() {
+        for (int i = 0; i < 100; ++i) {
+            DateTimeZone tz = DateTimeZone.forID(randomFrom("UTC", "Asia/Jerusalem", "America/Sao_Paulo", "Europe/Paris", "Australia/Lord_Howe"));
+            TimeZoneRounding.Builder builder;
+            if (randomBoolean()) {
+                builder = TimeZoneRounding.builder(randomTimeUnit());
+            } else {
+                builder = TimeZoneRounding.builder(TimeValue.timeValueMinutes(randomIntBetween(1, 60 * 24)));
+            }
+            builder.timeZone(tz);
+            if (randomBoolean()) {
+                builder.offset(TimeValue.timeValueHours(randomIntBetween(-12, 12)).millis());
+            }
+            Rounding rounding = builder.build();
+            final long min = Math.abs(randomLong() % ((long) 10e11));
+            final long max = min + randomInt(Integer.MAX_VALUE);
+            Rounding prepared = rounding.prepare(min, max, randomIntBetween(1, 10000));
+            for (int j = 0; j < 1000; ++j) {
+                final long value = min - 1000 + (Math.abs(randomLong()) % (max - min + 2000));
+                assertThat(prepared.roundKey(value), equalTo(rounding.roundKey(value)));
+            }
+            assertThat(prepared.roundKey(min), equalTo(rounding.roundKey(min)));
+            assertThat(prepared.roundKey(max), equalTo(rounding.roundKey(max)));
+        }
+    }
+
+    @Test
+    public void testPrepareMaxKeys() {
+        DateTimeZone tz = DateTimeZone.forID("Europe/Paris");
+        Rounding rounding = TimeZoneRounding.builder(DateTimeUnit.DAY_OF_MONTH).timeZone(tz).build();
+        // 10 days in Paris
+        final long min = time("2014-01-01T00:00:00", tz);
+        final long max = time("2014-01-10T23:59:59", tz);
+        assertThat(rounding.prepare(min, max, 9), sameInstance(rounding));
+        Rounding prepared = rounding.prepare(min, max, 10);
+        assertThat(prepared, instanceOf(TimeZoneRounding.PrecomputedRounding.class));
+        for (long value = min; value <= max; value += TimeUnit.MINUTES.toMillis(randomIntBetween(1, 300))) {
+            assertThat(prepared.roundKey(value), equalTo(rounding.roundKey(value)));
+        }
+        assertThat(prepared.roundKey(max), equalTo(time("2014-01-10T00:00:00", tz)));
+    }
+
     private DateTimeUnit randomTimeUnit() {
         byte id = (byte) randomIntBetween(1, 8);
         return DateTimeUnit.resolve(id);
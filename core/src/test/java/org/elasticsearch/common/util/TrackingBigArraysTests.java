@@ -0,0 +1,54 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util;
+
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class TrackingBigArraysTests extends ElasticsearchTestCase {
+
+    @Test
+    public void allocatedAndPeakBytes() {
+        final TrackingBigArrays bigArrays = new TrackingBigArrays(BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(0, bigArrays.allocatedBytes());
+        assertEquals(0, bigArrays.peakBytes());
+
+        LongArray longs = bigArrays.newLongArray(randomIntBetween(1, 100000));
+        final long longsBytes = longs.ramBytesUsed();
+        assertEquals(longsBytes, bigArrays.allocatedBytes());
+        assertEquals(longsBytes, bigArrays.peakBytes());
+
+        IntArray ints = bigArrays.newIntArray(randomIntBetween(1, 100000));
+        final long intsBytes = ints.ramBytesUsed();
+        assertEquals(longsBytes + intsBytes, bigArrays.allocatedBytes());
+        assertEquals(longsBytes + intsBytes, bigArrays.peakBytes());
+
+        longs.close();
+        ints.close();
+        assertEquals(longsBytes + intsBytes, bigArrays.allocatedBytes());
+        assertEquals(longsBytes + intsBytes, bigArrays.peakBytes());
+
+        // released memory can be reused without increasing the peak
+        ints = bigArrays.newIntArray(1);
+        assertEquals(longsBytes + intsBytes + ints.ramBytesUsed(), bigArrays.allocatedBytes());
+        assertEquals(longsBytes + intsBytes, bigArrays.peakBytes());
+        ints.close();
+    }
+}
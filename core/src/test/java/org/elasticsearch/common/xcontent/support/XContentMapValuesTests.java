@@ -22,6 +22,7 @@ package org.elasticsearch.common.xcontent.support;
 import com.google.common.collect.ImmutableMap;
 
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -566,4 +567,47 @@ public class XContentMapValuesTests extends ElasticsearchTestCase {
         }
     }
 
+    @Test
+    public void testStreamingFilterMatchesMapFilter() throws Exception {
+        XContentBuilder builder = XContentFactory.contentBuilder(randomFrom(XContentType.values())).startObject()
+                .field("test1", "value1")
+                .field("test2", 2)
+                .startObject("obj1")
+                    .field("f1", "v1")
+                    .startObject("obj2")
+                        .field("f2", true)
+                        .startObject("obj3").endObject()
+                    .endObject()
+                .endObject()
+                .startArray("arr1")
+                    .startObject().field("f1", "v1").field("f2", "v2").endObject()
+                    .startObject().endObject()
+                    .startArray().value(1).value(2).endArray()
+                    .startArray().endArray()
+                    .value("v3")
+                .endArray()
+                .startArray("empty").endArray()
+                .endObject();
+        final BytesReference source = builder.bytes();
+        final Map<String, Object> sourceAsMap = XContentHelper.convertToMap(source, false).v2();
+
+        final String[][] includesList = new String[][] {
+                Strings.EMPTY_ARRAY, {"test1"}, {"test*"}, {"obj1"}, {"obj1.obj2"}, {"*.f2"}, {"arr1.f1"}, {"arr1"}, {"empty", "obj1.f1"}, {"nothing"}
+        };
+        final String[][] excludesList = new String[][] {
+                Strings.EMPTY_ARRAY, {"test2"}, {"obj1.obj2"}, {"*.f1"}, {"arr1.f2"}, {"*.obj3"}
+        };
+        for (String[] includes : includesList) {
+            for (String[] excludes : excludesList) {
+                final Map<String, Object> expected = XContentMapValues.filter(sourceAsMap, includes, excludes);
+                XContentBuilder filtered = XContentFactory.contentBuilder(builder.contentType());
+                try (XContentParser parser = XContentHelper.createParser(source)) {
+                    XContentMapValues.filter(parser, filtered.generator(), includes, excludes);
+                }
+                final Map<String, Object> actual = XContentHelper.convertToMap(filtered.bytes(), false).v2();
+                assertEquals("includes=" + Arrays.toString(includes) + ", excludes=" + Arrays.toString(excludes), expected, actual);
+            }
+        }
+    }
+
 }
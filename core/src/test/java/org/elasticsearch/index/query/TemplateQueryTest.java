@@ -32,6 +32,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.search.stats.SearchStats;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.script.ScriptService.ScriptType;
 import org.elasticsearch.script.Template;
@@ -48,10 +49,13 @@ import java.util.Map;
 
 import static org.elasticsearch.common.settings.Settings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertFailures;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchHits;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 
 /**
@@ -88,6 +92,52 @@ public class TemplateQueryTest extends ElasticsearchIntegrationTest {
         assertHitCount(sr, 2);
     }
 
+    @Test
+    public void testParsedTemplateQueriesAreCached() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            for (String value : new String[] {"value1", "value2"}) {
+                Map<String, Object> vars = new HashMap<>();
+                vars.put("value", value);
+                TemplateQueryBuilder builder = new TemplateQueryBuilder(new Template("{\"term\": {\"text\": \"{{value}}\"}}", ScriptType.INLINE,
+                        null, null, vars));
+                // always search the same shard copies, which parsed the query before in the second iteration
+                SearchResponse sr = client().prepareSearch("test").setQuery(builder).setPreference("_primary").get();
+                assertHitCount(sr, 1);
+                assertSearchHits(sr, value.equals("value1") ? "1" : "2");
+            }
+        }
+
+        SearchStats stats = client().admin().indices().prepareStats("test").setSearch(true).get().getTotal().getSearch();
+        assertThat(stats.getTemplateQueryCacheHitCount() + stats.getTemplateQueryCacheMissCount(), equalTo(4L * getNumShards("test").numPrimaries));
+        assertThat(stats.getTemplateQueryCacheHitCount(), greaterThanOrEqualTo(2L * getNumShards("test").numPrimaries));
+    }
+
+    @Test
+    public void testCachedTemplateQueriesAfterReopeningIndex() throws Exception {
+        // the search analyzer does not lowercase terms at first
+        assertAcked(prepareCreate("reopen")
+                .setSettings(settingsBuilder().put("index.analysis.analyzer.search_analyzer.type", "whitespace"))
+                .addMapping("type", "text", "type=string,analyzer=standard,search_analyzer=search_analyzer"));
+        ensureGreen("reopen");
+        index("reopen", "type", "1", jsonBuilder().startObject().field("text", "Value").endObject());
+        refresh("reopen");
+
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("value", "Value");
+        TemplateQueryBuilder builder = new TemplateQueryBuilder(new Template("{\"match\": {\"text\": \"{{value}}\"}}", ScriptType.INLINE,
+                null, null, vars));
+        assertHitCount(client().prepareSearch("reopen").setQuery(builder).get(), 0);
+        assertHitCount(client().prepareSearch("reopen").setQuery(builder).get(), 0);
+
+        // the reopened index parses the same mappings again, with a search analyzer that lowercases terms
+        assertAcked(client().admin().indices().prepareClose("reopen"));
+        assertAcked(client().admin().indices().prepareUpdateSettings("reopen")
+                .setSettings(settingsBuilder().put("index.analysis.analyzer.search_analyzer.type", "standard")));
+        assertAcked(client().admin().indices().prepareOpen("reopen"));
+        ensureGreen("reopen");
+        assertHitCount(client().prepareSearch("reopen").setQuery(builder).get(), 1);
+    }
+
     @Test
     public void testTemplateInBodyWithSize() throws IOException {
         String request = "{\n" +
@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.cache.query.QueryCacheStats;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class IndicesQueryCacheTests extends ElasticsearchTestCase {
+
+    // caches every query, but is not QueryCachingPolicy.ALWAYS_CACHE, which bypasses costs
+    private static final QueryCachingPolicy CACHE_ALL = new QueryCachingPolicy() {
+        @Override
+        public void onUse(Query query) {
+        }
+
+        @Override
+        public boolean shouldCache(Query query, LeafReaderContext context) throws IOException {
+            return true;
+        }
+    };
+
+    @Test
+    public void cheapQueriesAreNotCachedAgain() throws IOException {
+        final IndicesQueryCache cache = new IndicesQueryCache(Settings.builder()
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_MIN_NANOS_PER_DOC, Long.MAX_VALUE).build());
+        final ShardId shardId = new ShardId("index", 0);
+        try (Directory dir = newDirectory()) {
+            try (DirectoryReader reader = openReader(dir, shardId)) {
+                final IndexSearcher searcher = cachingSearcher(reader, cache);
+                final Query query = new ConstantScoreQuery(new TermQuery(new Term("field", "value")));
+
+                assertEquals(100, searcher.search(query, 1).totalHits);
+                QueryCacheStats stats = cache.getStats(shardId);
+                // the cost of the query was not known yet
+                assertEquals(1, stats.getCacheCount());
+                assertEquals(1, stats.getCacheSize());
+
+                cache.clearIndex("index");
+                assertEquals(100, searcher.search(query, 1).totalHits);
+                stats = cache.getStats(shardId);
+                assertEquals(2, stats.getMissCount());
+                assertEquals(1, stats.getCacheCount());
+                assertEquals(0, stats.getCacheSize());
+            }
+            cache.onClose(shardId);
+        }
+        cache.close();
+    }
+
+    @Test
+    public void hitsReportTimeSaved() throws IOException {
+        final IndicesQueryCache cache = new IndicesQueryCache(Settings.builder()
+                .put(IndicesQueryCache.INDICES_CACHE_QUERY_MIN_NANOS_PER_DOC, 0).build());
+        final ShardId shardId = new ShardId("index", 0);
+        try (Directory dir = newDirectory()) {
+            try (DirectoryReader reader = openReader(dir, shardId)) {
+                final IndexSearcher searcher = cachingSearcher(reader, cache);
+                final Query query = new ConstantScoreQuery(new TermQuery(new Term("field", "value")));
+
+                assertEquals(100, searcher.search(query, 1).totalHits);
+                assertEquals(0, cache.getStats(shardId).getTimeSaved().nanos());
+
+                assertEquals(100, searcher.search(query, 1).totalHits);
+                final QueryCacheStats stats = cache.getStats(shardId);
+                assertEquals(1, stats.getHitCount());
+                assertThat(stats.getTimeSaved().nanos(), greaterThan(0L));
+                cache.clearIndex("index");
+            }
+            cache.onClose(shardId);
+        }
+        cache.close();
+    }
+
+    private static DirectoryReader openReader(Directory dir, ShardId shardId) throws IOException {
+        try (IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig())) {
+            for (int i = 0; i < 100; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("field", "value", Field.Store.NO));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        return ElasticsearchDirectoryReader.wrap(DirectoryReader.open(dir), shardId);
+    }
+
+    private static IndexSearcher cachingSearcher(DirectoryReader reader, IndicesQueryCache cache) {
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setQueryCache(cache);
+        searcher.setQueryCachingPolicy(CACHE_ALL);
+        return searcher;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query.template;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.indices.InternalIndicesLifecycle;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IndicesTemplateQueryCacheTests extends ElasticsearchTestCase {
+
+    private static final String SOURCE = "{\"term\":{\"field\":\"value\"}}";
+
+    @Test
+    public void cachedQueriesAreCopies() {
+        final IndicesTemplateQueryCache cache = new IndicesTemplateQueryCache(Settings.EMPTY, new InternalIndicesLifecycle(Settings.EMPTY));
+        final IndicesTemplateQueryCache.Key key = new IndicesTemplateQueryCache.Key("index", "uuid", 1, null, new BytesArray(SOURCE));
+        assertNull(cache.get(key));
+
+        final Query query = new TermQuery(new Term("field", "value"));
+        cache.put(key, query);
+        query.setBoost(2f);
+
+        final Query cached = cache.get(key);
+        assertThat(cached, not(sameInstance(query)));
+        assertEquals(new TermQuery(new Term("field", "value")), cached);
+        cached.setBoost(3f);
+        assertEquals(1f, cache.get(key).getBoost(), 0f);
+        cache.close();
+        assertEquals(0, cache.count());
+    }
+
+    @Test
+    public void keys() {
+        final IndicesTemplateQueryCache cache = new IndicesTemplateQueryCache(Settings.EMPTY, new InternalIndicesLifecycle(Settings.EMPTY));
+        cache.put(new IndicesTemplateQueryCache.Key("index", "uuid", 1, new String[] {"type"}, new BytesArray(SOURCE)), new TermQuery(new Term("field", "value")));
+
+        assertNotNull(cache.get(new IndicesTemplateQueryCache.Key("index", "uuid", 1, new String[] {"type"}, new BytesArray(SOURCE))));
+        // the mappings changed
+        assertNull(cache.get(new IndicesTemplateQueryCache.Key("index", "uuid", 2, new String[] {"type"}, new BytesArray(SOURCE))));
+        // another index with the same name
+        assertNull(cache.get(new IndicesTemplateQueryCache.Key("index", "uuid2", 1, new String[] {"type"}, new BytesArray(SOURCE))));
+        // other types
+        assertNull(cache.get(new IndicesTemplateQueryCache.Key("index", "uuid", 1, null, new BytesArray(SOURCE))));
+        // other parameters
+        assertNull(cache.get(new IndicesTemplateQueryCache.Key("index", "uuid", 1, new String[] {"type"}, new BytesArray("{\"term\":{\"field\":\"other\"}}"))));
+        cache.close();
+    }
+
+    @Test
+    public void closedAndDeletedIndicesAreInvalidated() {
+        final InternalIndicesLifecycle indicesLifecycle = new InternalIndicesLifecycle(Settings.EMPTY);
+        final IndicesTemplateQueryCache cache = new IndicesTemplateQueryCache(Settings.EMPTY, indicesLifecycle);
+        final IndicesTemplateQueryCache.Key key1 = new IndicesTemplateQueryCache.Key("index1", "uuid1", 1, null, new BytesArray(SOURCE));
+        final IndicesTemplateQueryCache.Key key2 = new IndicesTemplateQueryCache.Key("index2", "uuid2", 1, null, new BytesArray(SOURCE));
+        cache.put(key1, new TermQuery(new Term("field", "value")));
+        cache.put(key2, new TermQuery(new Term("field", "value")));
+
+        if (randomBoolean()) {
+            indicesLifecycle.afterIndexClosed(new Index("index1"), Settings.EMPTY);
+        } else {
+            indicesLifecycle.afterIndexDeleted(new Index("index1"), Settings.EMPTY);
+        }
+        assertNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+        cache.close();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.cache.query.terms;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class IndicesTermsLookupCacheTests extends ElasticsearchTestCase {
+
+    @Test
+    public void stringTermsAreSortedAndUnique() {
+        final IndicesTermsLookupCache.Terms terms = IndicesTermsLookupCache.Terms.of("index", "uuid", 3, Arrays.<Object>asList("b", "c", "a", "b"));
+        assertEquals(3, terms.version());
+        assertArrayEquals(new BytesRef[] {new BytesRef("a"), new BytesRef("b"), new BytesRef("c")}, terms.sortedTerms());
+        assertEquals(Arrays.<Object>asList("a", "b", "c"), terms.values());
+        for (BytesRef term : terms.sortedTerms()) {
+            assertEquals(term.length, term.bytes.length);
+        }
+    }
+
+    @Test
+    public void nonStringValuesAreKept() {
+        final List<Object> values = Arrays.<Object>asList(2, 10L, "1");
+        final IndicesTermsLookupCache.Terms terms = IndicesTermsLookupCache.Terms.of("index", "uuid", 1, values);
+        assertArrayEquals(new BytesRef[] {new BytesRef("1"), new BytesRef("10"), new BytesRef("2")}, terms.sortedTerms());
+        assertEquals(values, terms.values());
+    }
+
+    @Test
+    public void ramBytesUsed() {
+        final IndicesTermsLookupCache.Terms small = IndicesTermsLookupCache.Terms.of("index", "uuid", 1, Arrays.<Object>asList("a"));
+        final IndicesTermsLookupCache.Terms large = IndicesTermsLookupCache.Terms.of("index", "uuid", 1, Arrays.<Object>asList("a", "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb"));
+        assertThat(large.ramBytesUsed(), greaterThan(small.ramBytesUsed()));
+        assertTrue(IndicesTermsLookupCache.Terms.EMPTY.isEmpty());
+    }
+}
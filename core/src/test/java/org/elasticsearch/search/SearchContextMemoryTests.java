@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class SearchContextMemoryTests extends ElasticsearchTestCase {
+
+    @Test
+    public void accounting() {
+        final SearchContextMemory memory = new SearchContextMemory(100);
+        assertEquals(100, memory.bytes());
+        assertEquals(50, memory.retained(150));
+        assertEquals(1000, memory.pinned(1000));
+        assertEquals(1150, memory.bytes());
+        assertEquals(-1000, memory.pinned(0));
+        assertEquals(150, memory.release());
+        // updates after the context was released are ignored
+        assertEquals(0, memory.retained(200));
+        assertEquals(0, memory.pinned(200));
+        assertEquals(0, memory.bytes());
+    }
+
+    @Test
+    public void topDocs() {
+        final TopDocs scoreDocs = new TopDocs(2, new ScoreDoc[] {new ScoreDoc(0, 1f), new ScoreDoc(1, 1f)}, 1f);
+        final TopDocs fieldDocs = new TopDocs(2, new ScoreDoc[] {
+                new FieldDoc(0, 1f, new Object[] {new BytesRef("foo"), 3L}),
+                new FieldDoc(1, 1f, new Object[] {new BytesRef("bar"), null})}, 1f);
+        final TopDocs noDocs = new TopDocs(0, new ScoreDoc[0], Float.NaN);
+        assertThat(SearchContextMemory.estimateBytes(scoreDocs), greaterThan(SearchContextMemory.estimateBytes(noDocs)));
+        assertThat(SearchContextMemory.estimateBytes(fieldDocs), greaterThan(SearchContextMemory.estimateBytes(scoreDocs)));
+    }
+
+    @Test
+    public void pinnedSegments() throws Exception {
+        try (Directory dir = newDirectory(); IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig())) {
+            for (int i = 0; i < 2; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("field", "value" + i, Field.Store.YES));
+                writer.addDocument(doc);
+                writer.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+                final Set<Object> coreCacheKeys = new HashSet<>();
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    coreCacheKeys.add(leaf.reader().getCoreCacheKey());
+                }
+                assertEquals(0, SearchContextMemory.estimatePinnedBytes(reader, coreCacheKeys));
+                assertThat(SearchContextMemory.estimatePinnedBytes(reader, Collections.<Object>emptySet()), greaterThan(0L));
+            }
+        }
+    }
+}
@@ -20,11 +20,17 @@ package org.elasticsearch.search;
 
 
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.search.stats.SearchStats;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.test.ElasticsearchSingleNodeTest;
 
 import java.util.concurrent.ExecutionException;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -70,4 +76,47 @@ public class SearchServiceTests extends ElasticsearchSingleNodeTest {
         assertAcked(client().admin().indices().prepareDelete("index"));
         assertEquals(0, service.getActiveContexts());
     }
+
+    public void testContextMemoryIsAccounted() throws ExecutionException, InterruptedException {
+        createIndex("index", Settings.builder().put("index.number_of_shards", 1).build());
+        for (int i = 0; i < 20; i++) {
+            client().prepareIndex("index", "type", Integer.toString(i)).setSource("field", "value").get();
+        }
+        client().admin().indices().prepareRefresh("index").get();
+        SearchResponse searchResponse = client().prepareSearch("index").setSize(5).setScroll("1m").get();
+        assertThat(searchResponse.getScrollId(), is(notNullValue()));
+        CircuitBreaker breaker = getInstanceFromNode(CircuitBreakerService.class).getBreaker(CircuitBreaker.SEARCH_CONTEXTS);
+
+        final long used = breaker.getUsed();
+        assertThat(used, greaterThan(SearchContextMemory.CONTEXT_SHALLOW_BYTES));
+        SearchStats stats = client().admin().indices().prepareStats("index").setSearch(true).get().getTotal().getSearch();
+        assertEquals(1, stats.getOpenContexts());
+        assertEquals(used, stats.getOpenContextsMemoryInBytes());
+
+        client().prepareClearScroll().addScrollId(searchResponse.getScrollId()).get();
+        assertEquals(0, breaker.getUsed());
+        stats = client().admin().indices().prepareStats("index").setSearch(true).get().getTotal().getSearch();
+        assertEquals(0, stats.getOpenContexts());
+        assertEquals(0, stats.getOpenContextsMemoryInBytes());
+    }
+
+    public void testFreeIdleScrollContextsUnderPressure() throws ExecutionException, InterruptedException {
+        createIndex("index", Settings.builder().put("index.number_of_shards", 1).build());
+        client().prepareIndex("index", "type", "1").setSource("field", "value").setRefresh(true).get();
+        SearchResponse searchResponse = client().prepareSearch("index").setSize(1).setScroll("1m").get();
+        assertThat(searchResponse.getScrollId(), is(notNullValue()));
+        SearchService service = getInstanceFromNode(SearchService.class);
+        CircuitBreaker breaker = getInstanceFromNode(CircuitBreakerService.class).getBreaker(CircuitBreaker.SEARCH_CONTEXTS);
+        assertEquals(1, service.getActiveContexts());
+
+        // leave room for less than a new context, so that the idle scroll context needs to be freed
+        final long limit = breaker.getUsed() + SearchContextMemory.CONTEXT_SHALLOW_BYTES / 2;
+        client().admin().cluster().prepareUpdateSettings().setTransientSettings(Settings.builder()
+                .put(HierarchyCircuitBreakerService.SEARCH_CONTEXTS_CIRCUIT_BREAKER_LIMIT_SETTING, limit + "b")).get();
+        searchResponse = client().prepareSearch("index").setSize(1).get();
+        assertEquals(1, searchResponse.getHits().getTotalHits());
+        assertEquals(0, service.getActiveContexts());
+        breaker = getInstanceFromNode(CircuitBreakerService.class).getBreaker(CircuitBreaker.SEARCH_CONTEXTS);
+        assertEquals(0, breaker.getUsed());
+    }
 }
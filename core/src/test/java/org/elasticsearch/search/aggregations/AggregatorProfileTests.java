@@ -0,0 +1,123 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.search.profile.AggregationProfileResult;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class AggregatorProfileTests extends ElasticsearchTestCase {
+
+    @Test
+    public void treeShape() {
+        final AggregatorProfile root = new AggregatorProfile("", "", BigArrays.NON_RECYCLING_INSTANCE);
+        final AggregatorProfile terms = root.child("terms", "terms", BigArrays.NON_RECYCLING_INSTANCE);
+        final AggregatorProfile avg = terms.child("avg", "avg", BigArrays.NON_RECYCLING_INSTANCE);
+        final AggregatorProfile max = terms.child("max", "max", BigArrays.NON_RECYCLING_INSTANCE);
+        final AggregatorProfile histo = root.child("histo", "histogram", BigArrays.NON_RECYCLING_INSTANCE);
+        // aggregators of the same sub-aggregation, eg. one per parent bucket, record into the same profile
+        assertThat(root.child("terms", "terms", BigArrays.NON_RECYCLING_INSTANCE), sameInstance(terms));
+        assertThat(terms.child("max", "max", BigArrays.NON_RECYCLING_INSTANCE), sameInstance(max));
+        assertThat(terms.child("avg", "avg", BigArrays.NON_RECYCLING_INSTANCE), sameInstance(avg));
+        assertThat(histo, not(sameInstance(terms)));
+
+        final List<AggregationProfileResult> results = root.childResults();
+        assertEquals(2, results.size());
+        final AggregationProfileResult termsResult = results.get(0);
+        assertEquals("terms", termsResult.getName());
+        assertEquals("terms", termsResult.getType());
+        assertEquals(2, termsResult.getChildren().size());
+        // sub-aggregations are in the order in which they were first created
+        assertEquals("avg", termsResult.getChildren().get(0).getName());
+        assertEquals("max", termsResult.getChildren().get(1).getName());
+        assertThat(termsResult.getChildren().get(0).getChildren(), empty());
+        final AggregationProfileResult histoResult = results.get(1);
+        assertEquals("histo", histoResult.getName());
+        assertEquals("histogram", histoResult.getType());
+        assertThat(histoResult.getChildren(), empty());
+
+        final AggregationProfileResult rootResult = root.result();
+        assertEquals("", rootResult.getName());
+        assertEquals(2, rootResult.getChildren().size());
+        assertEquals(0, rootResult.getCollectCount());
+        assertEquals(0, rootResult.getBuildCount());
+        assertEquals(0, rootResult.getBuckets());
+    }
+
+    @Test
+    public void collectCount() throws IOException {
+        final AggregatorProfile profile = new AggregatorProfile("terms", "terms", BigArrays.NON_RECYCLING_INSTANCE);
+        assertThat(profile.wrap(LeafBucketCollector.NO_OP_COLLECTOR), sameInstance(LeafBucketCollector.NO_OP_COLLECTOR));
+
+        final long[] collected = new long[1];
+        final LeafBucketCollector in = new LeafBucketCollector() {
+            @Override
+            public void setScorer(Scorer scorer) {
+            }
+
+            @Override
+            public void collect(int doc, long bucket) {
+                collected[0]++;
+            }
+        };
+        // every leaf gets its own collector, which all record into the same profile, and only some calls are timed
+        final int numCollects = randomIntBetween(0, 5 * AggregatorProfile.COLLECT_SAMPLING_INTERVAL);
+        LeafBucketCollector collector = null;
+        for (int i = 0; i < numCollects; ++i) {
+            if (collector == null || randomInt(10) == 0) {
+                collector = profile.wrap(in);
+            }
+            collector.collect(i, 0);
+        }
+        assertEquals(numCollects, collected[0]);
+        assertEquals(numCollects, profile.result().getCollectCount());
+        assertEquals(0, profile.result().getBuildCount());
+    }
+
+    @Test
+    public void allocatedBytesExcludeChildren() {
+        final AggregatorProfile parent = new AggregatorProfile("terms", "terms", BigArrays.NON_RECYCLING_INSTANCE);
+        final AggregatorProfile child = parent.child("avg", "avg", BigArrays.NON_RECYCLING_INSTANCE);
+
+        final LongArray parentArray = parent.bigArrays().newLongArray(randomIntBetween(1, 1000));
+        final long parentBytes = parentArray.ramBytesUsed();
+        parentArray.close();
+        final LongArray childArray = child.bigArrays().newLongArray(randomIntBetween(1, 1000));
+        final long childBytes = childArray.ramBytesUsed();
+        childArray.close();
+
+        final AggregationProfileResult result = parent.result();
+        assertEquals(parentBytes, result.getAllocatedBytes());
+        assertEquals(parentBytes, result.getPeakBytes());
+        final AggregationProfileResult childResult = result.getChildren().get(0);
+        assertEquals(childBytes, childResult.getAllocatedBytes());
+        assertEquals(childBytes, childResult.getPeakBytes());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.valuecount.InternalValueCount;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class InternalAggregationsTests extends ElasticsearchTestCase {
+
+    private static List<InternalAggregations> randomShardAggregations(int numShards, int numSiblings) {
+        final List<InternalAggregations> shardAggregations = new ArrayList<>();
+        for (int shard = 0; shard < numShards; ++shard) {
+            final List<InternalAggregation> aggregations = new ArrayList<>();
+            for (int i = 0; i < numSiblings; ++i) {
+                if (i % 2 == 0) {
+                    aggregations.add(new InternalMax("max" + i, randomDouble(), null,
+                            Collections.<PipelineAggregator>emptyList(), null));
+                } else {
+                    aggregations.add(new InternalValueCount("count" + i, randomIntBetween(0, 1000), null,
+                            Collections.<PipelineAggregator>emptyList(), null));
+                }
+            }
+            shardAggregations.add(new InternalAggregations(aggregations));
+        }
+        return shardAggregations;
+    }
+
+    @Test
+    public void parallelReduce() throws Exception {
+        final int numShards = randomIntBetween(1, 20);
+        final int numSiblings = randomIntBetween(1, 30);
+        final List<InternalAggregations> shardAggregations = randomShardAggregations(numShards, numSiblings);
+
+        final InternalAggregations sequential = InternalAggregations.reduce(shardAggregations,
+                new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null));
+        final ForkJoinPool pool = EsExecutors.newForkJoinPool(randomIntBetween(2, 4), "test_reduce");
+        try {
+            final InternalAggregations parallel = InternalAggregations.reduce(shardAggregations,
+                    new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, pool));
+            final List<Aggregation> expected = sequential.asList();
+            final List<Aggregation> actual = parallel.asList();
+            assertEquals(numSiblings, actual.size());
+            for (int i = 0; i < numSiblings; ++i) {
+                // siblings are returned in the order in which they appear in shard responses
+                assertEquals(expected.get(i).getName(), actual.get(i).getName());
+                if (i % 2 == 0) {
+                    assertEquals(((InternalMax) expected.get(i)).value(), ((InternalMax) actual.get(i)).value(), 0d);
+                } else {
+                    assertEquals(((InternalValueCount) expected.get(i)).getValue(), ((InternalValueCount) actual.get(i)).getValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void reduceAfterPoolShutdown() throws Exception {
+        final int numSiblings = randomIntBetween(2, 30);
+        final List<InternalAggregations> shardAggregations = randomShardAggregations(randomIntBetween(1, 20), numSiblings);
+        final ForkJoinPool pool = EsExecutors.newForkJoinPool(randomIntBetween(2, 4), "test_reduce");
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        // the node is stopping, reduces fall back to the calling thread
+        final InternalAggregations reduced = InternalAggregations.reduce(shardAggregations,
+                new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, pool));
+        assertEquals(numSiblings, reduced.asList().size());
+    }
+
+}
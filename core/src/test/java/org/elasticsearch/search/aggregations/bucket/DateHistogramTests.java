@@ -28,6 +28,7 @@ import org.elasticsearch.script.Script;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram.Bucket;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
@@ -45,13 +46,17 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.dateHistogram;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.stats;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.containsString;
@@ -59,6 +64,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
 
 /**
  *
@@ -1322,4 +1328,148 @@ public class DateHistogramTests extends ElasticsearchIntegrationTest {
         Histogram histo = response.getAggregations().get("histo");
         assertThat(histo.getBuckets().size(), greaterThan(0));
     }
+
+    @Test
+    public void maxBucketsWithTimeZone() throws Exception {
+        // dates go from Jan 2nd to Mar 23rd, which needs 3 months in Paris
+        SearchResponse response = client().prepareSearch("idx")
+                .addAggregation(dateHistogram("histo").field("date").maxBuckets(3).timeZone("Europe/Paris"))
+                .get();
+        assertSearchResponse(response);
+
+        DateTimeZone tz = DateTimeZone.forID("Europe/Paris");
+        Histogram histo = response.getAggregations().get("histo");
+        assertThat(histo.getAutoInterval(), equalTo("month"));
+        List<? extends Bucket> buckets = histo.getBuckets();
+        assertThat(buckets.size(), equalTo(3));
+        assertThat(((DateTime) buckets.get(0).getKey()), equalTo(new DateTime(2012, 1, 1, 0, 0, tz).toDateTime(DateTimeZone.UTC)));
+        assertThat(buckets.get(0).getDocCount(), equalTo(1l));
+        assertThat(((DateTime) buckets.get(1).getKey()), equalTo(new DateTime(2012, 2, 1, 0, 0, tz).toDateTime(DateTimeZone.UTC)));
+        assertThat(buckets.get(1).getDocCount(), equalTo(2l));
+        assertThat(((DateTime) buckets.get(2).getKey()), equalTo(new DateTime(2012, 3, 1, 0, 0, tz).toDateTime(DateTimeZone.UTC)));
+        assertThat(buckets.get(2).getDocCount(), equalTo(3l));
+    }
+
+    @Test
+    public void maxBucketsSameAsPickedInterval() throws Exception {
+        final int maxBuckets = randomIntBetween(1, 100);
+        final String timeZone = randomFrom("UTC", "+05:30", "Europe/Paris", "America/New_York");
+        SearchResponse response = client().prepareSearch("idx")
+                .addAggregation(dateHistogram("histo").field("dates").maxBuckets(maxBuckets).timeZone(timeZone))
+                .get();
+        assertSearchResponse(response);
+        Histogram histo = response.getAggregations().get("histo");
+        assertThat(histo.getAutoInterval(), notNullValue());
+        if (histo.getAutoInterval().equals("year") == false) {
+            assertThat(histo.getBuckets().size(), Matchers.lessThanOrEqualTo(maxBuckets));
+        }
+
+        // the same buckets as with the picked interval
+        response = client().prepareSearch("idx")
+                .addAggregation(dateHistogram("histo").field("dates").interval(new DateHistogramInterval(histo.getAutoInterval()))
+                        .timeZone(timeZone))
+                .get();
+        assertSearchResponse(response);
+        Histogram expected = response.getAggregations().get("histo");
+        assertThat(expected.getAutoInterval(), nullValue());
+        assertThat(histo.getBuckets().size(), equalTo(expected.getBuckets().size()));
+        for (int i = 0; i < expected.getBuckets().size(); ++i) {
+            assertThat(histo.getBuckets().get(i).getKey(), equalTo(expected.getBuckets().get(i).getKey()));
+            assertThat(histo.getBuckets().get(i).getDocCount(), equalTo(expected.getBuckets().get(i).getDocCount()));
+        }
+    }
+
+    @Test
+    public void segmentBoundsSameBucketsAsDocValues() throws Exception {
+        // date_dv is not indexed, so the bounds of its segments are unknown and every value is rounded
+        assertAcked(prepareCreate("segments_idx")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", "date", "type=date", "date_dv", "type=date,index=no,doc_values=true", "value", "type=integer"));
+        ensureGreen("segments_idx");
+        final long start = new DateTime(2012, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        int value = 0;
+        for (int segment = randomIntBetween(1, 5); segment > 0; --segment) {
+            // some segments have all their values in the same hour, others span up to a few years
+            final long segmentStart = start + randomInt(1000) * 3600000L;
+            final long segmentRange = randomBoolean() ? randomInt(3599999) : (long) Math.pow(10, randomIntBetween(5, 11));
+            for (int i = randomIntBetween(20, 200); i > 0; --i) {
+                if (rarely()) {
+                    client().prepareIndex("segments_idx", "type").setSource("value", value++).get();
+                } else {
+                    final long date = segmentStart + randomLongBetween(0, segmentRange);
+                    client().prepareIndex("segments_idx", "type").setSource("date", date, "date_dv", date, "value", value++).get();
+                }
+            }
+            refresh("segments_idx");
+        }
+
+        for (int iter = 0; iter < 10; ++iter) {
+            final DateHistogramInterval interval = randomFrom(DateHistogramInterval.MINUTE, DateHistogramInterval.HOUR,
+                    DateHistogramInterval.DAY, DateHistogramInterval.WEEK, DateHistogramInterval.MONTH, DateHistogramInterval.YEAR,
+                    DateHistogramInterval.minutes(90));
+            final String timeZone = randomFrom("UTC", "+05:30", "Europe/Paris", "America/Sao_Paulo");
+            // only some of the documents of each segment match
+            final int from = randomInt(value);
+            SearchResponse response = client().prepareSearch("segments_idx")
+                    .setQuery(rangeQuery("value").gte(from).lte(from + randomInt(value)))
+                    .addAggregation(dateHistogram("histo").field("date").interval(interval).timeZone(timeZone)
+                            .subAggregation(sum("sum").field("value")))
+                    .addAggregation(dateHistogram("histo_dv").field("date_dv").interval(interval).timeZone(timeZone)
+                            .subAggregation(sum("sum").field("value")))
+                    .get();
+            assertSearchResponse(response);
+
+            Histogram histo = response.getAggregations().get("histo");
+            Histogram expected = response.getAggregations().get("histo_dv");
+            assertThat(histo.getBuckets().size(), equalTo(expected.getBuckets().size()));
+            for (int i = 0; i < expected.getBuckets().size(); ++i) {
+                final Bucket bucket = histo.getBuckets().get(i);
+                final Bucket expectedBucket = expected.getBuckets().get(i);
+                assertThat(bucket.getKey(), equalTo(expectedBucket.getKey()));
+                assertThat(bucket.getDocCount(), equalTo(expectedBucket.getDocCount()));
+                final Sum sum = bucket.getAggregations().get("sum");
+                final Sum expectedSum = expectedBucket.getAggregations().get("sum");
+                assertThat(sum.getValue(), equalTo(expectedSum.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void maxBucketsUnderTerms() throws Exception {
+        // the interval is selected once per shard, so every terms bucket uses the same interval as the top-level histogram
+        assertAcked(prepareCreate("auto_idx")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", "date_dv", "type=date,index=no,doc_values=true", "tag", "type=string,index=not_analyzed"));
+        ensureGreen("auto_idx");
+        final long start = new DateTime(2012, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        final List<IndexRequestBuilder> builders = new ArrayList<>();
+        for (int i = randomIntBetween(20, 200); i > 0; --i) {
+            final long date = start + randomLongBetween(0, (long) Math.pow(10, randomIntBetween(5, 11)));
+            builders.add(client().prepareIndex("auto_idx", "type").setSource("date_dv", date,
+                    "tag", Arrays.asList("t" + randomInt(5), "t" + randomInt(5))));
+        }
+        indexRandom(true, builders);
+
+        final int maxBuckets = randomIntBetween(1, 20);
+        SearchResponse response = client().prepareSearch("auto_idx")
+                .addAggregation(dateHistogram("histo").field("date_dv").maxBuckets(maxBuckets))
+                .addAggregation(terms("tags").field("tag")
+                        .subAggregation(dateHistogram("histo").field("date_dv").maxBuckets(maxBuckets)))
+                .get();
+        assertSearchResponse(response);
+
+        Histogram histo = response.getAggregations().get("histo");
+        assertThat(histo.getAutoInterval(), notNullValue());
+        Terms tags = response.getAggregations().get("tags");
+        assertThat(tags.getBuckets().size(), greaterThan(0));
+        for (Terms.Bucket tag : tags.getBuckets()) {
+            Histogram tagHisto = tag.getAggregations().get("histo");
+            assertThat(tagHisto.getAutoInterval(), equalTo(histo.getAutoInterval()));
+            long docCount = 0;
+            for (Bucket bucket : tagHisto.getBuckets()) {
+                docCount += bucket.getDocCount();
+            }
+            assertThat(docCount, equalTo(tag.getDocCount()));
+        }
+    }
 }
@@ -26,6 +26,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.query.AndQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.aggregations.bucket.filters.Filters;
+import org.elasticsearch.search.aggregations.bucket.filters.FiltersAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.metrics.avg.Avg;
 import org.elasticsearch.test.ElasticsearchIntegrationTest;
@@ -37,12 +38,15 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.filters;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -445,4 +449,50 @@ public class FiltersTests extends ElasticsearchIntegrationTest {
         assertThat((double) propertiesCounts[2], equalTo((double) sum / numOtherDocs));
     }
 
+
+    @Test
+    public void rangeFiltersOverSegmentBounds() throws Exception {
+        assertAcked(prepareCreate("segment_bounds_idx").setSettings(settingsBuilder().put("index.number_of_shards", 1))
+                .addMapping("type", "value", "type=long", "date", "type=date", "tag", "type=string,index=not_analyzed"));
+        // every batch gets its own segment, with values in its own interval, so that range filters match either
+        // all documents of some segments or none of them
+        final int numBatches = randomIntBetween(2, 5);
+        int id = 0;
+        for (int batch = 0; batch < numBatches; ++batch) {
+            List<IndexRequestBuilder> builders = new ArrayList<>();
+            for (int i = randomIntBetween(5, 50); i > 0; --i) {
+                XContentBuilder source = jsonBuilder().startObject().field("tag", randomFrom("tag1", "tag2"));
+                if (randomInt(10) > 0) {
+                    source.field("value", batch * 100 + randomInt(99)).field("date", batch * 100 + randomInt(99));
+                }
+                builders.add(client().prepareIndex("segment_bounds_idx", "type", Integer.toString(id++)).setSource(source.endObject()));
+            }
+            indexRandom(true, false, builders);
+        }
+
+        List<QueryBuilder> filters = new ArrayList<>();
+        for (int i = randomIntBetween(1, 10); i > 0; --i) {
+            // some ranges overlap, some are aligned with the intervals of the batches
+            final int from = randomBoolean() ? randomInt(numBatches) * 100 : randomInt(numBatches * 100);
+            final int to = from + (randomBoolean() ? randomIntBetween(1, 3) * 100 : randomIntBetween(1, 300));
+            filters.add(rangeQuery("value").from(randomBoolean() ? null : from).to(randomBoolean() ? null : to)
+                    .includeLower(randomBoolean()).includeUpper(randomBoolean()));
+        }
+        // date ranges only become numeric range queries on rewrite
+        filters.add(rangeQuery("date").lte("now"));
+        filters.add(termQuery("tag", "tag1"));
+
+        FiltersAggregationBuilder agg = filters("filters");
+        for (int i = 0; i < filters.size(); ++i) {
+            agg.filter("filter" + i, filters.get(i));
+        }
+        SearchResponse response = client().prepareSearch("segment_bounds_idx").addAggregation(agg).get();
+        assertSearchResponse(response);
+        Filters aggregation = response.getAggregations().get("filters");
+        for (int i = 0; i < filters.size(); ++i) {
+            // the query phase checks every document against the filter
+            SearchResponse expected = client().prepareSearch("segment_bounds_idx").setSize(0).setQuery(filters.get(i)).get();
+            assertThat(aggregation.getBucketByKey("filter" + i).getDocCount(), equalTo(expected.getHits().getTotalHits()));
+        }
+    }
 }
@@ -39,7 +39,9 @@ import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
 import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
@@ -554,4 +556,183 @@ public class NestedTests extends ElasticsearchIntegrationTest {
         assertThat(propertyId.getBucketByKey("2").getDocCount(), equalTo(1l));
         assertThat(propertyId.getBucketByKey("3").getDocCount(), equalTo(1l));
     }
+
+    @Test
+    public void nestedLevelsUnderSeveralBucketsAcrossSegments() throws Exception {
+        assertAcked(prepareCreate("idx_segments")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("tag").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("nested1")
+                            .field("type", "nested")
+                            .startObject("properties")
+                                .startObject("a").field("type", "string").field("index", "not_analyzed").endObject()
+                                .startObject("nested2")
+                                    .field("type", "nested")
+                                    .startObject("properties")
+                                        .startObject("b").field("type", "string").field("index", "not_analyzed").endObject()
+                                    .endObject()
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen("idx_segments");
+
+        // doc counts per tag, nested1 doc counts per tag, and nested1 and nested2 doc counts per tag and value of nested1.a
+        final Map<String, Long> expectedDocCounts = new HashMap<>();
+        final Map<String, Long> expectedLevel1DocCounts = new HashMap<>();
+        final Map<String, Map<String, long[]>> expectedACounts = new HashMap<>();
+        int id = 0;
+        for (int segment = randomIntBetween(2, 5); segment > 0; --segment) {
+            // some segments have no nested docs at all, other ones have root docs without nested docs
+            final boolean withNestedDocs = randomBoolean();
+            for (int i = randomIntBetween(1, 10); i > 0; --i) {
+                // root docs may have several tags so that their nested docs are collected into several buckets
+                final String[] tags = randomBoolean()
+                        ? new String[] { "t" + randomInt(2) }
+                        : new String[] { "t0", "t" + randomIntBetween(1, 2) };
+                XContentBuilder source = jsonBuilder().startObject().field("tag", tags).startArray("nested1");
+                final int numLevel1 = withNestedDocs ? randomInt(3) : 0;
+                for (String tag : tags) {
+                    increment(expectedDocCounts, tag, 1);
+                    increment(expectedLevel1DocCounts, tag, numLevel1);
+                }
+                for (int j = 0; j < numLevel1; ++j) {
+                    final String a = "a" + randomInt(1);
+                    final int numLevel2 = randomInt(3);
+                    source.startObject().field("a", a).startArray("nested2");
+                    for (int k = 0; k < numLevel2; ++k) {
+                        source.startObject().field("b", "b" + randomInt(1)).endObject();
+                    }
+                    source.endArray().endObject();
+                    for (String tag : tags) {
+                        Map<String, long[]> aCounts = expectedACounts.get(tag);
+                        if (aCounts == null) {
+                            aCounts = new HashMap<>();
+                            expectedACounts.put(tag, aCounts);
+                        }
+                        long[] counts = aCounts.get(a);
+                        if (counts == null) {
+                            counts = new long[2];
+                            aCounts.put(a, counts);
+                        }
+                        counts[0] += 1;
+                        counts[1] += numLevel2;
+                    }
+                }
+                client().prepareIndex("idx_segments", "type", Integer.toString(id++)).setSource(source.endArray().endObject()).get();
+            }
+            refresh("idx_segments");
+        }
+
+        SearchResponse response = client().prepareSearch("idx_segments")
+                .addAggregation(terms("tags").field("tag").collectMode(aggCollectionMode)
+                        .subAggregation(nested("level1").path("nested1")
+                                .subAggregation(terms("a").field("nested1.a").collectMode(aggCollectionMode)
+                                        .subAggregation(nested("level2").path("nested1.nested2")))))
+                .get();
+        assertSearchResponse(response);
+
+        Terms tags = response.getAggregations().get("tags");
+        assertThat(tags.getBuckets().size(), equalTo(expectedDocCounts.size()));
+        for (Terms.Bucket tagBucket : tags.getBuckets()) {
+            final String tag = tagBucket.getKeyAsString();
+            assertThat(tagBucket.getDocCount(), equalTo(expectedDocCounts.get(tag)));
+            Nested level1 = tagBucket.getAggregations().get("level1");
+            assertThat(level1.getDocCount(), equalTo(expectedLevel1DocCounts.get(tag)));
+            Terms a = level1.getAggregations().get("a");
+            final Map<String, long[]> aCounts = expectedACounts.containsKey(tag) ? expectedACounts.get(tag) : new HashMap<String, long[]>();
+            assertThat(a.getBuckets().size(), equalTo(aCounts.size()));
+            for (Terms.Bucket aBucket : a.getBuckets()) {
+                final long[] counts = aCounts.get(aBucket.getKeyAsString());
+                assertThat(aBucket.getDocCount(), equalTo(counts[0]));
+                Nested level2 = aBucket.getAggregations().get("level2");
+                assertThat(level2.getDocCount(), equalTo(counts[1]));
+            }
+        }
+    }
+
+    @Test
+    public void nestedUnderNestedUnderSeveralBuckets() throws Exception {
+        assertAcked(prepareCreate("idx_nested_levels")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("tag").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("nested1")
+                            .field("type", "nested")
+                            .startObject("properties")
+                                .startObject("nested2")
+                                    .field("type", "nested")
+                                    .startObject("properties")
+                                        .startObject("n").field("type", "integer").endObject()
+                                    .endObject()
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen("idx_nested_levels");
+
+        // nested1 doc counts, nested2 doc counts and sums of nested2.n per tag
+        final Map<String, long[]> expected = new HashMap<>();
+        int id = 0;
+        for (int segment = randomIntBetween(1, 4); segment > 0; --segment) {
+            for (int i = randomIntBetween(1, 10); i > 0; --i) {
+                // when a root doc has several tags, the outer nested aggregation collects its nested1 docs once per
+                // tag, so the inner nested aggregation sees the same nested1 docs several times, out of order
+                final String[] tags = randomBoolean()
+                        ? new String[] { "t" + randomInt(2) }
+                        : new String[] { "t0", "t" + randomIntBetween(1, 2) };
+                final long[] counts = new long[3];
+                XContentBuilder source = jsonBuilder().startObject().field("tag", tags).startArray("nested1");
+                for (int j = randomInt(3); j > 0; --j) {
+                    counts[0]++;
+                    source.startObject().startArray("nested2");
+                    for (int k = randomInt(3); k > 0; --k) {
+                        final int n = randomInt(100);
+                        counts[1]++;
+                        counts[2] += n;
+                        source.startObject().field("n", n).endObject();
+                    }
+                    source.endArray().endObject();
+                }
+                for (String tag : tags) {
+                    long[] tagCounts = expected.get(tag);
+                    if (tagCounts == null) {
+                        tagCounts = new long[3];
+                        expected.put(tag, tagCounts);
+                    }
+                    for (int j = 0; j < counts.length; ++j) {
+                        tagCounts[j] += counts[j];
+                    }
+                }
+                client().prepareIndex("idx_nested_levels", "type", Integer.toString(id++)).setSource(source.endArray().endObject()).get();
+            }
+            refresh("idx_nested_levels");
+        }
+
+        SearchResponse response = client().prepareSearch("idx_nested_levels")
+                .addAggregation(terms("tags").field("tag").collectMode(aggCollectionMode)
+                        .subAggregation(nested("level1").path("nested1")
+                                .subAggregation(nested("level2").path("nested1.nested2")
+                                        .subAggregation(sum("sum").field("nested1.nested2.n")))))
+                .get();
+        assertSearchResponse(response);
+
+        Terms tags = response.getAggregations().get("tags");
+        assertThat(tags.getBuckets().size(), equalTo(expected.size()));
+        for (Terms.Bucket tagBucket : tags.getBuckets()) {
+            final long[] counts = expected.get(tagBucket.getKeyAsString());
+            Nested level1 = tagBucket.getAggregations().get("level1");
+            assertThat(level1.getDocCount(), equalTo(counts[0]));
+            Nested level2 = level1.getAggregations().get("level2");
+            assertThat(level2.getDocCount(), equalTo(counts[1]));
+            Sum sum = level2.getAggregations().get("sum");
+            assertThat(sum.getValue(), equalTo((double) counts[2]));
+        }
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long inc) {
+        final Long count = counts.get(key);
+        counts.put(key, count == null ? inc : count + inc);
+    }
 }
@@ -25,6 +25,7 @@ import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.range.Range;
 import org.elasticsearch.search.aggregations.bucket.range.Range.Bucket;
+import org.elasticsearch.search.aggregations.bucket.range.RangeBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.metrics.avg.Avg;
 import org.elasticsearch.search.aggregations.metrics.sum.Sum;
@@ -35,6 +36,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.elasticsearch.common.settings.Settings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
@@ -42,6 +44,7 @@ import static org.elasticsearch.search.aggregations.AggregationBuilders.histogra
 import static org.elasticsearch.search.aggregations.AggregationBuilders.range;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -1105,4 +1108,55 @@ public class RangeTests extends ElasticsearchIntegrationTest {
         assertThat(buckets.get(0).getDocCount(), equalTo(0l));
 
     }
+
+    @Test
+    public void segmentBoundsMatchPerValueChecks() throws Exception {
+        assertAcked(prepareCreate("segment_bounds_idx").setSettings(settingsBuilder().put("index.number_of_shards", 1))
+                .addMapping("type", SINGLE_VALUED_FIELD_NAME, "type=long"));
+        // every batch gets its own segment, with values in its own interval, so that ranges either contain all
+        // values of some segments or none of them
+        final int numBatches = randomIntBetween(2, 5);
+        int id = 0;
+        for (int batch = 0; batch < numBatches; ++batch) {
+            List<IndexRequestBuilder> builders = new ArrayList<>();
+            for (int i = randomIntBetween(5, 50); i > 0; --i) {
+                builders.add(client().prepareIndex("segment_bounds_idx", "type", Integer.toString(id++))
+                        .setSource(jsonBuilder().startObject().field(SINGLE_VALUED_FIELD_NAME, batch * 100 + randomInt(99)).endObject()));
+            }
+            indexRandom(true, false, builders);
+        }
+
+        // the script values source has no segment bounds, so it always checks ranges per value
+        RangeBuilder byField = range("by_field").field(SINGLE_VALUED_FIELD_NAME);
+        RangeBuilder byScript = range("by_script").script(new Script("doc['" + SINGLE_VALUED_FIELD_NAME + "'].value"));
+        for (int i = randomIntBetween(1, 10); i > 0; --i) {
+            // some ranges overlap, some are aligned with the intervals of the batches
+            final double from = randomBoolean() ? randomInt(numBatches) * 100 : randomInt(numBatches * 100);
+            final double to = from + (randomBoolean() ? randomIntBetween(1, 3) * 100 : randomIntBetween(1, 300));
+            final String key = "range" + i;
+            switch (randomInt(2)) {
+            case 0:
+                byField.addUnboundedTo(key, to);
+                byScript.addUnboundedTo(key, to);
+                break;
+            case 1:
+                byField.addUnboundedFrom(key, from);
+                byScript.addUnboundedFrom(key, from);
+                break;
+            default:
+                byField.addRange(key, from, to);
+                byScript.addRange(key, from, to);
+            }
+        }
+
+        SearchResponse response = client().prepareSearch("segment_bounds_idx").addAggregation(byField).addAggregation(byScript).get();
+        assertSearchResponse(response);
+        List<? extends Bucket> expected = response.getAggregations().<Range>get("by_script").getBuckets();
+        List<? extends Bucket> actual = response.getAggregations().<Range>get("by_field").getBuckets();
+        assertThat(actual.size(), equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); ++i) {
+            assertThat(actual.get(i).getKeyAsString(), equalTo(expected.get(i).getKeyAsString()));
+            assertThat(actual.get(i).getDocCount(), equalTo(expected.get(i).getDocCount()));
+        }
+    }
 }
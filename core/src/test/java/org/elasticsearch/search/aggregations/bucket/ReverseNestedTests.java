@@ -34,7 +34,11 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
 import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
@@ -640,4 +644,120 @@ public class ReverseNestedTests extends ElasticsearchIntegrationTest {
             assertThat(barCount.getValue(), equalTo(2l));
         }
     }
+
+    @Test
+    public void reverseNestedToRootAndIntermediateLevelAcrossSegments() throws Exception {
+        assertAcked(prepareCreate("idx_segments")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", jsonBuilder().startObject().startObject("type").startObject("properties")
+                        .startObject("tag").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("nested1")
+                            .field("type", "nested")
+                            .startObject("properties")
+                                .startObject("a").field("type", "string").field("index", "not_analyzed").endObject()
+                                .startObject("nested2")
+                                    .field("type", "nested")
+                                    .startObject("properties")
+                                        .startObject("b").field("type", "string").field("index", "not_analyzed").endObject()
+                                    .endObject()
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                        .endObject().endObject().endObject()));
+        ensureGreen("idx_segments");
+
+        // the ids of the root docs and of the nested1 docs that are expected in every reverse_nested bucket, keyed by
+        // tag and value of nested1.a or nested1.nested2.b
+        final Map<String, Set<String>> expectedRootDocsPerA = new HashMap<>();
+        final Map<String, Set<String>> expectedRootDocsPerB = new HashMap<>();
+        final Map<String, Set<String>> expectedLevel1DocsPerB = new HashMap<>();
+        int id = 0;
+        for (int segment = randomIntBetween(2, 5); segment > 0; --segment) {
+            // some segments have no nested docs at all, other ones have root docs without nested docs
+            final boolean withNestedDocs = randomBoolean();
+            for (int i = randomIntBetween(1, 10); i > 0; --i) {
+                // root docs may have several tags so that they are collected into several buckets
+                final String[] tags = randomBoolean()
+                        ? new String[] { "t" + randomInt(2) }
+                        : new String[] { "t0", "t" + randomIntBetween(1, 2) };
+                final String rootId = Integer.toString(id++);
+                XContentBuilder source = jsonBuilder().startObject().field("tag", tags).startArray("nested1");
+                final int numLevel1 = withNestedDocs ? randomInt(3) : 0;
+                for (int j = 0; j < numLevel1; ++j) {
+                    final String level1Id = rootId + "/" + j;
+                    final String a = "a" + randomInt(1);
+                    source.startObject().field("a", a).startArray("nested2");
+                    for (String tag : tags) {
+                        add(expectedRootDocsPerA, tag + "/" + a, rootId);
+                    }
+                    for (int k = randomInt(3); k > 0; --k) {
+                        final String b = "b" + randomInt(1);
+                        source.startObject().field("b", b).endObject();
+                        for (String tag : tags) {
+                            add(expectedRootDocsPerB, tag + "/" + b, rootId);
+                            add(expectedLevel1DocsPerB, tag + "/" + b, level1Id);
+                        }
+                    }
+                    source.endArray().endObject();
+                }
+                client().prepareIndex("idx_segments", "type", rootId).setSource(source.endArray().endObject()).get();
+            }
+            refresh("idx_segments");
+        }
+
+        final SubAggCollectionMode collectMode = randomFrom(SubAggCollectionMode.values());
+        SearchResponse response = client().prepareSearch("idx_segments")
+                .addAggregation(terms("tags").field("tag").collectMode(collectMode)
+                        .subAggregation(nested("level1").path("nested1")
+                                .subAggregation(terms("a").field("nested1.a").collectMode(collectMode)
+                                        .subAggregation(reverseNested("a_to_root")))
+                                .subAggregation(nested("level2").path("nested1.nested2")
+                                        .subAggregation(terms("b").field("nested1.nested2.b").collectMode(collectMode)
+                                                .subAggregation(reverseNested("b_to_level1").path("nested1"))
+                                                .subAggregation(reverseNested("b_to_root"))))))
+                .get();
+        assertSearchResponse(response);
+
+        Terms tags = response.getAggregations().get("tags");
+        for (Terms.Bucket tagBucket : tags.getBuckets()) {
+            final String tag = tagBucket.getKeyAsString();
+            Nested level1 = tagBucket.getAggregations().get("level1");
+            Terms a = level1.getAggregations().get("a");
+            assertThat(a.getBuckets().size(), equalTo(numKeysWithPrefix(expectedRootDocsPerA, tag + "/")));
+            for (Terms.Bucket aBucket : a.getBuckets()) {
+                final String key = tag + "/" + aBucket.getKeyAsString();
+                ReverseNested toRoot = aBucket.getAggregations().get("a_to_root");
+                assertThat(key, toRoot.getDocCount(), equalTo((long) expectedRootDocsPerA.get(key).size()));
+            }
+            Nested level2 = level1.getAggregations().get("level2");
+            Terms b = level2.getAggregations().get("b");
+            assertThat(b.getBuckets().size(), equalTo(numKeysWithPrefix(expectedRootDocsPerB, tag + "/")));
+            for (Terms.Bucket bBucket : b.getBuckets()) {
+                final String key = tag + "/" + bBucket.getKeyAsString();
+                ReverseNested toLevel1 = bBucket.getAggregations().get("b_to_level1");
+                assertThat(key, toLevel1.getDocCount(), equalTo((long) expectedLevel1DocsPerB.get(key).size()));
+                ReverseNested toRoot = bBucket.getAggregations().get("b_to_root");
+                assertThat(key, toRoot.getDocCount(), equalTo((long) expectedRootDocsPerB.get(key).size()));
+            }
+        }
+    }
+
+    private static void add(Map<String, Set<String>> docs, String key, String doc) {
+        Set<String> values = docs.get(key);
+        if (values == null) {
+            values = new HashSet<>();
+            docs.put(key, values);
+        }
+        values.add(doc);
+    }
+
+    private static int numKeysWithPrefix(Map<String, ?> map, String prefix) {
+        int count = 0;
+        for (String key : map.keySet()) {
+            if (key.startsWith(prefix)) {
+                ++count;
+            }
+        }
+        return count;
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.geogrid;
+
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class GeoGridCellTypeTests extends ElasticsearchTestCase {
+
+    @Test
+    public void tiles() {
+        final GeoGridCellType tile = GeoGridCellType.TILE;
+        assertEquals("0/0/0", tile.toString(tile.encode(randomDouble() * 170 - 85, randomDouble() * 360 - 180, 0)));
+        assertEquals("1/1/0", tile.toString(tile.encode(10, 10, 1)));
+        assertEquals("1/0/1", tile.toString(tile.encode(-10, -10, 1)));
+        for (int i = 0; i < 100; ++i) {
+            final int zoom = randomIntBetween(0, 29);
+            final long cell = tile.encode(randomDouble() * 170 - 85, randomDouble() * 360 - 180, zoom);
+            final GeoPoint center = tile.center(cell);
+            assertEquals(cell, tile.encode(center.lat(), center.lon(), zoom));
+        }
+    }
+
+    @Test
+    public void cellCount() {
+        for (int precision = 1; precision <= 4; ++precision) {
+            assertEquals(1L << (5 * precision), GeoGridCellType.GEOHASH.cellCount(90, -180, -90, 180, precision));
+        }
+        for (int zoom = 0; zoom <= 10; ++zoom) {
+            assertEquals(1L << (2 * zoom), GeoGridCellType.TILE.cellCount(90, -180, -90, 180, zoom));
+        }
+        // crossing the dateline
+        assertEquals(2, GeoGridCellType.TILE.cellCount(10, 170, 5, -170, 1));
+        assertEquals(2, GeoGridCellType.GEOHASH.cellCount(10, 170, 5, -170, 1));
+    }
+
+    @Test
+    public void precision() {
+        assertEquals(1, GeoGridCellType.GEOHASH.precision(90, -180, -90, 180, 1000));
+        assertEquals(2, GeoGridCellType.GEOHASH.precision(90, -180, -90, 180, 1024));
+        assertEquals(4, GeoGridCellType.TILE.precision(90, -180, -90, 180, 1000));
+        assertEquals(GeoGridCellType.TILE.maxPrecision(), GeoGridCellType.TILE.precision(1e-7, 0, 0, 1e-7, 10));
+        // the number of cells within the bounds never exceeds the target
+        final int maxCells = randomIntBetween(1, 10000);
+        final double bottom = randomDouble() * 160 - 80;
+        final double top = bottom + randomDouble() * (80 - bottom);
+        final double left = randomDouble() * 360 - 180;
+        final double right = left + randomDouble() * (180 - left);
+        for (GeoGridCellType cellType : GeoGridCellType.values()) {
+            final int precision = cellType.precision(top, left, bottom, right, maxCells);
+            if (precision > cellType.minPrecision()) {
+                assertTrue(cellType.cellCount(top, left, bottom, right, precision) <= maxCells);
+            }
+            if (precision < cellType.maxPrecision()) {
+                assertTrue(cellType.cellCount(top, left, bottom, right, precision + 1) > maxCells);
+            }
+        }
+    }
+}
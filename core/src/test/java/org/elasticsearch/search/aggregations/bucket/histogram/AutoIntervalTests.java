@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.histogram;
+
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class AutoIntervalTests extends ElasticsearchTestCase {
+
+    @Test
+    public void intervalsAreNested() {
+        final AutoInterval first = new AutoInterval(10, DateTimeZone.UTC, 0);
+        for (int i = 1; i <= AutoInterval.COARSEST; ++i) {
+            final Rounding finer = first.withIndex(i - 1).rounding();
+            final Rounding coarser = first.withIndex(i).rounding();
+            for (int iter = 0; iter < 100; ++iter) {
+                final long key = coarser.round(randomLong() >>> 22); // keep dates within a reasonable range
+                assertEquals(key, finer.round(key));
+            }
+        }
+    }
+
+    @Test
+    public void select() {
+        final int maxBuckets = randomIntBetween(1, 200);
+        final AutoInterval autoInterval = new AutoInterval(maxBuckets, DateTimeZone.UTC, 0);
+        final long min = randomLong() >>> 22;
+        final long max = min + (randomLong() >>> randomIntBetween(22, 60));
+        final AutoInterval selected = autoInterval.select(min, max);
+        if (selected.index() < AutoInterval.COARSEST) {
+            assertTrue(AutoInterval.countFits(selected.rounding(), min, max, maxBuckets));
+        }
+        if (selected.index() > 0) {
+            assertFalse(AutoInterval.countFits(autoInterval.withIndex(selected.index() - 1).rounding(), min, max, maxBuckets));
+        }
+        // selection never picks a finer interval
+        assertSame(autoInterval.coarsest(), autoInterval.coarsest().coarsest());
+        assertEquals(AutoInterval.COARSEST, autoInterval.coarsest().select(min, max).index());
+    }
+
+    static DateTimeZone randomZone() {
+        return randomFrom(DateTimeZone.UTC, DateTimeZone.forID("+05:30"), DateTimeZone.forID("Europe/Paris"),
+                DateTimeZone.forID("America/New_York"), DateTimeZone.forID("Australia/Lord_Howe"));
+    }
+
+    @Test
+    public void estimateAgreesWithCount() {
+        for (int iter = 0; iter < 100; ++iter) {
+            final int maxBuckets = randomIntBetween(1, 500);
+            final long offset = randomBoolean() ? 0 : randomIntBetween(-3600, 3600) * 1000L;
+            final AutoInterval autoInterval = new AutoInterval(maxBuckets, randomZone(), offset).withIndex(randomInt(AutoInterval.COARSEST));
+            final Rounding rounding = autoInterval.rounding();
+            final long min = randomLongBetween(0, TimeValue.timeValueHours(24 * 365 * 100).millis());
+            final long max;
+            if (randomBoolean()) {
+                // close to the limit, where buckets need to be counted
+                long key = rounding.round(min);
+                for (int i = maxBuckets + randomIntBetween(-3, 3); i > 1; --i) {
+                    key = rounding.nextRoundingValue(key);
+                }
+                max = Math.max(min, key + randomIntBetween(-1000, 1000));
+            } else {
+                max = min + randomLongBetween(0, TimeValue.timeValueHours(24 * 365 * 100).millis());
+            }
+            assertEquals(AutoInterval.countFits(rounding, min, max, maxBuckets), autoInterval.fits(min, max));
+        }
+    }
+
+    @Test
+    public void selectWithTimeZone() {
+        final DateTimeZone timeZone = DateTimeZone.forID("Europe/Paris");
+        final AutoInterval autoInterval = new AutoInterval(3, timeZone, 0);
+        // from Jan 2nd to Mar 30th, across the switch to daylight saving time on Mar 25th
+        final long min = new DateTime(2012, 1, 2, 0, 0, timeZone).getMillis();
+        final long max = new DateTime(2012, 3, 30, 0, 0, timeZone).getMillis();
+        final AutoInterval selected = autoInterval.select(min, max);
+        assertEquals("month", selected.expression());
+        assertEquals(new DateTime(2012, 1, 1, 0, 0, timeZone).getMillis(), selected.rounding().round(min));
+        assertEquals(new DateTime(2012, 3, 1, 0, 0, timeZone).getMillis(), selected.rounding().round(max));
+        // four months are needed if the range starts on Dec 31st in Paris
+        assertEquals("quarter", autoInterval.select(min - TimeValue.timeValueHours(25).millis(), max).expression());
+    }
+
+    @Test
+    public void expressions() {
+        final AutoInterval autoInterval = new AutoInterval(10, DateTimeZone.UTC, 0);
+        assertEquals("second", autoInterval.expression());
+        assertEquals("5s", autoInterval.withIndex(1).expression());
+        assertEquals("minute", autoInterval.withIndex(4).expression());
+        assertEquals("30m", autoInterval.withIndex(7).expression());
+        assertEquals("12h", autoInterval.withIndex(10).expression());
+        assertEquals("year", autoInterval.coarsest().expression());
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.histogram;
+
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class InternalHistogramTests extends ElasticsearchTestCase {
+
+    private static final InternalDateHistogram.Factory FACTORY = new InternalDateHistogram.Factory();
+
+    /**
+     * Count values per rounded key.
+     */
+    private static TreeMap<Long, Long> countsPerKey(Rounding rounding, List<Long> values) {
+        final TreeMap<Long, Long> counts = new TreeMap<>();
+        for (long value : values) {
+            final long key = rounding.round(value);
+            final Long count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Build the response of a shard that picked its interval based on its own values, like
+     * <code>HistogramAggregator</code> does.
+     */
+    private static InternalHistogram<InternalDateHistogram.Bucket> shardHistogram(AutoInterval autoInterval, List<Long> values) {
+        if (values.isEmpty() == false) {
+            autoInterval = autoInterval.select(Collections.min(values), Collections.max(values));
+        }
+        final List<InternalDateHistogram.Bucket> buckets = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : countsPerKey(autoInterval.rounding(), values).entrySet()) {
+            buckets.add(FACTORY.createBucket(entry.getKey(), entry.getValue(), InternalAggregations.EMPTY, false, null));
+        }
+        final InternalHistogram<InternalDateHistogram.Bucket> histogram = FACTORY.create("histo", buckets,
+                (InternalOrder) Histogram.Order.KEY_ASC, 1, null, null, false, Collections.<PipelineAggregator>emptyList(), null);
+        histogram.autoInterval(autoInterval);
+        return histogram;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static InternalHistogram<InternalDateHistogram.Bucket> reduce(List<InternalAggregation> shardHistograms) {
+        return (InternalHistogram<InternalDateHistogram.Bucket>) shardHistograms.get(0).reduce(shardHistograms,
+                new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null));
+    }
+
+    private static void assertBuckets(TreeMap<Long, Long> expected, InternalHistogram<InternalDateHistogram.Bucket> histogram) {
+        final List<InternalDateHistogram.Bucket> buckets = histogram.getBuckets();
+        assertEquals(expected.size(), buckets.size());
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().longValue(), buckets.get(i).key);
+            assertEquals(entry.getValue().longValue(), buckets.get(i).getDocCount());
+            ++i;
+        }
+    }
+
+    private static List<Long> values(DateTime... dates) {
+        final List<Long> values = new ArrayList<>();
+        for (DateTime date : dates) {
+            values.add(date.getMillis());
+        }
+        return values;
+    }
+
+    @Test
+    public void reduceIntoCoarsestShardInterval() {
+        final AutoInterval autoInterval = new AutoInterval(10, DateTimeZone.UTC, 0);
+        final List<Long> minutes = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            minutes.add(new DateTime(2012, 1, 1, 0, i, DateTimeZone.UTC).getMillis());
+        }
+        final List<Long> hours = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            hours.add(new DateTime(2012, 1, 1, i, 30, DateTimeZone.UTC).getMillis());
+        }
+        final InternalHistogram<InternalDateHistogram.Bucket> minuteShard = shardHistogram(autoInterval, minutes);
+        final InternalHistogram<InternalDateHistogram.Bucket> hourShard = shardHistogram(autoInterval, hours);
+        assertEquals("minute", minuteShard.getAutoInterval());
+        assertEquals("hour", hourShard.getAutoInterval());
+
+        final List<InternalAggregation> shards = new ArrayList<>();
+        shards.add(minuteShard);
+        shards.add(hourShard);
+        Collections.shuffle(shards, getRandom());
+        final InternalHistogram<InternalDateHistogram.Bucket> reduced = reduce(shards);
+
+        // minute buckets are merged into hour buckets
+        assertEquals("hour", reduced.getAutoInterval());
+        final TreeMap<Long, Long> expected = new TreeMap<>();
+        expected.put(new DateTime(2012, 1, 1, 0, 0, DateTimeZone.UTC).getMillis(), 11L);
+        for (int i = 1; i < 6; ++i) {
+            expected.put(new DateTime(2012, 1, 1, i, 0, DateTimeZone.UTC).getMillis(), 1L);
+        }
+        assertBuckets(expected, reduced);
+    }
+
+    @Test
+    public void reduceIntoCoarserIntervalThanShards() {
+        final DateTimeZone timeZone = DateTimeZone.forID("Europe/Paris");
+        final AutoInterval autoInterval = new AutoInterval(10, timeZone, 0);
+        final InternalHistogram<InternalDateHistogram.Bucket> hourShard = shardHistogram(autoInterval,
+                values(new DateTime(2012, 1, 1, 0, 30, timeZone), new DateTime(2012, 1, 1, 5, 30, timeZone)));
+        final InternalHistogram<InternalDateHistogram.Bucket> secondShard = shardHistogram(autoInterval,
+                values(new DateTime(2012, 3, 30, 12, 0, timeZone)));
+        final InternalHistogram<InternalDateHistogram.Bucket> emptyShard = shardHistogram(autoInterval, new ArrayList<Long>());
+        assertEquals("hour", hourShard.getAutoInterval());
+        assertEquals("second", secondShard.getAutoInterval());
+
+        final List<InternalAggregation> shards = new ArrayList<>();
+        shards.add(hourShard);
+        shards.add(secondShard);
+        shards.add(emptyShard);
+        Collections.shuffle(shards, getRandom());
+        final InternalHistogram<InternalDateHistogram.Bucket> reduced = reduce(shards);
+
+        // the merged range needs months, in the time zone of the histogram
+        assertEquals("month", reduced.getAutoInterval());
+        final TreeMap<Long, Long> expected = new TreeMap<>();
+        expected.put(new DateTime(2012, 1, 1, 0, 0, timeZone).getMillis(), 2L);
+        expected.put(new DateTime(2012, 3, 1, 0, 0, timeZone).getMillis(), 1L);
+        assertBuckets(expected, reduced);
+    }
+
+    @Test
+    public void randomReduce() {
+        final int maxBuckets = randomIntBetween(1, 100);
+        final AutoInterval autoInterval = new AutoInterval(maxBuckets, AutoIntervalTests.randomZone(), 0);
+        final long start = randomLongBetween(0, 2000000000000L);
+        final long range = (long) Math.pow(10, randomIntBetween(3, 11));
+        final List<Long> allValues = new ArrayList<>();
+        final List<InternalAggregation> shards = new ArrayList<>();
+        for (int shard = randomIntBetween(1, 5); shard > 0; --shard) {
+            // shards have values over ranges of different lengths, so they pick different intervals
+            final long shardStart = start + randomLongBetween(0, range);
+            final long shardRange = randomLongBetween(0, range);
+            final List<Long> values = new ArrayList<>();
+            for (int i = randomInt(20); i > 0; --i) {
+                values.add(shardStart + randomLongBetween(0, shardRange));
+            }
+            allValues.addAll(values);
+            shards.add(shardHistogram(autoInterval, values));
+        }
+        final InternalHistogram<InternalDateHistogram.Bucket> reduced = reduce(shards);
+
+        int reducedIndex = -1;
+        for (AutoInterval candidate = autoInterval; candidate != null; ) {
+            if (candidate.expression().equals(reduced.getAutoInterval())) {
+                reducedIndex = candidate.index();
+                break;
+            }
+            candidate = candidate.index() < AutoInterval.COARSEST ? candidate.withIndex(candidate.index() + 1) : null;
+        }
+        assertTrue(reducedIndex >= 0);
+        final Rounding rounding = autoInterval.withIndex(reducedIndex).rounding();
+        // since intervals are nested, merging shard buckets is the same as rounding values with the reduced interval
+        assertBuckets(countsPerKey(rounding, allValues), reduced);
+        if (reducedIndex < AutoInterval.COARSEST) {
+            assertTrue(reduced.getBuckets().size() <= maxBuckets);
+        }
+        for (InternalAggregation shard : shards) {
+            final String shardInterval = ((InternalHistogram<?>) shard).getAutoInterval();
+            for (int i = reducedIndex + 1; i <= AutoInterval.COARSEST; ++i) {
+                // the reduced interval is at least as coarse as the ones of shards
+                assertFalse(autoInterval.withIndex(i).expression().equals(shardInterval));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.significant;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BackgroundFrequencyCacheTests extends ElasticsearchTestCase {
+
+    private DirectoryReader indexDocs(Directory dir) throws IOException {
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new KeywordAnalyzer()));
+        final int numDocs = scaledRandomIntBetween(10, 500);
+        for (int i = 0; i < numDocs; ++i) {
+            Document doc = new Document();
+            doc.add(new StringField("field", Integer.toString(randomInt(20)), Field.Store.NO));
+            doc.add(new StringField("filter", randomBoolean() ? "yes" : "no", Field.Store.NO));
+            w.addDocument(doc);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        DirectoryReader reader = DirectoryReader.open(w, randomBoolean());
+        w.close();
+        return reader;
+    }
+
+    private static BackgroundFrequencyCache cache(String size) {
+        return new BackgroundFrequencyCache(Settings.builder().put(BackgroundFrequencyCache.INDICES_SIGNIFICANT_TERMS_BACKGROUND_CACHE_SIZE, size).build());
+    }
+
+    private static void assertSameFrequencies(BackgroundFrequencyCache.Frequencies expected, BackgroundFrequencyCache.Frequencies actual) throws IOException {
+        assertEquals(expected.supersetSize(), actual.supersetSize());
+        for (int iter = 0; iter < 2; ++iter) {
+            for (int i = 0; i <= 21; ++i) {
+                final BytesRef term = new BytesRef(Integer.toString(i));
+                assertEquals(expected.docFreq(term), actual.docFreq(term));
+            }
+        }
+    }
+
+    @Test
+    public void cachedFrequencies() throws Exception {
+        Directory dir = newDirectory();
+        DirectoryReader reader = indexDocs(dir);
+
+        final BackgroundFrequencyCache cache = new BackgroundFrequencyCache(Settings.EMPTY);
+        final Query filter = randomBoolean() ? null : new TermQuery(new Term("filter", "yes"));
+        final BackgroundFrequencyCache.Frequencies cached = cache.frequencies(reader, "field", filter);
+        assertThat(cache.frequencies(reader, "field", filter), sameInstance(cached));
+        assertSameFrequencies(BackgroundFrequencyCache.uncached(reader, "field", filter), cached);
+        // growing entries are weighed again but stay in the cache
+        assertThat(cache.frequencies(reader, "field", filter), sameInstance(cached));
+        assertThat(cache.getMemorySizeInBytes(), greaterThan(0L));
+
+        // closing the reader invalidates entries
+        reader.close();
+        assertEquals(0, cache.getMemorySizeInBytes());
+        dir.close();
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        Directory dir = newDirectory();
+        DirectoryReader reader = indexDocs(dir);
+        final Query filter = randomBoolean() ? null : new TermQuery(new Term("filter", "yes"));
+
+        // entries are heavier than the cache, they are used but not kept
+        BackgroundFrequencyCache cache = cache("1b");
+        BackgroundFrequencyCache.Frequencies frequencies = cache.frequencies(reader, "field", filter);
+        assertThat(cache.frequencies(reader, "field", filter), not(sameInstance(frequencies)));
+        assertSameFrequencies(BackgroundFrequencyCache.uncached(reader, "field", filter), frequencies);
+        assertEquals(0, cache.getMemorySizeInBytes());
+
+        // entries fit in the cache when they are created, but are evicted once they grew too large
+        cache = cache("2kb");
+        frequencies = cache.frequencies(reader, "field", filter);
+        assertThat(cache.frequencies(reader, "field", filter), sameInstance(frequencies));
+        assertSameFrequencies(BackgroundFrequencyCache.uncached(reader, "field", filter), frequencies);
+        assertEquals(0, cache.getMemorySizeInBytes());
+        assertThat(cache.frequencies(reader, "field", filter), not(sameInstance(frequencies)));
+
+        reader.close();
+        dir.close();
+    }
+
+    @Test
+    public void filtersThatRewriteAreNotCached() throws Exception {
+        Directory dir = newDirectory();
+        DirectoryReader reader = indexDocs(dir);
+        final BackgroundFrequencyCache cache = new BackgroundFrequencyCache(Settings.EMPTY);
+
+        // without a search context, it is unknown whether rewriting resolved date math against the current time
+        final BooleanQuery filter = new BooleanQuery();
+        filter.add(new TermQuery(new Term("filter", "yes")), Occur.MUST);
+        final BackgroundFrequencyCache.Frequencies frequencies = cache.frequencies(reader, "field", filter);
+        assertThat(cache.frequencies(reader, "field", filter), not(sameInstance(frequencies)));
+        assertSameFrequencies(BackgroundFrequencyCache.uncached(reader, "field", filter), frequencies);
+        assertEquals(0, cache.getMemorySizeInBytes());
+
+        reader.close();
+        dir.close();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.terms;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.support.CountMinSketch;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class InternalTermsTests extends ElasticsearchTestCase {
+
+    private static BytesRef term(int i) {
+        return new BytesRef("term" + i);
+    }
+
+    /**
+     * Build the response of a shard whose i-th term has a count of <code>counts[i]</code>, like
+     * <code>GlobalOrdinalsStringTermsAggregator</code> does: only the top <code>shardSize</code> terms are returned.
+     */
+    private static StringTerms shardTerms(final long[] counts, int requiredSize, int shardSize, CountMinSketch sketch) {
+        final List<Integer> termIds = new ArrayList<>();
+        long otherDocCount = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] > 0) {
+                termIds.add(i);
+                otherDocCount += counts[i];
+            }
+        }
+        Collections.sort(termIds, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(counts[o2], counts[o1]);
+            }
+        });
+        final List<StringTerms.Bucket> buckets = new ArrayList<>();
+        for (int termId : termIds.subList(0, Math.min(shardSize, termIds.size()))) {
+            buckets.add(new StringTerms.Bucket(term(termId), counts[termId], InternalAggregations.EMPTY, true, 0));
+            otherDocCount -= counts[termId];
+        }
+        final StringTerms terms = new StringTerms("terms", Terms.Order.count(false), requiredSize, shardSize, 1, buckets, true, 0,
+                otherDocCount, Collections.<PipelineAggregator>emptyList(), null);
+        terms.sketch = sketch;
+        return terms;
+    }
+
+    @Test
+    public void docCountErrorIsUpperBound() {
+        final int numTerms = randomIntBetween(10, 1000);
+        final int shardSize = randomIntBetween(1, 20);
+        final int requiredSize = randomIntBetween(1, shardSize);
+        final int numShards = randomIntBetween(1, 5);
+        // small sketches have many collisions, which must only make bounds less tight
+        final int depth = randomIntBetween(1, 4);
+        final int width = 1 << randomIntBetween(2, 10);
+        final long[] totalCounts = new long[numTerms];
+        final List<InternalAggregation> shards = new ArrayList<>();
+        for (int shard = 0; shard < numShards; ++shard) {
+            final long[] counts = new long[numTerms];
+            final CountMinSketch sketch = new CountMinSketch(depth, width, BigArrays.NON_RECYCLING_INSTANCE);
+            for (int i = 0; i < numTerms; ++i) {
+                // skewed counts so that shards disagree on the top terms
+                counts[i] = randomInt(1 + 1000 / (1 + randomInt(i)));
+                totalCounts[i] += counts[i];
+                if (counts[i] > 0) {
+                    sketch.add(term(i), counts[i]);
+                }
+            }
+            // shards that do not send a sketch must not be bounded by the sketches of other shards
+            shards.add(shardTerms(counts, requiredSize, shardSize, rarely() ? null : sketch));
+        }
+        Collections.shuffle(shards, getRandom());
+
+        final StringTerms reduced = (StringTerms) shards.get(0).reduce(shards, new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null));
+        assertThat(reduced.sketch, nullValue());
+        assertThat(reduced.getBuckets().size(), lessThanOrEqualTo(requiredSize));
+        for (Terms.Bucket bucket : reduced.getBuckets()) {
+            final long totalCount = totalCounts[Integer.parseInt(bucket.getKeyAsString().substring("term".length()))];
+            assertThat(bucket.getDocCount(), lessThanOrEqualTo(totalCount));
+            assertThat(bucket.getDocCountError(), greaterThanOrEqualTo(totalCount - bucket.getDocCount()));
+        }
+    }
+
+    @Test
+    public void sketchTightensDocCountError() {
+        final long[] counts1 = { 10, 9, 1, 0 };
+        final long[] counts2 = { 1, 0, 8, 7 };
+        final List<InternalAggregation> shards = new ArrayList<>();
+        for (long[] counts : new long[][] { counts1, counts2 }) {
+            final CountMinSketch sketch = new CountMinSketch(CountMinSketch.DEFAULT_DEPTH, CountMinSketch.DEFAULT_WIDTH,
+                    BigArrays.NON_RECYCLING_INSTANCE);
+            for (int i = 0; i < counts.length; ++i) {
+                sketch.add(term(i), counts[i]);
+            }
+            shards.add(shardTerms(counts, 2, 2, sketch));
+        }
+
+        final StringTerms reduced = (StringTerms) shards.get(0).reduce(shards, new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null));
+        assertEquals(2, reduced.getBuckets().size());
+        // without sketches, the error of terms that the second shard did not return would be the count of its last term: 7
+        final Terms.Bucket first = reduced.getBuckets().get(0);
+        assertEquals("term0", first.getKeyAsString());
+        assertEquals(10, first.getDocCount());
+        assertEquals(1, first.getDocCountError());
+        final Terms.Bucket second = reduced.getBuckets().get(1);
+        assertEquals("term1", second.getKeyAsString());
+        assertEquals(9, second.getDocCount());
+        assertEquals(0, second.getDocCountError());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.terms.support;
+
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import com.carrotsearch.hppc.cursors.ObjectLongCursor;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class CountMinSketchTests extends ElasticsearchTestCase {
+
+    @Test
+    public void neverUnderEstimates() {
+        final CountMinSketch sketch = new CountMinSketch(randomIntBetween(1, 6), 1 << randomIntBetween(4, 12),
+                BigArrays.NON_RECYCLING_INSTANCE);
+        final ObjectLongHashMap<BytesRef> counts = new ObjectLongHashMap<>();
+        final int numValues = randomIntBetween(1, 100000);
+        final int maxValue = randomIntBetween(1, randomBoolean() ? 100 : 100000);
+        for (int i = 0; i < numValues; ++i) {
+            final BytesRef term = new BytesRef(Integer.toString(randomInt(maxValue)));
+            final long count = randomIntBetween(1, 10);
+            sketch.add(term, count);
+            counts.addTo(term, count);
+        }
+        long total = 0;
+        for (ObjectLongCursor<BytesRef> cursor : counts) {
+            assertThat(sketch.estimate(cursor.key), greaterThanOrEqualTo(cursor.value));
+            total += cursor.value;
+        }
+        assertEquals(total, sketch.totalCount());
+    }
+
+    @Test
+    public void heavyHitters() {
+        final CountMinSketch sketch = new CountMinSketch(CountMinSketch.DEFAULT_DEPTH, CountMinSketch.DEFAULT_WIDTH,
+                BigArrays.NON_RECYCLING_INSTANCE);
+        final BytesRef heavy = new BytesRef("heavy");
+        sketch.add(heavy, 100000);
+        for (int i = 0; i < 10000; ++i) {
+            sketch.add(new BytesRef(Integer.toString(i)), 1);
+        }
+        assertThat(sketch.estimate(heavy), lessThanOrEqualTo(100000 + sketch.errorBound()));
+    }
+
+    @Test
+    public void merge() {
+        final int depth = randomIntBetween(1, 6);
+        final int width = 1 << randomIntBetween(4, 12);
+        final CountMinSketch single = new CountMinSketch(depth, width, BigArrays.NON_RECYCLING_INSTANCE);
+        final CountMinSketch[] multi = new CountMinSketch[randomIntBetween(2, 20)];
+        for (int i = 0; i < multi.length; ++i) {
+            multi[i] = new CountMinSketch(depth, width, BigArrays.NON_RECYCLING_INSTANCE);
+        }
+        final int numValues = randomIntBetween(1, 10000);
+        for (int i = 0; i < numValues; ++i) {
+            final BytesRef term = new BytesRef(Integer.toString(randomInt(1000)));
+            single.add(term, 1);
+            multi[randomInt(multi.length - 1)].add(term, 1);
+        }
+        final CountMinSketch merged = new CountMinSketch(depth, width, BigArrays.NON_RECYCLING_INSTANCE);
+        for (CountMinSketch sketch : multi) {
+            merged.merge(sketch);
+        }
+        assertEquals(single.totalCount(), merged.totalCount());
+        for (int i = 0; i <= 1000; ++i) {
+            final BytesRef term = new BytesRef(Integer.toString(i));
+            assertEquals(single.estimate(term), merged.estimate(term));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeDifferentDimensions() {
+        final CountMinSketch sketch = new CountMinSketch(4, 64, BigArrays.NON_RECYCLING_INSTANCE);
+        sketch.merge(new CountMinSketch(4, 128, BigArrays.NON_RECYCLING_INSTANCE));
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final CountMinSketch sketch = new CountMinSketch(randomIntBetween(1, 6), 1 << randomIntBetween(4, 12),
+                BigArrays.NON_RECYCLING_INSTANCE);
+        final int numValues = randomIntBetween(0, 1000);
+        for (int i = 0; i < numValues; ++i) {
+            sketch.add(new BytesRef(Integer.toString(randomInt(100))), randomIntBetween(1, 1000));
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        sketch.writeTo(out);
+        StreamInput in = StreamInput.wrap(out.bytes());
+        CountMinSketch read = CountMinSketch.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(sketch.depth(), read.depth());
+        assertEquals(sketch.width(), read.width());
+        assertEquals(sketch.totalCount(), read.totalCount());
+        for (int i = 0; i <= 100; ++i) {
+            final BytesRef term = new BytesRef(Integer.toString(i));
+            assertEquals(sketch.estimate(term), read.estimate(term));
+        }
+    }
+
+}
@@ -21,6 +21,9 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.test.ElasticsearchTestCase;
 import org.junit.Test;
@@ -106,6 +109,44 @@ public class HyperLogLogPlusPlusTests extends ElasticsearchTestCase {
         }
     }
 
+    @Test
+    public void maxBytes() {
+        final int iters = scaledRandomIntBetween(1000, 10000);
+        for (int i = 0; i < iters; ++i) {
+            long a = 0, b = 0, expected = 0;
+            for (int j = 0; j < 8; ++j) {
+                // run lengths are always less than 64
+                final long x = randomInt(64);
+                final long y = randomInt(64);
+                a |= x << (j * 8);
+                b |= y << (j * 8);
+                expected |= Math.max(x, y) << (j * 8);
+            }
+            assertEquals(expected, HyperLogLogPlusPlus.maxBytes(a, b));
+        }
+    }
+
+    @Test
+    public void manyLowCardinalityBuckets() {
+        final int p = randomIntBetween(10, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 0);
+        final int numBuckets = randomIntBetween(1, 10000);
+        final IntHashSet[] sets = new IntHashSet[numBuckets];
+        for (int bucket = 0; bucket < numBuckets; ++bucket) {
+            sets[bucket] = new IntHashSet();
+            final int numValues = randomInt(20);
+            for (int i = 0; i < numValues; ++i) {
+                final int n = randomInt(100);
+                sets[bucket].add(n);
+                counts.collect(bucket, BitMixer.mix64(n));
+            }
+        }
+        for (int bucket = 0; bucket < numBuckets; ++bucket) {
+            assertThat((double) counts.cardinality(bucket), closeTo(sets[bucket].size(), 0.1 * sets[bucket].size() + 1));
+        }
+        counts.close();
+    }
+
     @Test
     public void fakeHashes() {
         // hashes with lots of leading zeros trigger different paths in the code that we try to go through here
@@ -123,6 +164,25 @@ public class HyperLogLogPlusPlusTests extends ElasticsearchTestCase {
         assertEquals(1, counts.cardinality(0));
     }
 
+    @Test
+    public void serialization() throws Exception {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final int numValues = randomBoolean() ? randomIntBetween(0, 100) : scaledRandomIntBetween(0, 100000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(0, BitMixer.mix64(randomInt()));
+        }
+        final Version version = randomFrom(Version.CURRENT, Version.V_1_7_0);
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(version);
+        counts.writeTo(0, out);
+        StreamInput in = StreamInput.wrap(out.bytes());
+        in.setVersion(version);
+        HyperLogLogPlusPlus read = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(counts.precision(), read.precision());
+        assertEquals(counts.cardinality(0), read.cardinality(0));
+    }
+
     @Test
     public void precisionFromThreshold() {
         assertEquals(4, HyperLogLogPlusPlus.precisionFromThreshold(0));
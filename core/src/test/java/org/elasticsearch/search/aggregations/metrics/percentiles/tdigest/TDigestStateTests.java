@@ -0,0 +1,137 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.tdigest;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class TDigestStateTests extends ElasticsearchTestCase {
+
+    private static double exactQuantile(double[] sorted, double q) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(q * sorted.length))];
+    }
+
+    @Test
+    public void accuracy() {
+        final TDigestState state = new TDigestState(100);
+        final double[] values = new double[randomIntBetween(1000, 100000)];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = randomBoolean() ? randomDouble() : randomGaussian();
+            state.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, state.size());
+        assertEquals(values[0], state.quantile(0), 0d);
+        assertEquals(values[values.length - 1], state.quantile(1), 0d);
+        for (double q : new double[] {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            // compare ranks rather than values since the distribution is skewed
+            final double rank = Arrays.binarySearch(values, state.quantile(q));
+            final double insertionRank = rank >= 0 ? rank : -1 - rank;
+            assertThat(insertionRank / values.length, closeTo(q, 0.01));
+            assertThat(state.cdf(exactQuantile(values, q)), closeTo(q, 0.01));
+        }
+        assertThat(state.centroidCount(), lessThanOrEqualTo(201));
+    }
+
+    @Test
+    public void fewValues() {
+        final TDigestState state = new TDigestState(randomIntBetween(1, 200));
+        assertTrue(Double.isNaN(state.quantile(0.5)));
+        assertTrue(Double.isNaN(state.cdf(0)));
+        state.add(42);
+        assertEquals(42, state.quantile(randomDouble()), 0d);
+        assertEquals(0, state.cdf(41), 0d);
+        assertEquals(1, state.cdf(42), 0d);
+        state.add(84);
+        assertEquals(42, state.quantile(0), 0d);
+        assertEquals(84, state.quantile(1), 0d);
+    }
+
+    @Test
+    public void merge() {
+        final double compression = randomIntBetween(50, 200);
+        final TDigestState single = new TDigestState(compression);
+        final TDigestState[] multi = new TDigestState[randomIntBetween(2, 20)];
+        for (int i = 0; i < multi.length; ++i) {
+            multi[i] = new TDigestState(compression);
+        }
+        final double[] values = new double[randomIntBetween(1000, 50000)];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = randomDouble();
+            single.add(values[i]);
+            multi[randomInt(multi.length - 1)].add(values[i]);
+        }
+        final TDigestState merged = new TDigestState(compression);
+        for (TDigestState state : multi) {
+            merged.add(state);
+        }
+        Arrays.sort(values);
+        assertEquals(single.size(), merged.size());
+        assertEquals(values[0], merged.quantile(0), 0d);
+        assertEquals(values[values.length - 1], merged.quantile(1), 0d);
+        for (double q : new double[] {0.01, 0.1, 0.5, 0.9, 0.99}) {
+            assertThat(merged.quantile(q), closeTo(single.quantile(q), 0.02));
+        }
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final TDigestState state = new TDigestState(randomIntBetween(20, 200));
+        final int numValues = randomBoolean() ? 0 : randomIntBetween(1000, 10000);
+        for (int i = 0; i < numValues; ++i) {
+            state.add(randomDouble(), randomIntBetween(1, 10));
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        TDigestState.write(state, out);
+        TDigestState read = TDigestState.read(StreamInput.wrap(out.bytes()));
+        assertEquals(state.compression(), read.compression(), 0d);
+        assertEquals(state.size(), read.size());
+        assertEquals(state.centroidCount(), read.centroidCount());
+        if (numValues > 0) {
+            // min and max are serialized too, so extreme quantiles survive the round trip
+            for (double q : new double[] {0, 0.001, 0.1, 0.5, 0.9, 0.999, 1}) {
+                assertEquals(state.quantile(q), read.quantile(q), 0d);
+            }
+            for (double x : new double[] {0, 0.001, 0.5, 0.999, 1}) {
+                assertEquals(state.cdf(x), read.cdf(x), 0d);
+            }
+        }
+
+        // older nodes do not send min and max
+        out = new BytesStreamOutput();
+        out.setVersion(Version.V_1_6_0);
+        TDigestState.write(state, out);
+        StreamInput in = StreamInput.wrap(out.bytes());
+        in.setVersion(Version.V_1_6_0);
+        read = TDigestState.read(in);
+        assertEquals(state.size(), read.size());
+        // the whole digest was consumed
+        assertEquals(-1, in.read());
+    }
+
+}
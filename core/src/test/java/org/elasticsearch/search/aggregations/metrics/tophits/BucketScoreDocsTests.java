@@ -0,0 +1,77 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.tophits;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class BucketScoreDocsTests extends ElasticsearchTestCase {
+
+    @Test
+    public void sameAsSorting() {
+        final int topN = randomIntBetween(0, 20);
+        final int numBuckets = randomIntBetween(1, 10);
+        final List<List<ScoreDoc>> expected = new ArrayList<>();
+        for (int i = 0; i < numBuckets; ++i) {
+            expected.add(new ArrayList<ScoreDoc>());
+        }
+        try (BucketScoreDocs scoreDocs = new BucketScoreDocs(topN, BigArrays.NON_RECYCLING_INSTANCE)) {
+            final int numDocs = randomIntBetween(0, 1000);
+            for (int doc = 0; doc < numDocs; ++doc) {
+                final int bucket = randomInt(numBuckets - 1);
+                // few distinct scores to exercise tie-breaking on doc ids
+                final float score = randomInt(10);
+                scoreDocs.collect(bucket, doc, score);
+                expected.get(bucket).add(new ScoreDoc(doc, score));
+            }
+            for (int bucket = 0; bucket < numBuckets; ++bucket) {
+                final List<ScoreDoc> bucketDocs = expected.get(bucket);
+                assertEquals(bucketDocs.isEmpty() == false, scoreDocs.hasDocs(bucket));
+                Collections.sort(bucketDocs, new Comparator<ScoreDoc>() {
+                    @Override
+                    public int compare(ScoreDoc o1, ScoreDoc o2) {
+                        int cmp = Float.compare(o2.score, o1.score);
+                        if (cmp == 0) {
+                            cmp = Integer.compare(o1.doc, o2.doc);
+                        }
+                        return cmp;
+                    }
+                });
+                final TopDocs topDocs = scoreDocs.topDocs(bucket);
+                assertEquals(bucketDocs.size(), topDocs.totalHits);
+                assertEquals(Math.min(topN, bucketDocs.size()), topDocs.scoreDocs.length);
+                for (int i = 0; i < topDocs.scoreDocs.length; ++i) {
+                    assertEquals(bucketDocs.get(i).doc, topDocs.scoreDocs[i].doc);
+                    assertEquals(bucketDocs.get(i).score, topDocs.scoreDocs[i].score, 0f);
+                }
+            }
+            assertFalse(scoreDocs.hasDocs(numBuckets));
+        }
+    }
+
+}
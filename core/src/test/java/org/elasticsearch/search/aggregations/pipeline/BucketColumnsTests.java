@@ -0,0 +1,153 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.pipeline;
+
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalOrder;
+import org.elasticsearch.search.aggregations.pipeline.BucketHelpers.GapPolicy;
+import org.elasticsearch.search.aggregations.pipeline.cumulativesum.CumulativeSumPipelineAggregator;
+import org.elasticsearch.search.aggregations.pipeline.derivative.Derivative;
+import org.elasticsearch.search.aggregations.pipeline.derivative.DerivativePipelineAggregator;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BucketColumnsTests extends ElasticsearchTestCase {
+
+    private static final InternalHistogram.Factory<InternalHistogram.Bucket> FACTORY =
+            new InternalHistogram.Factory<InternalHistogram.Bucket>() {};
+
+    /**
+     * Build a histogram whose buckets have the given doc counts and a <code>metric</code> sub-aggregation with
+     * the given values.
+     */
+    private static InternalHistogram<InternalHistogram.Bucket> histogram(long[] docCounts, double[] metrics) {
+        final List<InternalHistogram.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < docCounts.length; ++i) {
+            final List<InternalAggregation> aggs = new ArrayList<>();
+            aggs.add(new InternalSimpleValue("metric", metrics[i], null, Collections.<PipelineAggregator>emptyList(), null));
+            buckets.add(FACTORY.createBucket(i * 10L, docCounts[i], new InternalAggregations(aggs), false, null));
+        }
+        return FACTORY.create("histo", buckets, (InternalOrder) Histogram.Order.KEY_ASC, 0, null, null, false,
+                Collections.<PipelineAggregator>emptyList(), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static InternalHistogram<InternalHistogram.Bucket> derivative(InternalHistogram<InternalHistogram.Bucket> histo, String name,
+            String bucketsPath, GapPolicy gapPolicy) {
+        final PipelineAggregator derivative = new DerivativePipelineAggregator(name, new String[] { bucketsPath }, null, gapPolicy,
+                null, null);
+        return (InternalHistogram<InternalHistogram.Bucket>) derivative.reduce(histo, null);
+    }
+
+    private static Derivative derivativeOf(InternalHistogram.Bucket bucket, String name) {
+        return bucket.getAggregations().get(name);
+    }
+
+    @Test
+    public void gapPolicies() {
+        final long[] docCounts = { 3, 0, 2 };
+        final InternalHistogram<InternalHistogram.Bucket> histo = histogram(docCounts, new double[] { 1, 0, Double.NaN });
+        final BucketColumns columns = histo.bucketColumns();
+
+        assertArrayEquals(new double[] { 3, 0, 2 }, columns.values("_count", GapPolicy.SKIP), 0d);
+        assertArrayEquals(new double[] { 1, Double.NaN, Double.NaN }, columns.values("metric", GapPolicy.SKIP), 0d);
+        assertArrayEquals(new double[] { 1, 0, 0 }, columns.values("metric", GapPolicy.INSERT_ZEROS), 0d);
+        assertTrue(columns.missing("metric").isEmpty());
+
+        // unresolvable paths are neither gaps nor zeros
+        assertArrayEquals(new double[] { Double.NaN, Double.NaN, Double.NaN }, columns.values("other", GapPolicy.INSERT_ZEROS), 0d);
+        assertEquals(3, columns.missing("other").cardinality());
+    }
+
+    @Test
+    public void derivativeGapPolicies() {
+        final InternalHistogram<InternalHistogram.Bucket> histo = histogram(new long[] { 3, 0, 2 }, new double[] { 1, 0, 4 });
+
+        final List<InternalHistogram.Bucket> skip = derivative(histo, "deriv", "metric", GapPolicy.SKIP).getBuckets();
+        assertThat(derivativeOf(skip.get(0), "deriv"), nullValue());
+        assertTrue(Double.isNaN(derivativeOf(skip.get(1), "deriv").value()));
+        assertTrue(Double.isNaN(derivativeOf(skip.get(2), "deriv").value()));
+
+        final List<InternalHistogram.Bucket> insertZeros = derivative(histo, "deriv", "metric", GapPolicy.INSERT_ZEROS).getBuckets();
+        assertThat(derivativeOf(insertZeros.get(0), "deriv"), nullValue());
+        assertEquals(-1d, derivativeOf(insertZeros.get(1), "deriv").value(), 0d);
+        assertEquals(4d, derivativeOf(insertZeros.get(2), "deriv").value(), 0d);
+    }
+
+    @Test
+    public void chainedDerivatives() {
+        final int numBuckets = randomIntBetween(3, 20);
+        final long[] docCounts = new long[numBuckets];
+        final double[] metrics = new double[numBuckets];
+        for (int i = 0; i < numBuckets; ++i) {
+            docCounts[i] = randomIntBetween(1, 100);
+            metrics[i] = randomIntBetween(-100, 100);
+        }
+        final GapPolicy gapPolicy = randomFrom(GapPolicy.values());
+        final InternalHistogram<InternalHistogram.Bucket> first = derivative(histogram(docCounts, metrics), "deriv", "metric", gapPolicy);
+        assertTrue(first.bucketColumns().missing("deriv").get(0));
+        final InternalHistogram<InternalHistogram.Bucket> second = derivative(first, "2nd_deriv", "deriv", gapPolicy);
+        final InternalHistogram<InternalHistogram.Bucket> third = derivative(second, "3rd_deriv", "2nd_deriv", gapPolicy);
+
+        final List<InternalHistogram.Bucket> buckets = third.getBuckets();
+        for (int i = 0; i < numBuckets; ++i) {
+            final InternalHistogram.Bucket bucket = buckets.get(i);
+            if (i == 0) {
+                assertThat(derivativeOf(bucket, "deriv"), nullValue());
+            } else {
+                assertEquals(metrics[i] - metrics[i - 1], derivativeOf(bucket, "deriv").value(), 0d);
+            }
+            if (i <= 1) {
+                assertThat(derivativeOf(bucket, "2nd_deriv"), nullValue());
+            } else {
+                final double expected = (metrics[i] - metrics[i - 1]) - (metrics[i - 1] - metrics[i - 2]);
+                assertEquals(expected, derivativeOf(bucket, "2nd_deriv").value(), 0d);
+            }
+            if (i <= 2) {
+                assertThat(derivativeOf(bucket, "3rd_deriv"), nullValue());
+            } else {
+                assertThat(derivativeOf(bucket, "3rd_deriv"), notNullValue());
+            }
+        }
+    }
+
+    @Test
+    public void cumulativeSumOfDerivative() {
+        final InternalHistogram<InternalHistogram.Bucket> histo = derivative(histogram(new long[] { 1, 2, 3, 4 },
+                new double[] { 5, 7, 4, 10 }), "deriv", "metric", GapPolicy.SKIP);
+        final PipelineAggregator cumulativeSum = new CumulativeSumPipelineAggregator("sum", new String[] { "deriv" }, null, null);
+        final InternalHistogram<?> sums = (InternalHistogram<?>) cumulativeSum.reduce(histo, null);
+        final double[] expected = { 0, 2, -1, 5 };
+        for (int i = 0; i < expected.length; ++i) {
+            final SimpleValue sum = sums.getBuckets().get(i).getAggregations().get("sum");
+            assertEquals(expected[i], sum.value(), 0d);
+        }
+    }
+}
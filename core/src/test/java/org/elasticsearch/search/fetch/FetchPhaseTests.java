@@ -0,0 +1,179 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.fetch;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.support.QueryInnerHitBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.nestedQuery;
+import static org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders.fieldValueFactorFunction;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Hits are loaded in doc id order, these tests check that they are still returned in score or sort order.
+ */
+public class FetchPhaseTests extends ElasticsearchIntegrationTest {
+
+    /**
+     * Index documents into several segments of a single shard. The i-th document has <code>num</code> set to
+     * <code>nums.get(i)</code> and up to 3 nested <code>comments</code> whose <code>comments.n</code> are a random
+     * permutation of <code>0, 1, ...</code>. Return the values of <code>comments.n</code> per document.
+     */
+    private List<List<Integer>> indexDocuments(List<Integer> nums) throws Exception {
+        assertAcked(prepareCreate("test")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, 1).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", "num", "type=integer", "comments", "type=nested"));
+        ensureGreen("test");
+
+        final List<List<Integer>> comments = new ArrayList<>();
+        for (int i = 0; i < nums.size(); ++i) {
+            final List<Integer> ns = new ArrayList<>();
+            for (int n = randomInt(3) - 1; n >= 0; --n) {
+                ns.add(n);
+            }
+            Collections.shuffle(ns, getRandom());
+            comments.add(ns);
+
+            XContentBuilder source = jsonBuilder().startObject().field("num", nums.get(i)).startArray("comments");
+            for (int n : ns) {
+                source.startObject().field("n", n).endObject();
+            }
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource(source.endArray().endObject()).get();
+            if (randomInt(4) == 0) {
+                refresh("test");
+            }
+        }
+        refresh("test");
+        return comments;
+    }
+
+    private static List<Integer> shuffledNums(int numDocs) {
+        final List<Integer> nums = new ArrayList<>();
+        for (int i = 1; i <= numDocs; ++i) {
+            nums.add(i);
+        }
+        Collections.shuffle(nums, getRandom());
+        return nums;
+    }
+
+    /**
+     * Return the ids of the documents sorted by descending <code>num</code>.
+     */
+    private static List<String> idsByDescendingNum(List<Integer> nums) {
+        final String[] ids = new String[nums.size()];
+        for (int i = 0; i < nums.size(); ++i) {
+            ids[nums.size() - nums.get(i)] = Integer.toString(i);
+        }
+        List<String> result = new ArrayList<>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    @Test
+    public void testHitsKeepScoreAndSortOrder() throws Exception {
+        final int numDocs = randomIntBetween(10, 100);
+        final List<Integer> nums = shuffledNums(numDocs);
+        indexDocuments(nums);
+        final List<String> expectedIds = idsByDescendingNum(nums);
+
+        final int from = randomIntBetween(0, numDocs - 1);
+        final int size = randomIntBetween(1, numDocs);
+        final List<String> expectedPage = expectedIds.subList(from, Math.min(numDocs, from + size));
+
+        // the score of every document is its num
+        SearchResponse response = client().prepareSearch("test")
+                .setQuery(functionScoreQuery(matchAllQuery(), fieldValueFactorFunction("num")).boostMode("replace"))
+                .setFrom(from).setSize(size).get();
+        assertSearchResponse(response);
+        assertThat(response.getHits().getHits().length, equalTo(expectedPage.size()));
+        for (int i = 0; i < expectedPage.size(); ++i) {
+            final SearchHit hit = response.getHits().getAt(i);
+            assertThat(hit.getId(), equalTo(expectedPage.get(i)));
+            assertThat(hit.getScore(), equalTo((float) (numDocs - from - i)));
+            assertThat(((Number) hit.getSource().get("num")).intValue(), equalTo(numDocs - from - i));
+        }
+
+        response = client().prepareSearch("test")
+                .addSort("num", SortOrder.DESC)
+                .setFrom(from).setSize(size).get();
+        assertSearchResponse(response);
+        assertThat(response.getHits().getHits().length, equalTo(expectedPage.size()));
+        for (int i = 0; i < expectedPage.size(); ++i) {
+            final SearchHit hit = response.getHits().getAt(i);
+            assertThat(hit.getId(), equalTo(expectedPage.get(i)));
+            assertThat(((Number) hit.getSortValues()[0]).intValue(), equalTo(numDocs - from - i));
+        }
+    }
+
+    @Test
+    public void testNestedHitsAcrossSegments() throws Exception {
+        final int numDocs = randomIntBetween(10, 50);
+        final List<Integer> nums = shuffledNums(numDocs);
+        final List<List<Integer>> comments = indexDocuments(nums);
+        final List<String> expectedIds = idsByDescendingNum(nums);
+
+        // root documents have nested documents in every segment, the nested hits need to be resolved against the
+        // nested docs of their own segment
+        SearchResponse response = client().prepareSearch("test")
+                .setQuery(nestedQuery("comments", matchAllQuery())
+                        .innerHit(new QueryInnerHitBuilder().setName("comments").addSort("comments.n", SortOrder.DESC).setSize(4)))
+                .addSort("num", SortOrder.DESC)
+                .setSize(numDocs).get();
+        assertSearchResponse(response);
+
+        int expectedHit = 0;
+        for (String id : expectedIds) {
+            final List<Integer> ns = comments.get(Integer.parseInt(id));
+            if (ns.isEmpty()) {
+                continue;
+            }
+            final SearchHit hit = response.getHits().getAt(expectedHit++);
+            assertThat(hit.getId(), equalTo(id));
+            final SearchHits innerHits = hit.getInnerHits().get("comments");
+            assertThat(innerHits.getHits().length, equalTo(ns.size()));
+            for (int i = 0; i < ns.size(); ++i) {
+                final SearchHit innerHit = innerHits.getAt(i);
+                assertThat(innerHit.getId(), equalTo(id));
+                assertThat(innerHit.getNestedIdentity().getField().string(), equalTo("comments"));
+                // inner hits are sorted by descending n
+                assertThat(innerHit.getNestedIdentity().getOffset(), equalTo(ns.indexOf(ns.size() - 1 - i)));
+            }
+        }
+        assertThat(response.getHits().getHits().length, equalTo(expectedHit));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+public class AggregationProfileResultTests extends ElasticsearchTestCase {
+
+    private static AggregationProfileResult randomResult(int depth) {
+        final List<AggregationProfileResult> children = new ArrayList<>();
+        if (depth < 3) {
+            for (int i = randomInt(3); i > 0; --i) {
+                children.add(randomResult(depth + 1));
+            }
+        }
+        return new AggregationProfileResult(randomAsciiOfLength(5), randomFrom("terms", "histogram", "avg", "max"),
+                randomInt(1000000), randomLong() & Long.MAX_VALUE, randomInt(1000), randomLong() & Long.MAX_VALUE,
+                randomInt(1000), randomInt(100000000), randomInt(100000000), children);
+    }
+
+    private static void assertResultEquals(AggregationProfileResult expected, AggregationProfileResult actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getCollectCount(), actual.getCollectCount());
+        assertEquals(expected.getCollectNanos(), actual.getCollectNanos());
+        assertEquals(expected.getBuildCount(), actual.getBuildCount());
+        assertEquals(expected.getBuildNanos(), actual.getBuildNanos());
+        assertEquals(expected.getBuckets(), actual.getBuckets());
+        assertEquals(expected.getAllocatedBytes(), actual.getAllocatedBytes());
+        assertEquals(expected.getPeakBytes(), actual.getPeakBytes());
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); ++i) {
+            assertResultEquals(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    private static String toJson(AggregationProfileResult result, boolean humanReadable) throws IOException {
+        final XContentBuilder builder = jsonBuilder().humanReadable(humanReadable);
+        result.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.string();
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final AggregationProfileResult result = randomResult(0);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        result.writeTo(out);
+        final StreamInput in = StreamInput.wrap(out.bytes());
+        final AggregationProfileResult read = AggregationProfileResult.readAggregationProfileResult(in);
+        assertEquals(-1, in.read());
+
+        assertResultEquals(result, read);
+        assertEquals(toJson(result, false), toJson(read, false));
+        assertEquals(toJson(result, true), toJson(read, true));
+    }
+
+    @Test
+    public void toXContent() throws Exception {
+        final AggregationProfileResult avg = new AggregationProfileResult("avg", "avg", 12, 3000, 2, 400, 0, 16, 16,
+                Collections.<AggregationProfileResult>emptyList());
+        final AggregationProfileResult terms = new AggregationProfileResult("terms", "terms", 10, 5000, 1, 1000, 2, 2048, 1024,
+                Collections.singletonList(avg));
+        assertEquals("{\"name\":\"terms\",\"type\":\"terms\",\"collect_count\":10,\"collect_time_in_nanos\":5000,"
+                + "\"build_count\":1,\"build_time_in_nanos\":1000,\"buckets\":2,\"allocated_in_bytes\":2048,\"peak_in_bytes\":1024,"
+                + "\"children\":[{\"name\":\"avg\",\"type\":\"avg\",\"collect_count\":12,\"collect_time_in_nanos\":3000,"
+                + "\"build_count\":2,\"build_time_in_nanos\":400,\"buckets\":0,\"allocated_in_bytes\":16,\"peak_in_bytes\":16}]}",
+                toJson(terms, false));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ProfileShardResultTests extends ElasticsearchTestCase {
+
+    private static void time(ProfileBreakdown profile, ProfileBreakdown.TimingType timingType, int calls) {
+        final Timer timer = profile.timer(timingType);
+        for (int i = 0; i < calls; ++i) {
+            timer.stop(timer.start());
+        }
+    }
+
+    /**
+     * Profile a boolean query with two term clauses, with random call counts.
+     */
+    private static List<QueryProfileResult> randomQueries() {
+        final QueryProfiler profiler = new QueryProfiler();
+        final TermQuery foo = new TermQuery(new Term("f", "foo"));
+        final TermQuery bar = new TermQuery(new Term("f", "bar"));
+        final BooleanQuery bool = new BooleanQuery();
+        bool.add(foo, Occur.MUST);
+        bool.add(bar, Occur.SHOULD);
+        final ProfileBreakdown boolProfile = profiler.push(bool);
+        time(boolProfile, ProfileBreakdown.TimingType.CREATE_WEIGHT, 1);
+        for (TermQuery term : Arrays.asList(foo, bar)) {
+            final ProfileBreakdown termProfile = profiler.push(term);
+            for (ProfileBreakdown.TimingType timingType : ProfileBreakdown.TimingType.values()) {
+                time(termProfile, timingType, randomInt(50));
+            }
+            profiler.pop();
+        }
+        time(boolProfile, ProfileBreakdown.TimingType.NEXT_DOC, randomInt(50));
+        profiler.pop();
+        return profiler.results();
+    }
+
+    private static AggregationProfileResult randomAggregation(String name, List<AggregationProfileResult> children) {
+        return new AggregationProfileResult(name, randomFrom("terms", "histogram", "avg"), randomInt(1000), randomInt(1000000),
+                randomInt(10), randomInt(1000000), randomInt(100), randomInt(100000), randomInt(100000), children);
+    }
+
+    private static ProfileShardResult randomResult() {
+        final List<AggregationProfileResult> aggregations = new ArrayList<>();
+        if (randomBoolean()) {
+            aggregations.add(randomAggregation("a", Collections.singletonList(
+                    randomAggregation("b", Collections.<AggregationProfileResult>emptyList()))));
+        }
+        final Map<String, Long> phases = new LinkedHashMap<>();
+        for (String phase : Arrays.asList("query", "rescore", "aggregations", "fetch")) {
+            if (randomBoolean()) {
+                phases.put(phase, (long) randomInt(1000000));
+            }
+        }
+        final List<QueryProfileResult> queries = randomBoolean() ? randomQueries() : Collections.<QueryProfileResult>emptyList();
+        return new ProfileShardResult(queries, randomInt(1000000), aggregations, phases);
+    }
+
+    private static String toJson(ProfileShardResult result) throws IOException {
+        final XContentBuilder builder = jsonBuilder().startObject();
+        result.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.endObject().string();
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        final ProfileShardResult result = randomResult();
+        final BytesStreamOutput out = new BytesStreamOutput();
+        result.writeTo(out);
+        final ProfileShardResult read = ProfileShardResult.readProfileShardResult(StreamInput.wrap(out.bytes()));
+
+        assertEquals(result.getRewriteTime(), read.getRewriteTime());
+        assertEquals(result.getPhases(), read.getPhases());
+        assertEquals(result.getQueries().size(), read.getQueries().size());
+        for (int i = 0; i < result.getQueries().size(); ++i) {
+            final QueryProfileResult query = result.getQueries().get(i);
+            final QueryProfileResult readQuery = read.getQueries().get(i);
+            assertEquals(query.getType(), readQuery.getType());
+            assertEquals(query.getDescription(), readQuery.getDescription());
+            assertEquals(query.getTime(), readQuery.getTime());
+            assertEquals(query.getBreakdown(), readQuery.getBreakdown());
+            assertEquals(query.getChildren().size(), readQuery.getChildren().size());
+        }
+        assertEquals(result.getAggregations().size(), read.getAggregations().size());
+        // compare the whole trees, including the order of breakdowns and phases
+        assertEquals(toJson(result), toJson(read));
+    }
+
+    @Test
+    public void merge() {
+        final ProfileShardResult query = new ProfileShardResult(randomQueries(), 5,
+                Collections.singletonList(randomAggregation("a", Collections.<AggregationProfileResult>emptyList())),
+                new LinkedHashMap<String, Long>());
+        query.getPhases().put("query", 10L);
+        query.getPhases().put("aggregations", 3L);
+        final ProfileShardResult fetch = new ProfileShardResult(Collections.<QueryProfileResult>emptyList(), 2,
+                Collections.<AggregationProfileResult>emptyList(), new LinkedHashMap<String, Long>());
+        fetch.getPhases().put("fetch", 7L);
+        fetch.getPhases().put("query", 1L);
+
+        final ProfileShardResult merged = ProfileShardResult.merge(query, fetch);
+        assertEquals(query.getQueries(), merged.getQueries());
+        assertEquals(query.getAggregations(), merged.getAggregations());
+        assertEquals(7, merged.getRewriteTime());
+        assertThat(merged.getPhases().keySet(), contains("query", "aggregations", "fetch"));
+        assertEquals(11L, (long) merged.getPhases().get("query"));
+        assertEquals(3L, (long) merged.getPhases().get("aggregations"));
+        assertEquals(7L, (long) merged.getPhases().get("fetch"));
+        // merging does not modify its inputs
+        assertEquals(10L, (long) query.getPhases().get("query"));
+        assertEquals(1L, (long) fetch.getPhases().get("query"));
+
+        assertThat(ProfileShardResult.merge(null, fetch), sameInstance(fetch));
+        assertThat(ProfileShardResult.merge(query, null), sameInstance(query));
+        assertNull(ProfileShardResult.merge(null, null));
+    }
+
+    @Test
+    public void mergeConcatenatesQueries() {
+        final ProfileShardResult first = randomResult();
+        final ProfileShardResult second = randomResult();
+        final ProfileShardResult merged = ProfileShardResult.merge(first, second);
+        final List<QueryProfileResult> expectedQueries = new ArrayList<>(first.getQueries());
+        expectedQueries.addAll(second.getQueries());
+        assertEquals(expectedQueries, merged.getQueries());
+        final List<AggregationProfileResult> expectedAggregations = new ArrayList<>(first.getAggregations());
+        expectedAggregations.addAll(second.getAggregations());
+        assertEquals(expectedAggregations, merged.getAggregations());
+        assertEquals(first.getRewriteTime() + second.getRewriteTime(), merged.getRewriteTime());
+    }
+}
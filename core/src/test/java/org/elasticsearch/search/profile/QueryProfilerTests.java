@@ -0,0 +1,268 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class QueryProfilerTests extends ElasticsearchTestCase {
+
+    /**
+     * A searcher that profiles weights like <code>ContextIndexSearcher</code> does when profiling is enabled.
+     */
+    private static class ProfilingSearcher extends IndexSearcher {
+
+        final QueryProfiler profiler = new QueryProfiler();
+
+        ProfilingSearcher(IndexReader reader) {
+            super(reader);
+            setQueryCache(null);
+        }
+
+        @Override
+        public Weight createWeight(Query query, boolean needsScores) throws IOException {
+            final ProfileBreakdown profile = profiler.push(query);
+            final Timer timer = profile.timer(ProfileBreakdown.TimingType.CREATE_WEIGHT);
+            final long start = timer.start();
+            final Weight weight;
+            try {
+                weight = super.createWeight(query, needsScores);
+            } finally {
+                timer.stop(start);
+                profiler.pop();
+            }
+            return new ProfileWeight(weight, profile);
+        }
+    }
+
+    /**
+     * Matches documents whose id within their segment is even, using a two-phase iterator over all documents.
+     */
+    private static class EvenDocsQuery extends Query {
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+            return new ConstantScoreWeight(this) {
+                @Override
+                public Scorer scorer(LeafReaderContext context, final Bits acceptDocs) throws IOException {
+                    final DocIdSetIterator approximation = DocIdSetIterator.all(context.reader().maxDoc());
+                    final TwoPhaseIterator twoPhaseIterator = new TwoPhaseIterator(approximation) {
+                        @Override
+                        public boolean matches() throws IOException {
+                            final int doc = approximation.docID();
+                            return (acceptDocs == null || acceptDocs.get(doc)) && doc % 2 == 0;
+                        }
+                    };
+                    return new ConstantScoreScorer(this, score(), twoPhaseIterator);
+                }
+            };
+        }
+
+        @Override
+        public String toString(String field) {
+            return "even_docs";
+        }
+    }
+
+    /**
+     * Index documents whose <code>f</code> field is one of <code>foo</code>, <code>bar</code> or <code>baz</code>, into
+     * several segments, and return the number of documents that have <code>foo</code>.
+     */
+    private static int indexDocs(Directory dir, int numDocs) throws IOException {
+        int fooCount = 0;
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER))) {
+            for (int i = 0; i < numDocs; ++i) {
+                final String value = randomFrom("foo", "bar", "baz");
+                if (value.equals("foo")) {
+                    fooCount++;
+                }
+                final Document doc = new Document();
+                doc.add(new StringField("f", value, Store.NO));
+                writer.addDocument(doc);
+                if (rarely()) {
+                    writer.commit();
+                }
+            }
+        }
+        return fooCount;
+    }
+
+    private static long get(QueryProfileResult result, ProfileBreakdown.TimingType timingType) {
+        return result.getBreakdown().get(timingType.toString());
+    }
+
+    private static long count(QueryProfileResult result, ProfileBreakdown.TimingType timingType) {
+        return result.getBreakdown().get(timingType.toString() + "_count");
+    }
+
+    private static void assertTimes(QueryProfileResult result) {
+        long nanos = 0;
+        for (ProfileBreakdown.TimingType timingType : ProfileBreakdown.TimingType.values()) {
+            assertThat(get(result, timingType), greaterThanOrEqualTo(0L));
+            nanos += get(result, timingType);
+        }
+        assertEquals(nanos, result.getTime());
+        for (QueryProfileResult child : result.getChildren()) {
+            assertTimes(child);
+        }
+    }
+
+    @Test
+    public void queryTree() {
+        final QueryProfiler profiler = new QueryProfiler();
+        final TermQuery foo = new TermQuery(new Term("f", "foo"));
+        final TermQuery bar = new TermQuery(new Term("f", "bar"));
+        final BooleanQuery bool = new BooleanQuery();
+        bool.add(foo, Occur.SHOULD);
+        bool.add(bar, Occur.SHOULD);
+
+        profiler.push(bool);
+        profiler.push(foo);
+        profiler.pop();
+        profiler.push(bar);
+        profiler.pop();
+        profiler.pop();
+        // another top-level query, eg. a post filter
+        profiler.push(foo);
+        profiler.pop();
+
+        final List<QueryProfileResult> results = profiler.results();
+        assertEquals(2, results.size());
+        final QueryProfileResult root = results.get(0);
+        assertEquals("BooleanQuery", root.getType());
+        assertEquals(bool.toString(), root.getDescription());
+        assertEquals(2, root.getChildren().size());
+        assertEquals(foo.toString(), root.getChildren().get(0).getDescription());
+        assertEquals(bar.toString(), root.getChildren().get(1).getDescription());
+        assertTrue(root.getChildren().get(0).getChildren().isEmpty());
+        assertEquals(0L, (long) root.getBreakdown().get("next_doc"));
+        assertEquals("TermQuery", results.get(1).getType());
+        assertTrue(results.get(1).getChildren().isEmpty());
+    }
+
+    @Test
+    public void weightAndScorerTimings() throws Exception {
+        final int numDocs = randomIntBetween(1, 500);
+        try (Directory dir = newDirectory()) {
+            final int fooCount = indexDocs(dir, numDocs);
+            try (IndexReader reader = DirectoryReader.open(dir)) {
+                final ProfilingSearcher searcher = new ProfilingSearcher(reader);
+                final TopDocs topDocs = searcher.search(new TermQuery(new Term("f", "foo")), numDocs);
+                assertEquals(fooCount, topDocs.totalHits);
+
+                final List<QueryProfileResult> results = searcher.profiler.results();
+                assertEquals(1, results.size());
+                final QueryProfileResult result = results.get(0);
+                assertEquals("TermQuery", result.getType());
+                assertTrue(result.getChildren().isEmpty());
+                assertEquals(1, count(result, ProfileBreakdown.TimingType.CREATE_WEIGHT));
+                // getValueForNormalization and normalize
+                assertEquals(2, count(result, ProfileBreakdown.TimingType.NORMALIZE));
+                assertEquals(reader.leaves().size(), count(result, ProfileBreakdown.TimingType.BUILD_SCORER));
+                // one call per match, plus one per segment to exhaust the iterator
+                assertThat(count(result, ProfileBreakdown.TimingType.NEXT_DOC), greaterThanOrEqualTo((long) fooCount));
+                assertThat(count(result, ProfileBreakdown.TimingType.NEXT_DOC), lessThanOrEqualTo((long) fooCount + reader.leaves().size()));
+                assertEquals(0, count(result, ProfileBreakdown.TimingType.ADVANCE));
+                assertEquals(0, count(result, ProfileBreakdown.TimingType.MATCH));
+                assertEquals(fooCount, count(result, ProfileBreakdown.TimingType.SCORE));
+                assertTimes(result);
+            }
+        }
+    }
+
+    @Test
+    public void twoPhaseIteratorTimings() throws Exception {
+        final int numDocs = randomIntBetween(1, 500);
+        try (Directory dir = newDirectory()) {
+            final int fooCount = indexDocs(dir, numDocs);
+            try (IndexReader reader = DirectoryReader.open(dir)) {
+                final BooleanQuery query = new BooleanQuery();
+                query.add(new TermQuery(new Term("f", "foo")), Occur.MUST);
+                query.add(new EvenDocsQuery(), Occur.MUST);
+                final IndexSearcher plainSearcher = new IndexSearcher(reader);
+                plainSearcher.setQueryCache(null);
+                final TopDocs expected = plainSearcher.search(query, numDocs);
+
+                final ProfilingSearcher searcher = new ProfilingSearcher(reader);
+                final TopDocs topDocs = searcher.search(query, numDocs);
+                // wrapping the two-phase iterator must not change matches
+                assertEquals(expected.totalHits, topDocs.totalHits);
+                for (int i = 0; i < expected.scoreDocs.length; ++i) {
+                    assertEquals(expected.scoreDocs[i].doc, topDocs.scoreDocs[i].doc);
+                    assertEquals(expected.scoreDocs[i].score, topDocs.scoreDocs[i].score, 0f);
+                }
+
+                final List<QueryProfileResult> results = searcher.profiler.results();
+                assertEquals(1, results.size());
+                final QueryProfileResult root = results.get(0);
+                assertEquals("BooleanQuery", root.getType());
+                assertEquals(2, root.getChildren().size());
+                final QueryProfileResult term = root.getChildren().get(0);
+                final QueryProfileResult evenDocs = root.getChildren().get(1);
+                assertEquals("TermQuery", term.getType());
+                assertEquals("EvenDocsQuery", evenDocs.getType());
+                assertEquals(1, count(evenDocs, ProfileBreakdown.TimingType.CREATE_WEIGHT));
+                if (topDocs.totalHits > 0) {
+                    // matches are verified through the wrapped two-phase iterator, on documents that have foo
+                    assertThat(count(evenDocs, ProfileBreakdown.TimingType.MATCH), greaterThanOrEqualTo((long) topDocs.totalHits));
+                    assertThat(count(evenDocs, ProfileBreakdown.TimingType.MATCH), lessThanOrEqualTo((long) fooCount));
+                    // the approximation is positioned through the wrapped iterator too
+                    assertThat(count(evenDocs, ProfileBreakdown.TimingType.NEXT_DOC) + count(evenDocs, ProfileBreakdown.TimingType.ADVANCE),
+                            greaterThan(0L));
+                    assertThat(count(root, ProfileBreakdown.TimingType.NEXT_DOC), greaterThanOrEqualTo((long) topDocs.totalHits));
+                }
+                assertEquals(0, count(term, ProfileBreakdown.TimingType.MATCH));
+                assertTimes(root);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.avg;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SearchProfileTests extends ElasticsearchIntegrationTest {
+
+    /**
+     * Index documents whose <code>f</code> field is one of <code>foo</code>, <code>bar</code> or <code>baz</code> and
+     * whose <code>n</code> field is a number between 0 and 9.
+     */
+    private void indexDocs() throws Exception {
+        assertAcked(prepareCreate("test").addMapping("type", "f", "type=string,index=not_analyzed", "n", "type=integer"));
+        final List<IndexRequestBuilder> builders = new ArrayList<>();
+        for (int i = randomIntBetween(10, 100); i > 0; --i) {
+            builders.add(client().prepareIndex("test", "type").setSource("f", randomFrom("foo", "bar", "baz"), "n", randomInt(9)));
+        }
+        indexRandom(true, builders);
+    }
+
+    /**
+     * Find the first query node of the given type in the tree, depth first.
+     */
+    private static QueryProfileResult find(QueryProfileResult result, String type) {
+        if (result.getType().equals(type)) {
+            return result;
+        }
+        for (QueryProfileResult child : result.getChildren()) {
+            final QueryProfileResult found = find(child, type);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void noProfileByDefault() throws Exception {
+        indexDocs();
+        final SearchResponse response = client().prepareSearch("test").setQuery(termQuery("f", "foo")).get();
+        assertSearchResponse(response);
+        assertThat(response.getProfileResults(), nullValue());
+    }
+
+    @Test
+    public void queryTree() throws Exception {
+        indexDocs();
+        final SearchResponse response = client().prepareSearch("test")
+                .setQuery(boolQuery().must(termQuery("f", "foo")).should(termQuery("f", "bar")).filter(termQuery("n", 3)))
+                .setProfile(true)
+                .get();
+        assertSearchResponse(response);
+
+        final Map<String, ProfileShardResult> profileResults = response.getProfileResults();
+        assertThat(profileResults, notNullValue());
+        assertEquals(response.getSuccessfulShards(), profileResults.size());
+        boolean fetched = false;
+        for (ProfileShardResult shardResult : profileResults.values()) {
+            assertThat(shardResult.getQueries().size(), greaterThanOrEqualTo(1));
+            final QueryProfileResult bool = find(shardResult.getQueries().get(0), "BooleanQuery");
+            assertThat(bool, notNullValue());
+            assertEquals(3, bool.getChildren().size());
+            final List<String> descriptions = new ArrayList<>();
+            for (QueryProfileResult child : bool.getChildren()) {
+                descriptions.add(child.getDescription());
+                assertEquals(1L, (long) child.getBreakdown().get("create_weight_count"));
+            }
+            assertTrue(descriptions.toString(), descriptions.contains("f:foo"));
+            assertTrue(descriptions.toString(), descriptions.contains("f:bar"));
+            assertEquals(1L, (long) bool.getBreakdown().get("create_weight_count"));
+            for (ProfileBreakdown.TimingType timingType : ProfileBreakdown.TimingType.values()) {
+                assertThat(bool.getBreakdown().get(timingType.toString()), notNullValue());
+                assertThat(bool.getBreakdown().get(timingType.toString() + "_count"), notNullValue());
+            }
+
+            assertThat(shardResult.getPhases().get("query"), notNullValue());
+            assertThat(shardResult.getPhases().get("aggregations"), notNullValue());
+            // the fetch phase only runs on shards that have hits in the top documents
+            fetched |= shardResult.getPhases().containsKey("fetch");
+        }
+        if (response.getHits().getHits().length > 0) {
+            assertTrue(fetched);
+        }
+    }
+
+    @Test
+    public void aggregationTree() throws Exception {
+        indexDocs();
+        final SearchResponse response = client().prepareSearch("test")
+                .addAggregation(terms("terms").field("f").subAggregation(avg("avg").field("n")).subAggregation(max("max").field("n")))
+                .setProfile(true)
+                .get();
+        assertSearchResponse(response);
+        final long numDocs = response.getHits().getTotalHits();
+        final Terms terms = response.getAggregations().get("terms");
+
+        final Map<String, ProfileShardResult> profileResults = response.getProfileResults();
+        assertThat(profileResults, notNullValue());
+        assertEquals(response.getSuccessfulShards(), profileResults.size());
+        long termsCollectCount = 0;
+        long avgCollectCount = 0;
+        long maxBuckets = 0;
+        for (ProfileShardResult shardResult : profileResults.values()) {
+            assertThat(shardResult.getPhases().get("aggregations"), notNullValue());
+            assertEquals(1, shardResult.getAggregations().size());
+            final AggregationProfileResult termsResult = shardResult.getAggregations().get(0);
+            assertEquals("terms", termsResult.getName());
+            assertEquals("terms", termsResult.getType());
+            // the top-level aggregation is built once, sub-aggregations once per bucket
+            assertEquals(1, termsResult.getBuildCount());
+            assertThat(termsResult.getBuckets(), lessThanOrEqualTo((long) terms.getBuckets().size()));
+            maxBuckets = Math.max(maxBuckets, termsResult.getBuckets());
+            termsCollectCount += termsResult.getCollectCount();
+
+            assertEquals(2, termsResult.getChildren().size());
+            final AggregationProfileResult avgResult = termsResult.getChildren().get(0);
+            assertEquals("avg", avgResult.getName());
+            assertEquals("avg", avgResult.getType());
+            final AggregationProfileResult maxResult = termsResult.getChildren().get(1);
+            assertEquals("max", maxResult.getName());
+            assertEquals("max", maxResult.getType());
+            for (AggregationProfileResult metric : termsResult.getChildren()) {
+                assertEquals(termsResult.getBuckets(), metric.getBuildCount());
+                assertEquals(termsResult.getCollectCount(), metric.getCollectCount());
+                assertEquals(0, metric.getBuckets());
+                assertEquals(0, metric.getChildren().size());
+                // metrics allocate their values through the big arrays of their profile
+                assertThat(metric.getAllocatedBytes(), greaterThan(0L));
+                assertThat(metric.getPeakBytes(), lessThanOrEqualTo(metric.getAllocatedBytes()));
+            }
+            avgCollectCount += avgResult.getCollectCount();
+        }
+        // every document has a single term and a single number
+        assertEquals(numDocs, termsCollectCount);
+        assertEquals(numDocs, avgCollectCount);
+        assertThat(maxBuckets, greaterThan(0L));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.profile;
+
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class TimerTests extends ElasticsearchTestCase {
+
+    @Test
+    public void countsAllCalls() {
+        final int samplingInterval = randomIntBetween(1, 32);
+        final Timer timer = new Timer(samplingInterval);
+        assertEquals(0, timer.count());
+        assertEquals(0, timer.nanos());
+        final int calls = randomIntBetween(1, 1000);
+        int sampled = 0;
+        for (int i = 0; i < calls; ++i) {
+            final long start = timer.start();
+            if (start != -1) {
+                sampled++;
+            }
+            timer.stop(start);
+        }
+        assertEquals(calls, timer.count());
+        assertEquals((calls + samplingInterval - 1) / samplingInterval, sampled);
+        assertTrue(timer.nanos() >= 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSamplingInterval() {
+        new Timer(0);
+    }
+}
@@ -48,11 +48,14 @@ import org.joda.time.format.ISODateTimeFormat;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
+import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_REPLICAS;
 import static org.elasticsearch.cluster.metadata.IndexMetaData.SETTING_NUMBER_OF_SHARDS;
 import static org.elasticsearch.common.settings.Settings.settingsBuilder;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
@@ -1309,6 +1312,127 @@ public class SearchQueryTests extends ElasticsearchIntegrationTest {
         assertHitCount(searchResponse, 0l);
     }
 
+    @Test
+    public void testTermsLookupFilterSeesLookupUpdates() throws Exception {
+        assertAcked(prepareCreate("lookup").addMapping("type", "terms", "type=string"));
+        assertAcked(prepareCreate("test").addMapping("type", "term", "type=string", "num", "type=long"));
+        indexRandom(true,
+                client().prepareIndex("lookup", "type", "1").setSource("terms", new String[]{"1", "3"}),
+                client().prepareIndex("lookup", "type", "2").setSource("terms", new long[]{2, 4}),
+                client().prepareIndex("test", "type", "1").setSource("term", "1", "num", 1),
+                client().prepareIndex("test", "type", "2").setSource("term", "2", "num", 2),
+                client().prepareIndex("test", "type", "3").setSource("term", "3", "num", 3),
+                client().prepareIndex("test", "type", "4").setSource("term", "4", "num", 4));
+
+        for (int i = 0; i < 2; i++) {
+            // the second iteration reads the terms from the cache
+            SearchResponse searchResponse = client().prepareSearch("test")
+                    .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("term").lookupIndex("lookup").lookupType("type").lookupId("1").lookupPath("terms"))
+                    ).get();
+            assertSearchHits(searchResponse, "1", "3");
+
+            searchResponse = client().prepareSearch("test")
+                    .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("num").lookupIndex("lookup").lookupType("type").lookupId("2").lookupPath("terms"))
+                    ).get();
+            assertSearchHits(searchResponse, "2", "4");
+        }
+
+        // a new version of the lookup document must not be served from the cache, even before a refresh
+        client().prepareIndex("lookup", "type", "1").setSource("terms", new String[]{"2"}).get();
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("term").lookupIndex("lookup").lookupType("type").lookupId("1").lookupPath("terms"))
+                ).get();
+        assertSearchHits(searchResponse, "2");
+
+        client().prepareDelete("lookup", "type", "1").get();
+        searchResponse = client().prepareSearch("test")
+                .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("term").lookupIndex("lookup").lookupType("type").lookupId("1").lookupPath("terms"))
+                ).get();
+        assertHitCount(searchResponse, 0l);
+
+        // a lookup index created again starts over at the same document versions
+        client().prepareIndex("lookup", "type", "3").setSource("terms", new String[]{"1"}).get();
+        searchResponse = client().prepareSearch("test")
+                .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("term").lookupIndex("lookup").lookupType("type").lookupId("3").lookupPath("terms"))
+                ).get();
+        assertSearchHits(searchResponse, "1");
+        assertAcked(client().admin().indices().prepareDelete("lookup"));
+        assertAcked(prepareCreate("lookup").addMapping("type", "terms", "type=string"));
+        client().prepareIndex("lookup", "type", "3").setSource("terms", new String[]{"4"}).get();
+        searchResponse = client().prepareSearch("test")
+                .setQuery(filteredQuery(matchAllQuery(), termsLookupQuery("term").lookupIndex("lookup").lookupType("type").lookupId("3").lookupPath("terms"))
+                ).get();
+        assertSearchHits(searchResponse, "4");
+    }
+
+    @Test
+    public void testTopHitsWithoutTrackingTotalHits() throws Exception {
+        assertAcked(prepareCreate("test").addMapping("type", "body", "type=string,similarity=BM25"));
+        final String[] words = {"a", "b", "c", "d", "e", "f"};
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int j = randomIntBetween(1, 10); j > 0; j--) {
+                body.append(words[Math.min(randomInt(words.length - 1), randomInt(words.length - 1))]).append(' ');
+            }
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("body", body.toString()));
+        }
+        indexRandom(true, docs);
+
+        for (String query : new String[] {"a", "a f", "b c e", "a b c d e f"}) {
+            final int size = randomIntBetween(1, 20);
+            SearchResponse expected = client().prepareSearch("test").setPreference("_primary")
+                    .setQuery(matchQuery("body", query)).setSize(size).get();
+            SearchResponse actual = client().prepareSearch("test").setPreference("_primary")
+                    .setQuery(matchQuery("body", query)).setSize(size).setTrackTotalHits(false).get();
+            assertNoFailures(actual);
+            assertThat(actual.getHits().hits().length, equalTo(expected.getHits().hits().length));
+            for (int i = 0; i < expected.getHits().hits().length; i++) {
+                assertThat(actual.getHits().getAt(i).id(), equalTo(expected.getHits().getAt(i).id()));
+                assertThat((double) actual.getHits().getAt(i).score(), closeTo(expected.getHits().getAt(i).score(), 1e-5));
+            }
+            // skipped documents are not counted
+            assertThat(actual.getHits().totalHits(), lessThanOrEqualTo(expected.getHits().totalHits()));
+        }
+    }
+
+    @Test
+    public void testTopHitsWithoutTrackingTotalHitsUseDfs() throws Exception {
+        assertAcked(prepareCreate("test")
+                .setSettings(Settings.builder().put(SETTING_NUMBER_OF_SHARDS, randomIntBetween(2, 5)).put(SETTING_NUMBER_OF_REPLICAS, 0))
+                .addMapping("type", "body", "type=string,similarity=BM25"));
+        final String[] words = {"a", "b", "c", "d", "e", "f"};
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder body = new StringBuilder();
+            // skew frequencies per routing value so that shard-local statistics differ from the global ones
+            final int routing = randomInt(4);
+            for (int j = randomIntBetween(1, 10); j > 0; j--) {
+                body.append(words[Math.min(randomInt(words.length - 1), randomInt(routing + 1))]).append(' ');
+            }
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i)).setRouting(Integer.toString(routing))
+                    .setSource("body", body.toString()));
+        }
+        indexRandom(true, docs);
+
+        // a boolean query with a single clause rewrites to another query than the one the search context holds
+        for (QueryBuilder query : new QueryBuilder[] {matchQuery("body", "a"), matchQuery("body", "b c e"),
+                boolQuery().should(termQuery("body", "c").boost(2f)), boolQuery().should(termQuery("body", "d"))}) {
+            final int size = randomIntBetween(1, 20);
+            SearchResponse expected = client().prepareSearch("test").setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                    .setQuery(query).setSize(size).get();
+            SearchResponse actual = client().prepareSearch("test").setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                    .setQuery(query).setSize(size).setTrackTotalHits(false).get();
+            assertNoFailures(actual);
+            assertThat(actual.getHits().hits().length, equalTo(expected.getHits().hits().length));
+            for (int i = 0; i < expected.getHits().hits().length; i++) {
+                // scores use the statistics of all shards
+                assertThat((double) actual.getHits().getAt(i).score(), closeTo(expected.getHits().getAt(i).score(), 1e-5));
+            }
+            assertThat(actual.getHits().totalHits(), lessThanOrEqualTo(expected.getHits().totalHits()));
+        }
+    }
+
     @Test
     public void testBasicFilterById() throws Exception {
         createIndex("test");
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.searchafter;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class SearchAfterParseElementTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testBuildFieldDoc() {
+        Sort sort = new Sort(new SortField("l", SortField.Type.LONG), new SortField("d", SortField.Type.DOUBLE),
+                new SortField(null, SortField.Type.SCORE), new SortField("s", SortField.Type.STRING));
+        FieldDoc fieldDoc = SearchAfterParseElement.buildFieldDoc(sort, new Object[] {42, "1.5", 2.5d, "foo"});
+        assertEquals(Integer.MAX_VALUE, fieldDoc.doc);
+        assertEquals(42L, fieldDoc.fields[0]);
+        assertEquals(1.5d, fieldDoc.fields[1]);
+        assertEquals(2.5f, fieldDoc.fields[2]);
+        assertEquals(new BytesRef("foo"), fieldDoc.fields[3]);
+
+        // missing string values
+        fieldDoc = SearchAfterParseElement.buildFieldDoc(new Sort(new SortField("s", SortField.Type.STRING)), new Object[] {null});
+        assertNull(fieldDoc.fields[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() {
+        SearchAfterParseElement.buildFieldDoc(new Sort(new SortField("l", SortField.Type.LONG)), new Object[] {1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotANumber() {
+        SearchAfterParseElement.buildFieldDoc(new Sort(new SortField("l", SortField.Type.LONG)), new Object[] {"foo"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullNumber() {
+        SearchAfterParseElement.buildFieldDoc(new Sort(new SortField("l", SortField.Type.LONG)), new Object[] {null});
+    }
+}
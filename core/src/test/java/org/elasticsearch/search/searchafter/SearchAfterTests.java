@@ -0,0 +1,97 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.searchafter;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+public class SearchAfterTests extends ElasticsearchIntegrationTest {
+
+    @Test
+    public void testPaginateWithTieBreaker() throws Exception {
+        createIndex("test");
+        final int numDocs = randomIntBetween(10, 200);
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(jsonBuilder().startObject().field("value", i % 7).endObject()));
+        }
+        indexRandom(true, docs);
+
+        final int pageSize = randomIntBetween(1, 20);
+        Set<String> seen = new HashSet<>();
+        long previousValue = Long.MIN_VALUE;
+        Object[] searchAfter = null;
+        while (true) {
+            SearchResponse response;
+            if (searchAfter == null) {
+                response = client().prepareSearch("test").setQuery(matchAllQuery()).setSize(pageSize)
+                        .addSort("value", SortOrder.ASC).addSort("_uid", SortOrder.ASC).get();
+            } else {
+                response = client().prepareSearch("test").setQuery(matchAllQuery()).setSize(pageSize)
+                        .addSort("value", SortOrder.ASC).addSort("_uid", SortOrder.ASC)
+                        .setSearchAfter(searchAfter).get();
+            }
+            assertSearchResponse(response);
+            assertThat(response.getHits().getTotalHits(), equalTo((long) numDocs));
+            SearchHit[] hits = response.getHits().hits();
+            if (hits.length == 0) {
+                break;
+            }
+            for (SearchHit hit : hits) {
+                long value = ((Number) hit.sortValues()[0]).longValue();
+                assertThat(value, greaterThanOrEqualTo(previousValue));
+                previousValue = value;
+                assertTrue("hit [" + hit.id() + "] was returned twice", seen.add(hit.id()));
+            }
+            searchAfter = hits[hits.length - 1].sortValues();
+        }
+        assertThat(seen.size(), equalTo(numDocs));
+    }
+
+    @Test
+    public void testRejectFrom() throws Exception {
+        createIndex("test");
+        indexRandom(true, client().prepareIndex("test", "type", "1").setSource("value", 1));
+        try {
+            client().prepareSearch("test").setQuery(matchAllQuery()).setFrom(1)
+                    .addSort("value", SortOrder.ASC).setSearchAfter(0).get();
+            fail("search_after should be rejected when from is set");
+        } catch (SearchPhaseExecutionException e) {
+            // expected
+        }
+    }
+}
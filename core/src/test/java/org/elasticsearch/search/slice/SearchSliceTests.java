@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.slice;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SearchSliceTests extends ElasticsearchIntegrationTest {
+
+    private static List<IndexRequestBuilder> docs(String index, int numDocs, String routing) throws Exception {
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex(index, "type", Integer.toString(i)).setRouting(routing)
+                    .setSource(jsonBuilder().startObject().field("value", i).endObject()));
+        }
+        return docs;
+    }
+
+    /**
+     * Scroll every slice of the search and check that the slices are disjoint and that their union contains the
+     * expected number of hits.
+     */
+    private void assertSlicesAreDisjointAndComplete(String[] indices, String routing, int max, int expectedHits) {
+        Set<String> seen = new HashSet<>();
+        long totalHits = 0;
+        for (int id = 0; id < max; id++) {
+            SearchResponse response = client().prepareSearch(indices).setRouting(routing).setQuery(matchAllQuery())
+                    .setScroll(TimeValue.timeValueMinutes(1)).setSize(randomIntBetween(1, 50)).setSlice(id, max).get();
+            totalHits += response.getHits().getTotalHits();
+            try {
+                while (response.getHits().hits().length > 0) {
+                    assertSearchResponse(response);
+                    for (SearchHit hit : response.getHits()) {
+                        String key = hit.index() + "/" + hit.id();
+                        assertTrue("hit [" + key + "] was returned by several slices", seen.add(key));
+                    }
+                    response = client().prepareSearchScroll(response.getScrollId()).setScroll(TimeValue.timeValueMinutes(1)).get();
+                }
+            } finally {
+                clearScroll(response.getScrollId());
+            }
+        }
+        assertThat(totalHits, equalTo((long) expectedHits));
+        assertThat(seen.size(), equalTo(expectedHits));
+    }
+
+    @Test
+    public void testSlicesAreDisjointAndComplete() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(Settings.settingsBuilder().put("index.number_of_shards", randomIntBetween(1, 5))));
+        final int numDocs = randomIntBetween(10, 300);
+        indexRandom(true, docs("test", numDocs, null));
+        assertSlicesAreDisjointAndComplete(new String[] { "test" }, null, randomIntBetween(2, 10), numDocs);
+    }
+
+    @Test
+    public void testRoutedSlices() throws Exception {
+        assertAcked(prepareCreate("test").setSettings(Settings.settingsBuilder().put("index.number_of_shards", randomIntBetween(2, 5))));
+        final int numDocs = randomIntBetween(10, 300);
+        indexRandom(true, docs("test", numDocs, "foo"));
+        // the request only hits the shard that the routing value resolves to, slices must still cover it
+        assertSlicesAreDisjointAndComplete(new String[] { "test" }, "foo", randomIntBetween(2, 10), numDocs);
+    }
+
+    @Test
+    public void testMultiIndexSlices() throws Exception {
+        assertAcked(prepareCreate("test1").setSettings(Settings.settingsBuilder().put("index.number_of_shards", randomIntBetween(1, 5))));
+        assertAcked(prepareCreate("test2").setSettings(Settings.settingsBuilder().put("index.number_of_shards", randomIntBetween(1, 5))));
+        final int numDocs1 = randomIntBetween(10, 200);
+        final int numDocs2 = randomIntBetween(10, 200);
+        List<IndexRequestBuilder> docs = docs("test1", numDocs1, null);
+        docs.addAll(docs("test2", numDocs2, null));
+        indexRandom(true, docs);
+        assertSlicesAreDisjointAndComplete(new String[] { "test1", "test2" }, null, randomIntBetween(2, 10), numDocs1 + numDocs2);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.slice;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.test.ElasticsearchTestCase;
+import org.junit.Test;
+
+public class SliceParseElementTests extends ElasticsearchTestCase {
+
+    @Test
+    public void testEveryShardSliceIsCoveredOnce() {
+        final int numShards = randomIntBetween(1, 10);
+        final int max = randomIntBetween(2, 30);
+        for (int shardId = 0; shardId < numShards; shardId++) {
+            // the sub-slices of this shard that are covered by some slice
+            int[] covered = null;
+            int matchAll = 0;
+            for (int id = 0; id < max; id++) {
+                Query filter = SliceParseElement.createSliceFilter(id, max, shardId, numShards);
+                if (filter instanceof MatchAllDocsQuery) {
+                    matchAll++;
+                } else if (filter instanceof TermsSliceFilter) {
+                    TermsSliceFilter slice = (TermsSliceFilter) filter;
+                    if (covered == null) {
+                        covered = new int[slice.max()];
+                    }
+                    assertEquals(covered.length, slice.max());
+                    covered[slice.id()]++;
+                } else {
+                    assertTrue(filter instanceof BooleanQuery);
+                    assertEquals(0, ((BooleanQuery) filter).clauses().size());
+                }
+            }
+            if (covered == null) {
+                assertEquals(1, matchAll);
+            } else {
+                assertEquals(0, matchAll);
+                for (int count : covered) {
+                    assertEquals(1, count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTermsSliceFilterPartitionsDocuments() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+        final int numDocs = randomIntBetween(1, 500);
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new StringField(UidFieldMapper.NAME, "type#" + i, Field.Store.NO));
+            writer.addDocument(doc);
+            if (rarely()) {
+                writer.commit();
+            }
+        }
+        DirectoryReader reader = DirectoryReader.open(writer, true);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        final int max = randomIntBetween(2, 10);
+        int total = 0;
+        for (int id = 0; id < max; id++) {
+            total += searcher.count(new TermsSliceFilter(UidFieldMapper.NAME, id, max));
+        }
+        assertEquals(numDocs, total);
+        reader.close();
+        writer.close();
+        dir.close();
+    }
+}
@@ -57,6 +57,7 @@ import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.profile.Profiler;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
@@ -351,6 +352,24 @@ public class TestSearchContext extends SearchContext {
         this.terminateAfter = terminateAfter;
     }
 
+    @Override
+    public Object[] searchAfter() {
+        return null;
+    }
+
+    @Override
+    public void searchAfter(Object[] sortValues) {
+    }
+
+    @Override
+    public Query sliceFilter() {
+        return null;
+    }
+
+    @Override
+    public void sliceFilter(Query sliceFilter) {
+    }
+
     @Override
     public SearchContext minimumScore(float minimumScore) {
         return null;
@@ -381,6 +400,16 @@ public class TestSearchContext extends SearchContext {
         return false;
     }
 
+    @Override
+    public boolean trackTotalHits() {
+        return true;
+    }
+
+    @Override
+    public SearchContext trackTotalHits(boolean trackTotalHits) {
+        return null;
+    }
+
     @Override
     public SearchContext parsedPostFilter(ParsedQuery postFilter) {
         return null;
@@ -469,6 +498,15 @@ public class TestSearchContext extends SearchContext {
     public void explain(boolean explain) {
     }
 
+    @Override
+    public Profiler profiler() {
+        return null;
+    }
+
+    @Override
+    public void profile(boolean profile) {
+    }
+
     @Override
     public List<String> groupStats() {
         return null;